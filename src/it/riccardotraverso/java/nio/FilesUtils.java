@@ -20,6 +20,7 @@
 package it.riccardotraverso.java.nio;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -51,6 +52,18 @@ public class FilesUtils {
 //		Path p = Paths.get(cl.getResource(path).toURI());
 //		return new String(java.nio.file.Files.readAllBytes(p), StandardCharsets.UTF_8);
 	}
+
+	/**
+	 * Maps a file in memory, so that it can be read without copying it onto
+	 * the heap. Files larger than 2 GB are mapped in segments.
+	 * 
+	 * @param file the file to map
+	 * @throws IOException
+	 * @see MappedFile
+	 */
+	public static MappedFile map(File file) throws IOException {
+		return new MappedFile(file);
+	}
 	
 	
 
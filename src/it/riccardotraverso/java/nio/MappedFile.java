@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.java.nio;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A read-only file mapped in memory, so that its content can be read
+ * without going through the heap, whatever its size.
+ * 
+ * A single {@link MappedByteBuffer} cannot address more than 2 GB, so the
+ * file is mapped in consecutive segments of at most
+ * {@link #DEFAULT_SEGMENT_SIZE} bytes each (or of a given size). Segments are
+ * mapped on first use, and each call to {@link #getSegment(int)} returns an
+ * independent view of the segment, so that several readers can use it at
+ * the same time.
+ * 
+ * The file keeps every segment it has mapped until {@link #release(int)} is
+ * called on it, after which the segment is unmapped only when the garbage
+ * collector reclaims it and its views. Each segment counts as one mapping
+ * of the process until then, and the number of mappings is limited by the
+ * operating system (65530 by default on Linux): segments should thus be
+ * large enough, megabytes rather than bytes, for the whole file to fit in a
+ * few thousand of them, even when it is read once and released.
+ * 
+ * Closing the file releases its channel. The mapped segments stay valid
+ * until they are garbage collected, since Java offers no way to unmap them.
+ */
+public class MappedFile implements Closeable {
+
+	/** Default size of each segment of the mapping, 1 GB */
+	public static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long size;
+	private final int segmentSize;
+	private final MappedByteBuffer[] segments;
+
+	/**
+	 * Opens a file for mapping, with segments of the default size.
+	 */
+	public MappedFile(File file) throws IOException {
+		this(file, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Opens a file for mapping, with segments of the given size.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the segment size is not positive
+	 */
+	public MappedFile(File file, int segmentSize) throws IOException {
+		if (segmentSize <= 0)
+			throw new IllegalArgumentException("invalid segment size: "
+					+ segmentSize);
+		this.file = new RandomAccessFile(file, "r");
+		this.channel = this.file.getChannel();
+		this.size = channel.size();
+		this.segmentSize = segmentSize;
+		long count = (size + segmentSize - 1) / segmentSize;
+		if (count > Integer.MAX_VALUE) {
+			this.file.close();
+			throw new IllegalArgumentException("segment size too small: "
+					+ segmentSize);
+		}
+		this.segments = new MappedByteBuffer[(int) count];
+	}
+
+	/**
+	 * Returns the size of the file, in bytes.
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of segments of the file, which is 0 for an empty
+	 * file.
+	 */
+	public int getSegmentCount() {
+		return segments.length;
+	}
+
+	/**
+	 * Returns the offset in the file of the first byte of a segment.
+	 */
+	public long getSegmentOffset(int index) {
+		if (index < 0 || index >= segments.length)
+			throw new IndexOutOfBoundsException("segment " + index);
+		return (long) index * segmentSize;
+	}
+
+	/**
+	 * Returns a read-only view of a segment, mapping it if needed. The
+	 * position of the view is 0 and its limit the size of the segment.
+	 */
+	public ByteBuffer getSegment(int index) throws IOException {
+		long offset = getSegmentOffset(index);
+		MappedByteBuffer segment;
+		synchronized (segments) {
+			segment = segments[index];
+			if (segment == null) {
+				int length = (int) Math.min(segmentSize, size - offset);
+				segment = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+						length);
+				segments[index] = segment;
+			}
+		}
+		return segment.duplicate();
+	}
+
+	/**
+	 * Drops a segment from the ones kept by the file, which maps it again if
+	 * it is requested later. The segment is unmapped once it and its views
+	 * are garbage collected, rather than when the file is.
+	 */
+	public void release(int index) {
+		if (index < 0 || index >= segments.length)
+			throw new IndexOutOfBoundsException("segment " + index);
+		synchronized (segments) {
+			segments[index] = null;
+		}
+	}
+
+	/**
+	 * Returns read-only views of all the segments, in order, mapping them if
+	 * needed.
+	 */
+	public ByteBuffer[] getSegments() throws IOException {
+		ByteBuffer[] views = new ByteBuffer[segments.length];
+		for (int i = 0; i < views.length; i++) {
+			views[i] = getSegment(i);
+		}
+		return views;
+	}
+
+	/**
+	 * Returns read-only views of the bytes from {@code offset} to
+	 * {@code offset + length}, which span one or more segments.
+	 */
+	public ByteBuffer[] getRange(long offset, long length) throws IOException {
+		if (offset < 0 || length < 0 || offset + length > size)
+			throw new IndexOutOfBoundsException("range " + offset + "+" + length);
+		List<ByteBuffer> views = new ArrayList<ByteBuffer>(2);
+		while (length > 0) {
+			int index = (int) (offset / segmentSize);
+			ByteBuffer view = getSegment(index);
+			int from = (int) (offset - (long) index * segmentSize);
+			int n = (int) Math.min(length, view.limit() - from);
+			view.position(from);
+			view.limit(from + n);
+			views.add(view.slice());
+			offset += n;
+			length -= n;
+		}
+		return views.toArray(new ByteBuffer[views.size()]);
+	}
+
+	/**
+	 * Returns the offset of the first occurrence of a byte at or after
+	 * {@code from}, or -1 if there is none.
+	 */
+	public long indexOf(byte b, long from) throws IOException {
+		long offset = Math.max(from, 0);
+		while (offset < size) {
+			int index = (int) (offset / segmentSize);
+			ByteBuffer view = getSegment(index);
+			long base = (long) index * segmentSize;
+			for (int i = (int) (offset - base), n = view.limit(); i < n; i++) {
+				if (view.get(i) == b)
+					return base + i;
+			}
+			offset = base + view.limit();
+		}
+		return -1;
+	}
+
+	/**
+	 * Releases the channel of the file. Segments that are already mapped
+	 * remain readable.
+	 */
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+}
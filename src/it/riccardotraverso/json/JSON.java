@@ -20,6 +20,11 @@
 
 package it.riccardotraverso.json;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * A generic JSON element (see the Composite design pattern) built in Java 
  * as a tree structure made from subclasses of this root class.
@@ -33,10 +38,89 @@ package it.riccardotraverso.json;
  * @see JSONVisitorAdapter
  */
 public abstract class JSON {
-	
+
+	/**
+	 * The version of the hashes cached by containers holding nodes that
+	 * cannot tell which containers hold them, namely nodes shared by several
+	 * containers and the children of concurrent containers. It becomes odd
+	 * when a hash is cached, and even again at the next mutation of such a
+	 * node, which thus invalidates all the cached hashes at once. It is only
+	 * written when that happens, so that mutating regular trees, or building
+	 * them in parallel, does not contend on it.
+	 */
+	private static final AtomicLong EPOCH = new AtomicLong();
+
+	/** The parent of the nodes found in more than one container */
+	static final JSON SHARED = new JSONNull();
+
+	/**
+	 * The container holding this node, {@link #SHARED}, or null. It is
+	 * recorded when the container is hashed, which is enough as only hashed
+	 * containers cache anything, and it is not cleared when the node is
+	 * removed, which at worst invalidates a hash needlessly.
+	 */
+	JSON parent;
+
+	/**
+	 * Invalidates the hashes cached by the containers holding this node, to
+	 * be called by every mutator. The containers are followed up to the
+	 * first one which has no hash cached, as hashing a container caches the
+	 * hash of all the containers below it.
+	 */
+	void modified() {
+		JSON node = this;
+		while (node.dropHash()) {
+			JSON p = node.parent;
+			if (p == null)
+				return;
+			if (p == SHARED) {
+				invalidateAll();
+				return;
+			}
+			node = p;
+		}
+	}
+
+	/**
+	 * Forgets the hash cached by this node, if any.
+	 * 
+	 * @return false if the containers holding this node need not be
+	 *         invalidated, as this node had no hash cached
+	 */
+	boolean dropHash() {
+		return true;
+	}
+
+	/**
+	 * Invalidates all the hashes stamped with the current epoch.
+	 */
+	static void invalidateAll() {
+		for (;;) {
+			long epoch = EPOCH.get();
+			if ((epoch & 1) == 0 || EPOCH.compareAndSet(epoch, epoch + 1))
+				return;
+		}
+	}
+
+	/**
+	 * Returns the stamp of the hashes cached from now until the next call to
+	 * {@link #invalidateAll()}.
+	 */
+	static long hashEpoch() {
+		for (;;) {
+			long epoch = EPOCH.get();
+			if ((epoch & 1) != 0)
+				return epoch;
+			if (EPOCH.compareAndSet(epoch, epoch + 1))
+				return epoch + 1;
+		}
+	}
+
 	/**
 	 * Accepting a visitor object means recursively calling the proper visitor's
-	 * methods on all of the JSON objects contained.
+	 * methods on all of the JSON objects contained. Containers do it with an
+	 * explicit stack rather than with recursive calls (see {@link JSONWalker}),
+	 * so that deeply nested trees cannot overflow the call stack.
 	 * 
 	 * @param v
 	 *            the visitor to be accepted by the current JSON element
@@ -45,6 +129,40 @@ public abstract class JSON {
 	 */
 	public abstract void accept(JSONVisitor v);
 	
+	/**
+	 * Serializes the current element as compact JSON code, streaming it to
+	 * the given output without building it in memory first.
+	 * 
+	 * @see JSONWriter
+	 */
+	public void writeTo(Writer out) throws IOException {
+		JSONWriter w = new JSONWriter(out);
+		w.value(this);
+		w.flush();
+	}
+
+	/**
+	 * Serializes the current element as compact, UTF-8 encoded JSON code,
+	 * streaming it to the given output without building it in memory first.
+	 * 
+	 * @see JSONWriter
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		JSONWriter w = new JSONWriter(out);
+		w.value(this);
+		w.flush();
+	}
+
+	/**
+	 * Returns the current element as compact JSON code, without any
+	 * whitespace.
+	 * 
+	 * @see JSONCompactPrint
+	 */
+	public String toCompactString() {
+		return JSONCompactPrint.toString(this);
+	}
+
 	/**
 	 * Pretty-prints the current element as a valid JSON string.
 	 */
@@ -0,0 +1,588 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import it.riccardotraverso.java.lang.Predicate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * A pool of nodes recycled from one document to the next, for code building
+ * and discarding many short-lived trees, where allocating fresh nodes every
+ * time would keep the garbage collector busy.
+ * 
+ * Nodes are taken from the arena by the factory methods, or by a
+ * {@link JSONParser} configured with {@link JSONParser#setArena(JSONArena)}.
+ * A call to {@link #release()} ends the scope of all the nodes taken since
+ * the previous release: they are emptied and kept for the next documents,
+ * along with the properties and the lists backing objects and arrays. Nodes
+ * of a released scope must not be used anymore, nor be referenced by trees
+ * that outlive the scope.
+ * 
+ * In debug mode, nodes are never recycled. Instead, every method of a node
+ * of a released scope throws an {@link IllegalStateException}, so that uses
+ * after release are reported where they happen. Debug nodes are instances of
+ * subclasses of the node types, which must be taken into account by code
+ * comparing classes.
+ * 
+ * Arenas are not thread-safe: each thread should use its own.
+ */
+public class JSONArena {
+
+	/** Default number of free nodes of each type kept for reuse */
+	public static final int DEFAULT_MAX_POOLED = 1 << 16;
+
+	/**
+	 * The nodes of a given type taken from the arena in the current scope, and
+	 * the free ones.
+	 */
+	private static abstract class Pool<T extends JSON> {
+
+		private final ArrayList<T> used = new ArrayList<T>();
+		private final ArrayList<T> free = new ArrayList<T>();
+
+		/**
+		 * Returns a free node, or null if there is none.
+		 */
+		T take() {
+			int n = free.size();
+			return n == 0 ? null : free.remove(n - 1);
+		}
+
+		T track(T node) {
+			used.add(node);
+			return node;
+		}
+
+		void release(boolean reuse, int maxPooled) {
+			for (int i = 0, n = used.size(); i < n; i++) {
+				T node = used.get(i);
+				if (reuse && free.size() < maxPooled) {
+					recycle(node);
+					// Its next container may be a different one
+					node.parent = null;
+					free.add(node);
+				}
+			}
+			used.clear();
+		}
+
+		abstract void recycle(T node);
+
+	}
+
+	/**
+	 * The lifetime of the nodes taken between two releases, checked by the
+	 * nodes of debug arenas.
+	 */
+	private static final class Scope {
+
+		private boolean released;
+
+		void check() {
+			if (released)
+				throw new IllegalStateException(
+						"node used after the release of its arena");
+		}
+
+	}
+
+	private final boolean debug;
+	private final int maxPooled;
+	private Scope scope = new Scope();
+
+	private final Pool<JSONObject> objects = new Pool<JSONObject>() {
+
+		@Override
+		void recycle(JSONObject node) {
+			node.recycle();
+		}
+	};
+
+	private final Pool<JSONArray<JSON>> arrays = new Pool<JSONArray<JSON>>() {
+
+		@Override
+		void recycle(JSONArray<JSON> node) {
+			node.recycle();
+		}
+	};
+
+	private final Pool<JSONString> strings = new Pool<JSONString>() {
+
+		@Override
+		void recycle(JSONString node) {
+			node.setText(null);
+		}
+	};
+
+	private final Pool<JSONInteger> integers = new Pool<JSONInteger>() {
+
+		@Override
+		void recycle(JSONInteger node) {
+			node.setValue(0);
+		}
+	};
+
+	private final Pool<JSONBoolean> booleans = new Pool<JSONBoolean>() {
+
+		@Override
+		void recycle(JSONBoolean node) {
+			node.setValue(false);
+		}
+	};
+
+	/**
+	 * Creates an arena keeping up to {@link #DEFAULT_MAX_POOLED} free nodes of
+	 * each type.
+	 */
+	public JSONArena() {
+		this(DEFAULT_MAX_POOLED, false);
+	}
+
+	/**
+	 * Creates an arena keeping up to {@code maxPooled} free nodes of each
+	 * type, optionally in debug mode.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if {@code maxPooled} is negative
+	 */
+	public JSONArena(int maxPooled, boolean debug) {
+		if (maxPooled < 0)
+			throw new IllegalArgumentException("negative pool size");
+		this.maxPooled = maxPooled;
+		this.debug = debug;
+	}
+
+	/**
+	 * Tells whether the arena detects uses of nodes after their release.
+	 */
+	public boolean isDebug() {
+		return debug;
+	}
+
+	/**
+	 * Ends the scope of all the nodes taken since the previous release, making
+	 * them available for reuse, or unusable in debug mode.
+	 */
+	public void release() {
+		scope.released = true;
+		scope = new Scope();
+		boolean reuse = !debug;
+		objects.release(reuse, maxPooled);
+		arrays.release(reuse, maxPooled);
+		strings.release(reuse, maxPooled);
+		integers.release(reuse, maxPooled);
+		booleans.release(reuse, maxPooled);
+	}
+
+	//
+	// Factories
+	//
+
+	/**
+	 * Returns an empty object.
+	 */
+	public JSONObject newObject() {
+		JSONObject node = objects.take();
+		if (node == null)
+			node = debug ? new CheckedObject(scope) : new JSONObject();
+		return objects.track(node);
+	}
+
+	/**
+	 * Returns an empty array.
+	 */
+	public JSONArray<JSON> newArray() {
+		JSONArray<JSON> node = arrays.take();
+		if (node == null)
+			node = debug ? new CheckedArray(scope) : new JSONArray<JSON>();
+		return arrays.track(node);
+	}
+
+	/**
+	 * Returns a string with the given text.
+	 */
+	public JSONString newString(String text) {
+		JSONString node = strings.take();
+		if (node == null) {
+			node = debug ? new CheckedString(scope, text) : new JSONString(text);
+		} else {
+			node.setText(text);
+		}
+		return strings.track(node);
+	}
+
+	/**
+	 * Returns an integer with the given value.
+	 */
+	public JSONInteger newInteger(int value) {
+		JSONInteger node = integers.take();
+		if (node == null) {
+			node = debug ? new CheckedInteger(scope, value) : new JSONInteger(value);
+		} else {
+			node.setValue(value);
+		}
+		return integers.track(node);
+	}
+
+	/**
+	 * Returns a boolean with the given value.
+	 */
+	public JSONBoolean newBoolean(boolean value) {
+		JSONBoolean node = booleans.take();
+		if (node == null) {
+			node = debug ? new CheckedBoolean(scope, value) : new JSONBoolean(value);
+		} else {
+			node.setValue(value);
+		}
+		return booleans.track(node);
+	}
+
+	//
+	// Debug nodes, checking their scope before every operation
+	//
+
+	private static final class CheckedObject extends JSONObject {
+
+		private final Scope scope;
+
+		CheckedObject(Scope scope) {
+			this.scope = scope;
+		}
+
+		/**
+		 * A property of a checked object, checking the scope of the object.
+		 */
+		private final class CheckedProperty extends JSONObject.Property {
+
+			CheckedProperty(String name, JSON value) {
+				super(name, value);
+			}
+
+			@Override
+			public String getName() {
+				scope.check();
+				return super.getName();
+			}
+
+			@Override
+			public void setName(String name) {
+				scope.check();
+				super.setName(name);
+			}
+
+			@Override
+			public JSON getValue() {
+				scope.check();
+				return super.getValue();
+			}
+
+			@Override
+			public void setValue(JSON value) {
+				scope.check();
+				super.setValue(value);
+			}
+
+			@Override
+			public void accept(JSONVisitor v) {
+				scope.check();
+				super.accept(v);
+			}
+
+		}
+
+		@Override
+		JSONObject.Property newProperty(String name, JSON value) {
+			return new CheckedProperty(name, value);
+		}
+
+		@Override
+		public JSONObject setProperty(String name, JSON value) {
+			scope.check();
+			return super.setProperty(name, value);
+		}
+
+		@Override
+		public boolean removeProperty(String name) {
+			scope.check();
+			return super.removeProperty(name);
+		}
+
+		@Override
+		public JSONObject.Property getProperty(String name) {
+			scope.check();
+			return super.getProperty(name);
+		}
+
+		@Override
+		JSONObject.Property getProperty(int position) {
+			scope.check();
+			return super.getProperty(position);
+		}
+
+		@Override
+		public JSON getPropertyValue(String propertyName) {
+			scope.check();
+			return super.getPropertyValue(propertyName);
+		}
+
+		@Override
+		public int size() {
+			scope.check();
+			return super.size();
+		}
+
+		@Override
+		public Iterator<JSONObject.Property> iterator() {
+			scope.check();
+			return super.iterator();
+		}
+
+		@Override
+		public void accept(JSONVisitor v) {
+			scope.check();
+			super.accept(v);
+		}
+
+	}
+
+	private static final class CheckedArray extends JSONArray<JSON> {
+
+		private final Scope scope;
+
+		CheckedArray(Scope scope) {
+			this.scope = scope;
+		}
+
+		@Override
+		public void addValue(JSON value) {
+			scope.check();
+			super.addValue(value);
+		}
+
+		@Override
+		public void addValue(int index, JSON value) {
+			scope.check();
+			super.addValue(index, value);
+		}
+
+		@Override
+		public void setValue(int index, JSON value) {
+			scope.check();
+			super.setValue(index, value);
+		}
+
+		@Override
+		public void removeValue(JSON value) {
+			scope.check();
+			super.removeValue(value);
+		}
+
+		@Override
+		public void removeValue(int index) {
+			scope.check();
+			super.removeValue(index);
+		}
+
+		@Override
+		public JSON getValue(int index) {
+			scope.check();
+			return super.getValue(index);
+		}
+
+		@Override
+		public int size() {
+			scope.check();
+			return super.size();
+		}
+
+		@Override
+		public JSON find(Predicate<JSON> pred) {
+			scope.check();
+			return super.find(pred);
+		}
+
+		@Override
+		public Iterator<JSON> iterator() {
+			scope.check();
+			return super.iterator();
+		}
+
+		@Override
+		public void accept(JSONVisitor v) {
+			scope.check();
+			super.accept(v);
+		}
+
+	}
+
+	private static final class CheckedString extends JSONString {
+
+		private final Scope scope;
+
+		CheckedString(Scope scope, String text) {
+			super(text);
+			this.scope = scope;
+		}
+
+		@Override
+		public String getText() {
+			scope.check();
+			return super.getText();
+		}
+
+		@Override
+		public void setText(String text) {
+			scope.check();
+			super.setText(text);
+		}
+
+		@Override
+		public void accept(JSONVisitor v) {
+			scope.check();
+			super.accept(v);
+		}
+
+	}
+
+	private static final class CheckedInteger extends JSONInteger {
+
+		private final Scope scope;
+
+		CheckedInteger(Scope scope, int value) {
+			super(value);
+			this.scope = scope;
+		}
+
+		@Override
+		public int getValue() {
+			scope.check();
+			return super.getValue();
+		}
+
+		@Override
+		public void setValue(int value) {
+			scope.check();
+			super.setValue(value);
+		}
+
+		@Override
+		public void add(int a) {
+			scope.check();
+			super.add(a);
+		}
+
+		@Override
+		public void sub(int a) {
+			scope.check();
+			super.sub(a);
+		}
+
+		@Override
+		public int intValue() {
+			scope.check();
+			return super.intValue();
+		}
+
+		@Override
+		public long longValue() {
+			scope.check();
+			return super.longValue();
+		}
+
+		@Override
+		public double doubleValue() {
+			scope.check();
+			return super.doubleValue();
+		}
+
+		@Override
+		public BigDecimal decimalValue() {
+			scope.check();
+			return super.decimalValue();
+		}
+
+		@Override
+		public String getNumberText() {
+			scope.check();
+			return super.getNumberText();
+		}
+
+		@Override
+		public void accept(JSONVisitor v) {
+			scope.check();
+			super.accept(v);
+		}
+
+	}
+
+	private static final class CheckedBoolean extends JSONBoolean {
+
+		private final Scope scope;
+
+		CheckedBoolean(Scope scope, boolean value) {
+			super(value);
+			this.scope = scope;
+		}
+
+		@Override
+		public boolean getValue() {
+			scope.check();
+			return super.getValue();
+		}
+
+		@Override
+		public void setValue(boolean value) {
+			scope.check();
+			super.setValue(value);
+		}
+
+		@Override
+		public boolean isTrue() {
+			scope.check();
+			return super.isTrue();
+		}
+
+		@Override
+		public boolean isFalse() {
+			scope.check();
+			return super.isFalse();
+		}
+
+		@Override
+		public void toggle() {
+			scope.check();
+			super.toggle();
+		}
+
+		@Override
+		public void accept(JSONVisitor v) {
+			scope.check();
+			super.accept(v);
+		}
+
+	}
+
+}
@@ -33,14 +33,161 @@ import java.util.Iterator;
  *            {@link JSON}.
  */
 public class JSONArray<J extends JSON> extends JSON implements Iterable<J> {
-	
-	/** The ordered list of values of the array */
-	private ArrayList<J> values = new ArrayList<J>();
+
+	/**
+	 * The storage of the elements of an array. Every method of
+	 * {@link JSONArray} reads and writes the elements through it, so that
+	 * subclasses storing them differently, such as primitive or concurrent
+	 * arrays, supply their own storage instead of inheriting one they would
+	 * leave empty. Indexes are checked by the storage.
+	 */
+	abstract static class Elements<J extends JSON> {
+
+		/**
+		 * Returns the number of elements.
+		 */
+		abstract int size();
+
+		/**
+		 * Returns the element at an index.
+		 */
+		abstract J get(int index);
+
+		/**
+		 * Returns the element at an index to be passed to a visitor, see
+		 * {@link JSONArray#visitValue(int, JSONWalker.Scratch)}.
+		 */
+		JSON visit(int index, JSONWalker.Scratch scratch) {
+			return get(index);
+		}
+
+		/**
+		 * Appends an element.
+		 */
+		abstract void add(J value);
+
+		/**
+		 * Inserts an element at an index, up to the size, shifting the
+		 * following ones.
+		 */
+		abstract void add(int index, J value);
+
+		/**
+		 * Replaces the element at an index.
+		 */
+		abstract void set(int index, J value);
+
+		/**
+		 * Removes the element at an index.
+		 */
+		abstract void remove(int index);
+
+		/**
+		 * Removes the first element matching a value, as described by
+		 * {@link JSONArray#removeValue(JSON)} for the kind of array.
+		 * 
+		 * @return true iff an element was removed
+		 */
+		abstract boolean removeFirst(J value);
+
+		/**
+		 * Removes all the elements.
+		 */
+		abstract void clear();
+
+		/**
+		 * Returns an iterator over the elements, removing from the storage.
+		 */
+		abstract Iterator<J> iterator();
+
+	}
+
+	/**
+	 * The elements of a plain array, kept in a list.
+	 */
+	private static final class ListElements<J extends JSON> extends
+			Elements<J> {
+
+		private final ArrayList<J> values = new ArrayList<J>();
+
+		@Override
+		int size() {
+			return values.size();
+		}
+
+		@Override
+		J get(int index) {
+			return values.get(index);
+		}
+
+		@Override
+		void add(J value) {
+			values.add(value);
+		}
+
+		@Override
+		void add(int index, J value) {
+			values.add(index, value);
+		}
+
+		@Override
+		void set(int index, J value) {
+			values.set(index, value);
+		}
+
+		@Override
+		void remove(int index) {
+			values.remove(index);
+		}
+
+		@Override
+		boolean removeFirst(J value) {
+			for (int i = 0, n = values.size(); i < n; i++) {
+				if (values.get(i) == value) {
+					values.remove(i);
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		void clear() {
+			values.clear();
+		}
+
+		@Override
+		Iterator<J> iterator() {
+			return values.iterator();
+		}
+
+	}
+
+	/** The elements of the array */
+	private final Elements<J> elements;
+
+	/** The cached structural hash, see {@link JSONHashing} */
+	long hash;
+
+	/**
+	 * The epoch in which {@link #hash} was computed, or 0 when no hash is
+	 * cached
+	 */
+	long hashEpoch;
 
 	/**
 	 * Creates a new empty JSONArray.
 	 */
-	public JSONArray() { }
+	public JSONArray() {
+		this.elements = new ListElements<J>();
+	}
+
+	/**
+	 * Creates an array storing its elements in a given storage.
+	 */
+	JSONArray(Elements<J> elements) {
+		this.elements = elements;
+	}
 	
 	/**
 	 * Adds a new value to the array.
@@ -48,16 +195,42 @@ public class JSONArray<J extends JSON> extends JSON implements Iterable<J> {
 	 * @param value
 	 */
 	public void addValue(J value) {
-		values.add(value);
+		elements.add(value);
+		modified();
+	}
+
+	/**
+	 * Inserts a new value at a given index, shifting the following elements.
+	 * 
+	 * @param index
+	 *            the position of the new value, up to the size of the array
+	 * @param value
+	 */
+	public void addValue(int index, J value) {
+		elements.add(index, value);
+		modified();
+	}
+
+	/**
+	 * Replaces the element at a given index.
+	 * 
+	 * @param index
+	 * @param value
+	 */
+	public void setValue(int index, J value) {
+		elements.set(index, value);
+		modified();
 	}
 	
 	/**
-	 * Removes a specified value from the array (by reference).
+	 * Removes a specified value from the array (by reference): the first
+	 * element which is that very node, rather than an equal one.
 	 * 
 	 * @param value
 	 */
 	public void removeValue(J value) {
-		values.remove(value);
+		if (elements.removeFirst(value))
+			modified();
 	}
 	
 	
@@ -67,7 +240,8 @@ public class JSONArray<J extends JSON> extends JSON implements Iterable<J> {
 	 * @param index
 	 */
 	public void removeValue(int index) {
-		values.remove(index);
+		elements.remove(index);
+		modified();
 	}
 	
 	/**
@@ -75,7 +249,7 @@ public class JSONArray<J extends JSON> extends JSON implements Iterable<J> {
 	 * @param index
 	 */
 	public JSON getValue(int index) {
-		return values.get(index);
+		return elements.get(index);
 	}
 	
 	/**
@@ -83,7 +257,7 @@ public class JSONArray<J extends JSON> extends JSON implements Iterable<J> {
 	 * 
 	 */
 	public int size() {
-		return values.size();
+		return elements.size();
 	}
 
 	/**
@@ -95,7 +269,8 @@ public class JSONArray<J extends JSON> extends JSON implements Iterable<J> {
 	 *         exists, or {@code null} otherwise
 	 */
 	public J find(Predicate<J> pred) {
-		for (J value : values) {
+		for (Iterator<J> it = elements.iterator(); it.hasNext();) {
+			J value = it.next();
 			if (pred.holdsFor(value)) {
 				return value;
 			}
@@ -103,18 +278,98 @@ public class JSONArray<J extends JSON> extends JSON implements Iterable<J> {
 		return null;
 	}
 
+	/**
+	 * Returns the element at a given index to be passed to a visitor, which
+	 * arrays storing primitive values return as a node of the scratch reused
+	 * for every element instead of creating one.
+	 */
+	JSON visitValue(int index, JSONWalker.Scratch scratch) {
+		return elements.visit(index, scratch);
+	}
+
+	/**
+	 * Returns a view of the array whose size and elements do not change while
+	 * it is being read by position, which is the array itself unless it can
+	 * be modified concurrently.
+	 */
+	JSONArray<J> snapshot() {
+		return this;
+	}
+
+	/**
+	 * Tells whether the array, or the array this is a snapshot of, can be
+	 * modified concurrently.
+	 */
+	boolean isConcurrent() {
+		return false;
+	}
+
+	/**
+	 * Empties the array for reuse.
+	 */
+	void recycle() {
+		elements.clear();
+		modified();
+	}
+
 	@Override
 	public Iterator<J> iterator() {
-		return values.iterator();
+		final Iterator<J> it = elements.iterator();
+		return new Iterator<J>() {
+
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public J next() {
+				return it.next();
+			}
+
+			@Override
+			public void remove() {
+				it.remove();
+				modified();
+			}
+		};
 	}
 	
 	@Override
 	public void accept(JSONVisitor v) {
-		v.enterJSONArray(this);
-		for (J value : values) {
-			value.accept(v);
-		}
-		v.exitJSONArray(this);
+		JSONWalker.DEFAULT.walk(this, v);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		long h = JSONHashing.hash(this);
+		return (int) (h ^ (h >>> 32));
+	}
+
+	@Override
+	boolean dropHash() {
+		boolean cached = hashEpoch != 0;
+		hashEpoch = 0;
+		return cached;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof JSONArray))
+			return false;
+		return JSONHashing.equal(this, (JSONArray<?>) obj);
 	}
 		
 }
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import java.math.BigDecimal;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Reads {@link JSON} trees out of their binary form, as written by
+ * {@link JSONBinaryWriter}.
+ * 
+ * The reader works on a {@link ByteBuffer}, whose position is left untouched.
+ * Heap buffers are decoded in place, without copying their content, whereas
+ * the strings of direct buffers go through a small scratch array. Several
+ * documents can be written one after the other in the same buffer, and they
+ * are returned by successive calls to {@link #read()}.
+ * 
+ * Readers are not thread-safe.
+ */
+public class JSONBinaryReader {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final ByteBuffer in;
+	private final int start;
+	private final ArrayList<String> keys = new ArrayList<String>();
+	private byte[] scratch;
+
+	/**
+	 * Creates a reader of the remaining bytes of a buffer.
+	 */
+	public JSONBinaryReader(ByteBuffer input) {
+		if (input == null)
+			throw new IllegalArgumentException("input cannot be null");
+		this.in = input.duplicate();
+		this.start = in.position();
+	}
+
+	/**
+	 * Reads the single document held by an array.
+	 * 
+	 * @throws JSONParseException
+	 *             if the array does not hold exactly one valid document
+	 */
+	public static JSON parse(byte[] input) throws JSONParseException {
+		JSONBinaryReader reader = new JSONBinaryReader(ByteBuffer.wrap(input));
+		JSON value = reader.read();
+		if (value == null)
+			throw reader.error("no document");
+		if (reader.in.hasRemaining())
+			throw reader.error("unexpected data after the document");
+		return value;
+	}
+
+	/**
+	 * Reads the next document.
+	 * 
+	 * @return the document, or {@code null} at the end of the buffer
+	 * @throws JSONParseException
+	 *             if the input is not a valid document
+	 */
+	public JSON read() throws JSONParseException {
+		if (!in.hasRemaining())
+			return null;
+		keys.clear();
+		try {
+			return readValue();
+		} catch (BufferUnderflowException e) {
+			throw error("unexpected end of input");
+		}
+	}
+
+	/**
+	 * Reads a value iteratively, so that deep documents do not exhaust the
+	 * stack.
+	 */
+	@SuppressWarnings("unchecked")
+	private JSON readValue() throws JSONParseException {
+		JSON[] containers = new JSON[16];
+		String[] names = new String[16];
+		int[] remaining = new int[16];
+		int top = -1;
+		for (;;) {
+			String name = null;
+			if (top >= 0 && containers[top] instanceof JSONObject)
+				name = readKey();
+			JSON value;
+			int tag = in.get() & 0xFF;
+			switch (tag) {
+			case JSONBinaryWriter.NULL:
+				value = new JSONNull();
+				break;
+			case JSONBinaryWriter.FALSE:
+				value = new JSONBoolean(false);
+				break;
+			case JSONBinaryWriter.TRUE:
+				value = new JSONBoolean(true);
+				break;
+			case JSONBinaryWriter.INT:
+				long n = readZigzag();
+				if (n != (int) n)
+					throw error("integer out of range");
+				value = new JSONInteger((int) n);
+				break;
+			case JSONBinaryWriter.LONG:
+				value = new JSONLong(readZigzag());
+				break;
+			case JSONBinaryWriter.DOUBLE:
+				double d = Double.longBitsToDouble(in.getLong());
+				if (Double.isNaN(d) || Double.isInfinite(d))
+					throw error("invalid number");
+				value = new JSONDouble(d);
+				break;
+			case JSONBinaryWriter.DECIMAL:
+				try {
+					value = new JSONDecimal(new BigDecimal(readString(readLength(1))));
+				} catch (NumberFormatException e) {
+					throw error("invalid number");
+				}
+				break;
+			case JSONBinaryWriter.STRING:
+				value = new JSONString(readString(readLength(1)));
+				break;
+			case JSONBinaryWriter.ARRAY:
+			case JSONBinaryWriter.OBJECT:
+				boolean object = tag == JSONBinaryWriter.OBJECT;
+				int size = readLength(object ? 2 : 1);
+				JSON container = object ? new JSONObject() : new JSONArray<JSON>();
+				if (size > 0) {
+					if (++top == containers.length) {
+						containers = grow(containers);
+						names = grow(names);
+						int[] larger = new int[top * 2];
+						System.arraycopy(remaining, 0, larger, 0, top);
+						remaining = larger;
+					}
+					containers[top] = container;
+					names[top] = name;
+					remaining[top] = size;
+					continue;
+				}
+				value = container;
+				break;
+			default:
+				throw error("unknown tag " + tag);
+			}
+			// Add the value to its container, closing the complete ones
+			for (;;) {
+				if (top < 0)
+					return value;
+				JSON container = containers[top];
+				if (container instanceof JSONObject) {
+					((JSONObject) container).setProperty(name, value);
+				} else {
+					((JSONArray<JSON>) container).addValue(value);
+				}
+				if (--remaining[top] > 0)
+					break;
+				value = container;
+				name = names[top];
+				containers[top] = null;
+				names[top--] = null;
+			}
+		}
+	}
+
+	private String readKey() throws JSONParseException {
+		int key = readVarint();
+		if ((key & 1) != 0) {
+			int id = key >>> 1;
+			if (id >= keys.size())
+				throw error("unknown key reference " + id);
+			return keys.get(id);
+		}
+		int length = key >>> 1;
+		if (length > in.remaining())
+			throw error("invalid key length");
+		String name = readString(length);
+		if (keys.size() < JSONBinaryWriter.MAX_KEYS)
+			keys.add(name);
+		return name;
+	}
+
+	private String readString(int length) {
+		int position = in.position();
+		if (in.hasArray()) {
+			in.position(position + length);
+			return new String(in.array(), in.arrayOffset() + position, length,
+					UTF8);
+		}
+		if (scratch == null || scratch.length < length)
+			scratch = new byte[Math.max(length, 64)];
+		in.get(scratch, 0, length);
+		return new String(scratch, 0, length, UTF8);
+	}
+
+	/**
+	 * Reads a length, checking that it is consistent with the remaining
+	 * bytes, given the minimum size of each unit it counts.
+	 */
+	private int readLength(int unit) throws JSONParseException {
+		int length = readVarint();
+		if (length < 0 || length > in.remaining() / unit)
+			throw error("invalid length " + length);
+		return length;
+	}
+
+	private int readVarint() throws JSONParseException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0)
+				return value;
+		}
+		throw error("malformed varint");
+	}
+
+	private long readZigzag() throws JSONParseException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			long b = in.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0)
+				return (value >>> 1) ^ -(value & 1);
+		}
+		throw error("malformed varint");
+	}
+
+	private static <T> T[] grow(T[] array) {
+		return Arrays.copyOf(array, array.length * 2);
+	}
+
+	private JSONParseException error(String message) {
+		return new JSONParseException(message, in.position() - start);
+	}
+
+}
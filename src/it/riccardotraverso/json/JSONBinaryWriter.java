@@ -0,0 +1,413 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+
+/**
+ * Serializes {@link JSON} trees in a compact binary form, which is faster to
+ * write and to read than text. The encoding is read back by
+ * {@link JSONBinaryReader}.
+ * 
+ * Every value starts with a tag byte:
+ * <ul>
+ * <li>{@code null}, {@code false} and {@code true} are the tag alone;</li>
+ * <li>{@link JSONInteger} and {@link JSONLong} are followed by their value as
+ * a zigzag encoded varint, so small magnitudes take few bytes;</li>
+ * <li>{@link JSONDouble} is followed by the 8 bytes of its IEEE 754 value;</li>
+ * <li>{@link JSONDecimal} is followed by its text, with the same layout as a
+ * string, and so are the parsed doubles out of the range of a double;</li>
+ * <li>{@link JSONString} is followed by the length in bytes of its UTF-8 form
+ * as a varint, and by those bytes;</li>
+ * <li>{@link JSONArray} is followed by its element count as a varint, and by
+ * its elements;</li>
+ * <li>{@link JSONObject} is followed by its property count as a varint, and by
+ * its properties, each one being a key and a value.</li>
+ * </ul>
+ * A key is a varint {@code k}: when its lowest bit is clear, the UTF-8 bytes
+ * of the name follow, {@code k >>> 1} of them, and the name gets the next
+ * number of the document; when it is set, the key refers to the name with
+ * number {@code k >>> 1}. Back-references are enabled by default, and they
+ * turn every repetition of a name within a document into one or two bytes.
+ * 
+ * Writers are not thread-safe.
+ */
+public class JSONBinaryWriter implements Closeable, Flushable {
+
+	// Tags of values
+	static final int NULL = 0;
+	static final int FALSE = 1;
+	static final int TRUE = 2;
+	static final int INT = 3;
+	static final int LONG = 4;
+	static final int DOUBLE = 5;
+	static final int DECIMAL = 6;
+	static final int STRING = 7;
+	static final int ARRAY = 8;
+	static final int OBJECT = 9;
+
+	/** Number of names of a document that can be referred to */
+	static final int MAX_KEYS = 1 << 16;
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final OutputStream out;
+	private final byte[] buf = new byte[BUFFER_SIZE];
+	private int count;
+
+	private boolean keyReferences = true;
+	private final HashMap<String, Integer> keys = new HashMap<String, Integer>();
+
+	private TreeVisitor visitor;
+
+	/**
+	 * Creates a new writer serializing to a stream.
+	 */
+	public JSONBinaryWriter(OutputStream out) {
+		if (out == null)
+			throw new IllegalArgumentException("out cannot be null");
+		this.out = out;
+	}
+
+	/**
+	 * Returns the binary form of a tree.
+	 */
+	public static byte[] toByteArray(JSON value) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		JSONBinaryWriter writer = new JSONBinaryWriter(bytes);
+		try {
+			writer.write(value);
+			writer.flush();
+		} catch (IOException e) {
+			// Not thrown by ByteArrayOutputStream
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Chooses whether repeated property names are written as references to
+	 * their first occurrence in the document (the default), or in full every
+	 * time.
+	 * 
+	 * @return a pointer to this, to chain more calls
+	 */
+	public JSONBinaryWriter setKeyReferences(boolean enabled) {
+		this.keyReferences = enabled;
+		return this;
+	}
+
+	/**
+	 * Writes a whole tree, or a {@code null} value when {@code value} is
+	 * null. Each call writes a separate document, whose names do not refer to
+	 * the ones of the previous documents.
+	 * 
+	 * @return a pointer to this, to chain more calls
+	 */
+	public JSONBinaryWriter write(JSON value) throws IOException {
+		keys.clear();
+		if (value == null) {
+			ensure(1);
+			buf[count++] = NULL;
+			return this;
+		}
+		if (visitor == null)
+			visitor = new TreeVisitor();
+		try {
+			JSONWalker.EXPAND_TAPES.walk(value, visitor);
+		} catch (WrappedIOException e) {
+			throw e.getCause();
+		}
+		return this;
+	}
+
+	//
+	// Output
+	//
+
+	/**
+	 * Writes out the buffered output and flushes the underlying stream.
+	 */
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	/**
+	 * Writes out the buffered output and closes the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flushBuffer();
+		} finally {
+			out.close();
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		if (count > 0) {
+			out.write(buf, 0, count);
+			count = 0;
+		}
+	}
+
+	/**
+	 * Makes room for {@code n} more bytes in the buffer, tunneling the
+	 * exceptions of the output through the visitor.
+	 */
+	private void ensure(int n) {
+		if (count + n > buf.length) {
+			try {
+				flushBuffer();
+			} catch (IOException e) {
+				throw new WrappedIOException(e);
+			}
+		}
+	}
+
+	private void tag(int tag) {
+		ensure(1);
+		buf[count++] = (byte) tag;
+	}
+
+	private void varint(int value) {
+		ensure(5);
+		while ((value & ~0x7F) != 0) {
+			buf[count++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buf[count++] = (byte) value;
+	}
+
+	private void zigzag(long value) {
+		ensure(10);
+		value = (value << 1) ^ (value >> 63);
+		while ((value & ~0x7FL) != 0) {
+			buf[count++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buf[count++] = (byte) value;
+	}
+
+	/**
+	 * Writes the length of the UTF-8 form of a string, and the string.
+	 */
+	private void string(String s) {
+		int length = s.length();
+		varint(utf8Length(s, length));
+		utf8(s, length);
+	}
+
+	/**
+	 * Writes the length and the bytes of a string read in raw mode without
+	 * escapes, whose bytes are its UTF-8 form already.
+	 */
+	private void rawString(byte[] bytes, int offset, int length) {
+		varint(length);
+		while (length > 0) {
+			ensure(1);
+			int n = Math.min(length, buf.length - count);
+			System.arraycopy(bytes, offset, buf, count, n);
+			count += n;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	/**
+	 * Writes the UTF-8 form of a string, where unpaired surrogates are
+	 * replaced with '?'.
+	 */
+	private void utf8(String s, int length) {
+		int i = 0;
+		while (i < length) {
+			ensure(4);
+			// Room for 3 bytes per char, plus one for a final surrogate pair
+			int stop = Math.min(length, i + (buf.length - count - 1) / 3);
+			byte[] b = buf;
+			int n = count;
+			for (; i < stop; i++) {
+				char c = s.charAt(i);
+				if (c < 0x80) {
+					b[n++] = (byte) c;
+				} else if (c < 0x800) {
+					b[n++] = (byte) (0xC0 | (c >> 6));
+					b[n++] = (byte) (0x80 | (c & 0x3F));
+				} else if (c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE) {
+					b[n++] = (byte) (0xE0 | (c >> 12));
+					b[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+					b[n++] = (byte) (0x80 | (c & 0x3F));
+				} else if (Character.isHighSurrogate(c) && i + 1 < length
+						&& Character.isLowSurrogate(s.charAt(i + 1))) {
+					int cp = Character.toCodePoint(c, s.charAt(++i));
+					b[n++] = (byte) (0xF0 | (cp >> 18));
+					b[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+					b[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+					b[n++] = (byte) (0x80 | (cp & 0x3F));
+				} else {
+					b[n++] = '?';
+				}
+			}
+			count = n;
+		}
+	}
+
+	private static int utf8Length(String s, int length) {
+		int bytes = length;
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80)
+				continue;
+			if (c < 0x800) {
+				bytes++;
+			} else if (c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE) {
+				bytes += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < length
+					&& Character.isLowSurrogate(s.charAt(i + 1))) {
+				bytes += 2;
+				i++;
+			}
+		}
+		return bytes;
+	}
+
+	private void key(String name) {
+		if (keyReferences) {
+			Integer id = keys.get(name);
+			if (id != null) {
+				varint((id << 1) | 1);
+				return;
+			}
+			if (keys.size() < MAX_KEYS)
+				keys.put(name, keys.size());
+		}
+		int length = name.length();
+		varint(utf8Length(name, length) << 1);
+		utf8(name, length);
+	}
+
+	/**
+	 * Translates visitor callbacks into binary output.
+	 */
+	private class TreeVisitor implements JSONVisitor {
+
+		@Override
+		public void enterJSONArray(JSONArray<? extends JSON> arr) {
+			tag(ARRAY);
+			varint(arr.size());
+		}
+
+		@Override
+		public void exitJSONArray(JSONArray<? extends JSON> arr) {
+		}
+
+		@Override
+		public void enterJSONObject(JSONObject obj) {
+			tag(OBJECT);
+			varint(obj.size());
+		}
+
+		@Override
+		public void exitJSONObject(JSONObject obj) {
+		}
+
+		@Override
+		public void visitJSONString(JSONString el) {
+			if (el instanceof JSONRawString) {
+				JSONRawString raw = (JSONRawString) el;
+				byte[] bytes = raw.rawBytes();
+				if (bytes != null && !raw.isRawEscaped()) {
+					tag(STRING);
+					rawString(bytes, raw.rawOffset(), raw.rawLength());
+					return;
+				}
+			}
+			String text = el.getText();
+			if (text == null) {
+				tag(NULL);
+			} else {
+				tag(STRING);
+				string(text);
+			}
+		}
+
+		@Override
+		public void visitJSONInteger(JSONInteger el) {
+			tag(INT);
+			zigzag(el.getValue());
+		}
+
+		@Override
+		public void visitJSONLong(JSONLong el) {
+			tag(LONG);
+			zigzag(el.getValue());
+		}
+
+		@Override
+		public void visitJSONDouble(JSONDouble el) {
+			double value = el.getValue();
+			if (Double.isNaN(value) || Double.isInfinite(value)) {
+				// Parsed digits out of the range of a double, such as 1e400
+				tag(DECIMAL);
+				string(el.getNumberText());
+				return;
+			}
+			ensure(9);
+			buf[count++] = DOUBLE;
+			long bits = Double.doubleToLongBits(value);
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				buf[count++] = (byte) (bits >>> shift);
+			}
+		}
+
+		@Override
+		public void visitJSONDecimal(JSONDecimal el) {
+			tag(DECIMAL);
+			string(el.getNumberText());
+		}
+
+		@Override
+		public void visitJSONBoolean(JSONBoolean el) {
+			tag(el.getValue() ? TRUE : FALSE);
+		}
+
+		@Override
+		public void visitJSONNull(JSONNull el) {
+			tag(NULL);
+		}
+
+		@Override
+		public void visitJSONProperty(JSONObject.Property prop) {
+			key(prop.getName());
+		}
+
+	}
+
+}
@@ -0,0 +1,484 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.riccardotraverso.json;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates the codecs of the classes annotated with {@link JSONBindable}.
+ * 
+ * The processor is registered as a service, so that javac runs it whenever
+ * this library is on the processor path. For a class <code>p.A.B</code> it
+ * generates <code>p.A_B_JSONCodec</code>, a {@link JSONGeneratedCodec}
+ * reading and writing the fields directly, or through their getters and
+ * setters when the fields are not visible from the package of the class.
+ * Names are matched with a table built once and a switch, and fields of type
+ * int, long, double and boolean are converted without boxing.
+ */
+@SupportedAnnotationTypes("it.riccardotraverso.json.JSONBindable")
+public final class JSONBindableProcessor extends AbstractProcessor {
+
+	private static final String PACKAGE = "it.riccardotraverso.json.";
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations,
+			RoundEnvironment round) {
+		for (Element element : round
+				.getElementsAnnotatedWith(JSONBindable.class)) {
+			try {
+				if (element.getKind() != ElementKind.CLASS)
+					throw new BindingException(
+							"only classes can be bound", element);
+				generate((TypeElement) element);
+			} catch (BindingException e) {
+				processingEnv.getMessager().printMessage(
+						Diagnostic.Kind.ERROR, e.getMessage(), e.element);
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(
+						Diagnostic.Kind.ERROR,
+						"cannot write the codec: " + e.getMessage(), element);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * A property of a bean, which is read and written either directly or
+	 * through accessors.
+	 */
+	private static final class Property {
+
+		final String name;
+		final TypeMirror type;
+		final String getter;
+		final String setter;
+
+		Property(String name, TypeMirror type, String getter, String setter) {
+			this.name = name;
+			this.type = type;
+			this.getter = getter;
+			this.setter = setter;
+		}
+
+		String get(String bean) {
+			return bean + "." + (getter != null ? getter + "()" : name);
+		}
+
+		String set(String bean, String value) {
+			return bean + "." + (setter != null ? setter + "(" + value + ")" : name
+					+ " = " + value) + ";";
+		}
+
+	}
+
+	private static final class BindingException extends Exception {
+
+		private static final long serialVersionUID = 1L;
+
+		final Element element;
+
+		BindingException(String message, Element element) {
+			super(message);
+			this.element = element;
+		}
+
+	}
+
+	//
+	// Analysis
+	//
+
+	private void generate(TypeElement type) throws BindingException,
+			IOException {
+		if (type.getModifiers().contains(Modifier.ABSTRACT))
+			throw new BindingException("abstract classes cannot be bound", type);
+		StringBuilder simpleName = new StringBuilder();
+		for (Element e = type; e instanceof TypeElement; e = e
+				.getEnclosingElement()) {
+			TypeElement t = (TypeElement) e;
+			if (t.getModifiers().contains(Modifier.PRIVATE))
+				throw new BindingException("private classes cannot be bound", t);
+			if (t.getNestingKind() == NestingKind.MEMBER
+					&& !t.getModifiers().contains(Modifier.STATIC))
+				throw new BindingException(
+						"inner classes cannot be bound, make them static", t);
+			if (t.getNestingKind() == NestingKind.LOCAL
+					|| t.getNestingKind() == NestingKind.ANONYMOUS)
+				throw new BindingException("local classes cannot be bound", t);
+			simpleName.insert(0, (e == type ? "" : "_")).insert(0,
+					t.getSimpleName());
+		}
+		String packageName = processingEnv.getElementUtils().getPackageOf(type)
+				.getQualifiedName().toString();
+		String codecName = simpleName + "_JSONCodec";
+		List<Property> properties = properties(type, packageName);
+		Writer out = processingEnv.getFiler().createSourceFile(
+				packageName.length() == 0 ? codecName : packageName + "."
+						+ codecName, type).openWriter();
+		try {
+			out.write(source(type, packageName, codecName, properties,
+					hasConstructor(type)));
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Returns the fields that are neither static nor transient, including the
+	 * inherited ones, with the fields hiding others in the place of the
+	 * hidden ones.
+	 */
+	private List<Property> properties(TypeElement type, String packageName)
+			throws BindingException {
+		List<TypeElement> hierarchy = new ArrayList<TypeElement>();
+		for (TypeElement t = type; t != null; t = superclass(t)) {
+			hierarchy.add(0, t);
+		}
+		DeclaredType owner = (DeclaredType) type.asType();
+		LinkedHashMap<String, Property> properties = new LinkedHashMap<String, Property>();
+		for (TypeElement t : hierarchy) {
+			for (VariableElement field : ElementFilter.fieldsIn(t
+					.getEnclosedElements())) {
+				Set<Modifier> modifiers = field.getModifiers();
+				if (modifiers.contains(Modifier.STATIC)
+						|| modifiers.contains(Modifier.TRANSIENT))
+					continue;
+				String name = field.getSimpleName().toString();
+				TypeMirror fieldType = processingEnv.getTypeUtils()
+						.asMemberOf(owner, field);
+				String getter = null;
+				String setter = null;
+				if (!visible(field, packageName)) {
+					getter = accessor(type, packageName, name, fieldType, false);
+					setter = accessor(type, packageName, name, fieldType, true);
+					if (getter == null || setter == null)
+						throw new BindingException("field " + name
+								+ " is not visible from " + type.getQualifiedName()
+								+ " and has no visible getter and setter", field);
+				} else if (modifiers.contains(Modifier.FINAL)) {
+					setter = accessor(type, packageName, name, fieldType, true);
+					if (setter == null)
+						throw new BindingException("final field " + name
+								+ " has no visible setter", field);
+				}
+				properties.remove(name);
+				properties.put(name, new Property(name, fieldType, getter,
+						setter));
+			}
+		}
+		return new ArrayList<Property>(properties.values());
+	}
+
+	private TypeElement superclass(TypeElement type) {
+		TypeMirror superclass = type.getSuperclass();
+		if (superclass.getKind() != TypeKind.DECLARED)
+			return null;
+		TypeElement element = (TypeElement) ((DeclaredType) superclass)
+				.asElement();
+		return element.getQualifiedName().contentEquals("java.lang.Object") ? null
+				: element;
+	}
+
+	/**
+	 * Returns whether a member can be used by a class generated in a package.
+	 */
+	private boolean visible(Element member, String packageName) {
+		Set<Modifier> modifiers = member.getModifiers();
+		if (modifiers.contains(Modifier.PUBLIC))
+			return true;
+		return !modifiers.contains(Modifier.PRIVATE)
+				&& processingEnv.getElementUtils().getPackageOf(member)
+						.getQualifiedName().contentEquals(packageName);
+	}
+
+	/**
+	 * Returns the name of the visible getter or setter of a field, or null.
+	 */
+	private String accessor(TypeElement type, String packageName,
+			String name, TypeMirror fieldType, boolean setter) {
+		String capitalized = Character.toUpperCase(name.charAt(0))
+				+ name.substring(1);
+		DeclaredType owner = (DeclaredType) type.asType();
+		for (ExecutableElement method : ElementFilter.methodsIn(processingEnv
+				.getElementUtils().getAllMembers(type))) {
+			if (method.getModifiers().contains(Modifier.STATIC)
+					|| !visible(method, packageName))
+				continue;
+			String methodName = method.getSimpleName().toString();
+			ExecutableType signature = (ExecutableType) processingEnv
+					.getTypeUtils().asMemberOf(owner, method);
+			List<? extends TypeMirror> parameters = signature
+					.getParameterTypes();
+			if (setter) {
+				if (methodName.equals("set" + capitalized)
+						&& parameters.size() == 1
+						&& processingEnv.getTypeUtils().isSameType(
+								parameters.get(0), fieldType))
+					return methodName;
+			} else if (parameters.isEmpty()
+					&& (methodName.equals("get" + capitalized) || (methodName
+							.equals("is" + capitalized) && fieldType.getKind() == TypeKind.BOOLEAN))
+					&& processingEnv.getTypeUtils().isSameType(
+							signature.getReturnType(), fieldType)) {
+				return methodName;
+			}
+		}
+		return null;
+	}
+
+	private boolean hasConstructor(TypeElement type) {
+		for (ExecutableElement constructor : ElementFilter
+				.constructorsIn(type.getEnclosedElements())) {
+			if (constructor.getParameters().isEmpty()
+					&& !constructor.getModifiers().contains(Modifier.PRIVATE))
+				return true;
+		}
+		return false;
+	}
+
+	//
+	// Generation
+	//
+
+	private String source(TypeElement type, String packageName,
+			String codecName, List<Property> properties, boolean constructor) {
+		String bean = erasure(type.asType());
+		StringBuilder s = new StringBuilder();
+		s.append("// Generated by JSONBindableProcessor from ").append(
+				type.getQualifiedName()).append(", do not edit.\n\n");
+		if (packageName.length() != 0)
+			s.append("package ").append(packageName).append(";\n\n");
+		s.append("@SuppressWarnings({ \"unchecked\", \"rawtypes\" })\n");
+		s.append("public final class ").append(codecName).append(
+				" extends " + PACKAGE + "JSONGeneratedCodec<").append(bean)
+				.append("> {\n\n");
+
+		s.append("\tprivate static final java.util.HashMap<java.lang.String, java.lang.Integer> NAMES = new java.util.HashMap<java.lang.String, java.lang.Integer>();\n\n");
+		s.append("\tstatic {\n");
+		for (int i = 0; i < properties.size(); i++) {
+			s.append("\t\tNAMES.put(").append(literal(properties.get(i).name))
+					.append(", ").append(i).append(");\n");
+		}
+		s.append("\t}\n\n");
+		for (int i = 0; i < properties.size(); i++) {
+			if (!fast(properties.get(i).type))
+				s.append("\tprivate " + PACKAGE + "JSONCodec<java.lang.Object> codec")
+						.append(i).append(";\n");
+		}
+		s.append("\n\t@Override\n\tprotected void resolve(" + PACKAGE
+				+ "JSONBinder binder) {\n");
+		for (int i = 0; i < properties.size(); i++) {
+			TypeMirror t = properties.get(i).type;
+			if (!fast(t))
+				s.append("\t\tcodec").append(i).append(
+						" = codecOf(binder, ").append(typeOf(t)).append(
+						");\n");
+		}
+		s.append("\t}\n\n");
+
+		s.append("\tpublic " + PACKAGE + "JSON toJSON(").append(bean).append(
+				" value) {\n");
+		s.append("\t\t" + PACKAGE + "JSONObject object = new " + PACKAGE
+				+ "JSONObject();\n");
+		for (int i = 0; i < properties.size(); i++) {
+			Property p = properties.get(i);
+			s.append("\t\taddProperty(object, ").append(literal(p.name)).append(
+					", ").append(encode(p, i)).append(");\n");
+		}
+		s.append("\t\treturn object;\n\t}\n\n");
+
+		s.append("\tpublic ").append(bean).append(" fromJSON(" + PACKAGE
+				+ "JSON json) {\n");
+		if (!constructor) {
+			s.append("\t\tthrow noConstructor(").append(bean).append(
+					".class);\n");
+		} else {
+			s.append("\t\t" + PACKAGE + "JSONObject object = object(json);\n");
+			s.append("\t\t").append(bean).append(" value = new ").append(bean)
+					.append("();\n");
+			s.append("\t\tfor (" + PACKAGE
+					+ "JSONObject.Property property : object) {\n");
+			s.append("\t\t\tjava.lang.Integer index = NAMES.get(property.getName());\n");
+			s.append("\t\t\tif (index == null)\n\t\t\t\tcontinue;\n");
+			s.append("\t\t\t" + PACKAGE + "JSON item = property.getValue();\n");
+			s.append("\t\t\tswitch (index.intValue()) {\n");
+			for (int i = 0; i < properties.size(); i++) {
+				Property p = properties.get(i);
+				s.append("\t\t\tcase ").append(i).append(":\n\t\t\t\t").append(
+						p.set("value", decode(p, i))).append(
+						"\n\t\t\t\tbreak;\n");
+			}
+			s.append("\t\t\t}\n\t\t}\n\t\treturn value;\n");
+		}
+		s.append("\t}\n\n");
+
+		s.append("\tpublic void write(").append(bean).append(
+				" value, " + PACKAGE + "JSONWriter out)\n\t\t\tthrows java.io.IOException {\n");
+		s.append("\t\tout.beginObject();\n");
+		for (int i = 0; i < properties.size(); i++) {
+			Property p = properties.get(i);
+			s.append("\t\tout.name(").append(literal(p.name)).append(");\n");
+			if (fast(p.type)) {
+				s.append("\t\tout.value(").append(p.get("value")).append(
+						");\n");
+			} else {
+				s.append("\t\twrite(codec").append(i).append(", ").append(
+						p.get("value")).append(", out);\n");
+			}
+		}
+		s.append("\t\tout.endObject();\n\t}\n\n}\n");
+		return s.toString();
+	}
+
+	/**
+	 * Returns whether a type is converted without going through a codec.
+	 */
+	private static boolean fast(TypeMirror type) {
+		switch (type.getKind()) {
+		case INT:
+		case LONG:
+		case DOUBLE:
+		case BOOLEAN:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private String encode(Property p, int index) {
+		switch (p.type.getKind()) {
+		case INT:
+			return "new " + PACKAGE + "JSONInteger(" + p.get("value") + ")";
+		case LONG:
+			return "new " + PACKAGE + "JSONLong(" + p.get("value") + ")";
+		case DOUBLE:
+			return "new " + PACKAGE + "JSONDouble(" + p.get("value") + ")";
+		case BOOLEAN:
+			return "new " + PACKAGE + "JSONBoolean(" + p.get("value") + ")";
+		default:
+			return "encode(codec" + index + ", " + p.get("value") + ")";
+		}
+	}
+
+	private String decode(Property p, int index) {
+		String name = literal(p.name);
+		switch (p.type.getKind()) {
+		case INT:
+			return "intValue(item, " + name + ")";
+		case LONG:
+			return "longValue(item, " + name + ")";
+		case DOUBLE:
+			return "doubleValue(item, " + name + ")";
+		case BOOLEAN:
+			return "booleanValue(item, " + name + ")";
+		default:
+			if (p.type.getKind().isPrimitive())
+				return "("
+						+ processingEnv.getTypeUtils().boxedClass(
+								processingEnv.getTypeUtils().getPrimitiveType(
+										p.type.getKind())).getQualifiedName()
+						+ ") decode(codec" + index + ", item, " + name + ")";
+			String cast = erasure(p.type);
+			return (cast.equals("java.lang.Object") ? "" : "(" + cast + ") ")
+					+ "decode(codec" + index + ", item)";
+		}
+	}
+
+	/**
+	 * Returns an expression evaluating to the reflected declared type, with
+	 * the type arguments the binder needs and type variables and wildcards
+	 * replaced by Object, as the binder treats them alike.
+	 */
+	private String typeOf(TypeMirror type) {
+		switch (type.getKind()) {
+		case DECLARED: {
+			List<? extends TypeMirror> arguments = ((DeclaredType) type)
+					.getTypeArguments();
+			if (arguments.isEmpty())
+				return erasure(type) + ".class";
+			StringBuilder s = new StringBuilder("type(").append(
+					erasure(type)).append(".class");
+			for (TypeMirror argument : arguments) {
+				s.append(", ").append(typeOf(argument));
+			}
+			return s.append(")").toString();
+		}
+		case ARRAY: {
+			TypeMirror component = ((ArrayType) type).getComponentType();
+			String componentType = typeOf(component);
+			if (componentType.endsWith(".class")
+					&& component.getKind() != TypeKind.TYPEVAR)
+				return erasure(type) + ".class";
+			return "arrayOf(" + componentType + ")";
+		}
+		default:
+			if (type.getKind().isPrimitive())
+				return type + ".class";
+			return "java.lang.Object.class";
+		}
+	}
+
+	private String erasure(TypeMirror type) {
+		return processingEnv.getTypeUtils().erasure(type).toString();
+	}
+
+	private static String literal(String name) {
+		StringBuilder s = new StringBuilder("\"");
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c < 0x20 || c > 0x7e || c == '"' || c == '\\')
+				s.append(String.format("\\u%04x", (int) c));
+			else
+				s.append(c);
+		}
+		return s.append('"').toString();
+	}
+
+}
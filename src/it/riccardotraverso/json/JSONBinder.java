@@ -0,0 +1,854 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Converts Java objects to and from JSON trees, or writes them directly with
+ * a {@link JSONWriter}.
+ * 
+ * Objects are bound through their fields: every field that is neither static
+ * nor transient, including the inherited ones, becomes a property with the
+ * same name, and objects are rebuilt with their constructor without
+ * arguments. Their classes must be annotated with {@link JSONBindable} and
+ * compiled with {@link JSONBindableProcessor}, which generates the code
+ * reading and writing the fields, so that no reflection is involved. Fields
+ * may hold scalars (primitives, their wrappers, {@link String},
+ * {@link BigDecimal}, {@link BigInteger}, enums), other objects, arrays,
+ * collections and maps with string keys, whose element types are taken from
+ * the generic type of the field. Trees are bound as they are. Object graphs
+ * must be trees: cycles are not detected. Numbers are converted only when
+ * nothing is lost: integral types reject fractions and values out of their
+ * range, and floating point types reject values out of their range, with an
+ * {@link IllegalArgumentException}.
+ * 
+ * The codec of a class is created once, the first time the class is met, and
+ * it is cached by the binder for all the following conversions. Binders are thread-safe
+ * and meant to be long-lived, so that their cache is shared. Types needing a
+ * different representation can be given their own codec with
+ * {@link #register(Class, JSONCodec)}.
+ */
+public final class JSONBinder {
+
+	/** The codecs of all the types met so far */
+	private final ConcurrentHashMap<Class<?>, JSONCodec<?>> codecs = new ConcurrentHashMap<Class<?>, JSONCodec<?>>();
+
+	/**
+	 * The codecs being created, which may refer to each other, published
+	 * together once complete. Guarded by this.
+	 */
+	private final HashMap<Class<?>, JSONCodec<?>> pending = new HashMap<Class<?>, JSONCodec<?>>();
+
+	/** The types whose codec was registered by hand */
+	private final Set<Class<?>> registered = Collections
+			.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+
+	/** Binds any value according to its runtime class */
+	private final JSONCodec<Object> dynamic = new DynamicCodec();
+
+	/**
+	 * Creates a binder knowing the codecs of the scalar types.
+	 */
+	public JSONBinder() {
+		scalar(STRING, String.class);
+		scalar(BOOLEAN, Boolean.class, boolean.class);
+		scalar(INTEGER, Integer.class, int.class);
+		scalar(LONG, Long.class, long.class);
+		scalar(DOUBLE, Double.class, double.class);
+		scalar(FLOAT, Float.class, float.class);
+		scalar(SHORT, Short.class, short.class);
+		scalar(BYTE, Byte.class, byte.class);
+		scalar(CHARACTER, Character.class, char.class);
+		scalar(DECIMAL, BigDecimal.class);
+		scalar(BIG_INTEGER, BigInteger.class);
+		codecs.put(Object.class, dynamic);
+	}
+
+	private void scalar(JSONCodec<?> codec, Class<?>... types) {
+		for (Class<?> type : types) {
+			codecs.put(type, codec);
+		}
+	}
+
+	/**
+	 * Sets the codec of a type, replacing the one the binder would use.
+	 * Codecs already created for other types keep the codec they were
+	 * created with, so codecs should be registered before use.
+	 * 
+	 * @return a pointer to this, to chain more quickly multiple calls to
+	 *         register()
+	 */
+	public <T> JSONBinder register(Class<T> type, JSONCodec<T> codec) {
+		if (type == null || codec == null)
+			throw new IllegalArgumentException("type and codec cannot be null");
+		codecs.put(type, codec);
+		registered.add(type);
+		return this;
+	}
+
+	/**
+	 * Returns the codec of a type, creating it the first time.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the type cannot be bound
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> JSONCodec<T> codecOf(Class<T> type) {
+		JSONCodec<?> codec = codecs.get(type);
+		if (codec == null)
+			codec = create(type);
+		return (JSONCodec<T>) codec;
+	}
+
+	/**
+	 * Converts a value into a tree, according to its runtime class.
+	 * 
+	 * @return the tree, which is a {@link JSONNull} for null values
+	 */
+	public JSON toJSON(Object value) {
+		return encode(dynamic, value);
+	}
+
+	/**
+	 * Converts a tree into a value of a given type.
+	 * 
+	 * @return the value, which is null for {@link JSONNull} trees
+	 * @throws IllegalArgumentException
+	 *             if the tree does not represent a value of the type
+	 */
+	public <T> T fromJSON(JSON json, Class<T> type) {
+		if (json instanceof JSONTapeValue)
+			json = ((JSONTapeValue) json).toJSON();
+		return type.cast(decode(raw(codecOf(type)), json));
+	}
+
+	/**
+	 * Writes a value according to its runtime class, without building its
+	 * tree.
+	 */
+	public void write(Object value, JSONWriter out) throws IOException {
+		write(dynamic, value, out);
+	}
+
+	//
+	// Creation of codecs
+	//
+
+	private synchronized JSONCodec<?> create(Class<?> type) {
+		JSONCodec<?> codec = codecs.get(type);
+		if (codec == null)
+			codec = pending.get(type);
+		if (codec != null)
+			return codec;
+		boolean outermost = pending.isEmpty();
+		try {
+			if (JSON.class.isAssignableFrom(type)) {
+				codec = new TreeCodec(type);
+			} else if (type.isEnum()
+					|| (type.getSuperclass() != null && type.getSuperclass()
+							.isEnum())) {
+				codec = new EnumCodec(type.isEnum() ? type : type
+						.getSuperclass());
+			} else if (type.isArray()) {
+				codec = new ArrayCodec(type.getComponentType(), raw(codecOf(type
+						.getComponentType())));
+			} else if (Collection.class.isAssignableFrom(type)) {
+				codec = new CollectionCodec(type, dynamic);
+			} else if (Map.class.isAssignableFrom(type)) {
+				codec = new MapCodec(type, dynamic);
+			} else if (type.isInterface()
+					|| Modifier.isAbstract(type.getModifiers())) {
+				codec = dynamic;
+			} else if (type.isPrimitive()) {
+				throw new IllegalArgumentException("cannot bind " + type);
+			} else {
+				JSONGeneratedCodec<?> generated = generated(type);
+				pending.put(type, generated);
+				generated.resolve(this);
+				codec = generated;
+			}
+			pending.put(type, codec);
+			if (outermost)
+				codecs.putAll(pending);
+			return codec;
+		} finally {
+			if (outermost)
+				pending.clear();
+		}
+	}
+
+	/**
+	 * Instantiates the codec generated for a class by
+	 * {@link JSONBindableProcessor}.
+	 */
+	private static JSONGeneratedCodec<?> generated(Class<?> type) {
+		String name = type.getName();
+		int dot = name.lastIndexOf('.');
+		name = name.substring(0, dot + 1)
+				+ name.substring(dot + 1).replace('$', '_') + "_JSONCodec";
+		Class<?> codec;
+		try {
+			codec = Class.forName(name, true, type.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			if (type.isAnnotationPresent(JSONBindable.class))
+				throw new IllegalArgumentException(type.getName()
+						+ " was not compiled with JSONBindableProcessor");
+			throw new IllegalArgumentException("cannot bind " + type.getName()
+					+ ": it must be annotated with @JSONBindable");
+		}
+		return (JSONGeneratedCodec<?>) newInstance(constructor(codec), codec);
+	}
+
+	/**
+	 * Returns the codec of a declared type, taking the types of the elements
+	 * of collections and maps from its type arguments.
+	 */
+	JSONCodec<Object> codecOf(Type type) {
+		if (type instanceof Class)
+			return raw(codecOf((Class<?>) type));
+		if (type instanceof ParameterizedType) {
+			ParameterizedType parameterized = (ParameterizedType) type;
+			Class<?> rawType = (Class<?>) parameterized.getRawType();
+			Type[] arguments = parameterized.getActualTypeArguments();
+			if (!registered.contains(rawType)) {
+				if (Collection.class.isAssignableFrom(rawType))
+					return new CollectionCodec(rawType, codecOf(arguments[0]));
+				if (Map.class.isAssignableFrom(rawType)) {
+					if (arguments[0] != String.class)
+						throw new IllegalArgumentException(
+								"map keys must be strings: " + type);
+					return new MapCodec(rawType, codecOf(arguments[1]));
+				}
+			}
+			return raw(codecOf(rawType));
+		}
+		if (type instanceof GenericArrayType) {
+			Type component = ((GenericArrayType) type).getGenericComponentType();
+			Class<?> rawType = component instanceof ParameterizedType ? (Class<?>) ((ParameterizedType) component)
+					.getRawType() : Object.class;
+			return new ArrayCodec(rawType, codecOf(component));
+		}
+		return dynamic;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static JSONCodec<Object> raw(JSONCodec<?> codec) {
+		return (JSONCodec<Object>) codec;
+	}
+
+	private static <T> Constructor<T> constructor(Class<T> type) {
+		try {
+			Constructor<T> constructor = type.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			return constructor;
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private static Object newInstance(Constructor<?> constructor, Class<?> type) {
+		if (constructor == null)
+			throw new IllegalArgumentException(type.getName()
+					+ " has no constructor without arguments");
+		try {
+			return constructor.newInstance();
+		} catch (InstantiationException e) {
+			throw new IllegalArgumentException("cannot instantiate "
+					+ type.getName(), e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		} catch (InvocationTargetException e) {
+			throw new IllegalArgumentException("cannot instantiate "
+					+ type.getName(), e.getCause());
+		}
+	}
+
+	//
+	// Helpers handling nulls
+	//
+
+	static JSON encode(JSONCodec<Object> codec, Object value) {
+		return value == null ? new JSONNull() : codec.toJSON(value);
+	}
+
+	static Object decode(JSONCodec<Object> codec, JSON json) {
+		return json == null || json instanceof JSONNull ? null : codec
+				.fromJSON(json);
+	}
+
+	static void write(JSONCodec<Object> codec, Object value,
+			JSONWriter out) throws IOException {
+		if (value == null) {
+			out.nullValue();
+		} else {
+			codec.write(value, out);
+		}
+	}
+
+	static IllegalArgumentException mismatch(String expected,
+			JSON json) {
+		return new IllegalArgumentException("expected " + expected
+				+ ", found " + json.getClass().getSimpleName());
+	}
+
+	private static JSONNumber number(JSON json) {
+		if (!(json instanceof JSONNumber))
+			throw mismatch("a number", json);
+		return (JSONNumber) json;
+	}
+
+	/**
+	 * Returns the value of a number, which must be a whole number in the
+	 * range of the given type, so that conversions never lose anything.
+	 */
+	private static long integral(JSONNumber number, long min, long max,
+			String type) {
+		long value;
+		if (number instanceof JSONInteger) {
+			value = ((JSONInteger) number).getValue();
+		} else if (number instanceof JSONLong) {
+			value = ((JSONLong) number).getValue();
+		} else {
+			try {
+				value = number.decimalValue().longValueExact();
+			} catch (ArithmeticException e) {
+				if (number.decimalValue().stripTrailingZeros().scale() > 0)
+					throw new IllegalArgumentException("not an integer: "
+							+ number.getNumberText());
+				throw new IllegalArgumentException("out of " + type
+						+ " range: " + number.getNumberText());
+			}
+		}
+		if (value < min || value > max)
+			throw new IllegalArgumentException("out of " + type + " range: "
+					+ number.getNumberText());
+		return value;
+	}
+
+	static int intValue(JSONNumber number) {
+		return (int) integral(number, Integer.MIN_VALUE, Integer.MAX_VALUE,
+				"int");
+	}
+
+	static long longValue(JSONNumber number) {
+		return integral(number, Long.MIN_VALUE, Long.MAX_VALUE, "long");
+	}
+
+	/**
+	 * Returns the value of a number, which must be in the range of a double.
+	 */
+	static double doubleValue(JSONNumber number) {
+		double value = number.doubleValue();
+		if (Double.isInfinite(value))
+			throw new IllegalArgumentException("out of double range: "
+					+ number.getNumberText());
+		return value;
+	}
+
+	private static String text(JSON json) {
+		if (!(json instanceof JSONString))
+			throw mismatch("a string", json);
+		return ((JSONString) json).getText();
+	}
+
+	//
+	// Scalars
+	//
+
+	private static final JSONCodec<String> STRING = new JSONCodec<String>() {
+		public JSON toJSON(String value) {
+			return new JSONString(value);
+		}
+
+		public String fromJSON(JSON json) {
+			return text(json);
+		}
+
+		public void write(String value, JSONWriter out) throws IOException {
+			out.value(value);
+		}
+	};
+
+	private static final JSONCodec<Boolean> BOOLEAN = new JSONCodec<Boolean>() {
+		public JSON toJSON(Boolean value) {
+			return new JSONBoolean(value.booleanValue());
+		}
+
+		public Boolean fromJSON(JSON json) {
+			if (!(json instanceof JSONBoolean))
+				throw mismatch("a boolean", json);
+			return Boolean.valueOf(((JSONBoolean) json).getValue());
+		}
+
+		public void write(Boolean value, JSONWriter out) throws IOException {
+			out.value(value.booleanValue());
+		}
+	};
+
+	private static final JSONCodec<Integer> INTEGER = new JSONCodec<Integer>() {
+		public JSON toJSON(Integer value) {
+			return new JSONInteger(value.intValue());
+		}
+
+		public Integer fromJSON(JSON json) {
+			return Integer.valueOf(intValue(number(json)));
+		}
+
+		public void write(Integer value, JSONWriter out) throws IOException {
+			out.value(value.longValue());
+		}
+	};
+
+	private static final JSONCodec<Long> LONG = new JSONCodec<Long>() {
+		public JSON toJSON(Long value) {
+			return new JSONLong(value.longValue());
+		}
+
+		public Long fromJSON(JSON json) {
+			return Long.valueOf(longValue(number(json)));
+		}
+
+		public void write(Long value, JSONWriter out) throws IOException {
+			out.value(value.longValue());
+		}
+	};
+
+	private static final JSONCodec<Double> DOUBLE = new JSONCodec<Double>() {
+		public JSON toJSON(Double value) {
+			return new JSONDouble(value.doubleValue());
+		}
+
+		public Double fromJSON(JSON json) {
+			return Double.valueOf(doubleValue(number(json)));
+		}
+
+		public void write(Double value, JSONWriter out) throws IOException {
+			out.value(value.doubleValue());
+		}
+	};
+
+	/** Floats keep their own shortest representation, not the double one */
+	private static final JSONCodec<Float> FLOAT = new JSONCodec<Float>() {
+		public JSON toJSON(Float value) {
+			if (value.isNaN() || value.isInfinite())
+				throw new IllegalArgumentException("not representable in JSON: "
+						+ value);
+			return JSONDouble.ofText(value.toString());
+		}
+
+		public Float fromJSON(JSON json) {
+			JSONNumber number = number(json);
+			float value = (float) doubleValue(number);
+			if (Float.isInfinite(value))
+				throw new IllegalArgumentException("out of float range: "
+						+ number.getNumberText());
+			return Float.valueOf(value);
+		}
+
+		public void write(Float value, JSONWriter out) throws IOException {
+			out.value(toJSON(value));
+		}
+	};
+
+	private static final JSONCodec<Short> SHORT = new JSONCodec<Short>() {
+		public JSON toJSON(Short value) {
+			return new JSONInteger(value.intValue());
+		}
+
+		public Short fromJSON(JSON json) {
+			return Short.valueOf((short) integral(number(json),
+					Short.MIN_VALUE, Short.MAX_VALUE, "short"));
+		}
+
+		public void write(Short value, JSONWriter out) throws IOException {
+			out.value(value.longValue());
+		}
+	};
+
+	private static final JSONCodec<Byte> BYTE = new JSONCodec<Byte>() {
+		public JSON toJSON(Byte value) {
+			return new JSONInteger(value.intValue());
+		}
+
+		public Byte fromJSON(JSON json) {
+			return Byte.valueOf((byte) integral(number(json), Byte.MIN_VALUE,
+					Byte.MAX_VALUE, "byte"));
+		}
+
+		public void write(Byte value, JSONWriter out) throws IOException {
+			out.value(value.longValue());
+		}
+	};
+
+	private static final JSONCodec<Character> CHARACTER = new JSONCodec<Character>() {
+		public JSON toJSON(Character value) {
+			return new JSONString(value.toString());
+		}
+
+		public Character fromJSON(JSON json) {
+			String text = text(json);
+			if (text.length() != 1)
+				throw new IllegalArgumentException("expected one character: "
+						+ text);
+			return Character.valueOf(text.charAt(0));
+		}
+
+		public void write(Character value, JSONWriter out) throws IOException {
+			out.value(value.toString());
+		}
+	};
+
+	private static final JSONCodec<BigDecimal> DECIMAL = new JSONCodec<BigDecimal>() {
+		public JSON toJSON(BigDecimal value) {
+			return new JSONDecimal(value);
+		}
+
+		public BigDecimal fromJSON(JSON json) {
+			return number(json).decimalValue();
+		}
+
+		public void write(BigDecimal value, JSONWriter out) throws IOException {
+			out.value(value);
+		}
+	};
+
+	private static final JSONCodec<BigInteger> BIG_INTEGER = new JSONCodec<BigInteger>() {
+		public JSON toJSON(BigInteger value) {
+			return new JSONDecimal(new BigDecimal(value));
+		}
+
+		public BigInteger fromJSON(JSON json) {
+			try {
+				return number(json).decimalValue().toBigIntegerExact();
+			} catch (ArithmeticException e) {
+				throw new IllegalArgumentException("not an integer: "
+						+ number(json).getNumberText());
+			}
+		}
+
+		public void write(BigInteger value, JSONWriter out) throws IOException {
+			out.value(new BigDecimal(value));
+		}
+	};
+
+	//
+	// Other codecs
+	//
+
+	/**
+	 * Binds values by their runtime class, and trees to the natural Java
+	 * types: strings, numbers, booleans, lists and maps.
+	 */
+	private final class DynamicCodec implements JSONCodec<Object> {
+
+		public JSON toJSON(Object value) {
+			return raw(codecOf(checked(value))).toJSON(value);
+		}
+
+		public Object fromJSON(JSON json) {
+			if (json instanceof JSONString)
+				return ((JSONString) json).getText();
+			if (json instanceof JSONInteger)
+				return Integer.valueOf(((JSONInteger) json).getValue());
+			if (json instanceof JSONLong)
+				return Long.valueOf(((JSONLong) json).getValue());
+			if (json instanceof JSONDouble)
+				return Double.valueOf(((JSONDouble) json).getValue());
+			if (json instanceof JSONNumber)
+				return ((JSONNumber) json).decimalValue();
+			if (json instanceof JSONBoolean)
+				return Boolean.valueOf(((JSONBoolean) json).getValue());
+			if (json instanceof JSONArray)
+				return new CollectionCodec(List.class, this).fromJSON(json);
+			if (json instanceof JSONObject)
+				return new MapCodec(Map.class, this).fromJSON(json);
+			throw mismatch("a JSON value", json);
+		}
+
+		public void write(Object value, JSONWriter out) throws IOException {
+			raw(codecOf(checked(value))).write(value, out);
+		}
+
+		private Class<?> checked(Object value) {
+			Class<?> type = value.getClass();
+			if (type == Object.class)
+				throw new IllegalArgumentException("cannot bind "
+						+ type.getName());
+			return type;
+		}
+
+	}
+
+	/** Binds trees to themselves */
+	private static final class TreeCodec implements JSONCodec<Object> {
+
+		private final Class<?> type;
+
+		TreeCodec(Class<?> type) {
+			this.type = type;
+		}
+
+		public JSON toJSON(Object value) {
+			return (JSON) value;
+		}
+
+		public Object fromJSON(JSON json) {
+			if (!type.isInstance(json))
+				throw mismatch(type.getSimpleName(), json);
+			return json;
+		}
+
+		public void write(Object value, JSONWriter out) throws IOException {
+			out.value((JSON) value);
+		}
+
+	}
+
+	/** Binds enum constants to their names */
+	private static final class EnumCodec implements JSONCodec<Object> {
+
+		private final Class<?> type;
+		private final HashMap<String, Object> constants = new HashMap<String, Object>();
+
+		EnumCodec(Class<?> type) {
+			this.type = type;
+			for (Object constant : type.getEnumConstants()) {
+				constants.put(((Enum<?>) constant).name(), constant);
+			}
+		}
+
+		public JSON toJSON(Object value) {
+			return new JSONString(((Enum<?>) value).name());
+		}
+
+		public Object fromJSON(JSON json) {
+			Object constant = constants.get(text(json));
+			if (constant == null)
+				throw new IllegalArgumentException("no constant "
+						+ text(json) + " in " + type.getName());
+			return constant;
+		}
+
+		public void write(Object value, JSONWriter out) throws IOException {
+			out.value(((Enum<?>) value).name());
+		}
+
+	}
+
+	private static final class ArrayCodec implements JSONCodec<Object> {
+
+		private final Class<?> componentType;
+		private final JSONCodec<Object> component;
+
+		ArrayCodec(Class<?> componentType, JSONCodec<Object> component) {
+			this.componentType = componentType;
+			this.component = component;
+		}
+
+		public JSON toJSON(Object value) {
+			// Arrays of primitives are copied without boxing
+			if (value instanceof int[])
+				return new JSONIntArray((int[]) value);
+			if (value instanceof long[])
+				return new JSONLongArray((long[]) value);
+			if (value instanceof double[])
+				return new JSONDoubleArray((double[]) value);
+			if (value instanceof boolean[])
+				return new JSONBooleanArray((boolean[]) value);
+			JSONArray<JSON> array = new JSONArray<JSON>();
+			for (int i = 0, n = Array.getLength(value); i < n; i++) {
+				array.addValue(encode(component, Array.get(value, i)));
+			}
+			return array;
+		}
+
+		public Object fromJSON(JSON json) {
+			if (!(json instanceof JSONArray))
+				throw mismatch("an array", json);
+			if (json instanceof JSONIntArray && componentType == int.class)
+				return ((JSONIntArray) json).toIntArray();
+			if (json instanceof JSONLongArray && componentType == long.class)
+				return ((JSONLongArray) json).toLongArray();
+			if (json instanceof JSONDoubleArray
+					&& componentType == double.class)
+				return ((JSONDoubleArray) json).toDoubleArray();
+			if (json instanceof JSONBooleanArray
+					&& componentType == boolean.class)
+				return ((JSONBooleanArray) json).toBooleanArray();
+			JSONArray<?> array = ((JSONArray<?>) json).snapshot();
+			Object value = Array.newInstance(componentType, array.size());
+			for (int i = 0, n = array.size(); i < n; i++) {
+				Object element = decode(component, array.getValue(i));
+				if (element == null && componentType.isPrimitive())
+					throw new IllegalArgumentException("null element in "
+							+ componentType + " array");
+				Array.set(value, i, element);
+			}
+			return value;
+		}
+
+		public void write(Object value, JSONWriter out) throws IOException {
+			out.beginArray();
+			for (int i = 0, n = Array.getLength(value); i < n; i++) {
+				JSONBinder.write(component, Array.get(value, i), out);
+			}
+			out.endArray();
+		}
+
+	}
+
+	private static final class CollectionCodec implements JSONCodec<Object> {
+
+		private final Class<?> type;
+		private final Constructor<?> constructor;
+		private final JSONCodec<Object> element;
+
+		CollectionCodec(Class<?> type, JSONCodec<Object> element) {
+			this.type = type;
+			this.element = element;
+			Class<?> implementation = type;
+			if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+				if (SortedSet.class.isAssignableFrom(type)) {
+					implementation = TreeSet.class;
+				} else if (Set.class.isAssignableFrom(type)) {
+					implementation = LinkedHashSet.class;
+				} else {
+					implementation = ArrayList.class;
+				}
+			}
+			this.constructor = type.isAssignableFrom(implementation) ? constructor(implementation)
+					: null;
+		}
+
+		public JSON toJSON(Object value) {
+			JSONArray<JSON> array = new JSONArray<JSON>();
+			for (Object item : (Collection<?>) value) {
+				array.addValue(encode(element, item));
+			}
+			return array;
+		}
+
+		@SuppressWarnings("unchecked")
+		public Object fromJSON(JSON json) {
+			if (!(json instanceof JSONArray))
+				throw mismatch("an array", json);
+			Collection<Object> value = (Collection<Object>) newInstance(
+					constructor, type);
+			for (JSON item : (JSONArray<?>) json) {
+				value.add(decode(element, item));
+			}
+			return value;
+		}
+
+		public void write(Object value, JSONWriter out) throws IOException {
+			out.beginArray();
+			for (Object item : (Collection<?>) value) {
+				JSONBinder.write(element, item, out);
+			}
+			out.endArray();
+		}
+
+	}
+
+	private static final class MapCodec implements JSONCodec<Object> {
+
+		private final Class<?> type;
+		private final Constructor<?> constructor;
+		private final JSONCodec<Object> element;
+
+		MapCodec(Class<?> type, JSONCodec<Object> element) {
+			this.type = type;
+			this.element = element;
+			Class<?> implementation = type;
+			if (type.isInterface() || Modifier.isAbstract(type.getModifiers()))
+				implementation = SortedMap.class.isAssignableFrom(type) ? TreeMap.class
+						: LinkedHashMap.class;
+			this.constructor = type.isAssignableFrom(implementation) ? constructor(implementation)
+					: null;
+		}
+
+		public JSON toJSON(Object value) {
+			JSONObject object = new JSONObject();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				object.addProperty(name(entry.getKey()), encode(element,
+						entry.getValue()));
+			}
+			return object;
+		}
+
+		@SuppressWarnings("unchecked")
+		public Object fromJSON(JSON json) {
+			if (!(json instanceof JSONObject))
+				throw mismatch("an object", json);
+			Map<String, Object> value = (Map<String, Object>) newInstance(
+					constructor, type);
+			for (JSONObject.Property property : (JSONObject) json) {
+				value.put(property.getName(), decode(element, property
+						.getValue()));
+			}
+			return value;
+		}
+
+		public void write(Object value, JSONWriter out) throws IOException {
+			out.beginObject();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				out.name(name(entry.getKey()));
+				JSONBinder.write(element, entry.getValue(), out);
+			}
+			out.endObject();
+		}
+
+		private static String name(Object key) {
+			if (!(key instanceof String))
+				throw new IllegalArgumentException("map keys must be strings: "
+						+ key);
+			return (String) key;
+		}
+
+	}
+
+}
@@ -87,6 +87,15 @@ public class JSONBoolean extends JSON {
 	 *            the value to set
 	 */
 	public void setValue(boolean value) {
+		modified();
+		reset(value);
+	}
+
+	/**
+	 * Sets the value of a node passed to visitors and reused for several
+	 * values, which is not part of any tree and thus invalidates no hash.
+	 */
+	void reset(boolean value) {
 		this.value = value;
 	}
 
@@ -109,6 +118,7 @@ public class JSONBoolean extends JSON {
 	 * A shortcut for {@code obj.setValue(!obj.getValue())}.
 	 */
 	public void toggle() {
+		modified();
 		value = !value;
 	}
 
@@ -140,9 +150,7 @@ public class JSONBoolean extends JSON {
 	public boolean equals(Object obj) {
 		if (this == obj)
 			return true;
-		if (obj == null)
-			return false;
-		if (getClass() != obj.getClass())
+		if (!(obj instanceof JSONBoolean))
 			return false;
 		JSONBoolean other = (JSONBoolean) obj;
 		if (value != other.value)
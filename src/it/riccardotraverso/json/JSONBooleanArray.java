@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link JSONArray} of booleans stored as a bit set, which takes one bit
+ * per element instead of a {@link JSONBoolean} and a reference to it.
+ * 
+ * Code processing flags can read and write the elements without boxing
+ * through {@link #getBoolean(int)}, {@link #setBoolean(int, boolean)},
+ * {@link #addBoolean(boolean)} and {@link #countTrue()}. To the rest of the
+ * library the elements are still {@link JSONBoolean}s: {@link #getValue(int)}
+ * and the iterator return new nodes, whose changes do not affect the array,
+ * while visitors walking the array receive a single node reused for all its
+ * elements, which they must copy to keep, as when streaming.
+ */
+public class JSONBooleanArray extends JSONArray<JSONBoolean> {
+
+	/**
+	 * The elements, stored as a bit set.
+	 */
+	private static final class Booleans extends JSONArray.Elements<JSONBoolean> {
+
+		private static final long[] EMPTY = new long[0];
+
+		/** The elements, the one at index i being bit i % 64 of word i / 64 */
+		private long[] words = EMPTY;
+		private int size;
+
+		@Override
+		int size() {
+			return size;
+		}
+
+		@Override
+		JSONBoolean get(int index) {
+			return new JSONBoolean(getBoolean(index));
+		}
+
+		@Override
+		JSON visit(int index, JSONWalker.Scratch scratch) {
+			if (scratch.bool == null)
+				scratch.bool = new JSONBoolean(false);
+			scratch.bool.reset(bit(index));
+			return scratch.bool;
+		}
+
+		@Override
+		void add(JSONBoolean value) {
+			addBoolean(unbox(value));
+		}
+
+		@Override
+		void add(int index, JSONBoolean value) {
+			if (index < 0 || index > size)
+				throw new IndexOutOfBoundsException("index " + index
+						+ ", size " + size);
+			boolean unboxed = unbox(value);
+			ensureCapacity(size + 1);
+			for (int i = size; i > index; i--) {
+				setBit(i, bit(i - 1));
+			}
+			setBit(index, unboxed);
+			size++;
+		}
+
+		@Override
+		void set(int index, JSONBoolean value) {
+			setBoolean(index, unbox(value));
+		}
+
+		@Override
+		void remove(int index) {
+			check(index);
+			for (int i = index + 1; i < size; i++) {
+				setBit(i - 1, bit(i));
+			}
+			setBit(--size, false);
+		}
+
+		@Override
+		boolean removeFirst(JSONBoolean value) {
+			if (value == null)
+				return false;
+			boolean unboxed = value.getValue();
+			for (int i = 0; i < size; i++) {
+				if (bit(i) == unboxed) {
+					remove(i);
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		void clear() {
+			Arrays.fill(words, 0L);
+			size = 0;
+		}
+
+		@Override
+		Iterator<JSONBoolean> iterator() {
+			return new Iterator<JSONBoolean>() {
+				private int position;
+				private boolean removable;
+
+				@Override
+				public boolean hasNext() {
+					return position < size;
+				}
+
+				@Override
+				public JSONBoolean next() {
+					if (position >= size)
+						throw new NoSuchElementException();
+					removable = true;
+					return new JSONBoolean(bit(position++));
+				}
+
+				@Override
+				public void remove() {
+					if (!removable)
+						throw new IllegalStateException();
+					removable = false;
+					Booleans.this.remove(--position);
+				}
+			};
+		}
+
+		boolean getBoolean(int index) {
+			check(index);
+			return bit(index);
+		}
+
+		void setBoolean(int index, boolean value) {
+			check(index);
+			setBit(index, value);
+		}
+
+		void addBoolean(boolean value) {
+			ensureCapacity(size + 1);
+			setBit(size++, value);
+		}
+
+		void addBooleans(boolean[] values) {
+			ensureCapacity(size + values.length);
+			for (int i = 0; i < values.length; i++) {
+				setBit(size++, values[i]);
+			}
+		}
+
+		int countTrue() {
+			int count = 0;
+			for (int i = 0, n = size >> 6; i < n; i++) {
+				count += Long.bitCount(words[i]);
+			}
+			if ((size & 63) != 0)
+				count += Long.bitCount(words[size >> 6] & ((1L << size) - 1));
+			return count;
+		}
+
+		boolean[] toBooleanArray() {
+			boolean[] values = new boolean[size];
+			for (int i = 0; i < size; i++) {
+				values[i] = bit(i);
+			}
+			return values;
+		}
+
+		private boolean bit(int index) {
+			return (words[index >> 6] & (1L << index)) != 0;
+		}
+
+		private void setBit(int index, boolean value) {
+			if (value) {
+				words[index >> 6] |= 1L << index;
+			} else {
+				words[index >> 6] &= ~(1L << index);
+			}
+		}
+
+		private void check(int index) {
+			if (index < 0 || index >= size)
+				throw new IndexOutOfBoundsException("index " + index
+						+ ", size " + size);
+		}
+
+		private void ensureCapacity(int capacity) {
+			int length = (capacity + 63) >> 6;
+			if (length > words.length)
+				words = Arrays.copyOf(words, Math.max(length, words.length
+						+ (words.length >> 1) + 1));
+		}
+
+	}
+
+	private final Booleans booleans;
+
+	/**
+	 * Creates a new empty JSONBooleanArray.
+	 */
+	public JSONBooleanArray() {
+		this(new Booleans());
+	}
+
+	/**
+	 * Creates an array holding a copy of some values.
+	 */
+	public JSONBooleanArray(boolean[] values) {
+		this();
+		booleans.addBooleans(values);
+	}
+
+	private JSONBooleanArray(Booleans booleans) {
+		super(booleans);
+		this.booleans = booleans;
+	}
+
+	/**
+	 * Returns the element at a given index.
+	 */
+	public boolean getBoolean(int index) {
+		return booleans.getBoolean(index);
+	}
+
+	/**
+	 * Replaces the element at a given index.
+	 */
+	public void setBoolean(int index, boolean value) {
+		booleans.setBoolean(index, value);
+		modified();
+	}
+
+	/**
+	 * Appends an element.
+	 */
+	public void addBoolean(boolean value) {
+		booleans.addBoolean(value);
+		modified();
+	}
+
+	/**
+	 * Returns the number of true elements.
+	 */
+	public int countTrue() {
+		return booleans.countTrue();
+	}
+
+	/**
+	 * Returns a copy of the elements.
+	 */
+	public boolean[] toBooleanArray() {
+		return booleans.toBooleanArray();
+	}
+
+	/**
+	 * Appends the value of a node.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the value is null
+	 */
+	@Override
+	public void addValue(JSONBoolean value) {
+		super.addValue(value);
+	}
+
+	/**
+	 * Removes the first element equal to the value of a node.
+	 */
+	@Override
+	public void removeValue(JSONBoolean value) {
+		super.removeValue(value);
+	}
+
+	/**
+	 * Returns a new node holding the element at a given index.
+	 */
+	@Override
+	public JSON getValue(int index) {
+		return super.getValue(index);
+	}
+
+	private static boolean unbox(JSONBoolean value) {
+		if (value == null)
+			throw new IllegalArgumentException("value cannot be null");
+		return value.getValue();
+	}
+
+}
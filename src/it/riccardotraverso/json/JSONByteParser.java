@@ -0,0 +1,375 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package it.riccardotraverso.json;
+
+import it.riccardotraverso.java.nio.MappedFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link JSONParser} decoding UTF-8 bytes in place. The input is either an
+ * array read as is, or a stream (or a sequence of direct buffers) read
+ * through a window of {@link JSONParser#BUFFER_SIZE} bytes.
+ */
+class JSONByteParser extends JSONParser {
+
+	private byte[] buf;
+	private int pos;
+	private int limit;
+
+	/** The offset in the input of {@code buf[0]} */
+	private long base;
+
+	private InputStream in;
+
+	/**
+	 * Buffers streamed through the window, and the one being read. Buffers
+	 * are dropped once read. The segments of a mapped file are only mapped
+	 * when the window reaches them, and released by the file once read.
+	 */
+	private ByteBuffer[] inputs;
+	private int next;
+	private MappedFile file;
+
+	/** The bytes of the last raw string, quotes excluded, and their kind */
+	private int rawStart;
+	private int rawEnd;
+	private boolean rawEscaped;
+	private boolean rawAscii;
+
+	JSONByteParser(byte[] input, int offset, int length) {
+		buf = input;
+		pos = offset;
+		limit = offset + length;
+		base = -offset;
+	}
+
+	JSONByteParser(InputStream input) {
+		in = input;
+		buf = new byte[BUFFER_SIZE];
+	}
+
+	JSONByteParser(ByteBuffer input) {
+		if (input.hasArray()) {
+			buf = input.array();
+			pos = input.arrayOffset() + input.position();
+			limit = input.arrayOffset() + input.limit();
+			base = -pos;
+		} else {
+			inputs = new ByteBuffer[] { input.duplicate() };
+			buf = new byte[Math.min(BUFFER_SIZE, Math.max(input.remaining(), 1))];
+		}
+	}
+
+	JSONByteParser(ByteBuffer[] input) {
+		inputs = new ByteBuffer[input.length];
+		for (int i = 0; i < input.length; i++) {
+			inputs[i] = input[i].duplicate();
+		}
+		buf = new byte[BUFFER_SIZE];
+	}
+
+	JSONByteParser(MappedFile input) {
+		file = input;
+		inputs = new ByteBuffer[input.getSegmentCount()];
+		buf = new byte[BUFFER_SIZE];
+	}
+
+	/**
+	 * Moves the window forward, once every byte in it has been consumed.
+	 * 
+	 * @return false at the end of the input
+	 */
+	private boolean fill() throws IOException {
+		int n;
+		if (in != null) {
+			n = in.read(buf, 0, buf.length);
+		} else if (inputs != null) {
+			while (next < inputs.length) {
+				if (inputs[next] == null)
+					inputs[next] = file.getSegment(next);
+				if (inputs[next].hasRemaining())
+					break;
+				if (file != null)
+					file.release(next);
+				inputs[next++] = null;
+			}
+			if (next == inputs.length)
+				return false;
+			ByteBuffer input = inputs[next];
+			n = Math.min(buf.length, input.remaining());
+			input.get(buf, 0, n);
+		} else {
+			return false;
+		}
+		if (n <= 0)
+			return false;
+		base += limit;
+		pos = 0;
+		limit = n;
+		return true;
+	}
+
+	private int read() throws IOException {
+		if (pos >= limit && !fill())
+			throw error("unexpected end of input");
+		return buf[pos++] & 0xFF;
+	}
+
+	@Override
+	int nextSignificant() throws IOException {
+		for (;;) {
+			if (pos >= limit && !fill())
+				return -1;
+			int c = buf[pos++] & 0xFF;
+			if (c > ' ')
+				return c;
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t')
+				throw error("unexpected character 0x" + Integer.toHexString(c));
+		}
+	}
+
+	@Override
+	void scanString() throws IOException {
+		char[] out = text;
+		int n = 0;
+		// Start of the raw bytes, as long as the string is a single plain run
+		int start = pos;
+		textHashed = false;
+		for (;;) {
+			if (pos >= limit) {
+				start = -1;
+				if (!fill())
+					throw error("unterminated string");
+			}
+			// Fast path: copy a run of plain ASCII characters
+			byte[] b = buf;
+			int p = pos;
+			int end = Math.min(limit, p + out.length - n);
+			while (p < end) {
+				int c = b[p];
+				if (c < 0x20 || c == '"' || c == '\\')
+					break; // bytes above 0x7F are negative
+				out[n++] = (char) c;
+				p++;
+			}
+			pos = p;
+			if (p == end) {
+				if (n == out.length) {
+					out = growText(n);
+					start = -1;
+				}
+				continue;
+			}
+			int c = b[p];
+			pos = p + 1;
+			if (c == '"') {
+				textLength = n;
+				if (start >= 0 && symbols != null
+						&& n <= symbols.getMaxLength()) {
+					textHash = JSONSymbolTable.hashAscii(b, start, n);
+					textHashed = true;
+				}
+				return;
+			}
+			start = -1;
+			if (n + 2 > out.length)
+				out = growText(n);
+			if (c == '\\') {
+				out[n++] = readEscape();
+			} else if (c >= 0) {
+				throw error("unescaped control character in string");
+			} else {
+				int cp = readMultiByte(c & 0xFF);
+				if (cp >= 0x10000) {
+					out[n++] = (char) (0xD7C0 + (cp >>> 10));
+					out[n++] = (char) (0xDC00 + (cp & 0x3FF));
+				} else {
+					out[n++] = (char) cp;
+				}
+			}
+		}
+	}
+
+	@Override
+	boolean scanRawString() throws IOException {
+		if (in != null || inputs != null)
+			return false; // the window is reused, only arrays stay in place
+		byte[] b = buf;
+		int start = pos;
+		int p = start;
+		boolean escaped = false;
+		boolean ascii = true;
+		for (;;) {
+			if (p >= limit) {
+				pos = p;
+				throw error("unterminated string");
+			}
+			int c = b[p++];
+			if (c >= 0x20 && c != '"' && c != '\\')
+				continue; // bytes above 0x7F are negative
+			if (c == '"')
+				break;
+			pos = p;
+			if (c == '\\') {
+				readEscape();
+				escaped = true;
+			} else if (c >= 0) {
+				throw error("unescaped control character in string");
+			} else {
+				readMultiByte(c & 0xFF);
+				ascii = false;
+			}
+			p = pos;
+		}
+		pos = p;
+		rawStart = start;
+		rawEnd = p - 1;
+		rawEscaped = escaped;
+		rawAscii = ascii;
+		return true;
+	}
+
+	@Override
+	void decodeRawString() {
+		int end = pos;
+		pos = rawStart;
+		try {
+			scanString();
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // validated already
+		} finally {
+			pos = end;
+		}
+	}
+
+	@Override
+	void resetRawString(JSONRawString s) {
+		s.reset(buf, rawStart, rawEnd - rawStart, rawEscaped, rawAscii);
+	}
+
+	private char readEscape() throws IOException {
+		int c = read();
+		switch (c) {
+		case '"':
+		case '\\':
+		case '/':
+			return (char) c;
+		case 'b':
+			return '\b';
+		case 'f':
+			return '\f';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 't':
+			return '\t';
+		case 'u':
+			int unit = 0;
+			for (int i = 0; i < 4; i++) {
+				int digit = Character.digit(read(), 16);
+				if (digit < 0)
+					throw error("malformed unicode escape");
+				unit = (unit << 4) | digit;
+			}
+			return (char) unit;
+		default:
+			throw error("invalid escape sequence");
+		}
+	}
+
+	/**
+	 * Decodes the code point of a multi-byte UTF-8 sequence starting with the
+	 * given lead byte, rejecting overlong forms and surrogates.
+	 */
+	private int readMultiByte(int lead) throws IOException {
+		int cp, count, min;
+		if (lead >= 0xC2 && lead <= 0xDF) {
+			cp = lead & 0x1F;
+			count = 1;
+			min = 0x80;
+		} else if (lead >= 0xE0 && lead <= 0xEF) {
+			cp = lead & 0x0F;
+			count = 2;
+			min = 0x800;
+		} else if (lead >= 0xF0 && lead <= 0xF4) {
+			cp = lead & 0x07;
+			count = 3;
+			min = 0x10000;
+		} else {
+			throw error("invalid UTF-8 byte 0x" + Integer.toHexString(lead));
+		}
+		while (count-- > 0) {
+			int c = read();
+			if ((c & 0xC0) != 0x80)
+				throw error("invalid UTF-8 continuation byte");
+			cp = (cp << 6) | (c & 0x3F);
+		}
+		if (cp < min || cp > Character.MAX_CODE_POINT
+				|| (cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE))
+			throw error("invalid UTF-8 sequence");
+		return cp;
+	}
+
+	@Override
+	void scanNumber(int first) throws IOException {
+		char[] out = text;
+		out[0] = (char) first;
+		int n = 1;
+		for (;;) {
+			if (pos >= limit && !fill())
+				break;
+			int c = buf[pos];
+			if ((c < '0' || c > '9') && c != '.' && c != 'e' && c != 'E'
+					&& c != '-' && c != '+')
+				break;
+			if (n == out.length)
+				out = growText(n);
+			out[n++] = (char) c;
+			pos++;
+		}
+		textLength = n;
+	}
+
+	@Override
+	void scanLiteral(String rest) throws IOException {
+		for (int i = 0; i < rest.length(); i++) {
+			if (read() != rest.charAt(i))
+				throw error("invalid literal");
+		}
+	}
+
+	@Override
+	long position() {
+		return base + pos;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (in != null)
+			in.close();
+	}
+
+}
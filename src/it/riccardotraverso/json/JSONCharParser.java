@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package it.riccardotraverso.json;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A {@link JSONParser} scanning characters, either from a string or from a
+ * reader read through a window of {@link JSONParser#BUFFER_SIZE} characters.
+ */
+class JSONCharParser extends JSONParser {
+
+	private char[] buf;
+	private int pos;
+	private int limit;
+
+	/** The offset in the input of {@code buf[0]} */
+	private long base;
+
+	private Reader in;
+	private String string;
+	private int stringPos;
+
+	JSONCharParser(Reader input) {
+		in = input;
+		buf = new char[BUFFER_SIZE];
+	}
+
+	JSONCharParser(String input) {
+		string = input;
+		buf = new char[Math.min(BUFFER_SIZE, Math.max(input.length(), 1))];
+	}
+
+	/**
+	 * Moves the window forward, once every character in it has been consumed.
+	 * 
+	 * @return false at the end of the input
+	 */
+	private boolean fill() throws IOException {
+		int n;
+		if (in != null) {
+			n = in.read(buf, 0, buf.length);
+		} else {
+			n = Math.min(buf.length, string.length() - stringPos);
+			string.getChars(stringPos, stringPos + n, buf, 0);
+			stringPos += n;
+		}
+		if (n <= 0)
+			return false;
+		base += limit;
+		pos = 0;
+		limit = n;
+		return true;
+	}
+
+	private int read() throws IOException {
+		if (pos >= limit && !fill())
+			throw error("unexpected end of input");
+		return buf[pos++];
+	}
+
+	@Override
+	int nextSignificant() throws IOException {
+		for (;;) {
+			if (pos >= limit && !fill())
+				return -1;
+			int c = buf[pos++];
+			if (c > ' ')
+				return c;
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t')
+				throw error("unexpected character 0x" + Integer.toHexString(c));
+		}
+	}
+
+	@Override
+	void scanString() throws IOException {
+		char[] out = text;
+		int n = 0;
+		for (;;) {
+			if (pos >= limit && !fill())
+				throw error("unterminated string");
+			// Fast path: copy a run of characters needing no decoding
+			char[] b = buf;
+			int p = pos;
+			int end = Math.min(limit, p + out.length - n);
+			while (p < end) {
+				char c = b[p];
+				if (c < 0x20 || c == '"' || c == '\\')
+					break;
+				out[n++] = c;
+				p++;
+			}
+			pos = p;
+			if (p == end) {
+				if (n == out.length)
+					out = growText(n);
+				continue;
+			}
+			char c = b[p];
+			pos = p + 1;
+			if (c == '"') {
+				textLength = n;
+				return;
+			}
+			if (c != '\\')
+				throw error("unescaped control character in string");
+			if (n == out.length)
+				out = growText(n);
+			out[n++] = readEscape();
+		}
+	}
+
+	private char readEscape() throws IOException {
+		int c = read();
+		switch (c) {
+		case '"':
+		case '\\':
+		case '/':
+			return (char) c;
+		case 'b':
+			return '\b';
+		case 'f':
+			return '\f';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 't':
+			return '\t';
+		case 'u':
+			int unit = 0;
+			for (int i = 0; i < 4; i++) {
+				int digit = Character.digit(read(), 16);
+				if (digit < 0)
+					throw error("malformed unicode escape");
+				unit = (unit << 4) | digit;
+			}
+			return (char) unit;
+		default:
+			throw error("invalid escape sequence");
+		}
+	}
+
+	@Override
+	void scanNumber(int first) throws IOException {
+		char[] out = text;
+		out[0] = (char) first;
+		int n = 1;
+		for (;;) {
+			if (pos >= limit && !fill())
+				break;
+			char c = buf[pos];
+			if ((c < '0' || c > '9') && c != '.' && c != 'e' && c != 'E'
+					&& c != '-' && c != '+')
+				break;
+			if (n == out.length)
+				out = growText(n);
+			out[n++] = c;
+			pos++;
+		}
+		textLength = n;
+	}
+
+	@Override
+	void scanLiteral(String rest) throws IOException {
+		for (int i = 0; i < rest.length(); i++) {
+			if (read() != rest.charAt(i))
+				throw error("invalid literal");
+		}
+	}
+
+	@Override
+	long position() {
+		return base + pos;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (in != null)
+			in.close();
+	}
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import java.io.IOException;
+
+/**
+ * Converts the values of a Java type to and from JSON.
+ * 
+ * {@link JSONBinder} creates codecs for beans, collections, arrays, enums and
+ * the usual scalar types, and other codecs can be registered with
+ * {@link JSONBinder#register(Class, JSONCodec)}. Codecs never receive null
+ * values nor {@link JSONNull} trees: the binder handles those itself. Codecs
+ * are shared between threads, so they must be stateless.
+ * 
+ * @param <T>
+ *            the type of the values
+ */
+public interface JSONCodec<T> {
+
+	/**
+	 * Converts a value into a tree.
+	 */
+	JSON toJSON(T value);
+
+	/**
+	 * Converts a tree back into a value.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the tree does not represent a value of the type
+	 */
+	T fromJSON(JSON json);
+
+	/**
+	 * Writes a value directly, without building its tree.
+	 */
+	void write(T value, JSONWriter out) throws IOException;
+
+}
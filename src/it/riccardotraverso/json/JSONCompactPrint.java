@@ -0,0 +1,436 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package it.riccardotraverso.json;
+
+import it.riccardotraverso.json.JSONObject.Property;
+
+import java.util.ConcurrentModificationException;
+
+/**
+ * Converts a {@link JSON} into compact (minified) JSON code, without any
+ * whitespace. The exact length of the output is measured first by a sizing
+ * visit, so that the code is then written into a single array allocated with
+ * the right size, with no resizing and no backtracking.
+ * 
+ * As concurrent containers may change between the two visits, trees holding
+ * any are frozen once with {@link JSONImmutable#copyOf(JSON)} when the sizing
+ * visit meets one, and the copy is measured and printed instead. Other trees
+ * must not be modified while being converted.
+ * 
+ * @see JSON#toCompactString()
+ * @see JSONWriter
+ */
+public class JSONCompactPrint {
+
+	private JSONCompactPrint() {
+		// Class not instantiable
+	}
+
+	/**
+	 * Returns the compact JSON code of a tree.
+	 */
+	public static String toString(JSON json) {
+		return new String(toCharArray(json));
+	}
+
+	/**
+	 * Returns the compact JSON code of a tree, as an array of the exact
+	 * length.
+	 */
+	public static char[] toCharArray(JSON json) {
+		Measure m = new Measure(false);
+		json.accept(m);
+		if (m.concurrent) {
+			json = JSONImmutable.copyOf(json);
+			m = new Measure(false);
+			json.accept(m);
+		}
+		CharPrinter p = new CharPrinter(new char[m.size()]);
+		json.accept(p);
+		checkFilled(p.pos, p.out.length);
+		return p.out;
+	}
+
+	/**
+	 * Returns the compact JSON code of a tree encoded in UTF-8, as an array of
+	 * the exact length.
+	 */
+	public static byte[] toByteArray(JSON json) {
+		Measure m = new Measure(true);
+		json.accept(m);
+		if (m.concurrent) {
+			json = JSONImmutable.copyOf(json);
+			m = new Measure(true);
+			json.accept(m);
+		}
+		BytePrinter p = new BytePrinter(new byte[m.size()]);
+		json.accept(p);
+		checkFilled(p.pos, p.out.length);
+		return p.out;
+	}
+
+	/**
+	 * Fails when the printing visit wrote less than the sizing visit
+	 * measured, which means that the tree was modified in between; writing
+	 * more fails by itself as it overflows the array.
+	 */
+	private static void checkFilled(int written, int measured) {
+		if (written != measured)
+			throw new ConcurrentModificationException(
+					"tree modified while being printed: measured " + measured
+							+ " and wrote " + written);
+	}
+
+	/**
+	 * Returns the number of decimal digits of a value, minus sign included.
+	 */
+	static int digits(long v) {
+		if (v == Long.MIN_VALUE)
+			return 20;
+		int n = 1;
+		if (v < 0) {
+			v = -v;
+			n++;
+		}
+		while (v >= 10) {
+			v /= 10;
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Lays out the compact code of the visited tree, leaving the actual
+	 * output to the subclasses.
+	 */
+	private static abstract class Layout extends JSONVisitorAdapter {
+
+		/** Whether a value was already output in each open container */
+		private boolean[] filled = new boolean[32];
+		private int depth;
+		private boolean afterName;
+
+		abstract void put(char c);
+
+		abstract void putAscii(String s);
+
+		abstract void putLong(long v);
+
+		/** Outputs a string, quotes included */
+		abstract void putString(String s);
+
+		/**
+		 * Outputs the bytes of a string read in raw mode, quotes included.
+		 * 
+		 * @return false if the string must be output as text instead
+		 */
+		abstract boolean putRaw(JSONRawString s, byte[] bytes);
+
+		private void separator() {
+			if (afterName) {
+				afterName = false;
+			} else if (depth > 0) {
+				if (filled[depth - 1])
+					put(',');
+				filled[depth - 1] = true;
+			}
+		}
+
+		private void open(char bracket) {
+			separator();
+			put(bracket);
+			if (depth == filled.length) {
+				boolean[] larger = new boolean[depth * 2];
+				System.arraycopy(filled, 0, larger, 0, depth);
+				filled = larger;
+			}
+			filled[depth++] = false;
+		}
+
+		@Override
+		public void enterJSONObject(JSONObject obj) {
+			open('{');
+		}
+
+		@Override
+		public void exitJSONObject(JSONObject obj) {
+			depth--;
+			put('}');
+		}
+
+		@Override
+		public void enterJSONArray(JSONArray<? extends JSON> arr) {
+			open('[');
+		}
+
+		@Override
+		public void exitJSONArray(JSONArray<? extends JSON> arr) {
+			depth--;
+			put(']');
+		}
+
+		@Override
+		public void visitJSONProperty(Property prop) {
+			separator();
+			putString(prop.getName());
+			put(':');
+			afterName = true;
+		}
+
+		@Override
+		public void visitJSONString(JSONString el) {
+			separator();
+			if (el instanceof JSONRawString) {
+				JSONRawString raw = (JSONRawString) el;
+				byte[] bytes = raw.rawBytes();
+				if (bytes != null && putRaw(raw, bytes))
+					return;
+			}
+			String text = el.getText();
+			if (text == null) {
+				putAscii("null");
+			} else {
+				putString(text);
+			}
+		}
+
+		@Override
+		public void visitJSONInteger(JSONInteger el) {
+			separator();
+			putLong(el.getValue());
+		}
+
+		@Override
+		public void visitJSONLong(JSONLong el) {
+			separator();
+			String text = el.rawText();
+			if (text != null) {
+				putAscii(text);
+			} else {
+				putLong(el.getValue());
+			}
+		}
+
+		@Override
+		public void visitJSONDouble(JSONDouble el) {
+			separator();
+			putAscii(el.getNumberText());
+		}
+
+		@Override
+		public void visitJSONDecimal(JSONDecimal el) {
+			separator();
+			putAscii(el.getNumberText());
+		}
+
+		@Override
+		public void visitJSONBoolean(JSONBoolean el) {
+			separator();
+			putAscii(el.getValue() ? "true" : "false");
+		}
+
+		@Override
+		public void visitJSONNull(JSONNull el) {
+			separator();
+			putAscii("null");
+		}
+	}
+
+	/**
+	 * Measures the length of the output, in characters or in UTF-8 bytes.
+	 */
+	private static class Measure extends Layout {
+
+		private final boolean utf8;
+		private long size;
+
+		/** Whether a concurrent container was met */
+		boolean concurrent;
+
+		Measure(boolean utf8) {
+			this.utf8 = utf8;
+		}
+
+		@Override
+		public void enterJSONObject(JSONObject obj) {
+			if (obj.isConcurrent())
+				concurrent = true;
+			super.enterJSONObject(obj);
+		}
+
+		@Override
+		public void enterJSONArray(JSONArray<? extends JSON> arr) {
+			if (arr.isConcurrent())
+				concurrent = true;
+			super.enterJSONArray(arr);
+		}
+
+		int size() {
+			if (size > Integer.MAX_VALUE - 8)
+				throw new IllegalStateException(
+						"document too large for an array, use a JSONWriter instead");
+			return (int) size;
+		}
+
+		@Override
+		void put(char c) {
+			size++;
+		}
+
+		@Override
+		void putAscii(String s) {
+			size += s.length();
+		}
+
+		@Override
+		void putLong(long v) {
+			size += digits(v);
+		}
+
+		@Override
+		void putString(String s) {
+			size += 2 + (utf8 ? JSONEscape.escapedUtf8Length(s)
+					: JSONEscape.escapedLength(s));
+		}
+
+		@Override
+		boolean putRaw(JSONRawString s, byte[] bytes) {
+			if (!utf8 && !s.isRawAscii())
+				return false;
+			size += 2 + s.rawLength();
+			return true;
+		}
+	}
+
+	private static class CharPrinter extends Layout {
+
+		final char[] out;
+		private int pos;
+
+		CharPrinter(char[] out) {
+			this.out = out;
+		}
+
+		@Override
+		void put(char c) {
+			out[pos++] = c;
+		}
+
+		@Override
+		void putAscii(String s) {
+			s.getChars(0, s.length(), out, pos);
+			pos += s.length();
+		}
+
+		@Override
+		void putLong(long v) {
+			int end = pos + digits(v);
+			int i = end;
+			if (v < 0) {
+				out[pos] = '-';
+			} else {
+				v = -v;
+			}
+			// Negative values, as Long.MIN_VALUE has no positive counterpart
+			do {
+				out[--i] = (char) ('0' - v % 10);
+				v /= 10;
+			} while (v != 0);
+			pos = end;
+		}
+
+		@Override
+		void putString(String s) {
+			out[pos++] = '"';
+			pos = JSONEscape.escape(s, out, pos);
+			out[pos++] = '"';
+		}
+
+		@Override
+		boolean putRaw(JSONRawString s, byte[] bytes) {
+			if (!s.isRawAscii())
+				return false;
+			out[pos++] = '"';
+			for (int i = s.rawOffset(), end = i + s.rawLength(); i < end; i++) {
+				out[pos++] = (char) bytes[i];
+			}
+			out[pos++] = '"';
+			return true;
+		}
+	}
+
+	private static class BytePrinter extends Layout {
+
+		final byte[] out;
+		private int pos;
+
+		BytePrinter(byte[] out) {
+			this.out = out;
+		}
+
+		@Override
+		void put(char c) {
+			out[pos++] = (byte) c;
+		}
+
+		@Override
+		void putAscii(String s) {
+			for (int i = 0, n = s.length(); i < n; i++) {
+				out[pos++] = (byte) s.charAt(i);
+			}
+		}
+
+		@Override
+		void putLong(long v) {
+			int end = pos + digits(v);
+			int i = end;
+			if (v < 0) {
+				out[pos] = '-';
+			} else {
+				v = -v;
+			}
+			do {
+				out[--i] = (byte) ('0' - v % 10);
+				v /= 10;
+			} while (v != 0);
+			pos = end;
+		}
+
+		@Override
+		void putString(String s) {
+			out[pos++] = '"';
+			pos = JSONEscape.escapeUtf8(s, out, pos);
+			out[pos++] = '"';
+		}
+
+		@Override
+		boolean putRaw(JSONRawString s, byte[] bytes) {
+			int length = s.rawLength();
+			out[pos++] = '"';
+			System.arraycopy(bytes, s.rawOffset(), out, pos, length);
+			pos += length;
+			out[pos++] = '"';
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A {@link JSONArray} that can be read and modified by several threads at
+ * once without external synchronization.
+ * 
+ * The elements live in slots with volatile semantics, described together with
+ * the number of slots in use by an immutable view that is replaced by every
+ * change of size. Reads load the current view and take no lock, so they
+ * never block nor fail. Writes are serialized by a lock, which they hold for
+ * constant time in the common cases: appending writes the first free slot
+ * before publishing a view one element larger, growing the slots by doubling
+ * when they are full, and setting a value writes its slot in place. Only
+ * insertions and removals, which shift the elements, copy them into new slots,
+ * so that the views already published never change size nor order. Iterators
+ * walk the elements present when they were created, ignoring later additions
+ * and removals instead of throwing
+ * {@link java.util.ConcurrentModificationException}, while still seeing the
+ * latest value of each position set in the meantime.
+ * 
+ * @param <J>
+ *            The type of the elements in the array.
+ */
+public class JSONConcurrentArray<J extends JSON> extends JSONArray<J> {
+
+	/**
+	 * Some slots and the number of them holding elements. The slots past the
+	 * size may be filled by appends after the view is published, but are
+	 * never read through it.
+	 */
+	private static final class View {
+
+		final AtomicReferenceArray<JSON> slots;
+		final int size;
+
+		View(AtomicReferenceArray<JSON> slots, int size) {
+			this.slots = slots;
+			this.size = size;
+		}
+
+		JSON get(int index) {
+			if (index < 0 || index >= size)
+				throw new IndexOutOfBoundsException("index " + index
+						+ ", size " + size);
+			return slots.get(index);
+		}
+
+	}
+
+	private static final View EMPTY = new View(
+			new AtomicReferenceArray<JSON>(0), 0);
+
+	/**
+	 * The live elements: reads load the current view, writes take the lock.
+	 */
+	private static final class Slots<J extends JSON> extends
+			JSONArray.Elements<J> {
+
+		/** Serializes the writes */
+		private final Object lock = new Object();
+
+		/** The current elements, replaced by every change of size */
+		private volatile View view = EMPTY;
+
+		@Override
+		int size() {
+			return view.size;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		J get(int index) {
+			return (J) view.get(index);
+		}
+
+		@Override
+		void add(J value) {
+			synchronized (lock) {
+				View current = view;
+				AtomicReferenceArray<JSON> slots = current.slots;
+				if (current.size == slots.length())
+					slots = copy(current, Math.max(8, current.size * 2), -1,
+							-1);
+				slots.set(current.size, value);
+				view = new View(slots, current.size + 1);
+			}
+		}
+
+		@Override
+		void add(int index, J value) {
+			synchronized (lock) {
+				View current = view;
+				if (index < 0 || index > current.size)
+					throw new IndexOutOfBoundsException("index " + index
+							+ ", size " + current.size);
+				AtomicReferenceArray<JSON> slots = copy(current, Math.max(8,
+						current.size + 1 + (current.size >> 1)), index, -1);
+				slots.set(index, value);
+				view = new View(slots, current.size + 1);
+			}
+		}
+
+		@Override
+		void set(int index, J value) {
+			synchronized (lock) {
+				View current = view;
+				if (index < 0 || index >= current.size)
+					throw new IndexOutOfBoundsException("index " + index
+							+ ", size " + current.size);
+				current.slots.set(index, value);
+			}
+		}
+
+		@Override
+		void remove(int index) {
+			synchronized (lock) {
+				View current = view;
+				if (index < 0 || index >= current.size)
+					throw new IndexOutOfBoundsException("index " + index
+							+ ", size " + current.size);
+				remove(current, index);
+			}
+		}
+
+		/**
+		 * Removes an element by reference, if present.
+		 */
+		@Override
+		boolean removeFirst(J value) {
+			synchronized (lock) {
+				View current = view;
+				int index = 0;
+				while (index < current.size
+						&& current.slots.get(index) != value)
+					index++;
+				if (index == current.size)
+					return false;
+				remove(current, index);
+				return true;
+			}
+		}
+
+		@Override
+		void clear() {
+			synchronized (lock) {
+				view = EMPTY;
+			}
+		}
+
+		@Override
+		Iterator<J> iterator() {
+			return iterator(view);
+		}
+
+		/**
+		 * Iterates over some elements, removals going to the live ones.
+		 */
+		Iterator<J> iterator(final View values) {
+			return new Iterator<J>() {
+				private int position;
+
+				@Override
+				public boolean hasNext() {
+					return position < values.size;
+				}
+
+				@SuppressWarnings("unchecked")
+				@Override
+				public J next() {
+					if (position == values.size)
+						throw new NoSuchElementException();
+					return (J) values.slots.get(position++);
+				}
+
+				@SuppressWarnings("unchecked")
+				@Override
+				public void remove() {
+					if (position == 0)
+						throw new IllegalStateException();
+					removeFirst((J) values.slots.get(position - 1));
+				}
+			};
+		}
+
+		/**
+		 * Publishes the elements of a view but one. Called holding the lock.
+		 */
+		private void remove(View current, int index) {
+			view = new View(copy(current, current.size - 1, -1, index),
+					current.size - 1);
+		}
+
+		/**
+		 * Copies the elements of a view into new slots, leaving a slot free
+		 * at the given position or skipping the element at the given
+		 * position, either being -1 when not needed.
+		 */
+		private static AtomicReferenceArray<JSON> copy(View current,
+				int capacity, int free, int skipped) {
+			AtomicReferenceArray<JSON> slots = new AtomicReferenceArray<JSON>(
+					capacity);
+			for (int i = 0, j = 0; i < current.size; i++) {
+				if (i == skipped)
+					continue;
+				if (j == free)
+					j++;
+				slots.set(j++, current.slots.get(i));
+			}
+			return slots;
+		}
+
+	}
+
+	/**
+	 * The elements of a view for reading, writes going to the live ones.
+	 */
+	private static final class Fixed<J extends JSON> extends
+			JSONArray.Elements<J> {
+
+		private final Slots<J> live;
+		private final View values;
+
+		Fixed(Slots<J> live, View values) {
+			this.live = live;
+			this.values = values;
+		}
+
+		@Override
+		int size() {
+			return values.size;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		J get(int index) {
+			return (J) values.get(index);
+		}
+
+		@Override
+		void add(J value) {
+			live.add(value);
+		}
+
+		@Override
+		void add(int index, J value) {
+			live.add(index, value);
+		}
+
+		@Override
+		void set(int index, J value) {
+			live.set(index, value);
+		}
+
+		@Override
+		void remove(int index) {
+			live.remove(index);
+		}
+
+		@Override
+		boolean removeFirst(J value) {
+			return live.removeFirst(value);
+		}
+
+		@Override
+		void clear() {
+			live.clear();
+		}
+
+		@Override
+		Iterator<J> iterator() {
+			return live.iterator(values);
+		}
+
+	}
+
+	private final Slots<J> slots;
+
+	/**
+	 * Creates a new empty JSONConcurrentArray.
+	 */
+	public JSONConcurrentArray() {
+		this(new Slots<J>());
+	}
+
+	private JSONConcurrentArray(Slots<J> slots) {
+		super(slots);
+		this.slots = slots;
+	}
+
+	@Override
+	JSONArray<J> snapshot() {
+		return new Snapshot(slots.view);
+	}
+
+	@Override
+	boolean isConcurrent() {
+		return true;
+	}
+
+	/**
+	 * Caches no hash, and as a hash of an enclosing container may be being
+	 * computed over the old children, invalidates all the cached hashes.
+	 * Called after every change, so that no hash is stamped with the new
+	 * epoch while still covering the old elements.
+	 */
+	@Override
+	boolean dropHash() {
+		invalidateAll();
+		return false;
+	}
+
+	/**
+	 * The elements of the array at a given time. Reads see those elements
+	 * only, while writes go to the live array.
+	 */
+	private final class Snapshot extends JSONArray<J> {
+
+		Snapshot(View values) {
+			super(new Fixed<J>(slots, values));
+		}
+
+		@Override
+		JSONArray<J> snapshot() {
+			return this;
+		}
+
+		@Override
+		boolean isConcurrent() {
+			return true;
+		}
+
+		@Override
+		void modified() {
+			JSONConcurrentArray.this.modified();
+		}
+
+	}
+
+}
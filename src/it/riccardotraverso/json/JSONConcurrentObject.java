@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A {@link JSONObject} that can be read and modified by several threads at
+ * once without external synchronization.
+ * 
+ * Properties are found through a {@link ConcurrentHashMap}, and their values
+ * are volatile: reading a property or updating the value of an existing one
+ * takes no lock and copies nothing, which makes objects whose set of names is
+ * mostly stable, like maps of counters or statuses, scale with the number of
+ * threads. The insertion order of the properties is kept in an array that is
+ * copied and replaced with a compare-and-set when properties are added or
+ * removed. Iterators walk the properties present when they were created,
+ * ignoring later additions and removals instead of throwing
+ * {@link java.util.ConcurrentModificationException}, while still seeing the
+ * latest value of each property.
+ * 
+ * Unlike in other objects, names are unique and properties cannot be
+ * renamed.
+ */
+public class JSONConcurrentObject extends JSONObject {
+
+	/**
+	 * A property of a concurrent object, whose value can be changed while
+	 * other threads read it.
+	 */
+	private final class Entry extends JSONObject.Property {
+
+		private volatile JSON current;
+
+		/** Set when the property has been removed from the object */
+		private volatile boolean removed;
+
+		Entry(String name, JSON value) {
+			super(name, value);
+			this.current = value;
+		}
+
+		/**
+		 * Always throws, as the name of a property is also its key.
+		 * 
+		 * @throws UnsupportedOperationException
+		 */
+		@Override
+		public void setName(String name) {
+			throw new UnsupportedOperationException(
+					"properties of concurrent objects cannot be renamed");
+		}
+
+		@Override
+		public JSON getValue() {
+			return current;
+		}
+
+		@Override
+		public void setValue(JSON value) {
+			this.current = value;
+			modified();
+		}
+
+		@Override
+		public void accept(JSONVisitor v) {
+			v.visitJSONProperty(this);
+			current.accept(v);
+		}
+
+	}
+
+	private static final Entry[] EMPTY = new Entry[0];
+
+	private static final AtomicReferenceFieldUpdater<JSONConcurrentObject, Entry[]> ORDER = AtomicReferenceFieldUpdater
+			.newUpdater(JSONConcurrentObject.class, Entry[].class, "order");
+
+	/** Maps each name to its property */
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	/** The properties in insertion order, replaced as a whole by every change */
+	private volatile Entry[] order = EMPTY;
+
+	/**
+	 * Creates a new, empty JSONConcurrentObject.
+	 */
+	public JSONConcurrentObject() {
+	}
+
+	@Override
+	public JSONObject setProperty(String name, JSON value) {
+		if (name == null)
+			throw new IllegalArgumentException("name cannot be null");
+		if (value == null)
+			throw new IllegalArgumentException("value cannot be null");
+		for (;;) {
+			Entry entry = entries.get(name);
+			if (entry == null) {
+				Entry created = new Entry(name, value);
+				entry = entries.putIfAbsent(name, created);
+				if (entry == null) {
+					link(created);
+					modified();
+					return this;
+				}
+			}
+			entry.current = value;
+			// Retry if the property was removed meanwhile
+			if (!entry.removed) {
+				modified();
+				return this;
+			}
+		}
+	}
+
+	/**
+	 * Caches no hash, and as a hash of an enclosing container may be being
+	 * computed over the old children, invalidates all the cached hashes.
+	 */
+	@Override
+	boolean dropHash() {
+		invalidateAll();
+		return false;
+	}
+
+	@Override
+	public boolean removeProperty(String name) {
+		Entry entry = name == null ? null : entries.remove(name);
+		if (entry == null)
+			return false;
+		entry.removed = true;
+		unlink(entry);
+		modified();
+		return true;
+	}
+
+	@Override
+	public JSONObject.Property getProperty(String name) {
+		return name == null ? null : entries.get(name);
+	}
+
+	@Override
+	public JSON getPropertyValue(String propertyName) {
+		Entry entry = propertyName == null ? null : entries.get(propertyName);
+		return entry == null ? null : entry.current;
+	}
+
+	@Override
+	public int size() {
+		return order.length;
+	}
+
+	@Override
+	JSONObject.Property getProperty(int position) {
+		return order[position];
+	}
+
+	@Override
+	public Iterator<Property> iterator() {
+		return iterator(order);
+	}
+
+	@Override
+	JSONObject snapshot() {
+		return new Snapshot(order);
+	}
+
+	@Override
+	boolean isConcurrent() {
+		return true;
+	}
+
+	@Override
+	JSONObject.Property newProperty(String name, JSON value) {
+		return new Entry(name, value);
+	}
+
+	@Override
+	void addProperty(String name, JSON value) {
+		setProperty(name, value);
+	}
+
+	@Override
+	void recycle() {
+		entries.clear();
+		order = EMPTY;
+		modified();
+	}
+
+	/**
+	 * Appends a property that has just been put in the map to the insertion
+	 * order.
+	 */
+	private void link(Entry entry) {
+		for (;;) {
+			Entry[] current = order;
+			Entry[] next = Arrays.copyOf(current, current.length + 1);
+			next[current.length] = entry;
+			if (ORDER.compareAndSet(this, current, next))
+				break;
+		}
+		// A removal may have run between the map and the order update
+		if (entry.removed)
+			unlink(entry);
+	}
+
+	private void unlink(Entry entry) {
+		for (;;) {
+			Entry[] current = order;
+			int index = 0;
+			while (index < current.length && current[index] != entry)
+				index++;
+			if (index == current.length)
+				return;
+			Entry[] next = new Entry[current.length - 1];
+			System.arraycopy(current, 0, next, 0, index);
+			System.arraycopy(current, index + 1, next, index, next.length
+					- index);
+			if (ORDER.compareAndSet(this, current, next))
+				return;
+		}
+	}
+
+	/**
+	 * Iterates over some properties, removals going to the live object.
+	 */
+	private Iterator<Property> iterator(final Entry[] entries) {
+		return new Iterator<Property>() {
+			private int position;
+
+			@Override
+			public boolean hasNext() {
+				return position < entries.length;
+			}
+
+			@Override
+			public Property next() {
+				if (position == entries.length)
+					throw new NoSuchElementException();
+				return entries[position++];
+			}
+
+			@Override
+			public void remove() {
+				if (position == 0)
+					throw new IllegalStateException();
+				Entry last = entries[position - 1];
+				if (JSONConcurrentObject.this.entries.remove(last.getName(),
+						last)) {
+					last.removed = true;
+					unlink(last);
+					modified();
+				}
+			}
+		};
+	}
+
+	/**
+	 * The properties of the object at a given time. Reads by position see
+	 * those properties only, while reads by name and writes go to the live
+	 * object.
+	 */
+	private final class Snapshot extends JSONObject {
+
+		private final Entry[] entries;
+
+		Snapshot(Entry[] entries) {
+			this.entries = entries;
+		}
+
+		@Override
+		public JSONObject setProperty(String name, JSON value) {
+			JSONConcurrentObject.this.setProperty(name, value);
+			return this;
+		}
+
+		@Override
+		public boolean removeProperty(String name) {
+			return JSONConcurrentObject.this.removeProperty(name);
+		}
+
+		@Override
+		public JSONObject.Property getProperty(String name) {
+			return JSONConcurrentObject.this.getProperty(name);
+		}
+
+		@Override
+		public JSON getPropertyValue(String propertyName) {
+			return JSONConcurrentObject.this.getPropertyValue(propertyName);
+		}
+
+		@Override
+		public int size() {
+			return entries.length;
+		}
+
+		@Override
+		JSONObject.Property getProperty(int position) {
+			return entries[position];
+		}
+
+		@Override
+		public Iterator<Property> iterator() {
+			return JSONConcurrentObject.this.iterator(entries);
+		}
+
+		@Override
+		JSONObject snapshot() {
+			return this;
+		}
+
+		@Override
+		boolean isConcurrent() {
+			return true;
+		}
+
+	}
+
+}
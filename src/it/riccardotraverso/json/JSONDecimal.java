@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package it.riccardotraverso.json;
+
+import java.math.BigDecimal;
+
+/**
+ * A JSON number of arbitrary size and precision, represented as a
+ * {@link BigDecimal}.
+ */
+public class JSONDecimal extends JSONNumber {
+
+	/** The digits read by a parser, or null once the value is changed */
+	private String text;
+	private volatile BigDecimal value;
+
+	/**
+	 * Creates a new decimal JSON value.
+	 * 
+	 * @param value
+	 */
+	public JSONDecimal(BigDecimal value) {
+		setValue(value);
+	}
+
+	/**
+	 * Creates a new decimal JSON value.
+	 * 
+	 * @param value
+	 */
+	public JSONDecimal(String value) {
+		this(new BigDecimal(value));
+	}
+
+	JSONDecimal(String text, boolean lazy) {
+		this.text = text;
+	}
+
+	/**
+	 * Creates a value from digits already validated by a parser, which are
+	 * converted only when the value is first requested.
+	 */
+	static JSONDecimal ofText(String text) {
+		return new JSONDecimal(text, true);
+	}
+
+	/**
+	 * Returns the decimal value being represented.
+	 * 
+	 * @return the value
+	 */
+	public BigDecimal getValue() {
+		BigDecimal v = value;
+		if (v == null) {
+			value = v = new BigDecimal(text);
+		}
+		return v;
+	}
+
+	/**
+	 * Sets the decimal value being represented.
+	 * 
+	 * @param value
+	 *            the value to set
+	 */
+	public void setValue(BigDecimal value) {
+		if (value == null)
+			throw new IllegalArgumentException("value cannot be null");
+		modified();
+		this.value = value;
+		this.text = null;
+	}
+
+	@Override
+	public int intValue() {
+		return getValue().intValue();
+	}
+
+	@Override
+	public long longValue() {
+		return getValue().longValue();
+	}
+
+	@Override
+	public double doubleValue() {
+		return getValue().doubleValue();
+	}
+
+	@Override
+	public BigDecimal decimalValue() {
+		return getValue();
+	}
+
+	@Override
+	public String getNumberText() {
+		String t = text;
+		return t != null ? t : value.toString();
+	}
+
+	/**
+	 * Replaces the value of a node reused by a parser with digits it has
+	 * already validated.
+	 */
+	void resetText(String text) {
+		this.text = text;
+		this.value = null;
+	}
+
+	/**
+	 * Returns the digits read by a parser, or null if the value was set
+	 * afterwards.
+	 */
+	String rawText() {
+		return text;
+	}
+
+	@Override
+	public void accept(JSONVisitor v) {
+		v.visitJSONDecimal(this);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return hashCode(this);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof JSONNumber))
+			return false;
+		return equal(this, (JSONNumber) obj);
+	}
+
+}
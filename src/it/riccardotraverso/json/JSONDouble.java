@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package it.riccardotraverso.json;
+
+import java.math.BigDecimal;
+
+/**
+ * A JSON number with a fractional part or an exponent, represented as a
+ * double.
+ */
+public class JSONDouble extends JSONNumber {
+
+	/** The digits read by a parser, or null once the value is changed */
+	private String text;
+	private double value;
+	private volatile boolean parsed;
+
+	/**
+	 * Creates a new double JSON value.
+	 * 
+	 * @param value
+	 * @throws IllegalArgumentException
+	 *             if the value is NaN or infinite, as JSON cannot represent
+	 *             them
+	 */
+	public JSONDouble(double value) {
+		setValue(value);
+	}
+
+	/**
+	 * Creates a new double JSON value.
+	 * 
+	 * @param value
+	 */
+	public JSONDouble(Double value) {
+		this(value == null ? 0 : value.doubleValue());
+	}
+
+	/**
+	 * Creates a new double JSON value.
+	 * 
+	 * @param value
+	 */
+	public JSONDouble(String value) {
+		this(value == null ? 0 : Double.parseDouble(value));
+	}
+
+	JSONDouble(String text, boolean lazy) {
+		this.text = text;
+	}
+
+	/**
+	 * Creates a value from digits already validated by a parser, which are
+	 * converted only when the value is first requested.
+	 */
+	static JSONDouble ofText(String text) {
+		return new JSONDouble(text, true);
+	}
+
+	/**
+	 * Returns the double value being represented.
+	 * 
+	 * @return the value
+	 */
+	public double getValue() {
+		if (!parsed) {
+			value = Double.parseDouble(text);
+			parsed = true;
+		}
+		return value;
+	}
+
+	/**
+	 * Sets the double value being represented.
+	 * 
+	 * @param value
+	 *            the value to set
+	 * @throws IllegalArgumentException
+	 *             if the value is NaN or infinite, as JSON cannot represent
+	 *             them
+	 */
+	public void setValue(double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value))
+			throw new IllegalArgumentException("not representable in JSON: " + value);
+		modified();
+		reset(value);
+	}
+
+	/**
+	 * Sets the value of a node passed to visitors and reused for several
+	 * values, which is not part of any tree and thus invalidates no hash.
+	 */
+	void reset(double value) {
+		this.value = value;
+		this.parsed = true;
+		this.text = null;
+	}
+
+	@Override
+	public int intValue() {
+		return (int) getValue();
+	}
+
+	@Override
+	public long longValue() {
+		return (long) getValue();
+	}
+
+	@Override
+	public double doubleValue() {
+		return getValue();
+	}
+
+	/**
+	 * Returns the exact value of the original digits when read by a parser,
+	 * or the exact value of the double otherwise.
+	 */
+	@Override
+	public BigDecimal decimalValue() {
+		String t = text;
+		return t != null ? new BigDecimal(t) : new BigDecimal(value);
+	}
+
+	@Override
+	BigDecimal numericValue() {
+		double v = getValue();
+		// Only digits read by a parser can be out of the range of a double
+		return Double.isInfinite(v) ? decimalValue() : BigDecimal.valueOf(v);
+	}
+
+	@Override
+	public String getNumberText() {
+		String t = text;
+		return t != null ? t : Double.toString(value);
+	}
+
+	/**
+	 * Replaces the value of a node reused by a parser with digits it has
+	 * already validated.
+	 */
+	void resetText(String text) {
+		this.text = text;
+		this.parsed = false;
+	}
+
+	/**
+	 * Returns the digits read by a parser, or null if the value was set
+	 * afterwards.
+	 */
+	String rawText() {
+		return text;
+	}
+
+	@Override
+	public void accept(JSONVisitor v) {
+		v.visitJSONDouble(this);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return hashCode(this);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof JSONNumber))
+			return false;
+		return equal(this, (JSONNumber) obj);
+	}
+
+}
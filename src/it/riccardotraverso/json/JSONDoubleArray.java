@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link JSONArray} of doubles stored in a {@code double[]}, which takes
+ * eight bytes per element instead of a {@link JSONDouble} and a reference to it.
+ * 
+ * Numeric code can read and write the elements without boxing through
+ * {@link #getDouble(int)}, {@link #setDouble(int, double)}, {@link #addDouble(double)} and
+ * their bulk variants. To the rest of the library the elements are still
+ * {@link JSONDouble}s: {@link #getValue(int)} and the iterator return new nodes,
+ * whose changes do not affect the array, while visitors walking the array
+ * receive a single node reused for all its elements, which they must copy to
+ * keep, as when streaming.
+ */
+public class JSONDoubleArray extends JSONArray<JSONDouble> {
+
+	/**
+	 * The elements, stored in the first {@code size} slots of a
+	 * {@code double[]}.
+	 */
+	private static final class Doubles extends JSONArray.Elements<JSONDouble> {
+
+		private static final double[] EMPTY = new double[0];
+
+		private double[] values = EMPTY;
+		private int size;
+
+		@Override
+		int size() {
+			return size;
+		}
+
+		@Override
+		JSONDouble get(int index) {
+			return new JSONDouble(getDouble(index));
+		}
+
+		@Override
+		JSON visit(int index, JSONWalker.Scratch scratch) {
+			if (scratch.decimal == null)
+				scratch.decimal = new JSONDouble(0);
+			scratch.decimal.reset(values[index]);
+			return scratch.decimal;
+		}
+
+		@Override
+		void add(JSONDouble value) {
+			addDouble(unbox(value));
+		}
+
+		@Override
+		void add(int index, JSONDouble value) {
+			if (index < 0 || index > size)
+				throw new IndexOutOfBoundsException("index " + index
+						+ ", size " + size);
+			double unboxed = unbox(value);
+			validate(unboxed);
+			ensureCapacity(size + 1);
+			System.arraycopy(values, index, values, index + 1, size - index);
+			values[index] = unboxed;
+			size++;
+		}
+
+		@Override
+		void set(int index, JSONDouble value) {
+			setDouble(index, unbox(value));
+		}
+
+		@Override
+		void remove(int index) {
+			check(index);
+			System.arraycopy(values, index + 1, values, index, size - index
+					- 1);
+			size--;
+		}
+
+		@Override
+		boolean removeFirst(JSONDouble value) {
+			if (value == null)
+				return false;
+			double unboxed = value.getValue();
+			for (int i = 0; i < size; i++) {
+				if (Double.compare(values[i], unboxed) == 0) {
+					remove(i);
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		void clear() {
+			size = 0;
+		}
+
+		@Override
+		Iterator<JSONDouble> iterator() {
+			return new Iterator<JSONDouble>() {
+				private int position;
+				private boolean removable;
+
+				@Override
+				public boolean hasNext() {
+					return position < size;
+				}
+
+				@Override
+				public JSONDouble next() {
+					if (position >= size)
+						throw new NoSuchElementException();
+					removable = true;
+					return new JSONDouble(values[position++]);
+				}
+
+				@Override
+				public void remove() {
+					if (!removable)
+						throw new IllegalStateException();
+					removable = false;
+					Doubles.this.remove(--position);
+				}
+			};
+		}
+
+		double getDouble(int index) {
+			check(index);
+			return values[index];
+		}
+
+		void setDouble(int index, double value) {
+			check(index);
+			validate(value);
+			values[index] = value;
+		}
+
+		void addDouble(double value) {
+			validate(value);
+			ensureCapacity(size + 1);
+			values[size++] = value;
+		}
+
+		void addDoubles(double[] src, int offset, int length) {
+			if (offset < 0 || length < 0 || offset + length > src.length)
+				throw new IndexOutOfBoundsException("offset " + offset
+						+ ", length " + length + ", source " + src.length);
+			for (int i = offset; i < offset + length; i++) {
+				validate(src[i]);
+			}
+			ensureCapacity(size + length);
+			System.arraycopy(src, offset, values, size, length);
+			size += length;
+		}
+
+		void getDoubles(int index, double[] dst, int offset, int length) {
+			if (index < 0 || length < 0 || index + length > size)
+				throw new IndexOutOfBoundsException("index " + index
+						+ ", length " + length + ", size " + size);
+			System.arraycopy(values, index, dst, offset, length);
+		}
+
+		double[] toDoubleArray() {
+			return Arrays.copyOf(values, size);
+		}
+
+		private void check(int index) {
+			if (index < 0 || index >= size)
+				throw new IndexOutOfBoundsException("index " + index
+						+ ", size " + size);
+		}
+
+		private void ensureCapacity(int capacity) {
+			if (capacity > values.length)
+				values = Arrays.copyOf(values, Math.max(capacity, values.length
+						+ (values.length >> 1) + 8));
+		}
+
+	}
+
+	private final Doubles doubles;
+
+	/**
+	 * Creates a new empty JSONDoubleArray.
+	 */
+	public JSONDoubleArray() {
+		this(new Doubles());
+	}
+
+	/**
+	 * Creates an array holding a copy of some values.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if a value is NaN or infinite
+	 */
+	public JSONDoubleArray(double[] values) {
+		this();
+		addDoubles(values, 0, values.length);
+	}
+
+	private JSONDoubleArray(Doubles doubles) {
+		super(doubles);
+		this.doubles = doubles;
+	}
+
+	/**
+	 * Returns the element at a given index.
+	 */
+	public double getDouble(int index) {
+		return doubles.getDouble(index);
+	}
+
+	/**
+	 * Replaces the element at a given index.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the value is NaN or infinite, as JSON cannot represent
+	 *             it
+	 */
+	public void setDouble(int index, double value) {
+		doubles.setDouble(index, value);
+		modified();
+	}
+
+	/**
+	 * Appends an element.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the value is NaN or infinite, as JSON cannot represent
+	 *             it
+	 */
+	public void addDouble(double value) {
+		doubles.addDouble(value);
+		modified();
+	}
+
+	/**
+	 * Appends {@code length} elements read from {@code src} starting at
+	 * {@code offset}.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if a value is NaN or infinite
+	 */
+	public void addDoubles(double[] src, int offset, int length) {
+		doubles.addDoubles(src, offset, length);
+		modified();
+	}
+
+	/**
+	 * Copies {@code length} elements starting at {@code index} into
+	 * {@code dst} starting at {@code offset}.
+	 */
+	public void getDoubles(int index, double[] dst, int offset, int length) {
+		doubles.getDoubles(index, dst, offset, length);
+	}
+
+	/**
+	 * Returns a copy of the elements.
+	 */
+	public double[] toDoubleArray() {
+		return doubles.toDoubleArray();
+	}
+
+	/**
+	 * Appends the value of a node.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the value is null
+	 */
+	@Override
+	public void addValue(JSONDouble value) {
+		super.addValue(value);
+	}
+
+	/**
+	 * Removes the first element equal to the value of a node.
+	 */
+	@Override
+	public void removeValue(JSONDouble value) {
+		super.removeValue(value);
+	}
+
+	/**
+	 * Returns a new node holding the element at a given index.
+	 */
+	@Override
+	public JSON getValue(int index) {
+		return super.getValue(index);
+	}
+
+	private static double unbox(JSONDouble value) {
+		if (value == null)
+			throw new IllegalArgumentException("value cannot be null");
+		return value.getValue();
+	}
+
+	private static void validate(double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value))
+			throw new IllegalArgumentException("not representable in JSON: "
+					+ value);
+	}
+
+}
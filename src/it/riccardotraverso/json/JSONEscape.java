@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package it.riccardotraverso.json;
+
+/**
+ * Escaping of JSON strings, with the exact size of the escaped output
+ * computed beforehand when needed. Quotes, backslashes and control
+ * characters are escaped; anything else is copied as is, or encoded in UTF-8
+ * for binary outputs, where unpaired surrogates are replaced with '?'.
+ * 
+ * Text fields are usually long runs of characters needing no escape, so the
+ * scan is the hot loop. It is SWAR (SIMD within a register) on plain long
+ * arithmetic: four characters are packed into the 16-bit lanes of a long and
+ * tested at once for control characters, quotes and backslashes, and for
+ * characters out of ASCII when encoding in UTF-8, two longs covering eight
+ * characters per iteration. The runs it finds are then copied in bulk.
+ */
+final class JSONEscape {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private JSONEscape() {
+		// Class not instantiable
+	}
+
+	/** A one in each 16-bit lane */
+	private static final long LANES = 0x0001000100010001L;
+
+	/** The high bit of each 16-bit lane */
+	private static final long HIGH = 0x8000800080008000L;
+
+	/** The bits of each 16-bit lane that are set only out of ASCII */
+	private static final long NON_ASCII = 0xFF80FF80FF80FF80L;
+
+	/**
+	 * Returns a negative value iff the character is a control character, a
+	 * quote or a backslash, without branching.
+	 */
+	private static int flag(char c) {
+		return (c - 0x20) | ((c ^ '"') - 1) | ((c ^ '\\') - 1);
+	}
+
+	/**
+	 * Returns a negative value iff the character needs an escape or it is not
+	 * ASCII, without branching.
+	 */
+	private static int asciiFlag(char c) {
+		return flag(c) | (0x7F - c);
+	}
+
+	/**
+	 * Packs four characters into the lanes of a long, the first one in the
+	 * lowest lane.
+	 */
+	private static long pack(String s, int i) {
+		return s.charAt(i) | (long) s.charAt(i + 1) << 16
+				| (long) s.charAt(i + 2) << 32 | (long) s.charAt(i + 3) << 48;
+	}
+
+	/**
+	 * Returns the high bit of the lanes holding a control character, a quote
+	 * or a backslash, possibly along with the high bit of the lanes above
+	 * them, so that the result is non-zero iff any lane needs an escape.
+	 * Lanes of 0x8000 and above have their high bit set, which rules them out
+	 * of every test.
+	 */
+	private static long flags(long lanes) {
+		long quotes = lanes ^ ('"' * LANES);
+		long backslashes = lanes ^ ('\\' * LANES);
+		return ((lanes - 0x20 * LANES) | (quotes - LANES)
+				| (backslashes - LANES)) & ~lanes & HIGH;
+	}
+
+	/**
+	 * Returns the index of the first character from {@code from} that needs
+	 * an escape, or {@code to} if there is none.
+	 */
+	static int scan(String s, int from, int to) {
+		int i = from;
+		for (int limit = to - 8; i <= limit; i += 8) {
+			if ((flags(pack(s, i)) | flags(pack(s, i + 4))) != 0)
+				break;
+		}
+		while (i < to && flag(s.charAt(i)) >= 0)
+			i++;
+		return i;
+	}
+
+	/**
+	 * Returns the index of the first character from {@code from} that needs
+	 * an escape or is not ASCII, or {@code to} if there is none.
+	 */
+	static int scanAscii(String s, int from, int to) {
+		int i = from;
+		for (int limit = to - 8; i <= limit; i += 8) {
+			long low = pack(s, i);
+			long high = pack(s, i + 4);
+			if (((low | high) & NON_ASCII | flags(low) | flags(high)) != 0)
+				break;
+		}
+		while (i < to && asciiFlag(s.charAt(i)) >= 0)
+			i++;
+		return i;
+	}
+
+	/**
+	 * Returns the escape letter of a character ('n' for a newline and so on),
+	 * 'u' when it needs a unicode escape, or 0 when it needs no escape.
+	 */
+	static char escapeOf(char c) {
+		if (c >= 0x20)
+			return c == '"' || c == '\\' ? c : 0;
+		switch (c) {
+		case '\b':
+			return 'b';
+		case '\f':
+			return 'f';
+		case '\n':
+			return 'n';
+		case '\r':
+			return 'r';
+		case '\t':
+			return 't';
+		default:
+			return 'u';
+		}
+	}
+
+	/**
+	 * Returns the number of characters of the escaped form of a string,
+	 * quotes excluded.
+	 */
+	static int escapedLength(String s) {
+		int length = s.length();
+		int extra = 0;
+		for (int i = scan(s, 0, length); i < length; i = scan(s, i + 1, length)) {
+			extra += escapeOf(s.charAt(i)) == 'u' ? 5 : 1;
+		}
+		return length + extra;
+	}
+
+	/**
+	 * Returns the number of bytes of the UTF-8 encoded, escaped form of a
+	 * string, quotes excluded.
+	 */
+	static int escapedUtf8Length(String s) {
+		int length = s.length();
+		int bytes = 0;
+		int i = 0;
+		for (;;) {
+			int run = scanAscii(s, i, length);
+			bytes += run - i;
+			if (run == length)
+				return bytes;
+			char c = s.charAt(run);
+			i = run + 1;
+			if (c < 0x80) {
+				bytes += escapeOf(c) == 'u' ? 6 : 2;
+			} else if (c < 0x800) {
+				bytes += 2;
+			} else if (c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE) {
+				bytes += 3;
+			} else if (Character.isHighSurrogate(c) && i < length
+					&& Character.isLowSurrogate(s.charAt(i))) {
+				bytes += 4;
+				i++;
+			} else {
+				bytes += 1;
+			}
+		}
+	}
+
+	/**
+	 * Writes the escaped form of a string, quotes excluded, into a buffer
+	 * large enough to hold it.
+	 * 
+	 * @return the position following the last character written
+	 */
+	static int escape(String s, char[] dst, int pos) {
+		int length = s.length();
+		int start = 0;
+		for (int i = scan(s, 0, length); i < length; i = scan(s, start, length)) {
+			s.getChars(start, i, dst, pos);
+			pos += i - start;
+			char c = s.charAt(i);
+			pos = escape(c, escapeOf(c), dst, pos);
+			start = i + 1;
+		}
+		s.getChars(start, length, dst, pos);
+		return pos + length - start;
+	}
+
+	/**
+	 * Appends the escaped form of a string, quotes excluded.
+	 */
+	static void escape(String s, StringBuilder sb) {
+		int length = s.length();
+		int start = 0;
+		for (int i = scan(s, 0, length); i < length; i = scan(s, start, length)) {
+			sb.append(s, start, i);
+			char c = s.charAt(i);
+			char e = escapeOf(c);
+			sb.append('\\');
+			if (e != 'u') {
+				sb.append(e);
+			} else {
+				sb.append("u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+			}
+			start = i + 1;
+		}
+		sb.append(s, start, length);
+	}
+
+	/**
+	 * Writes the escape sequence of a character.
+	 * 
+	 * @param e
+	 *            the result of {@link #escapeOf(char)} for {@code c}
+	 * @return the position following the last character written
+	 */
+	static int escape(char c, char e, char[] dst, int pos) {
+		dst[pos++] = '\\';
+		if (e != 'u') {
+			dst[pos++] = e;
+			return pos;
+		}
+		dst[pos++] = 'u';
+		dst[pos++] = '0';
+		dst[pos++] = '0';
+		dst[pos++] = HEX[c >> 4];
+		dst[pos++] = HEX[c & 0xF];
+		return pos;
+	}
+
+	/**
+	 * Writes the UTF-8 encoded, escaped form of a string, quotes excluded,
+	 * into a buffer large enough to hold it.
+	 * 
+	 * @return the position following the last byte written
+	 */
+	static int escapeUtf8(String s, byte[] dst, int pos) {
+		int length = s.length();
+		int i = 0;
+		for (;;) {
+			int run = scanAscii(s, i, length);
+			for (; i < run; i++) {
+				dst[pos++] = (byte) s.charAt(i);
+			}
+			if (run == length)
+				return pos;
+			char c = s.charAt(i++);
+			if (c < 0x80) {
+				char e = escapeOf(c);
+				dst[pos++] = '\\';
+				if (e != 'u') {
+					dst[pos++] = (byte) e;
+				} else {
+					dst[pos++] = 'u';
+					dst[pos++] = '0';
+					dst[pos++] = '0';
+					dst[pos++] = (byte) HEX[c >> 4];
+					dst[pos++] = (byte) HEX[c & 0xF];
+				}
+			} else if (c < 0x800) {
+				dst[pos++] = (byte) (0xC0 | (c >> 6));
+				dst[pos++] = (byte) (0x80 | (c & 0x3F));
+			} else if (c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE) {
+				dst[pos++] = (byte) (0xE0 | (c >> 12));
+				dst[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				dst[pos++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i < length
+					&& Character.isLowSurrogate(s.charAt(i))) {
+				int cp = Character.toCodePoint(c, s.charAt(i++));
+				dst[pos++] = (byte) (0xF0 | (cp >> 18));
+				dst[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				dst[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				dst[pos++] = (byte) (0x80 | (cp & 0x3F));
+			} else {
+				dst[pos++] = '?';
+			}
+		}
+	}
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package it.riccardotraverso.json;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Turns the tokens of a {@link JSONParser} into {@link JSONVisitor} callbacks.
+ * 
+ * Instead of building a node for each value, the dispatcher keeps a single
+ * instance of each node type and refreshes it before every callback, so that
+ * visiting a document takes constant memory whatever its size.
+ * 
+ * @see JSONParser#accept(JSONVisitor)
+ */
+class JSONEventDispatcher {
+
+	private final JSONObject object = new JSONObject();
+	private final JSONArray<JSON> array = new JSONArray<JSON>();
+	private final JSONNull nullValue = new JSONNull();
+	private final JSONObject.Property property = object.new Property("?", nullValue);
+	private final JSONString string = new JSONString(null);
+	private final JSONRawString rawString = new JSONRawString();
+	private final JSONInteger integer = new JSONInteger(0);
+	private final JSONLong longInteger = new JSONLong(0);
+	private final JSONDouble decimal = new JSONDouble(0);
+	private final JSONDecimal bigDecimal = new JSONDecimal(BigDecimal.ZERO);
+	private final JSONBoolean bool = new JSONBoolean(false);
+
+	/**
+	 * Calls the visitor method corresponding to the current token of a
+	 * parser.
+	 */
+	void dispatch(JSONParser parser, JSONToken token, JSONVisitor v)
+			throws IOException {
+		switch (token) {
+		case START_OBJECT:
+			v.enterJSONObject(object);
+			break;
+		case END_OBJECT:
+			v.exitJSONObject(object);
+			break;
+		case START_ARRAY:
+			v.enterJSONArray(array);
+			break;
+		case END_ARRAY:
+			v.exitJSONArray(array);
+			break;
+		case PROPERTY_NAME:
+			property.reset(parser.getText());
+			v.visitJSONProperty(property);
+			break;
+		case STRING:
+			if (parser.isRawString()) {
+				parser.resetRawString(rawString);
+				v.visitJSONString(rawString);
+			} else {
+				string.reset(parser.getText());
+				v.visitJSONString(string);
+			}
+			break;
+		case NUMBER:
+			switch (parser.numberKind()) {
+			case JSONParser.INT:
+				integer.reset(parser.getIntValue());
+				v.visitJSONInteger(integer);
+				break;
+			case JSONParser.LONG:
+				longInteger.resetText(parser.getText());
+				v.visitJSONLong(longInteger);
+				break;
+			case JSONParser.DOUBLE:
+				decimal.resetText(parser.getText());
+				v.visitJSONDouble(decimal);
+				break;
+			default:
+				bigDecimal.resetText(parser.getText());
+				v.visitJSONDecimal(bigDecimal);
+				break;
+			}
+			break;
+		case TRUE:
+		case FALSE:
+			bool.reset(token == JSONToken.TRUE);
+			v.visitJSONBoolean(bool);
+			break;
+		default:
+			v.visitJSONNull(nullValue);
+			break;
+		}
+	}
+
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package it.riccardotraverso.json;
+
+import java.io.IOException;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+/**
+ * The base of the codecs generated by {@link JSONBindableProcessor}, giving
+ * them the conversions {@link JSONBinder} uses for its own codecs.
+ * 
+ * A generated codec reads and writes the fields of its class directly, and
+ * asks the binder for the codecs of the fields that are not int, long,
+ * double or boolean when the binder creates it, so that no reflection takes
+ * place while converting values. Its methods are not meant to be called by
+ * hand.
+ * 
+ * @param <T>
+ *            the type of the values
+ */
+public abstract class JSONGeneratedCodec<T> implements JSONCodec<T> {
+
+	/**
+	 * Finds the codecs of the fields, which may need this codec. Called by
+	 * the binder once, before the codec is used.
+	 */
+	protected abstract void resolve(JSONBinder binder);
+
+	/**
+	 * Returns the codec of a declared type, taking the types of the elements
+	 * of collections and maps from its type arguments.
+	 */
+	protected static JSONCodec<Object> codecOf(JSONBinder binder, Type type) {
+		return binder.codecOf(type);
+	}
+
+	/**
+	 * Returns a parameterized type.
+	 */
+	protected static Type type(Class<?> rawType, Type... arguments) {
+		return new Parameterized(rawType, arguments);
+	}
+
+	/**
+	 * Returns the type of arrays of a parameterized type.
+	 */
+	protected static Type arrayOf(Type component) {
+		return new GenericArray(component);
+	}
+
+	protected static JSONObject object(JSON json) {
+		if (!(json instanceof JSONObject))
+			throw JSONBinder.mismatch("an object", json);
+		return (JSONObject) json;
+	}
+
+	/**
+	 * Appends a property without looking for one with the same name, as the
+	 * fields have distinct names.
+	 */
+	protected static void addProperty(JSONObject object, String name,
+			JSON value) {
+		object.addProperty(name, value);
+	}
+
+	protected static JSON encode(JSONCodec<Object> codec, Object value) {
+		return JSONBinder.encode(codec, value);
+	}
+
+	protected static Object decode(JSONCodec<Object> codec, JSON json) {
+		return JSONBinder.decode(codec, json);
+	}
+
+	/**
+	 * Decodes the value of a primitive field, which cannot be null.
+	 */
+	protected static Object decode(JSONCodec<Object> codec, JSON json,
+			String name) {
+		Object value = JSONBinder.decode(codec, json);
+		if (value == null)
+			throw new IllegalArgumentException("null value for " + name);
+		return value;
+	}
+
+	protected static void write(JSONCodec<Object> codec, Object value,
+			JSONWriter out) throws IOException {
+		JSONBinder.write(codec, value, out);
+	}
+
+	protected static int intValue(JSON json, String name) {
+		return JSONBinder.intValue(number(json, name));
+	}
+
+	protected static long longValue(JSON json, String name) {
+		return JSONBinder.longValue(number(json, name));
+	}
+
+	protected static double doubleValue(JSON json, String name) {
+		return JSONBinder.doubleValue(number(json, name));
+	}
+
+	protected static boolean booleanValue(JSON json, String name) {
+		if (!(json instanceof JSONBoolean))
+			throw JSONBinder.mismatch("a boolean for " + name, json);
+		return ((JSONBoolean) json).getValue();
+	}
+
+	private static JSONNumber number(JSON json, String name) {
+		if (json instanceof JSONNull)
+			throw new IllegalArgumentException("null value for " + name);
+		if (!(json instanceof JSONNumber))
+			throw JSONBinder.mismatch("a number for " + name, json);
+		return (JSONNumber) json;
+	}
+
+	/**
+	 * Thrown by the codecs of classes without a visible constructor without
+	 * arguments.
+	 */
+	protected static IllegalArgumentException noConstructor(Class<?> type) {
+		return new IllegalArgumentException(type.getName()
+				+ " has no constructor without arguments");
+	}
+
+	private static String name(Type type) {
+		return type instanceof Class ? ((Class<?>) type).getName() : type
+				.toString();
+	}
+
+	private static final class Parameterized implements ParameterizedType {
+
+		private final Class<?> rawType;
+		private final Type[] arguments;
+
+		Parameterized(Class<?> rawType, Type[] arguments) {
+			this.rawType = rawType;
+			this.arguments = arguments;
+		}
+
+		public Type getRawType() {
+			return rawType;
+		}
+
+		public Type[] getActualTypeArguments() {
+			return arguments.clone();
+		}
+
+		public Type getOwnerType() {
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder b = new StringBuilder(rawType.getName()).append('<');
+			for (int i = 0; i < arguments.length; i++) {
+				if (i > 0)
+					b.append(", ");
+				b.append(name(arguments[i]));
+			}
+			return b.append('>').toString();
+		}
+
+	}
+
+	private static final class GenericArray implements GenericArrayType {
+
+		private final Type component;
+
+		GenericArray(Type component) {
+			this.component = component;
+		}
+
+		public Type getGenericComponentType() {
+			return component;
+		}
+
+		@Override
+		public String toString() {
+			return name(component) + "[]";
+		}
+
+	}
+
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import java.util.ArrayList;
+
+/**
+ * Structural hashing and equality of JSON trees, behind
+ * {@link JSONObject#hashCode()}, {@link JSONArray#hashCode()} and their
+ * {@code equals()}.
+ * 
+ * Hashes are 64 bits wide: the hash of an array depends on its elements in
+ * order, the hash of an object on its properties in any order, and scalars
+ * are hashed from their value, consistently with their {@code equals()}.
+ * {@code hashCode()} folds them to 32 bits. Containers cache their hash:
+ * immutable ones keep it forever, while mutable ones keep it until a node
+ * below them changes (see {@link JSON#modified()}). Hashing a tree again
+ * after a change thus costs the containers on the path to the change, while
+ * immutable subtrees shared by several versions of a document are hashed
+ * only once. Concurrent containers are hashed from a snapshot and never
+ * cached, as they can change while being hashed.
+ * 
+ * Hashing records in every node the container holding it, through which
+ * changes invalidate the hashes above them.
+ * 
+ * Both walks are iterative, so that deeply nested trees do not overflow the
+ * stack.
+ */
+final class JSONHashing {
+
+	private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+	private JSONHashing() {
+	}
+
+	/**
+	 * A container being hashed.
+	 */
+	private static final class Frame {
+		final Frame parent;
+		final JSON node;
+		final JSONObject object;
+		final JSONArray<?> array;
+		final int size;
+		final boolean frozen;
+		int position;
+		long hash;
+
+		Frame(Frame parent, JSON node, JSONObject object, JSONArray<?> array) {
+			this.parent = parent;
+			this.node = node;
+			this.object = object;
+			this.array = array;
+			this.size = object != null ? object.size() : array.size();
+			this.frozen = node instanceof JSONImmutable.Frozen;
+			this.hash = object != null ? 0 : 1;
+		}
+
+		JSON next(JSONWalker.Scratch scratch) {
+			JSON child = object != null ? object.getProperty(position++)
+					.getValue() : array.visitValue(position++, scratch);
+			if (!frozen && child != null) {
+				JSON p = child.parent;
+				if (p == null)
+					child.parent = node;
+				else if (p != node)
+					child.parent = JSON.SHARED;
+			}
+			return child;
+		}
+
+		void add(long h) {
+			if (object != null) {
+				String name = object.getProperty(position - 1).getName();
+				hash += mix(string(name) + MULTIPLIER * h);
+			} else {
+				hash = MULTIPLIER * hash + h;
+			}
+		}
+	}
+
+	/**
+	 * Returns the structural hash of a value.
+	 */
+	static long hash(JSON json) {
+		if (!isContainer(json))
+			return json == null ? 0 : scalar(json);
+		long epoch = JSON.hashEpoch();
+		JSONWalker.Scratch scratch = null;
+		Frame top = null;
+		JSON node = json;
+		for (;;) {
+			long h = 0;
+			boolean opened = false;
+			if (node instanceof JSONObject) {
+				JSONObject object = (JSONObject) node;
+				if (isCached(node, object.hash, object.hashEpoch, epoch)) {
+					h = object.hash;
+				} else {
+					top = new Frame(top, node, object.snapshot(), null);
+					opened = true;
+				}
+			} else if (node instanceof JSONArray) {
+				JSONArray<?> array = (JSONArray<?>) node;
+				if (isCached(node, array.hash, array.hashEpoch, epoch)) {
+					h = array.hash;
+				} else {
+					top = new Frame(top, node, null, array.snapshot());
+					opened = true;
+				}
+			} else if (node != null) {
+				h = scalar(node);
+			}
+			// Climb up while containers are complete
+			for (;;) {
+				if (!opened) {
+					if (top == null)
+						return h;
+					top.add(h);
+				}
+				if (top.position < top.size)
+					break;
+				h = top.hash = mix(top.hash + top.size);
+				store(top, epoch);
+				top = top.parent;
+				opened = false;
+			}
+			if (scratch == null)
+				scratch = new JSONWalker.Scratch();
+			node = top.next(scratch);
+		}
+	}
+
+	/**
+	 * Hashes a scalar consistently with its {@code equals()}, under which
+	 * numbers of different classes are equal when numerically equal.
+	 */
+	private static long scalar(JSON json) {
+		long value;
+		int kind;
+		if (json instanceof JSONString) {
+			String text = ((JSONString) json).getText();
+			value = text == null ? 0 : string(text);
+			kind = 1;
+		} else if (json instanceof JSONNumber) {
+			value = JSONNumber.hash((JSONNumber) json);
+			kind = 2;
+		} else if (json instanceof JSONBoolean) {
+			value = ((JSONBoolean) json).getValue() ? 1 : 0;
+			kind = 6;
+		} else if (json instanceof JSONNull) {
+			value = 0;
+			kind = 7;
+		} else {
+			value = json.hashCode();
+			kind = 8;
+		}
+		return mix(value * MULTIPLIER + kind);
+	}
+
+	private static long string(String s) {
+		long h = s.length();
+		for (int i = 0, n = s.length(); i < n; i++) {
+			h = MULTIPLIER * h + s.charAt(i);
+		}
+		return h;
+	}
+
+	/**
+	 * Spreads the bits of a hash, as the finalizer of MurmurHash3 does.
+	 */
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Tells whether the hash cached by a container is still valid: immutable
+	 * containers use 0 for a hash not computed yet, like {@link String}.
+	 */
+	private static boolean isCached(JSON node, long hash, long hashEpoch,
+			long epoch) {
+		if (node instanceof JSONImmutable.Frozen)
+			return hash != 0;
+		return hashEpoch == epoch;
+	}
+
+	private static void store(Frame frame, long epoch) {
+		if (frame.object != null) {
+			JSONObject object = (JSONObject) frame.node;
+			if (object.snapshot() == frame.object) {
+				object.hash = frame.hash;
+				object.hashEpoch = epoch;
+			}
+		} else {
+			JSONArray<?> array = (JSONArray<?>) frame.node;
+			if (array.snapshot() == frame.array) {
+				array.hash = frame.hash;
+				array.hashEpoch = epoch;
+			}
+		}
+	}
+
+	/**
+	 * Tells whether a diff can skip two values: they are the same node, or
+	 * they are equal. Containers whose cached hashes differ are told apart
+	 * without being visited, while matching hashes are confirmed
+	 * structurally, so that a collision of hashes never hides a change.
+	 */
+	static boolean same(JSON a, JSON b) {
+		return a == b || equal(a, b);
+	}
+
+	/**
+	 * Tells whether two values have the same structure and scalars. Numbers
+	 * are compared by their numeric value, so that for instance {@code 1}
+	 * equals {@code 1.0}.
+	 */
+	static boolean equal(JSON a, JSON b) {
+		if (a == b)
+			return true;
+		if (a == null || b == null)
+			return false;
+		if (isContainer(a) && hash(a) != hash(b))
+			return false;
+		// Pairs of values still to compare
+		ArrayList<JSON> pending = new ArrayList<JSON>();
+		pending.add(a);
+		pending.add(b);
+		long epoch = JSON.hashEpoch();
+		while (!pending.isEmpty()) {
+			JSON y = pending.remove(pending.size() - 1);
+			JSON x = pending.remove(pending.size() - 1);
+			if (x == y)
+				continue;
+			if (x == null || y == null)
+				return false;
+			if (x instanceof JSONObject) {
+				if (!(y instanceof JSONObject) || differ(x, y, epoch))
+					return false;
+				JSONObject p = ((JSONObject) x).snapshot();
+				JSONObject q = ((JSONObject) y).snapshot();
+				int n = p.size();
+				if (q.size() != n)
+					return false;
+				if (sameNames(p, q)) {
+					for (int i = 0; i < n; i++) {
+						pending.add(p.getProperty(i).getValue());
+						pending.add(q.getProperty(i).getValue());
+					}
+				} else {
+					for (int i = 0; i < n; i++) {
+						JSONObject.Property property = p.getProperty(i);
+						JSON other = q.getPropertyValue(property.getName());
+						if (other == null)
+							return false;
+						pending.add(property.getValue());
+						pending.add(other);
+					}
+				}
+			} else if (x instanceof JSONArray) {
+				if (!(y instanceof JSONArray) || differ(x, y, epoch))
+					return false;
+				JSONArray<?> p = ((JSONArray<?>) x).snapshot();
+				JSONArray<?> q = ((JSONArray<?>) y).snapshot();
+				int n = p.size();
+				if (q.size() != n)
+					return false;
+				for (int i = 0; i < n; i++) {
+					pending.add(p.getValue(i));
+					pending.add(q.getValue(i));
+				}
+			} else if (!x.equals(y)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Tells whether two containers are known to differ from their cached
+	 * hashes, without computing any.
+	 */
+	private static boolean differ(JSON x, JSON y, long epoch) {
+		long hx, hy;
+		if (x instanceof JSONObject) {
+			JSONObject p = (JSONObject) x, q = (JSONObject) y;
+			if (!isCached(p, p.hash, p.hashEpoch, epoch)
+					|| !isCached(q, q.hash, q.hashEpoch, epoch))
+				return false;
+			hx = p.hash;
+			hy = q.hash;
+		} else {
+			JSONArray<?> p = (JSONArray<?>) x, q = (JSONArray<?>) y;
+			if (!isCached(p, p.hash, p.hashEpoch, epoch)
+					|| !isCached(q, q.hash, q.hashEpoch, epoch))
+				return false;
+			hx = p.hash;
+			hy = q.hash;
+		}
+		return hx != hy;
+	}
+
+	/**
+	 * Tells whether two objects of the same size have the same names in the
+	 * same order, so that their properties can be compared by position.
+	 */
+	private static boolean sameNames(JSONObject p, JSONObject q) {
+		for (int i = 0, n = p.size(); i < n; i++) {
+			if (!p.getProperty(i).getName().equals(q.getProperty(i).getName()))
+				return false;
+		}
+		return true;
+	}
+
+	static boolean isContainer(JSON json) {
+		return json instanceof JSONObject || json instanceof JSONArray;
+	}
+
+}
@@ -0,0 +1,453 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Persistent, immutable JSON trees.
+ * 
+ * {@link #copyOf(JSON)} freezes a tree into {@link JSONImmutableObject}s,
+ * {@link JSONImmutableArray}s and immutable scalars, which can then be shared
+ * by any number of threads without locking. Edits never touch an existing
+ * tree: {@link #set(JSON, String, JSON)}, {@link #add(JSON, String, JSON)}
+ * and {@link #remove(JSON, String)} return a new root, copying only the containers on the path to the change
+ * and sharing every other subtree with the original, and readers of the old
+ * root keep seeing a consistent version. Each container on the path is
+ * copied in full, though, so an update costs in proportion to the sum of
+ * their sizes rather than to the change: it is cheap in deep documents, but
+ * as costly as a copy of the widest container on the path in documents with
+ * wide objects or arrays.
+ * 
+ * <pre>
+ * JSON config = JSONImmutable.copyOf(JSONParser.parse(text));
+ * JSON updated = JSONImmutable.set(config, &quot;/server/port&quot;, new JSONInteger(8080));
+ * </pre>
+ */
+public final class JSONImmutable {
+
+	/**
+	 * Marks the classes whose instances never change.
+	 */
+	interface Frozen {
+	}
+
+	private JSONImmutable() {
+	}
+
+	/**
+	 * Tells whether a value and all its descendants are immutable.
+	 */
+	public static boolean isImmutable(JSON value) {
+		return value instanceof Frozen || value instanceof JSONNull;
+	}
+
+	/**
+	 * Returns an immutable copy of a tree. Subtrees that are already immutable
+	 * are shared rather than copied, and an immutable tree is returned as is.
+	 * 
+	 * @param value
+	 * @return the frozen tree
+	 * @throws IllegalArgumentException
+	 *             if the tree contains values of an unknown type
+	 */
+	public static JSON copyOf(JSON value) {
+		if (value instanceof JSONTapeValue)
+			value = ((JSONTapeValue) value).toJSON();
+		if (isImmutable(value) || !isContainer(value))
+			return freeze(value);
+
+		// Containers being copied, with the position of the next child and
+		// the name under which the copy goes in its parent
+		JSON[] sources = new JSON[16];
+		JSON[] copies = new JSON[16];
+		String[] names = new String[16];
+		int[] positions = new int[16];
+		int top = 0;
+		sources[0] = snapshot(value);
+		copies[0] = open(value);
+		while (true) {
+			JSON source = sources[top];
+			int position = positions[top]++;
+			int size = source instanceof JSONObject ? ((JSONObject) source)
+					.size() : ((JSONArray<?>) source).size();
+			if (position == size) {
+				JSON copy = close(copies[top]);
+				if (top == 0)
+					return copy;
+				String name = names[top];
+				sources[top] = copies[top] = null;
+				names[top] = null;
+				positions[top] = 0;
+				append(copies[--top], name, copy);
+				continue;
+			}
+
+			String name = null;
+			JSON child;
+			if (source instanceof JSONObject) {
+				JSONObject.Property property = ((JSONObject) source)
+						.getProperty(position);
+				name = property.getName();
+				child = property.getValue();
+			} else {
+				child = ((JSONArray<?>) source).getValue(position);
+			}
+			if (child instanceof JSONTapeValue)
+				child = ((JSONTapeValue) child).toJSON();
+			if (child == null || isImmutable(child) || !isContainer(child)) {
+				append(copies[top], name, freeze(child));
+				continue;
+			}
+			if (++top == sources.length) {
+				sources = Arrays.copyOf(sources, top * 2);
+				copies = Arrays.copyOf(copies, top * 2);
+				names = Arrays.copyOf(names, top * 2);
+				positions = Arrays.copyOf(positions, top * 2);
+			}
+			sources[top] = snapshot(child);
+			copies[top] = open(child);
+			names[top] = name;
+		}
+	}
+
+	/**
+	 * Returns a tree where the value at a JSON Pointer is set, the tree being
+	 * frozen first if it is not immutable. The last segment of the pointer
+	 * may name a new property, or append to an array when it is its size or
+	 * "-"; all the other segments must exist.
+	 * 
+	 * @param root
+	 * @param pointer
+	 * @param value
+	 * @return the new root, sharing all the untouched subtrees with the
+	 *         original one
+	 * @throws IllegalArgumentException
+	 *             if the pointer is invalid or does not lead to an existing
+	 *             container, or the value is null
+	 */
+	public static JSON set(JSON root, String pointer, JSON value) {
+		return update(root, pointer, value, false);
+	}
+
+	/**
+	 * Returns a tree where a value is added at a JSON Pointer, with the
+	 * semantics of the "add" operation of JSON Patch: it behaves like
+	 * {@link #set(JSON, String, JSON)}, except that a value added to an array
+	 * is inserted before the element at its index instead of replacing it.
+	 * 
+	 * @param root
+	 * @param pointer
+	 * @param value
+	 * @return the new root, sharing all the untouched subtrees with the
+	 *         original one
+	 * @throws IllegalArgumentException
+	 *             if the pointer is invalid or does not lead to an existing
+	 *             container, or the value is null
+	 */
+	public static JSON add(JSON root, String pointer, JSON value) {
+		return update(root, pointer, value, true);
+	}
+
+	private static JSON update(JSON root, String pointer, JSON value,
+			boolean insert) {
+		if (value == null)
+			throw new IllegalArgumentException("value cannot be null");
+		JSONPath path = JSONPath.compilePointer(pointer);
+		int last = path.length() - 1;
+		JSON[] chain = chain(copyOf(root), path, last);
+		JSON result = copyOf(value);
+		for (int i = last; i >= 0; i--) {
+			result = put(chain[i], path, i, result, insert && i == last);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a tree where the value at a JSON Pointer is removed, the tree
+	 * being frozen first if it is not immutable.
+	 * 
+	 * @param root
+	 * @param pointer
+	 * @return the new root, sharing all the untouched subtrees with the
+	 *         original one
+	 * @throws IllegalArgumentException
+	 *             if the pointer is invalid, does not lead to an existing
+	 *             value or points to the root
+	 */
+	public static JSON remove(JSON root, String pointer) {
+		JSONPath path = JSONPath.compilePointer(pointer);
+		int last = path.length() - 1;
+		if (last < 0)
+			throw new IllegalArgumentException("cannot remove the root");
+		JSON[] chain = chain(copyOf(root), path, path.length());
+		JSON parent = chain[last];
+		JSON result;
+		if (parent instanceof JSONObject) {
+			result = ((JSONImmutableObject) parent).without(path.getName(last));
+		} else {
+			result = ((JSONImmutableArray) parent).without(path.getIndex(last));
+		}
+		for (int i = last - 1; i >= 0; i--) {
+			result = put(chain[i], path, i, result, false);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the nodes met following the first {@code length} segments of a
+	 * path from a root, which must all be containers.
+	 */
+	private static JSON[] chain(JSON root, JSONPath path, int length) {
+		JSON[] chain = new JSON[path.length()];
+		JSON node = root;
+		for (int i = 0; i < chain.length; i++) {
+			if (!isContainer(node))
+				throw new IllegalArgumentException("no container at "
+						+ prefix(path, i));
+			chain[i] = node;
+			if (i < length) {
+				node = child(node, path, i);
+				if (node == null)
+					throw new IllegalArgumentException("no value at "
+							+ prefix(path, i + 1));
+			}
+		}
+		return chain;
+	}
+
+	private static JSON child(JSON node, JSONPath path, int segment) {
+		if (node instanceof JSONObject)
+			return ((JSONObject) node).getPropertyValue(path.getName(segment));
+		JSONArray<?> array = ((JSONArray<?>) node).snapshot();
+		int index = path.getIndex(segment);
+		return index >= 0 && index < array.size() ? array.getValue(index)
+				: null;
+	}
+
+	/**
+	 * Returns a copy of a container where the child selected by a segment is
+	 * set, or inserted if the container is an array and {@code insert} is
+	 * true.
+	 */
+	private static JSON put(JSON node, JSONPath path, int segment, JSON value,
+			boolean insert) {
+		if (node instanceof JSONObject)
+			return ((JSONImmutableObject) node).with(path.getName(segment),
+					value);
+		JSONImmutableArray array = (JSONImmutableArray) node;
+		int index = path.getIndex(segment);
+		if (index >= 0 && index < array.size())
+			return insert ? array.withAdded(index, value) : array.with(index,
+					value);
+		if (index == array.size() || "-".equals(path.getName(segment)))
+			return array.withAdded(value);
+		throw new IllegalArgumentException("no value at "
+				+ prefix(path, segment + 1));
+	}
+
+	private static String prefix(JSONPath path, int segments) {
+		String pointer = path.getExpression();
+		int end = 0;
+		for (int i = 0; i < segments; i++) {
+			end = pointer.indexOf('/', end + 1);
+			if (end < 0)
+				return pointer;
+		}
+		return pointer.substring(0, end);
+	}
+
+	private static boolean isContainer(JSON value) {
+		return value instanceof JSONObject || value instanceof JSONArray;
+	}
+
+	private static JSON snapshot(JSON container) {
+		return container instanceof JSONObject ? ((JSONObject) container)
+				.snapshot() : ((JSONArray<?>) container).snapshot();
+	}
+
+	private static JSON open(JSON container) {
+		return container instanceof JSONObject ? new JSONImmutableObject()
+				: new JSONImmutableArray();
+	}
+
+	private static JSON close(JSON copy) {
+		return copy instanceof JSONImmutableObject ? ((JSONImmutableObject) copy)
+				.freeze() : ((JSONImmutableArray) copy).freeze();
+	}
+
+	private static void append(JSON copy, String name, JSON value) {
+		if (copy instanceof JSONImmutableObject) {
+			((JSONImmutableObject) copy).append(name, value);
+		} else {
+			((JSONImmutableArray) copy).append(value);
+		}
+	}
+
+	/**
+	 * Returns an immutable copy of a scalar, or the scalar itself when it is
+	 * already immutable.
+	 */
+	private static JSON freeze(JSON value) {
+		if (value == null || isImmutable(value))
+			return value;
+		if (value instanceof JSONString)
+			return new FrozenString(((JSONString) value).getText());
+		if (value instanceof JSONInteger)
+			return new FrozenInteger(((JSONInteger) value).getValue());
+		if (value instanceof JSONLong)
+			return new FrozenLong(((JSONLong) value).getNumberText());
+		if (value instanceof JSONDouble)
+			return new FrozenDouble(((JSONDouble) value).getNumberText());
+		if (value instanceof JSONDecimal)
+			return new FrozenDecimal(((JSONDecimal) value).getNumberText());
+		if (value instanceof JSONBoolean)
+			return new FrozenBoolean(((JSONBoolean) value).getValue());
+		throw new IllegalArgumentException("cannot freeze "
+				+ value.getClass().getName());
+	}
+
+	//
+	// Immutable scalars
+	//
+
+	private static final class FrozenString extends JSONString implements
+			Frozen {
+
+		FrozenString(String text) {
+			super(text);
+		}
+
+		@Override
+		public void setText(String text) {
+			throw new UnsupportedOperationException("immutable string");
+		}
+
+	}
+
+	private static final class FrozenInteger extends JSONInteger implements
+			Frozen {
+
+		FrozenInteger(int value) {
+			super(value);
+		}
+
+		@Override
+		public void setValue(int value) {
+			throw new UnsupportedOperationException("immutable number");
+		}
+
+		@Override
+		public void add(int a) {
+			throw new UnsupportedOperationException("immutable number");
+		}
+
+		@Override
+		public void sub(int a) {
+			throw new UnsupportedOperationException("immutable number");
+		}
+
+	}
+
+	private static final class FrozenLong extends JSONLong implements Frozen {
+
+		FrozenLong(String text) {
+			super(text, true);
+		}
+
+		@Override
+		public void setValue(long value) {
+			throw new UnsupportedOperationException("immutable number");
+		}
+
+		@Override
+		public void add(long a) {
+			throw new UnsupportedOperationException("immutable number");
+		}
+
+		@Override
+		public void sub(long a) {
+			throw new UnsupportedOperationException("immutable number");
+		}
+
+	}
+
+	private static final class FrozenDouble extends JSONDouble implements
+			Frozen {
+
+		FrozenDouble(String text) {
+			super(text, true);
+		}
+
+		@Override
+		public void setValue(double value) {
+			throw new UnsupportedOperationException("immutable number");
+		}
+
+		@Override
+		void resetText(String text) {
+			throw new UnsupportedOperationException("immutable number");
+		}
+
+	}
+
+	private static final class FrozenDecimal extends JSONDecimal implements
+			Frozen {
+
+		FrozenDecimal(String text) {
+			super(text, true);
+		}
+
+		@Override
+		public void setValue(BigDecimal value) {
+			throw new UnsupportedOperationException("immutable number");
+		}
+
+		@Override
+		void resetText(String text) {
+			throw new UnsupportedOperationException("immutable number");
+		}
+
+	}
+
+	private static final class FrozenBoolean extends JSONBoolean implements
+			Frozen {
+
+		FrozenBoolean(boolean value) {
+			super(value);
+		}
+
+		@Override
+		public void setValue(boolean value) {
+			throw new UnsupportedOperationException("immutable boolean");
+		}
+
+		@Override
+		public void toggle() {
+			throw new UnsupportedOperationException("immutable boolean");
+		}
+
+	}
+
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import java.util.Iterator;
+
+/**
+ * An immutable {@link JSONArray}, whose values are immutable as well.
+ * 
+ * Instances are never modified: every mutator throws
+ * {@link UnsupportedOperationException}, and updates are made with
+ * {@link #with(int, JSON)}, {@link #withAdded(JSON)} and
+ * {@link #without(int)}, which return a new array sharing all the values not
+ * involved in the change. See {@link JSONImmutableObject} for the guarantees
+ * given to concurrent readers, and for the cost of updates: an update copies
+ * the references to all the elements, and so takes time proportional to the
+ * size of the array.
+ */
+public final class JSONImmutableArray extends JSONArray<JSON> implements
+		JSONImmutable.Frozen {
+
+	/** The empty array */
+	public static final JSONImmutableArray EMPTY = new JSONImmutableArray()
+			.freeze();
+
+	/** Whether the array is complete, so that it cannot change anymore */
+	private boolean frozen;
+
+	/**
+	 * Creates an array to be filled by {@link #append(JSON)} and then frozen.
+	 */
+	JSONImmutableArray() {
+	}
+
+	/**
+	 * Appends a value while the array is being built.
+	 */
+	void append(JSON value) {
+		if (frozen)
+			throw new UnsupportedOperationException("immutable array");
+		super.addValue(value);
+	}
+
+	/**
+	 * Ends the construction of the array.
+	 */
+	JSONImmutableArray freeze() {
+		frozen = true;
+		return this;
+	}
+
+	/**
+	 * Returns a copy of this array where the element at a given index is
+	 * replaced. The value is frozen unless it is already immutable.
+	 * 
+	 * @param index
+	 * @param value
+	 * @return the updated array
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no element at {@code index}
+	 * @throws IllegalArgumentException
+	 *             if the value is null
+	 */
+	public JSONImmutableArray with(int index, JSON value) {
+		if (index < 0 || index >= size())
+			throw new IndexOutOfBoundsException("index " + index + ", size "
+					+ size());
+		if (value == null)
+			throw new IllegalArgumentException("value cannot be null");
+		value = JSONImmutable.copyOf(value);
+		if (getValue(index) == value)
+			return this;
+		JSONImmutableArray copy = new JSONImmutableArray();
+		for (int i = 0, n = size(); i < n; i++) {
+			copy.append(i == index ? value : getValue(i));
+		}
+		return copy.freeze();
+	}
+
+	/**
+	 * Returns a copy of this array with a value appended. The value is frozen
+	 * unless it is already immutable.
+	 * 
+	 * @param value
+	 * @return the updated array
+	 * @throws IllegalArgumentException
+	 *             if the value is null
+	 */
+	public JSONImmutableArray withAdded(JSON value) {
+		return withAdded(size(), value);
+	}
+
+	/**
+	 * Returns a copy of this array with a value inserted at a given index.
+	 * The value is frozen unless it is already immutable.
+	 * 
+	 * @param index
+	 *            the position of the new value, up to the size of the array
+	 * @param value
+	 * @return the updated array
+	 * @throws IndexOutOfBoundsException
+	 *             if {@code index} is negative or greater than the size
+	 * @throws IllegalArgumentException
+	 *             if the value is null
+	 */
+	public JSONImmutableArray withAdded(int index, JSON value) {
+		if (index < 0 || index > size())
+			throw new IndexOutOfBoundsException("index " + index + ", size "
+					+ size());
+		if (value == null)
+			throw new IllegalArgumentException("value cannot be null");
+		value = JSONImmutable.copyOf(value);
+		JSONImmutableArray copy = new JSONImmutableArray();
+		for (int i = 0, n = size(); i < n; i++) {
+			if (i == index)
+				copy.append(value);
+			copy.append(getValue(i));
+		}
+		if (index == size())
+			copy.append(value);
+		return copy.freeze();
+	}
+
+	/**
+	 * Returns a copy of this array without the element at a given index.
+	 * 
+	 * @param index
+	 * @return the updated array
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no element at {@code index}
+	 */
+	public JSONImmutableArray without(int index) {
+		if (index < 0 || index >= size())
+			throw new IndexOutOfBoundsException("index " + index + ", size "
+					+ size());
+		JSONImmutableArray copy = new JSONImmutableArray();
+		for (int i = 0, n = size(); i < n; i++) {
+			if (i != index)
+				copy.append(getValue(i));
+		}
+		return copy.freeze();
+	}
+
+	/**
+	 * Always throws, as the array cannot be modified.
+	 * 
+	 * @throws UnsupportedOperationException
+	 * @see #withAdded(JSON)
+	 */
+	@Override
+	public void addValue(JSON value) {
+		throw new UnsupportedOperationException("immutable array");
+	}
+
+	/**
+	 * Always throws, as the array cannot be modified.
+	 * 
+	 * @throws UnsupportedOperationException
+	 * @see #withAdded(int, JSON)
+	 */
+	@Override
+	public void addValue(int index, JSON value) {
+		throw new UnsupportedOperationException("immutable array");
+	}
+
+	/**
+	 * Always throws, as the array cannot be modified.
+	 * 
+	 * @throws UnsupportedOperationException
+	 * @see #with(int, JSON)
+	 */
+	@Override
+	public void setValue(int index, JSON value) {
+		throw new UnsupportedOperationException("immutable array");
+	}
+
+	/**
+	 * Always throws, as the array cannot be modified.
+	 * 
+	 * @throws UnsupportedOperationException
+	 * @see #without(int)
+	 */
+	@Override
+	public void removeValue(JSON value) {
+		throw new UnsupportedOperationException("immutable array");
+	}
+
+	/**
+	 * Always throws, as the array cannot be modified.
+	 * 
+	 * @throws UnsupportedOperationException
+	 * @see #without(int)
+	 */
+	@Override
+	public void removeValue(int index) {
+		throw new UnsupportedOperationException("immutable array");
+	}
+
+	@Override
+	public Iterator<JSON> iterator() {
+		final Iterator<JSON> it = super.iterator();
+		return new Iterator<JSON>() {
+
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public JSON next() {
+				return it.next();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("immutable array");
+			}
+		};
+	}
+
+	@Override
+	void recycle() {
+		throw new UnsupportedOperationException("immutable array");
+	}
+
+}
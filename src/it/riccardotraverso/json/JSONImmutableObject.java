@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import java.util.Iterator;
+
+/**
+ * An immutable {@link JSONObject}, whose values are immutable as well.
+ * 
+ * Instances are never modified: every mutator throws
+ * {@link UnsupportedOperationException}, and updates are made with
+ * {@link #with(String, JSON)} and {@link #without(String)}, which return a new
+ * object sharing all the values not involved in the change. Trees of immutable
+ * nodes can therefore be read by any number of threads without locking or
+ * copying, provided the root is published safely (e.g. through a volatile
+ * field). Trees are frozen with {@link JSONImmutable#copyOf(JSON)}.
+ * 
+ * The values are shared, but the properties are not: an update copies the
+ * whole list of properties, and so takes time and memory proportional to
+ * the size of the object, however small the change. Objects with many
+ * properties that are updated often are better kept mutable, or split into
+ * nested objects.
+ */
+public final class JSONImmutableObject extends JSONObject implements
+		JSONImmutable.Frozen {
+
+	/** The empty object */
+	public static final JSONImmutableObject EMPTY = new JSONImmutableObject()
+			.freeze();
+
+	/** Whether the object is complete, so that it cannot change anymore */
+	private boolean frozen;
+
+	/**
+	 * A property of an immutable object, which cannot be renamed nor
+	 * reassigned.
+	 */
+	private final class FrozenProperty extends JSONObject.Property {
+
+		FrozenProperty(String name, JSON value) {
+			super(name, value);
+		}
+
+		@Override
+		public void setName(String name) {
+			throw new UnsupportedOperationException("immutable object");
+		}
+
+		@Override
+		public void setValue(JSON value) {
+			throw new UnsupportedOperationException("immutable object");
+		}
+
+	}
+
+	/**
+	 * Creates an object to be filled by {@link #append(String, JSON)} and then
+	 * frozen.
+	 */
+	JSONImmutableObject() {
+	}
+
+	/**
+	 * Appends a property while the object is being built.
+	 */
+	void append(String name, JSON value) {
+		if (frozen)
+			throw new UnsupportedOperationException("immutable object");
+		addProperty(name, value);
+	}
+
+	/**
+	 * Ends the construction of the object.
+	 */
+	JSONImmutableObject freeze() {
+		frozen = true;
+		return this;
+	}
+
+	/**
+	 * Returns a copy of this object where a property has a given value,
+	 * either replacing the current one or being appended when not present.
+	 * The value is frozen unless it is already immutable.
+	 * 
+	 * @param name
+	 * @param value
+	 * @return the updated object
+	 * @throws IllegalArgumentException
+	 *             if the name or the value is null
+	 */
+	public JSONImmutableObject with(String name, JSON value) {
+		if (value == null)
+			throw new IllegalArgumentException("value cannot be null");
+		value = JSONImmutable.copyOf(value);
+		Property current = getProperty(name);
+		if (current != null && current.getValue() == value)
+			return this;
+		JSONImmutableObject copy = new JSONImmutableObject();
+		for (int i = 0, n = size(); i < n; i++) {
+			Property property = getProperty(i);
+			copy.append(property.getName(), property == current ? value
+					: property.getValue());
+		}
+		if (current == null)
+			copy.append(name, value);
+		return copy.freeze();
+	}
+
+	/**
+	 * Returns a copy of this object without a given property.
+	 * 
+	 * @param name
+	 * @return the updated object, or this if the property is not present
+	 */
+	public JSONImmutableObject without(String name) {
+		Property current = getProperty(name);
+		if (current == null)
+			return this;
+		JSONImmutableObject copy = new JSONImmutableObject();
+		for (int i = 0, n = size(); i < n; i++) {
+			Property property = getProperty(i);
+			if (property != current)
+				copy.append(property.getName(), property.getValue());
+		}
+		return copy.freeze();
+	}
+
+	/**
+	 * Always throws, as the object cannot be modified.
+	 * 
+	 * @throws UnsupportedOperationException
+	 * @see #with(String, JSON)
+	 */
+	@Override
+	public JSONObject setProperty(String name, JSON value) {
+		throw new UnsupportedOperationException("immutable object");
+	}
+
+	/**
+	 * Always throws, as the object cannot be modified.
+	 * 
+	 * @throws UnsupportedOperationException
+	 * @see #without(String)
+	 */
+	@Override
+	public boolean removeProperty(String name) {
+		throw new UnsupportedOperationException("immutable object");
+	}
+
+	@Override
+	public Iterator<Property> iterator() {
+		final Iterator<Property> it = super.iterator();
+		return new Iterator<Property>() {
+
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public Property next() {
+				return it.next();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("immutable object");
+			}
+		};
+	}
+
+	@Override
+	JSONObject.Property newProperty(String name, JSON value) {
+		return new FrozenProperty(name, value);
+	}
+
+	@Override
+	void recycle() {
+		throw new UnsupportedOperationException("immutable object");
+	}
+
+}
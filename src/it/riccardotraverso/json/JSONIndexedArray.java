@@ -0,0 +1,473 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * An array of {@link JSONObject}s that can be indexed by the value found at a
+ * JSON Pointer inside each element, such as "/id", so that elements are
+ * looked up by key in constant or logarithmic time instead of being scanned
+ * by {@link #find(it.riccardotraverso.java.lang.Predicate)}.
+ * 
+ * Hash indexes, declared by {@link #addHashIndex(String)}, answer equality
+ * lookups; sorted indexes, declared by {@link #addSortedIndex(String)}, also
+ * answer range queries. Keys are compared by value: numbers are equal when
+ * numerically equal whatever their representation, and are ordered before
+ * strings, which are ordered by {@link String#compareTo(String)}; in sorted
+ * indexes null comes first and booleans next, while keys that are objects or
+ * arrays are only kept by hash indexes. Elements lacking the indexed value
+ * are not indexed.
+ * 
+ * The indexes follow every change made through the array. The keys of an
+ * element are read when it is added, though, so an element whose indexed
+ * values are changed in place must be removed and added again, or
+ * {@link #reindex()} called afterwards.
+ */
+public class JSONIndexedArray extends JSONArray<JSONObject> {
+
+	/** The key of null values */
+	private static final Object NULL = new Object() {
+		@Override
+		public String toString() {
+			return "null";
+		}
+	};
+
+	/**
+	 * Orders the scalar keys: null, booleans, numbers, then strings.
+	 */
+	private static final Comparator<Object> ORDER = new Comparator<Object>() {
+
+		@Override
+		public int compare(Object a, Object b) {
+			int rank = rank(a) - rank(b);
+			if (rank != 0)
+				return rank;
+			if (a instanceof Long && b instanceof Long) {
+				long x = (Long) a, y = (Long) b;
+				return x < y ? -1 : x == y ? 0 : 1;
+			}
+			if (a instanceof String)
+				return ((String) a).compareTo((String) b);
+			if (a instanceof Boolean)
+				return a.equals(b) ? 0 : a == Boolean.FALSE ? -1 : 1;
+			if (a == NULL)
+				return 0;
+			return decimal(a).compareTo(decimal(b));
+		}
+	};
+
+	/**
+	 * The elements having each key at the path of an index. An element is
+	 * mapped to directly, or through a list when several elements share a
+	 * key, so that unique keys cost no list.
+	 */
+	private static final class Index {
+		final JSONPath path;
+		final Map<Object, Object> entries;
+
+		Index(JSONPath path, boolean sorted) {
+			this.path = path;
+			this.entries = sorted ? new TreeMap<Object, Object>(ORDER)
+					: new HashMap<Object, Object>();
+		}
+
+		boolean isSorted() {
+			return entries instanceof TreeMap;
+		}
+
+		@SuppressWarnings("unchecked")
+		void add(JSONObject element) {
+			Object key = keyOf(element);
+			if (key == null)
+				return;
+			Object current = entries.get(key);
+			if (current == null) {
+				entries.put(key, element);
+			} else if (current instanceof JSONObject) {
+				List<JSONObject> list = new ArrayList<JSONObject>(2);
+				list.add((JSONObject) current);
+				list.add(element);
+				entries.put(key, list);
+			} else {
+				((List<JSONObject>) current).add(element);
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		void remove(JSONObject element) {
+			Object key = keyOf(element);
+			if (key == null)
+				return;
+			Object current = entries.get(key);
+			if (current == element) {
+				entries.remove(key);
+			} else if (current instanceof List) {
+				List<JSONObject> list = (List<JSONObject>) current;
+				for (int i = 0, n = list.size(); i < n; i++) {
+					if (list.get(i) == element) {
+						list.remove(i);
+						break;
+					}
+				}
+				if (list.size() == 1)
+					entries.put(key, list.get(0));
+			}
+		}
+
+		private Object keyOf(JSONObject element) {
+			if (element == null)
+				return null;
+			Object key = key(path.selectFirst(element));
+			return key == null || (isSorted() && rank(key) < 0) ? null : key;
+		}
+	}
+
+	/** The indexes by pointer, in declaration order */
+	private final Map<String, Index> indexes = new LinkedHashMap<String, Index>();
+
+	/**
+	 * Creates a new empty JSONIndexedArray.
+	 */
+	public JSONIndexedArray() {
+	}
+
+	/**
+	 * Creates an array holding the elements of another one, such as an array
+	 * just parsed.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if an element is not an object
+	 */
+	public JSONIndexedArray(JSONArray<?> elements) {
+		JSONArray<?> snapshot = elements.snapshot();
+		for (int i = 0, n = snapshot.size(); i < n; i++) {
+			JSON element = snapshot.getValue(i);
+			if (!(element instanceof JSONObject))
+				throw new IllegalArgumentException("element " + i
+						+ " is not an object");
+			addValue((JSONObject) element);
+		}
+	}
+
+	/**
+	 * Declares a hash index on the values at a JSON Pointer, indexing the
+	 * elements already present.
+	 * 
+	 * @param pointer
+	 *            the location of the key inside each element, such as "/id"
+	 * @return a pointer to this, to chain more quickly multiple calls
+	 * @throws IllegalArgumentException
+	 *             if the pointer is invalid or already indexed
+	 */
+	public JSONIndexedArray addHashIndex(String pointer) {
+		return addIndex(pointer, false);
+	}
+
+	/**
+	 * Declares a sorted index on the values at a JSON Pointer, indexing the
+	 * elements already present.
+	 * 
+	 * @param pointer
+	 *            the location of the key inside each element, such as "/id"
+	 * @return a pointer to this, to chain more quickly multiple calls
+	 * @throws IllegalArgumentException
+	 *             if the pointer is invalid or already indexed
+	 */
+	public JSONIndexedArray addSortedIndex(String pointer) {
+		return addIndex(pointer, true);
+	}
+
+	private JSONIndexedArray addIndex(String pointer, boolean sorted) {
+		JSONPath path = JSONPath.compilePointer(pointer);
+		if (indexes.containsKey(pointer))
+			throw new IllegalArgumentException("already indexed: " + pointer);
+		Index index = new Index(path, sorted);
+		for (int i = 0, n = size(); i < n; i++) {
+			index.add((JSONObject) getValue(i));
+		}
+		indexes.put(pointer, index);
+		return this;
+	}
+
+	/**
+	 * Drops the index on a JSON Pointer.
+	 * 
+	 * @return true iff the pointer was indexed
+	 */
+	public boolean removeIndex(String pointer) {
+		return indexes.remove(pointer) != null;
+	}
+
+	/**
+	 * Rebuilds all the indexes, after the indexed values of some elements
+	 * have been changed in place.
+	 */
+	public void reindex() {
+		for (Index index : indexes.values()) {
+			index.entries.clear();
+			for (int i = 0, n = size(); i < n; i++) {
+				index.add((JSONObject) getValue(i));
+			}
+		}
+	}
+
+	/**
+	 * Returns an element whose value at an indexed pointer equals a key.
+	 * 
+	 * @return the first such element added, or null if there is none
+	 * @throws IllegalArgumentException
+	 *             if the pointer is not indexed or the key is null
+	 */
+	@SuppressWarnings("unchecked")
+	public JSONObject lookup(String pointer, JSON key) {
+		if (key == null)
+			throw new IllegalArgumentException("key cannot be null");
+		Object found = index(pointer, false).entries.get(key(key));
+		if (found instanceof List)
+			return ((List<JSONObject>) found).get(0);
+		return (JSONObject) found;
+	}
+
+	/**
+	 * Returns the elements whose value at an indexed pointer equals a key.
+	 * 
+	 * @return the elements, in the order in which they were added
+	 * @throws IllegalArgumentException
+	 *             if the pointer is not indexed or the key is null
+	 */
+	public List<JSONObject> lookupAll(String pointer, JSON key) {
+		if (key == null)
+			throw new IllegalArgumentException("key cannot be null");
+		List<JSONObject> elements = new ArrayList<JSONObject>();
+		collect(index(pointer, false).entries.get(key(key)), elements);
+		return elements;
+	}
+
+	/**
+	 * Returns the elements whose value at a pointer with a sorted index lies
+	 * between two keys.
+	 * 
+	 * @param pointer
+	 * @param from
+	 *            the lowest key included, or null for no lower bound
+	 * @param to
+	 *            the lowest key excluded, or null for no upper bound
+	 * @return the elements, by increasing key
+	 * @throws IllegalArgumentException
+	 *             if the pointer has no sorted index, or a bound is an object
+	 *             or an array
+	 */
+	public List<JSONObject> lookupRange(String pointer, JSON from, JSON to) {
+		@SuppressWarnings("unchecked")
+		NavigableMap<Object, Object> entries = (NavigableMap<Object, Object>) index(
+				pointer, true).entries;
+		Object low = bound(from), high = bound(to);
+		Map<Object, Object> range;
+		if (low == null) {
+			range = high == null ? entries : entries.headMap(high, false);
+		} else if (high == null) {
+			range = entries.tailMap(low, true);
+		} else if (ORDER.compare(low, high) >= 0) {
+			return new ArrayList<JSONObject>();
+		} else {
+			range = entries.subMap(low, true, high, false);
+		}
+		List<JSONObject> elements = new ArrayList<JSONObject>();
+		for (Object found : range.values()) {
+			collect(found, elements);
+		}
+		return elements;
+	}
+
+	@Override
+	public void addValue(JSONObject value) {
+		super.addValue(value);
+		for (Index index : indexes.values()) {
+			index.add(value);
+		}
+	}
+
+	@Override
+	public void addValue(int index, JSONObject value) {
+		super.addValue(index, value);
+		for (Index i : indexes.values()) {
+			i.add(value);
+		}
+	}
+
+	@Override
+	public void setValue(int index, JSONObject value) {
+		JSONObject old = (JSONObject) getValue(index);
+		super.setValue(index, value);
+		for (Index i : indexes.values()) {
+			i.remove(old);
+			i.add(value);
+		}
+	}
+
+	@Override
+	public void removeValue(JSONObject value) {
+		for (int i = 0, n = size(); i < n; i++) {
+			JSON element = getValue(i);
+			if (element == value) {
+				removeValue(i);
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void removeValue(int index) {
+		JSONObject old = (JSONObject) getValue(index);
+		super.removeValue(index);
+		for (Index i : indexes.values()) {
+			i.remove(old);
+		}
+	}
+
+	@Override
+	public Iterator<JSONObject> iterator() {
+		return new Iterator<JSONObject>() {
+			private int position;
+			private boolean removable;
+
+			@Override
+			public boolean hasNext() {
+				return position < size();
+			}
+
+			@Override
+			public JSONObject next() {
+				if (position >= size())
+					throw new NoSuchElementException();
+				removable = true;
+				return (JSONObject) getValue(position++);
+			}
+
+			@Override
+			public void remove() {
+				if (!removable)
+					throw new IllegalStateException();
+				removable = false;
+				removeValue(--position);
+			}
+		};
+	}
+
+	@Override
+	void recycle() {
+		super.recycle();
+		for (Index index : indexes.values()) {
+			index.entries.clear();
+		}
+	}
+
+	private Index index(String pointer, boolean sorted) {
+		Index index = indexes.get(pointer);
+		if (index == null || (sorted && !index.isSorted()))
+			throw new IllegalArgumentException("no " + (sorted ? "sorted " : "")
+					+ "index on " + pointer);
+		return index;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void collect(Object found, List<JSONObject> elements) {
+		if (found instanceof List) {
+			elements.addAll((List<JSONObject>) found);
+		} else if (found != null) {
+			elements.add((JSONObject) found);
+		}
+	}
+
+	private static Object bound(JSON value) {
+		if (value == null)
+			return null;
+		Object key = key(value);
+		if (rank(key) < 0)
+			throw new IllegalArgumentException("not a scalar: " + value);
+		return key;
+	}
+
+	/**
+	 * Returns the key of a value, equal to the keys of all the values with
+	 * the same meaning, or null for a missing value.
+	 */
+	private static Object key(JSON value) {
+		if (value == null)
+			return null;
+		if (value instanceof JSONString)
+			return ((JSONString) value).getText();
+		if (value instanceof JSONInteger || value instanceof JSONLong)
+			return Long.valueOf(((JSONNumber) value).longValue());
+		if (value instanceof JSONNumber) {
+			BigDecimal decimal = ((JSONNumber) value).numericValue();
+			if (decimal.signum() == 0)
+				return Long.valueOf(0);
+			decimal = decimal.stripTrailingZeros();
+			if (decimal.scale() <= 0) {
+				try {
+					return Long.valueOf(decimal.longValueExact());
+				} catch (ArithmeticException e) {
+					// Too large for a long
+				}
+			}
+			return decimal;
+		}
+		if (value instanceof JSONBoolean)
+			return Boolean.valueOf(((JSONBoolean) value).getValue());
+		if (value instanceof JSONNull)
+			return NULL;
+		// Containers are compared structurally
+		return value;
+	}
+
+	private static int rank(Object key) {
+		if (key == NULL)
+			return 0;
+		if (key instanceof Boolean)
+			return 1;
+		if (key instanceof Long || key instanceof BigDecimal)
+			return 2;
+		if (key instanceof String)
+			return 3;
+		return -1;
+	}
+
+	private static BigDecimal decimal(Object number) {
+		return number instanceof Long ? BigDecimal.valueOf((Long) number)
+				: (BigDecimal) number;
+	}
+
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link JSONArray} of integers stored in a {@code int[]}, which takes
+ * four bytes per element instead of a {@link JSONInteger} and a reference to it.
+ * 
+ * Numeric code can read and write the elements without boxing through
+ * {@link #getInt(int)}, {@link #setInt(int, int)}, {@link #addInt(int)} and
+ * their bulk variants. To the rest of the library the elements are still
+ * {@link JSONInteger}s: {@link #getValue(int)} and the iterator return new nodes,
+ * whose changes do not affect the array, while visitors walking the array
+ * receive a single node reused for all its elements, which they must copy to
+ * keep, as when streaming.
+ */
+public class JSONIntArray extends JSONArray<JSONInteger> {
+
+	/**
+	 * The elements, stored in the first {@code size} slots of an
+	 * {@code int[]}.
+	 */
+	private static final class Ints extends JSONArray.Elements<JSONInteger> {
+
+		private static final int[] EMPTY = new int[0];
+
+		private int[] values = EMPTY;
+		private int size;
+
+		@Override
+		int size() {
+			return size;
+		}
+
+		@Override
+		JSONInteger get(int index) {
+			return new JSONInteger(getInt(index));
+		}
+
+		@Override
+		JSON visit(int index, JSONWalker.Scratch scratch) {
+			if (scratch.integer == null)
+				scratch.integer = new JSONInteger(0);
+			scratch.integer.reset(values[index]);
+			return scratch.integer;
+		}
+
+		@Override
+		void add(JSONInteger value) {
+			addInt(unbox(value));
+		}
+
+		@Override
+		void add(int index, JSONInteger value) {
+			if (index < 0 || index > size)
+				throw new IndexOutOfBoundsException("index " + index
+						+ ", size " + size);
+			int unboxed = unbox(value);
+			ensureCapacity(size + 1);
+			System.arraycopy(values, index, values, index + 1, size - index);
+			values[index] = unboxed;
+			size++;
+		}
+
+		@Override
+		void set(int index, JSONInteger value) {
+			setInt(index, unbox(value));
+		}
+
+		@Override
+		void remove(int index) {
+			check(index);
+			System.arraycopy(values, index + 1, values, index, size - index
+					- 1);
+			size--;
+		}
+
+		@Override
+		boolean removeFirst(JSONInteger value) {
+			if (value == null)
+				return false;
+			int unboxed = value.getValue();
+			for (int i = 0; i < size; i++) {
+				if (values[i] == unboxed) {
+					remove(i);
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		void clear() {
+			size = 0;
+		}
+
+		@Override
+		Iterator<JSONInteger> iterator() {
+			return new Iterator<JSONInteger>() {
+				private int position;
+				private boolean removable;
+
+				@Override
+				public boolean hasNext() {
+					return position < size;
+				}
+
+				@Override
+				public JSONInteger next() {
+					if (position >= size)
+						throw new NoSuchElementException();
+					removable = true;
+					return new JSONInteger(values[position++]);
+				}
+
+				@Override
+				public void remove() {
+					if (!removable)
+						throw new IllegalStateException();
+					removable = false;
+					Ints.this.remove(--position);
+				}
+			};
+		}
+
+		int getInt(int index) {
+			check(index);
+			return values[index];
+		}
+
+		void setInt(int index, int value) {
+			check(index);
+			values[index] = value;
+		}
+
+		void addInt(int value) {
+			ensureCapacity(size + 1);
+			values[size++] = value;
+		}
+
+		void addInts(int[] src, int offset, int length) {
+			if (offset < 0 || length < 0 || offset + length > src.length)
+				throw new IndexOutOfBoundsException("offset " + offset
+						+ ", length " + length + ", source " + src.length);
+			ensureCapacity(size + length);
+			System.arraycopy(src, offset, values, size, length);
+			size += length;
+		}
+
+		void getInts(int index, int[] dst, int offset, int length) {
+			if (index < 0 || length < 0 || index + length > size)
+				throw new IndexOutOfBoundsException("index " + index
+						+ ", length " + length + ", size " + size);
+			System.arraycopy(values, index, dst, offset, length);
+		}
+
+		int[] toIntArray() {
+			return Arrays.copyOf(values, size);
+		}
+
+		private void check(int index) {
+			if (index < 0 || index >= size)
+				throw new IndexOutOfBoundsException("index " + index
+						+ ", size " + size);
+		}
+
+		private void ensureCapacity(int capacity) {
+			if (capacity > values.length)
+				values = Arrays.copyOf(values, Math.max(capacity, values.length
+						+ (values.length >> 1) + 8));
+		}
+
+	}
+
+	private final Ints ints;
+
+	/**
+	 * Creates a new empty JSONIntArray.
+	 */
+	public JSONIntArray() {
+		this(new Ints());
+	}
+
+	/**
+	 * Creates an array holding a copy of some values.
+	 */
+	public JSONIntArray(int[] values) {
+		this();
+		addInts(values, 0, values.length);
+	}
+
+	private JSONIntArray(Ints ints) {
+		super(ints);
+		this.ints = ints;
+	}
+
+	/**
+	 * Returns the element at a given index.
+	 */
+	public int getInt(int index) {
+		return ints.getInt(index);
+	}
+
+	/**
+	 * Replaces the element at a given index.
+	 */
+	public void setInt(int index, int value) {
+		ints.setInt(index, value);
+		modified();
+	}
+
+	/**
+	 * Appends an element.
+	 */
+	public void addInt(int value) {
+		ints.addInt(value);
+		modified();
+	}
+
+	/**
+	 * Appends {@code length} elements read from {@code src} starting at
+	 * {@code offset}.
+	 */
+	public void addInts(int[] src, int offset, int length) {
+		ints.addInts(src, offset, length);
+		modified();
+	}
+
+	/**
+	 * Copies {@code length} elements starting at {@code index} into
+	 * {@code dst} starting at {@code offset}.
+	 */
+	public void getInts(int index, int[] dst, int offset, int length) {
+		ints.getInts(index, dst, offset, length);
+	}
+
+	/**
+	 * Returns a copy of the elements.
+	 */
+	public int[] toIntArray() {
+		return ints.toIntArray();
+	}
+
+	/**
+	 * Appends the value of a node.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the value is null
+	 */
+	@Override
+	public void addValue(JSONInteger value) {
+		super.addValue(value);
+	}
+
+	/**
+	 * Removes the first element equal to the value of a node.
+	 */
+	@Override
+	public void removeValue(JSONInteger value) {
+		super.removeValue(value);
+	}
+
+	/**
+	 * Returns a new node holding the element at a given index.
+	 */
+	@Override
+	public JSON getValue(int index) {
+		return super.getValue(index);
+	}
+
+	private static int unbox(JSONInteger value) {
+		if (value == null)
+			throw new IllegalArgumentException("value cannot be null");
+		return value.getValue();
+	}
+
+}
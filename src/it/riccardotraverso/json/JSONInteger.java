@@ -20,12 +20,12 @@
 
 package it.riccardotraverso.json;
 
-import com.sun.org.apache.bcel.internal.classfile.Code;
+import java.math.BigDecimal;
 
 /**
  * A JSON integer value.
  */
-public class JSONInteger extends JSON {
+public class JSONInteger extends JSONNumber {
 
 	private int value;
 
@@ -83,6 +83,15 @@ public class JSONInteger extends JSON {
 	 *            the value to set
 	 */
 	public void setValue(int value) {
+		modified();
+		reset(value);
+	}
+
+	/**
+	 * Sets the value of a node passed to visitors and reused for several
+	 * values, which is not part of any tree and thus invalidates no hash.
+	 */
+	void reset(int value) {
 		this.value = value;
 	}
 
@@ -93,6 +102,7 @@ public class JSONInteger extends JSON {
 	 *            the increment
 	 */
 	public void add(int a) {
+		modified();
 		this.value += a;
 	}
 
@@ -103,9 +113,40 @@ public class JSONInteger extends JSON {
 	 *            the decrement
 	 */
 	public void sub(int a) {
+		modified();
 		this.value -= a;
 	}
 
+	@Override
+	public int intValue() {
+		return value;
+	}
+
+	@Override
+	public long longValue() {
+		return value;
+	}
+
+	@Override
+	public double doubleValue() {
+		return value;
+	}
+
+	@Override
+	public BigDecimal decimalValue() {
+		return BigDecimal.valueOf(value);
+	}
+
+	@Override
+	boolean isLong() {
+		return true;
+	}
+
+	@Override
+	public String getNumberText() {
+		return Integer.toString(value);
+	}
+
 	@Override
 	public void accept(JSONVisitor v) {
 		v.visitJSONInteger(this);
@@ -118,10 +159,7 @@ public class JSONInteger extends JSON {
 	 */
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result + value;
-		return result;
+		return hashCode(this);
 	}
 
 	/*
@@ -133,14 +171,9 @@ public class JSONInteger extends JSON {
 	public boolean equals(Object obj) {
 		if (this == obj)
 			return true;
-		if (obj == null)
+		if (!(obj instanceof JSONNumber))
 			return false;
-		if (getClass() != obj.getClass())
-			return false;
-		JSONInteger other = (JSONInteger) obj;
-		if (value != other.value)
-			return false;
-		return true;
+		return equal(this, (JSONNumber) obj);
 	}
 
 }
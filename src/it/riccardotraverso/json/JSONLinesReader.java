@@ -0,0 +1,518 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import it.riccardotraverso.java.lang.Predicate;
+import it.riccardotraverso.java.nio.MappedFile;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Reads newline-delimited JSON (NDJSON, or JSON Lines) files in parallel.
+ * 
+ * The files are mapped in memory and split into chunks of about
+ * {@link #DEFAULT_CHUNK_SIZE} bytes, whose boundaries are moved forward to
+ * the next newline, so that every record belongs to exactly one chunk. Chunks
+ * are then parsed by the threads of an {@link ExecutorService}, with a limited
+ * number of chunks in flight so that memory stays bounded whatever the size
+ * of the input.
+ * 
+ * The records can be iterated over in file order, or in the order in which
+ * chunks complete, which keeps all the threads busy when the consumer is
+ * slower than the parsers. Filtering and counting with
+ * {@link #filter(Predicate)} and {@link #count(Predicate)} run the predicate
+ * in the parsing threads themselves, which is the way to scale with the
+ * number of cores when the work done on each record is significant.
+ * 
+ * Several files are read one after the other, as if they were concatenated.
+ * Readers are not thread-safe, and they must be closed to release the
+ * mapped files and the threads they own.
+ */
+public class JSONLinesReader implements Iterable<JSON>, Closeable {
+
+	/** Default size of the chunks, 8 MB */
+	public static final int DEFAULT_CHUNK_SIZE = 8 << 20;
+
+	/**
+	 * A range of a file made of whole lines.
+	 */
+	private static final class Chunk {
+
+		final MappedFile file;
+		final long start;
+		final long end;
+
+		Chunk(MappedFile file, long start, long end) {
+			this.file = file;
+			this.start = start;
+			this.end = end;
+		}
+
+	}
+
+	private final File[] names;
+	private final MappedFile[] files;
+
+	private ExecutorService executor;
+	private boolean ownExecutor;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	private boolean ordered = true;
+	private JSONSymbolTable symbols;
+
+	/**
+	 * Opens the given files, to be read in the same order.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if no file is given
+	 */
+	public JSONLinesReader(File... files) throws IOException {
+		if (files.length < 1)
+			throw new IllegalArgumentException("no files");
+		this.names = files.clone();
+		this.files = new MappedFile[files.length];
+		try {
+			for (int i = 0; i < files.length; i++) {
+				this.files[i] = new MappedFile(files[i]);
+			}
+		} catch (IOException e) {
+			closeFiles();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens the files at the given paths, to be read in the same order.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if no path is given
+	 */
+	public JSONLinesReader(String... paths) throws IOException {
+		this(toFiles(paths));
+	}
+
+	private static File[] toFiles(String[] paths) {
+		File[] files = new File[paths.length];
+		for (int i = 0; i < paths.length; i++) {
+			files[i] = new File(paths[i]);
+		}
+		return files;
+	}
+
+	/**
+	 * Sets the executor parsing the chunks, which is not shut down by
+	 * {@link #close()}, and the number of its threads, which bounds the
+	 * chunks in flight. By default the reader creates its own pool, with one
+	 * thread per processor.
+	 * 
+	 * @return a pointer to this, to chain more calls
+	 */
+	public JSONLinesReader setExecutor(ExecutorService executor, int parallelism) {
+		if (executor == null)
+			throw new IllegalArgumentException("executor cannot be null");
+		if (parallelism <= 0)
+			throw new IllegalArgumentException("invalid parallelism: "
+					+ parallelism);
+		shutdownExecutor();
+		this.executor = executor;
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * Sets the approximate size of the chunks, in bytes.
+	 * 
+	 * @return a pointer to this, to chain more calls
+	 */
+	public JSONLinesReader setChunkSize(int chunkSize) {
+		if (chunkSize <= 0)
+			throw new IllegalArgumentException("invalid chunk size: "
+					+ chunkSize);
+		this.chunkSize = chunkSize;
+		return this;
+	}
+
+	/**
+	 * Chooses whether {@link #iterator()} returns the records in file order
+	 * (the default), or as soon as their chunk has been parsed.
+	 * 
+	 * @return a pointer to this, to chain more calls
+	 */
+	public JSONLinesReader setOrdered(boolean ordered) {
+		this.ordered = ordered;
+		return this;
+	}
+
+	/**
+	 * Sets a table shared by all the parsing threads to canonicalize names
+	 * and short strings, or {@code null} (the default) to disable it.
+	 * 
+	 * @return a pointer to this, to chain more calls
+	 * @see JSONParser#setSymbolTable(JSONSymbolTable)
+	 */
+	public JSONLinesReader setSymbolTable(JSONSymbolTable symbols) {
+		this.symbols = symbols;
+		return this;
+	}
+
+	//
+	// Reading
+	//
+
+	/**
+	 * Returns an iterator over all the records of the files. Parsing errors
+	 * and I/O errors are thrown by the iterator as
+	 * {@link IllegalStateException}, whose cause is the original exception.
+	 */
+	@Override
+	public Iterator<JSON> iterator() {
+		final Iterator<List<JSON>> chunks = run(ordered, records(null));
+		return new Iterator<JSON>() {
+
+			private Iterator<JSON> records = Collections.<JSON> emptyList()
+					.iterator();
+
+			@Override
+			public boolean hasNext() {
+				while (!records.hasNext()) {
+					if (!chunks.hasNext())
+						return false;
+					records = chunks.next().iterator();
+				}
+				return true;
+			}
+
+			@Override
+			public JSON next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return records.next();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Returns the records for which a predicate holds, in file order. The
+	 * predicate is called by the parsing threads, concurrently.
+	 */
+	public List<JSON> filter(Predicate<? super JSON> predicate)
+			throws IOException {
+		if (predicate == null)
+			throw new IllegalArgumentException("predicate cannot be null");
+		List<JSON> records = new ArrayList<JSON>();
+		try {
+			Iterator<List<JSON>> chunks = run(true, records(predicate));
+			while (chunks.hasNext()) {
+				records.addAll(chunks.next());
+			}
+		} catch (IllegalStateException e) {
+			throw unwrap(e);
+		}
+		return records;
+	}
+
+	/**
+	 * Counts the records for which a predicate holds, or all of them when
+	 * the predicate is {@code null}. The predicate is called by the parsing
+	 * threads, concurrently, and the records are not retained.
+	 */
+	public long count(final Predicate<? super JSON> predicate)
+			throws IOException {
+		long count = 0;
+		try {
+			Iterator<Long> chunks = run(false, new ChunkTask<Long>() {
+
+				@Override
+				public Long process(JSONParser parser) throws IOException {
+					long n = 0;
+					while (parser.next() != null) {
+						if (predicate == null) {
+							// Validate the record without building it
+							parser.skipChildren();
+							n++;
+						} else if (predicate.holdsFor(parser.readTree())) {
+							n++;
+						}
+					}
+					return n;
+				}
+			});
+			while (chunks.hasNext()) {
+				count += chunks.next();
+			}
+		} catch (IllegalStateException e) {
+			throw unwrap(e);
+		}
+		return count;
+	}
+
+	private static IOException unwrap(IllegalStateException e) {
+		if (e.getCause() instanceof IOException)
+			return (IOException) e.getCause();
+		throw e;
+	}
+
+	/**
+	 * Releases the mapped files, and shuts down the executor when it was
+	 * created by this reader.
+	 */
+	@Override
+	public void close() throws IOException {
+		shutdownExecutor();
+		closeFiles();
+	}
+
+	private void shutdownExecutor() {
+		if (ownExecutor) {
+			executor.shutdownNow();
+			ownExecutor = false;
+		}
+		executor = null;
+	}
+
+	private void closeFiles() throws IOException {
+		IOException error = null;
+		for (MappedFile file : files) {
+			if (file == null)
+				continue;
+			try {
+				file.close();
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+		if (error != null)
+			throw error;
+	}
+
+	//
+	// Chunks
+	//
+
+	private ExecutorService executor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(parallelism,
+					new ThreadFactory() {
+
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "JSONLinesReader");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			ownExecutor = true;
+		}
+		return executor;
+	}
+
+	/**
+	 * Returns the chunks of the files, found lazily by looking for the first
+	 * newline after each nominal boundary.
+	 */
+	private Iterator<Chunk> chunks() {
+		return new Iterator<Chunk>() {
+
+			private int file;
+			private long start;
+
+			@Override
+			public boolean hasNext() {
+				while (file < files.length && start >= files[file].size()) {
+					file++;
+					start = 0;
+				}
+				return file < files.length;
+			}
+
+			@Override
+			public Chunk next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				MappedFile mapped = files[file];
+				long size = mapped.size();
+				long end = start + chunkSize;
+				if (end < size) {
+					long newline;
+					try {
+						newline = mapped.indexOf((byte) '\n', end - 1);
+					} catch (IOException e) {
+						throw new IllegalStateException(e);
+					}
+					end = newline < 0 ? size : newline + 1;
+				} else {
+					end = size;
+				}
+				Chunk chunk = new Chunk(mapped, start, end);
+				start = end;
+				return chunk;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * The work done on each chunk, given a parser of its records.
+	 */
+	private interface ChunkTask<R> {
+
+		R process(JSONParser parser) throws IOException;
+
+	}
+
+	/**
+	 * Returns the task keeping the records for which the filter holds, or all
+	 * of them when it is null.
+	 */
+	private static ChunkTask<List<JSON>> records(
+			final Predicate<? super JSON> filter) {
+		return new ChunkTask<List<JSON>>() {
+
+			@Override
+			public List<JSON> process(JSONParser parser) throws IOException {
+				List<JSON> records = new ArrayList<JSON>();
+				while (parser.next() != null) {
+					JSON record = parser.readTree();
+					if (filter == null || filter.holdsFor(record))
+						records.add(record);
+				}
+				return records;
+			}
+		};
+	}
+
+	private <R> Callable<R> parse(final Chunk chunk, final ChunkTask<R> task) {
+		return new Callable<R>() {
+
+			@Override
+			public R call() throws IOException {
+				JSONParser parser = JSONParser.from(
+						chunk.file.getRange(chunk.start, chunk.end - chunk.start))
+						.setMultipleValues(true).setSymbolTable(symbols);
+				try {
+					return task.process(parser);
+				} catch (JSONParseException e) {
+					throw new JSONParseException(fileOf(chunk) + ": "
+							+ e.getReason(), chunk.start + e.getOffset());
+				}
+			}
+		};
+	}
+
+	private File fileOf(Chunk chunk) {
+		for (int i = 0; i < files.length; i++) {
+			if (files[i] == chunk.file)
+				return names[i];
+		}
+		return null;
+	}
+
+	/**
+	 * Runs a task on all the chunks, keeping at most two chunks per thread in
+	 * flight, and returns the results in file order or in completion order.
+	 */
+	private <R> Iterator<R> run(final boolean inOrder, final ChunkTask<R> task) {
+		final Iterator<Chunk> chunks = chunks();
+		final int window = parallelism * 2;
+		final ExecutorService executor = executor();
+		final ExecutorCompletionService<R> completion = new ExecutorCompletionService<R>(
+				executor);
+		final LinkedList<Future<R>> pending = new LinkedList<Future<R>>();
+		return new Iterator<R>() {
+
+			private void submit() {
+				while (pending.size() < window && chunks.hasNext()) {
+					Callable<R> callable = parse(chunks.next(), task);
+					pending.add(inOrder ? executor.submit(callable)
+							: completion.submit(callable));
+				}
+			}
+
+			@Override
+			public boolean hasNext() {
+				submit();
+				return !pending.isEmpty();
+			}
+
+			@Override
+			public R next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				try {
+					Future<R> done;
+					if (inOrder) {
+						done = pending.removeFirst();
+					} else {
+						done = completion.take();
+						pending.remove(done);
+					}
+					return done.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException(e);
+				} catch (ExecutionException e) {
+					for (Future<R> future : pending) {
+						future.cancel(true);
+					}
+					pending.clear();
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException)
+						throw (RuntimeException) cause;
+					if (cause instanceof Error)
+						throw (Error) cause;
+					throw new IllegalStateException(cause);
+				}
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+}
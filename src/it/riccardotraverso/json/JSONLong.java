@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package it.riccardotraverso.json;
+
+import java.math.BigDecimal;
+
+/**
+ * A JSON integer value in the range of a long.
+ */
+public class JSONLong extends JSONNumber {
+
+	/** The digits read by a parser, or null once the value is changed */
+	private String text;
+	private long value;
+	private volatile boolean parsed;
+
+	/**
+	 * Creates a new long JSON value.
+	 * 
+	 * @param value
+	 */
+	public JSONLong(long value) {
+		this.value = value;
+		this.parsed = true;
+	}
+
+	/**
+	 * Creates a new long JSON value.
+	 * 
+	 * @param value
+	 */
+	public JSONLong(Long value) {
+		this(value == null ? 0 : value.longValue());
+	}
+
+	/**
+	 * Creates a new long JSON value.
+	 * 
+	 * @param value
+	 */
+	public JSONLong(String value) {
+		this(value == null ? 0 : Long.parseLong(value));
+	}
+
+	JSONLong(String text, boolean lazy) {
+		this.text = text;
+	}
+
+	/**
+	 * Creates a value from digits already validated by a parser, which are
+	 * converted only when the value is first requested.
+	 */
+	static JSONLong ofText(String text) {
+		return new JSONLong(text, true);
+	}
+
+	/**
+	 * Returns the long value being represented.
+	 * 
+	 * @return the value
+	 */
+	public long getValue() {
+		if (!parsed) {
+			value = Long.parseLong(text);
+			parsed = true;
+		}
+		return value;
+	}
+
+	/**
+	 * Sets the long value being represented.
+	 * 
+	 * @param value
+	 *            the value to set
+	 */
+	public void setValue(long value) {
+		modified();
+		reset(value);
+	}
+
+	/**
+	 * Sets the value of a node passed to visitors and reused for several
+	 * values, which is not part of any tree and thus invalidates no hash.
+	 */
+	void reset(long value) {
+		this.value = value;
+		this.parsed = true;
+		this.text = null;
+	}
+
+	/**
+	 * Adds {@code a} to the current value being represented.
+	 * 
+	 * @param a
+	 *            the increment
+	 */
+	public void add(long a) {
+		setValue(getValue() + a);
+	}
+
+	/**
+	 * Subtracts {@code a} from the current value being represented.
+	 * 
+	 * @param a
+	 *            the decrement
+	 */
+	public void sub(long a) {
+		setValue(getValue() - a);
+	}
+
+	@Override
+	public int intValue() {
+		return (int) getValue();
+	}
+
+	@Override
+	public long longValue() {
+		return getValue();
+	}
+
+	@Override
+	public double doubleValue() {
+		return getValue();
+	}
+
+	@Override
+	public BigDecimal decimalValue() {
+		return BigDecimal.valueOf(getValue());
+	}
+
+	@Override
+	boolean isLong() {
+		return true;
+	}
+
+	@Override
+	public String getNumberText() {
+		String t = text;
+		return t != null ? t : Long.toString(value);
+	}
+
+	/**
+	 * Replaces the value of a node reused by a parser with digits it has
+	 * already validated.
+	 */
+	void resetText(String text) {
+		this.text = text;
+		this.parsed = false;
+	}
+
+	/**
+	 * Returns the digits read by a parser, or null if the value was set
+	 * afterwards.
+	 */
+	String rawText() {
+		return text;
+	}
+
+	@Override
+	public void accept(JSONVisitor v) {
+		v.visitJSONLong(this);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return hashCode(this);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof JSONNumber))
+			return false;
+		return equal(this, (JSONNumber) obj);
+	}
+
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link JSONArray} of long integers stored in a {@code long[]}, which takes
+ * eight bytes per element instead of a {@link JSONLong} and a reference to it.
+ * 
+ * Numeric code can read and write the elements without boxing through
+ * {@link #getLong(int)}, {@link #setLong(int, long)}, {@link #addLong(long)} and
+ * their bulk variants. To the rest of the library the elements are still
+ * {@link JSONLong}s: {@link #getValue(int)} and the iterator return new nodes,
+ * whose changes do not affect the array, while visitors walking the array
+ * receive a single node reused for all its elements, which they must copy to
+ * keep, as when streaming.
+ */
+public class JSONLongArray extends JSONArray<JSONLong> {
+
+	/**
+	 * The elements, stored in the first {@code size} slots of a
+	 * {@code long[]}.
+	 */
+	private static final class Longs extends JSONArray.Elements<JSONLong> {
+
+		private static final long[] EMPTY = new long[0];
+
+		private long[] values = EMPTY;
+		private int size;
+
+		@Override
+		int size() {
+			return size;
+		}
+
+		@Override
+		JSONLong get(int index) {
+			return new JSONLong(getLong(index));
+		}
+
+		@Override
+		JSON visit(int index, JSONWalker.Scratch scratch) {
+			if (scratch.longInteger == null)
+				scratch.longInteger = new JSONLong(0L);
+			scratch.longInteger.reset(values[index]);
+			return scratch.longInteger;
+		}
+
+		@Override
+		void add(JSONLong value) {
+			addLong(unbox(value));
+		}
+
+		@Override
+		void add(int index, JSONLong value) {
+			if (index < 0 || index > size)
+				throw new IndexOutOfBoundsException("index " + index
+						+ ", size " + size);
+			long unboxed = unbox(value);
+			ensureCapacity(size + 1);
+			System.arraycopy(values, index, values, index + 1, size - index);
+			values[index] = unboxed;
+			size++;
+		}
+
+		@Override
+		void set(int index, JSONLong value) {
+			setLong(index, unbox(value));
+		}
+
+		@Override
+		void remove(int index) {
+			check(index);
+			System.arraycopy(values, index + 1, values, index, size - index
+					- 1);
+			size--;
+		}
+
+		@Override
+		boolean removeFirst(JSONLong value) {
+			if (value == null)
+				return false;
+			long unboxed = value.getValue();
+			for (int i = 0; i < size; i++) {
+				if (values[i] == unboxed) {
+					remove(i);
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		void clear() {
+			size = 0;
+		}
+
+		@Override
+		Iterator<JSONLong> iterator() {
+			return new Iterator<JSONLong>() {
+				private int position;
+				private boolean removable;
+
+				@Override
+				public boolean hasNext() {
+					return position < size;
+				}
+
+				@Override
+				public JSONLong next() {
+					if (position >= size)
+						throw new NoSuchElementException();
+					removable = true;
+					return new JSONLong(values[position++]);
+				}
+
+				@Override
+				public void remove() {
+					if (!removable)
+						throw new IllegalStateException();
+					removable = false;
+					Longs.this.remove(--position);
+				}
+			};
+		}
+
+		long getLong(int index) {
+			check(index);
+			return values[index];
+		}
+
+		void setLong(int index, long value) {
+			check(index);
+			values[index] = value;
+		}
+
+		void addLong(long value) {
+			ensureCapacity(size + 1);
+			values[size++] = value;
+		}
+
+		void addLongs(long[] src, int offset, int length) {
+			if (offset < 0 || length < 0 || offset + length > src.length)
+				throw new IndexOutOfBoundsException("offset " + offset
+						+ ", length " + length + ", source " + src.length);
+			ensureCapacity(size + length);
+			System.arraycopy(src, offset, values, size, length);
+			size += length;
+		}
+
+		void getLongs(int index, long[] dst, int offset, int length) {
+			if (index < 0 || length < 0 || index + length > size)
+				throw new IndexOutOfBoundsException("index " + index
+						+ ", length " + length + ", size " + size);
+			System.arraycopy(values, index, dst, offset, length);
+		}
+
+		long[] toLongArray() {
+			return Arrays.copyOf(values, size);
+		}
+
+		private void check(int index) {
+			if (index < 0 || index >= size)
+				throw new IndexOutOfBoundsException("index " + index
+						+ ", size " + size);
+		}
+
+		private void ensureCapacity(int capacity) {
+			if (capacity > values.length)
+				values = Arrays.copyOf(values, Math.max(capacity, values.length
+						+ (values.length >> 1) + 8));
+		}
+
+	}
+
+	private final Longs longs;
+
+	/**
+	 * Creates a new empty JSONLongArray.
+	 */
+	public JSONLongArray() {
+		this(new Longs());
+	}
+
+	/**
+	 * Creates an array holding a copy of some values.
+	 */
+	public JSONLongArray(long[] values) {
+		this();
+		addLongs(values, 0, values.length);
+	}
+
+	private JSONLongArray(Longs longs) {
+		super(longs);
+		this.longs = longs;
+	}
+
+	/**
+	 * Returns the element at a given index.
+	 */
+	public long getLong(int index) {
+		return longs.getLong(index);
+	}
+
+	/**
+	 * Replaces the element at a given index.
+	 */
+	public void setLong(int index, long value) {
+		longs.setLong(index, value);
+		modified();
+	}
+
+	/**
+	 * Appends an element.
+	 */
+	public void addLong(long value) {
+		longs.addLong(value);
+		modified();
+	}
+
+	/**
+	 * Appends {@code length} elements read from {@code src} starting at
+	 * {@code offset}.
+	 */
+	public void addLongs(long[] src, int offset, int length) {
+		longs.addLongs(src, offset, length);
+		modified();
+	}
+
+	/**
+	 * Copies {@code length} elements starting at {@code index} into
+	 * {@code dst} starting at {@code offset}.
+	 */
+	public void getLongs(int index, long[] dst, int offset, int length) {
+		longs.getLongs(index, dst, offset, length);
+	}
+
+	/**
+	 * Returns a copy of the elements.
+	 */
+	public long[] toLongArray() {
+		return longs.toLongArray();
+	}
+
+	/**
+	 * Appends the value of a node.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the value is null
+	 */
+	@Override
+	public void addValue(JSONLong value) {
+		super.addValue(value);
+	}
+
+	/**
+	 * Removes the first element equal to the value of a node.
+	 */
+	@Override
+	public void removeValue(JSONLong value) {
+		super.removeValue(value);
+	}
+
+	/**
+	 * Returns a new node holding the element at a given index.
+	 */
+	@Override
+	public JSON getValue(int index) {
+		return super.getValue(index);
+	}
+
+	private static long unbox(JSONLong value) {
+		if (value == null)
+			throw new IllegalArgumentException("value cannot be null");
+		return value.getValue();
+	}
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package it.riccardotraverso.json;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * The common ancestor of the JSON numeric values, giving access to their
+ * value in any of the Java numeric types.
+ * 
+ * Numbers read by a {@link JSONParser} keep the digits found in the input and
+ * are converted only when their value is first requested, as most numbers in
+ * a document are typically passed through untouched. Until the value is
+ * changed, serialization copies the original digits back out.
+ * 
+ * Numbers are equal when numerically equal, whatever their classes, as JSON
+ * makes no difference between {@code 1}, {@code 1.0} and {@code 1e0}: a
+ * parser chooses the class of an integer from its number of digits alone.
+ * 
+ * @see JSONInteger
+ * @see JSONLong
+ * @see JSONDouble
+ * @see JSONDecimal
+ */
+public abstract class JSONNumber extends JSON {
+
+	/**
+	 * Returns the value as an int, possibly truncated (see
+	 * {@link Number#intValue()}).
+	 */
+	public abstract int intValue();
+
+	/**
+	 * Returns the value as a long, possibly truncated (see
+	 * {@link Number#longValue()}).
+	 */
+	public abstract long longValue();
+
+	/**
+	 * Returns the value as a double, possibly rounded (see
+	 * {@link Number#doubleValue()}).
+	 */
+	public abstract double doubleValue();
+
+	/**
+	 * Returns the exact value of the number.
+	 */
+	public abstract BigDecimal decimalValue();
+
+	/**
+	 * Returns the number as it appears in JSON code, i.e. the original digits
+	 * when read by a parser and not modified since.
+	 */
+	public abstract String getNumberText();
+
+	/**
+	 * Returns the value compared by {@code equals()}: the exact value, except
+	 * for finite doubles, whose value is the shortest decimal reading back as
+	 * the same double, as printed by {@link Double#toString(double)}.
+	 */
+	BigDecimal numericValue() {
+		return decimalValue();
+	}
+
+	/**
+	 * Tells whether the value is held as a long, so that it can be compared
+	 * and hashed without building a {@link BigDecimal}.
+	 */
+	boolean isLong() {
+		return false;
+	}
+
+	/**
+	 * Tells whether two numbers are numerically equal.
+	 */
+	static boolean equal(JSONNumber a, JSONNumber b) {
+		if (a.isLong() && b.isLong())
+			return a.longValue() == b.longValue();
+		if (a instanceof JSONDouble && b instanceof JSONDouble) {
+			double x = a.doubleValue();
+			double y = b.doubleValue();
+			if (!Double.isInfinite(x) && !Double.isInfinite(y))
+				return x == y;
+		}
+		return a.numericValue().compareTo(b.numericValue()) == 0;
+	}
+
+	/**
+	 * Returns a 64-bit hash of the value of a number, equal for numerically
+	 * equal numbers: integral values in the range of a long hash as that
+	 * long.
+	 */
+	static long hash(JSONNumber n) {
+		if (n.isLong())
+			return n.longValue();
+		if (n instanceof JSONDouble) {
+			double d = n.doubleValue();
+			// Below 2^53 an integral double prints as its exact value
+			if (d == Math.rint(d) && Math.abs(d) < 0x1p53)
+				return (long) d;
+		}
+		BigDecimal v = n.numericValue();
+		if (v.signum() == 0)
+			return 0;
+		v = v.stripTrailingZeros();
+		if (v.scale() <= 0 && v.precision() - v.scale() <= 19) {
+			BigInteger i = v.toBigInteger();
+			if (i.bitLength() < 64)
+				return i.longValue();
+		}
+		return v.unscaledValue().longValue() * 0x9E3779B97F4A7C15L + v.scale();
+	}
+
+	/**
+	 * Folds {@link #hash(JSONNumber)} to the 32 bits of
+	 * {@link Object#hashCode()}.
+	 */
+	static int hashCode(JSONNumber n) {
+		long h = hash(n);
+		return (int) (h ^ (h >>> 32));
+	}
+
+}
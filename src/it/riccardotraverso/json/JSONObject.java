@@ -20,15 +20,21 @@
 
 package it.riccardotraverso.json;
 
-import it.riccardotraverso.java.lang.StringUtils;
-
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.NoSuchElementException;
 
 /**
  * A JSON object is a sort of dictionary associating labels to other JSON
- * elements via {@link JSONObject.Property}.
+ * elements via {@link JSONObject.Property}. Labels can be any string, the
+ * empty one included, as in JSON itself.
  * 
+ * Properties are kept in insertion order. Small objects are searched
+ * linearly, while objects with more than {@value #INDEX_THRESHOLD} properties
+ * also maintain a hash index from names to properties, so that lookups and
+ * updates take constant time however wide the object grows.
  */
 public class JSONObject extends JSON implements Iterable<JSONObject.Property> {
 
@@ -48,15 +54,20 @@ public class JSONObject extends JSON implements Iterable<JSONObject.Property> {
 		 */
 		public Property(String name, JSON value) {
 			super();
-			if (StringUtils.isBlank(name))
-				throw new IllegalArgumentException(
-						"name cannot be null or empty");
-			if (value == null)
-				throw new IllegalArgumentException("value cannot be null");
+			check(name, value);
 			this.name = name;
 			this.value = value;
 		}
 
+		/**
+		 * Renames a property passed to visitors and reused for several
+		 * names, which belongs to no indexed object and thus invalidates no
+		 * hash.
+		 */
+		void reset(String name) {
+			this.name = name;
+		}
+
 		/**
 		 * Returns the name of the property.
 		 * 
@@ -73,7 +84,17 @@ public class JSONObject extends JSON implements Iterable<JSONObject.Property> {
 		 *            the name to set
 		 */
 		public void setName(String name) {
+			modified();
+			String old = this.name;
 			this.name = name;
+			if (index != null) {
+				int position = properties.indexOf(this);
+				// A property removed from the object is no longer indexed
+				if (position >= 0) {
+					unindex(old, position);
+					index(name, position);
+				}
+			}
 		}
 
 		/**
@@ -92,6 +113,7 @@ public class JSONObject extends JSON implements Iterable<JSONObject.Property> {
 		 *            the value to set
 		 */
 		public void setValue(JSON value) {
+			modified();
 			this.value = value;
 		}
 		
@@ -102,8 +124,69 @@ public class JSONObject extends JSON implements Iterable<JSONObject.Property> {
 
 	}
 
-	/** The ordered list of properties of the object */
-	private LinkedList<JSONObject.Property> properties = new LinkedList<JSONObject.Property>();
+	/** The size above which properties are also indexed by name */
+	static final int INDEX_THRESHOLD = 8;
+
+	/**
+	 * The ordered list of properties of the object, where properties removed
+	 * from an indexed object leave a null until the list is compacted
+	 */
+	private final ArrayList<JSONObject.Property> properties = new ArrayList<JSONObject.Property>();
+
+	/** The number of nulls left by removals in {@link #properties} */
+	private int removed;
+
+	/**
+	 * Counts the changes moving properties to other positions, which
+	 * iterators check
+	 */
+	private int moves;
+
+	/**
+	 * Counts the nulls left by removals in ranges of {@link #properties}, as a
+	 * Fenwick tree indexed from 1, or null when there are none. Reads by
+	 * position descend it to skip the nulls without writing anything, and it
+	 * is only updated by mutators.
+	 */
+	private int[] holes;
+
+	/**
+	 * The position of the first property having a name, and how many
+	 * properties have it.
+	 */
+	private static final class Slot {
+
+		int position;
+		int count;
+
+		Slot(int position) {
+			this.position = position;
+			this.count = 1;
+		}
+
+	}
+
+	/**
+	 * Maps each name to the slot of its properties, or null while the object
+	 * is small. Positions count the nulls left by removals, so that removing
+	 * a property moves no other one and touches no other slot.
+	 */
+	private HashMap<String, Slot> index;
+
+	/**
+	 * Properties kept for reuse by objects recycled by a {@link JSONArena},
+	 * or null
+	 */
+	private ArrayList<JSONObject.Property> spare;
+
+	/** The cached structural hash, see {@link JSONHashing} */
+	long hash;
+
+	/**
+	 * The epoch in which {@link #hash} was computed, or 0 when no hash is
+	 * cached
+	 */
+	long hashEpoch;
 
 	/**
 	 * Creates a new, empty JSONObject.
@@ -111,6 +194,13 @@ public class JSONObject extends JSON implements Iterable<JSONObject.Property> {
 	public JSONObject() {
 	}
 
+	private static void check(String name, JSON value) {
+		if (name == null)
+			throw new IllegalArgumentException("name cannot be null");
+		if (value == null)
+			throw new IllegalArgumentException("value cannot be null");
+	}
+
 	/**
 	 * Sets the value of a given property, eventually creating it when not
 	 * present.
@@ -123,8 +213,9 @@ public class JSONObject extends JSON implements Iterable<JSONObject.Property> {
 	public JSONObject setProperty(String name, JSON value) {
 		Property property = getProperty(name);
 		if (property == null) {
-			properties.add(new Property(name, value));
+			add(newProperty(name, value));
 		} else {
+			modified();
 			property.value = value;
 		}
 		return this;
@@ -137,11 +228,11 @@ public class JSONObject extends JSON implements Iterable<JSONObject.Property> {
 	 * @return true iff the property was present and correctly removed
 	 */
 	public boolean removeProperty(String name) {
-		Property property = getProperty(name);
-		if (property != null) {
-			return properties.remove(property);
-		}
-		return false;
+		int position = positionOf(name);
+		if (position < 0)
+			return false;
+		remove(position, true);
+		return true;
 	}
 
 	/**
@@ -151,12 +242,24 @@ public class JSONObject extends JSON implements Iterable<JSONObject.Property> {
 	 * @return the property if present, null otherwise
 	 */
 	public JSONObject.Property getProperty(String name) {
-		for (Property property : properties) {
-			if (property.name.equals(name)) {
-				return property;
+		int position = positionOf(name);
+		return position < 0 ? null : properties.get(position);
+	}
+
+	/**
+	 * Returns the position of the first property having a name, or -1.
+	 */
+	private int positionOf(String name) {
+		if (index != null) {
+			Slot slot = index.get(name);
+			return slot == null ? -1 : slot.position;
+		}
+		for (int i = 0, n = properties.size(); i < n; i++) {
+			if (properties.get(i).name.equals(name)) {
+				return i;
 			}
 		}
-		return null;
+		return -1;
 	}
 
 	/**
@@ -173,18 +276,291 @@ public class JSONObject extends JSON implements Iterable<JSONObject.Property> {
 		return null;
 	}
 
+	/**
+	 * Returns the number of properties in the object.
+	 */
+	public int size() {
+		return properties.size() - removed;
+	}
+
+	/**
+	 * Returns the property at a given position, in insertion order. Nulls
+	 * left by removals are skipped without changing the object, so that
+	 * several threads can read it at once.
+	 */
+	JSONObject.Property getProperty(int position) {
+		if (holes == null)
+			return properties.get(position);
+		if (position < 0 || position >= size())
+			throw new IndexOutOfBoundsException("Index: " + position
+					+ ", Size: " + size());
+		// Find the slot holding the (position + 1)-th property
+		int slot = 0;
+		int rest = position + 1;
+		int step = Integer.highestOneBit(holes.length - 1);
+		for (; step > 0; step >>= 1) {
+			int next = slot + step;
+			if (next < holes.length) {
+				int live = step - holes[next];
+				if (live < rest) {
+					slot = next;
+					rest -= live;
+				}
+			}
+		}
+		return properties.get(slot);
+	}
+
+	/**
+	 * Returns a view of the object whose size and properties do not change
+	 * while it is being read by position, which is the object itself unless
+	 * it can be modified concurrently.
+	 */
+	JSONObject snapshot() {
+		return this;
+	}
+
+	/**
+	 * Tells whether the object, or the object this is a snapshot of, can be
+	 * modified concurrently.
+	 */
+	boolean isConcurrent() {
+		return false;
+	}
+
 	@Override
 	public void accept(JSONVisitor v) {
-		v.enterJSONObject(this);
-		for (Property property : properties) {
-			property.accept(v);
-		}
-		v.exitJSONObject(this);
+		JSONWalker.DEFAULT.walk(this, v);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		long h = JSONHashing.hash(this);
+		return (int) (h ^ (h >>> 32));
+	}
+
+	@Override
+	boolean dropHash() {
+		boolean cached = hashEpoch != 0;
+		hashEpoch = 0;
+		return cached;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof JSONObject))
+			return false;
+		return JSONHashing.equal(this, (JSONObject) obj);
 	}
 
 	@Override
 	public Iterator<Property> iterator() {
-		return properties.iterator();
+		return new Iterator<Property>() {
+			private int next;
+			private int last = -1;
+			private int expectedMoves = moves;
+
+			@Override
+			public boolean hasNext() {
+				if (moves != expectedMoves)
+					throw new ConcurrentModificationException();
+				while (next < properties.size() && properties.get(next) == null)
+					next++;
+				return next < properties.size();
+			}
+
+			@Override
+			public Property next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				last = next;
+				return properties.get(next++);
+			}
+
+			@Override
+			public void remove() {
+				if (last < 0)
+					throw new IllegalStateException();
+				if (moves != expectedMoves)
+					throw new ConcurrentModificationException();
+				if (!JSONObject.this.remove(last, false))
+					next--;
+				expectedMoves = moves;
+				last = -1;
+			}
+		};
+	}
+
+	/**
+	 * Creates the property added by {@link #setProperty(String, JSON)},
+	 * reusing a spare one if the object has been recycled.
+	 */
+	JSONObject.Property newProperty(String name, JSON value) {
+		if (spare == null || spare.isEmpty())
+			return new Property(name, value);
+		check(name, value);
+		Property property = spare.remove(spare.size() - 1);
+		property.name = name;
+		property.value = value;
+		return property;
+	}
+
+	/**
+	 * Appends a property without looking for one with the same name, as when
+	 * copying another object.
+	 */
+	void addProperty(String name, JSON value) {
+		add(newProperty(name, value));
+	}
+
+	/**
+	 * Empties the object for reuse, keeping its properties aside.
+	 */
+	void recycle() {
+		modified();
+		if (spare == null)
+			spare = new ArrayList<Property>(properties.size());
+		for (int i = 0, n = properties.size(); i < n; i++) {
+			Property property = properties.get(i);
+			if (property != null) {
+				property.name = null;
+				property.value = null;
+				spare.add(property);
+			}
+		}
+		properties.clear();
+		removed = 0;
+		holes = null;
+		moves++;
+		index = null;
+	}
+
+	private void add(Property property) {
+		modified();
+		properties.add(property);
+		if (holes != null && properties.size() >= holes.length)
+			countHoles(properties.size() * 2);
+		if (index != null) {
+			index(property.name, properties.size() - 1);
+		} else if (properties.size() > INDEX_THRESHOLD) {
+			index = new HashMap<String, Slot>(properties.size() * 2);
+			for (int i = 0, n = properties.size(); i < n; i++) {
+				index(properties.get(i).name, i);
+			}
+		}
+	}
+
+	/**
+	 * Counts a property having a name at a given position, which may come
+	 * before the other ones after a rename.
+	 */
+	private void index(String name, int position) {
+		Slot slot = index.get(name);
+		if (slot == null) {
+			index.put(name, new Slot(position));
+		} else {
+			slot.count++;
+			if (position < slot.position)
+				slot.position = position;
+		}
+	}
+
+	/**
+	 * Removes the property at a position of the list. Indexed objects leave a
+	 * null in its place, and compact the list once half of it is nulls,
+	 * unless an iterator is walking it.
+	 * 
+	 * @return true iff the list kept its positions
+	 */
+	private boolean remove(int position, boolean compact) {
+		modified();
+		if (index == null) {
+			properties.remove(position);
+			moves++;
+			return false;
+		}
+		if (holes == null)
+			countHoles(properties.size());
+		Property property = properties.set(position, null);
+		removed++;
+		for (int i = position + 1; i < holes.length; i += i & -i) {
+			holes[i]++;
+		}
+		unindex(property.name, position);
+		if (compact && removed > properties.size() / 2)
+			compact();
+		return true;
+	}
+
+	/**
+	 * Forgets a property having had a name at a given position, after its
+	 * removal or rename. The properties are looked through only when the
+	 * name is still held by another one and the forgotten property was the
+	 * first having it.
+	 */
+	private void unindex(String name, int position) {
+		Slot slot = index.get(name);
+		if (--slot.count == 0) {
+			index.remove(name);
+		} else if (slot.position == position) {
+			int i = position + 1;
+			Property p;
+			while ((p = properties.get(i)) == null || !p.name.equals(name))
+				i++;
+			slot.position = i;
+		}
+	}
+
+	/**
+	 * Builds {@link #holes} for a given number of positions, which may exceed
+	 * the size of the list so that appending does not build it again.
+	 */
+	private void countHoles(int capacity) {
+		int[] h = new int[capacity + 1];
+		for (int i = 1, n = properties.size(); i < h.length; i++) {
+			if (i <= n && properties.get(i - 1) == null)
+				h[i]++;
+			int parent = i + (i & -i);
+			if (parent < h.length)
+				h[parent] += h[i];
+		}
+		holes = h;
+	}
+
+	/**
+	 * Drops the nulls left by removals, indexing the properties again at
+	 * their new positions. Only mutators compact, as reads must not move
+	 * properties under other readers or iterators.
+	 */
+	private void compact() {
+		if (removed == 0)
+			return;
+		int n = 0;
+		for (int i = 0, size = properties.size(); i < size; i++) {
+			Property property = properties.get(i);
+			if (property != null)
+				properties.set(n++, property);
+		}
+		properties.subList(n, properties.size()).clear();
+		removed = 0;
+		holes = null;
+		moves++;
+		index.clear();
+		for (int i = 0; i < n; i++) {
+			index(properties.get(i).name, i);
+		}
 	}
 
 }
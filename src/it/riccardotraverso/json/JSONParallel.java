@@ -0,0 +1,451 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import it.riccardotraverso.java.lang.Predicate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Parallel visits of large trees, for aggregations such as counts, sums or
+ * histograms over arrays with millions of elements.
+ * 
+ * The children of the root container, the elements of an array or the
+ * properties of an object, are split into contiguous slices, each one
+ * visited by its own visitor on a thread of an executor. The root itself is
+ * entered by the visitor of the first slice, and exited by the one of the
+ * last slice, so every node is visited exactly once. The visitors are then
+ * merged in document order by {@link JSONVisitorFactory#combine(Object, Object)}.
+ * Roots that are not containers, or that have too few children to be worth
+ * splitting, are visited by a single visitor on the calling thread.
+ * 
+ * The calling thread takes part in the visit, running the slices that no
+ * thread of the executor has started yet, so a parallel visit can safely be
+ * started from a task running on the same executor. The tree must not be
+ * modified during the visit.
+ * 
+ * Searches are split the same way: {@link #findAny(JSONArray, Predicate)}
+ * stops every slice as soon as one of them finds a match, and
+ * {@link #filter(JSONArray, Predicate)} collects the matches of each slice
+ * and concatenates them in document order. The predicates are called from
+ * several threads at once, so they must be thread-safe.
+ */
+public final class JSONParallel {
+
+	/** The smallest number of children of a slice */
+	static final int MIN_SLICE = 1024;
+
+	/** Number of slices per thread, to balance uneven slices */
+	private static final int SLICES_PER_THREAD = 4;
+
+	private JSONParallel() {
+		// Class not instantiable
+	}
+
+	/**
+	 * Holds the executor shared by the visits not given one, created on first
+	 * use with one daemon thread per processor.
+	 */
+	private static final class CommonPool {
+
+		static final int PARALLELISM = Runtime.getRuntime()
+				.availableProcessors();
+
+		static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+				PARALLELISM, new ThreadFactory() {
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "JSONParallel");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+
+	}
+
+	/**
+	 * Visits a tree in parallel on the shared executor, which has one thread
+	 * per processor.
+	 * 
+	 * @return the visitor merging the results of all the slices
+	 */
+	public static <V extends JSONVisitor> V visit(JSON root,
+			JSONVisitorFactory<V> factory) {
+		return visit(root, factory, CommonPool.EXECUTOR, CommonPool.PARALLELISM);
+	}
+
+	/**
+	 * Visits a tree in parallel on the given executor, splitting it in a
+	 * number of slices proportional to {@code parallelism}.
+	 * 
+	 * @return the visitor merging the results of all the slices
+	 * @throws IllegalArgumentException
+	 *             if the parallelism is not positive
+	 */
+	public static <V extends JSONVisitor> V visit(JSON root,
+			JSONVisitorFactory<V> factory, Executor executor, int parallelism) {
+		if (parallelism <= 0)
+			throw new IllegalArgumentException("invalid parallelism: "
+					+ parallelism);
+		int size;
+		if (root instanceof JSONArray) {
+			root = ((JSONArray<?>) root).snapshot();
+			size = ((JSONArray<?>) root).size();
+		} else if (root instanceof JSONObject) {
+			root = ((JSONObject) root).snapshot();
+			size = ((JSONObject) root).size();
+		} else {
+			size = 0;
+		}
+		int slices = slices(size, parallelism);
+		if (slices < 2) {
+			V visitor = factory.create();
+			root.accept(visitor);
+			return visitor;
+		}
+		List<FutureTask<V>> tasks = new ArrayList<FutureTask<V>>(slices);
+		for (int i = 0; i < slices; i++) {
+			long from = (long) size * i / slices;
+			long to = (long) size * (i + 1) / slices;
+			tasks.add(new FutureTask<V>(new Slice<V>(root, factory, (int) from,
+					(int) to, i == 0, i == slices - 1)));
+		}
+		V result = null;
+		for (V visitor : run(tasks, executor)) {
+			result = result == null ? visitor : factory.combine(result, visitor);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns an element of an array satisfying a predicate, searching
+	 * slices of the array in parallel on the shared executor.
+	 * 
+	 * @return a matching element, not necessarily the first one, or null if
+	 *         none matches
+	 */
+	public static <J extends JSON> J findAny(JSONArray<J> array,
+			Predicate<? super J> pred) {
+		return findAny(array, pred, CommonPool.EXECUTOR, CommonPool.PARALLELISM);
+	}
+
+	/**
+	 * Returns an element of an array satisfying a predicate, searching
+	 * slices of the array in parallel on the given executor.
+	 * 
+	 * @return a matching element, not necessarily the first one, or null if
+	 *         none matches
+	 * @throws IllegalArgumentException
+	 *             if the parallelism is not positive
+	 */
+	public static <J extends JSON> J findAny(JSONArray<J> array,
+			Predicate<? super J> pred, Executor executor, int parallelism) {
+		JSONArray<J> snapshot = array.snapshot();
+		return findAny(snapshot, snapshot.size(), pred, executor, parallelism);
+	}
+
+	/**
+	 * Returns a property of an object satisfying a predicate, searching
+	 * slices of the object in parallel on the shared executor.
+	 * 
+	 * @return a matching property, not necessarily the first one, or null if
+	 *         none matches
+	 */
+	public static JSONObject.Property findAny(JSONObject object,
+			Predicate<? super JSONObject.Property> pred) {
+		return findAny(object, pred, CommonPool.EXECUTOR, CommonPool.PARALLELISM);
+	}
+
+	/**
+	 * Returns a property of an object satisfying a predicate, searching
+	 * slices of the object in parallel on the given executor.
+	 * 
+	 * @return a matching property, not necessarily the first one, or null if
+	 *         none matches
+	 * @throws IllegalArgumentException
+	 *             if the parallelism is not positive
+	 */
+	public static JSONObject.Property findAny(JSONObject object,
+			Predicate<? super JSONObject.Property> pred, Executor executor,
+			int parallelism) {
+		JSONObject snapshot = object.snapshot();
+		return findAny(snapshot, snapshot.size(), pred, executor, parallelism);
+	}
+
+	/**
+	 * Returns the elements of an array satisfying a predicate, testing slices
+	 * of the array in parallel on the shared executor.
+	 * 
+	 * @return the matching elements, in document order
+	 */
+	public static <J extends JSON> List<J> filter(JSONArray<J> array,
+			Predicate<? super J> pred) {
+		return filter(array, pred, CommonPool.EXECUTOR, CommonPool.PARALLELISM);
+	}
+
+	/**
+	 * Returns the elements of an array satisfying a predicate, testing slices
+	 * of the array in parallel on the given executor.
+	 * 
+	 * @return the matching elements, in document order
+	 * @throws IllegalArgumentException
+	 *             if the parallelism is not positive
+	 */
+	public static <J extends JSON> List<J> filter(JSONArray<J> array,
+			Predicate<? super J> pred, Executor executor, int parallelism) {
+		JSONArray<J> snapshot = array.snapshot();
+		return filter(snapshot, snapshot.size(), pred, executor, parallelism);
+	}
+
+	/**
+	 * Returns the properties of an object satisfying a predicate, testing
+	 * slices of the object in parallel on the shared executor.
+	 * 
+	 * @return the matching properties, in document order
+	 */
+	public static List<JSONObject.Property> filter(JSONObject object,
+			Predicate<? super JSONObject.Property> pred) {
+		return filter(object, pred, CommonPool.EXECUTOR, CommonPool.PARALLELISM);
+	}
+
+	/**
+	 * Returns the properties of an object satisfying a predicate, testing
+	 * slices of the object in parallel on the given executor.
+	 * 
+	 * @return the matching properties, in document order
+	 * @throws IllegalArgumentException
+	 *             if the parallelism is not positive
+	 */
+	public static List<JSONObject.Property> filter(JSONObject object,
+			Predicate<? super JSONObject.Property> pred, Executor executor,
+			int parallelism) {
+		JSONObject snapshot = object.snapshot();
+		return filter(snapshot, snapshot.size(), pred, executor, parallelism);
+	}
+
+	private static <T> T findAny(final JSON root, int size,
+			final Predicate<? super T> pred, Executor executor, int parallelism) {
+		int slices = checkedSlices(size, parallelism);
+		if (slices < 2)
+			return find(root, pred, 0, size, null);
+		final AtomicReference<T> found = new AtomicReference<T>();
+		List<FutureTask<T>> tasks = new ArrayList<FutureTask<T>>(slices);
+		for (int i = 0; i < slices; i++) {
+			final int from = (int) ((long) size * i / slices);
+			final int to = (int) ((long) size * (i + 1) / slices);
+			tasks.add(new FutureTask<T>(new Callable<T>() {
+
+				@Override
+				public T call() {
+					T match = find(root, pred, from, to, found);
+					if (match != null)
+						found.compareAndSet(null, match);
+					return match;
+				}
+			}));
+		}
+		run(tasks, executor);
+		return found.get();
+	}
+
+	private static <T> List<T> filter(final JSON root, int size,
+			final Predicate<? super T> pred, Executor executor, int parallelism) {
+		int slices = checkedSlices(size, parallelism);
+		if (slices < 2)
+			return collect(root, pred, 0, size);
+		List<FutureTask<List<T>>> tasks = new ArrayList<FutureTask<List<T>>>(
+				slices);
+		for (int i = 0; i < slices; i++) {
+			final int from = (int) ((long) size * i / slices);
+			final int to = (int) ((long) size * (i + 1) / slices);
+			tasks.add(new FutureTask<List<T>>(new Callable<List<T>>() {
+
+				@Override
+				public List<T> call() {
+					return collect(root, pred, from, to);
+				}
+			}));
+		}
+		List<List<T>> parts = run(tasks, executor);
+		int count = 0;
+		for (List<T> part : parts) {
+			count += part.size();
+		}
+		List<T> matches = new ArrayList<T>(count);
+		for (List<T> part : parts) {
+			matches.addAll(part);
+		}
+		return matches;
+	}
+
+	/**
+	 * Returns the first child in a range satisfying a predicate, giving up
+	 * when another slice has already found one.
+	 */
+	private static <T> T find(JSON root, Predicate<? super T> pred, int from,
+			int to, AtomicReference<T> found) {
+		for (int i = from; i < to; i++) {
+			if (found != null && (i & 63) == 0 && found.get() != null)
+				return null;
+			T child = child(root, i);
+			if (pred.holdsFor(child))
+				return child;
+		}
+		return null;
+	}
+
+	private static <T> List<T> collect(JSON root, Predicate<? super T> pred,
+			int from, int to) {
+		List<T> matches = new ArrayList<T>();
+		for (int i = from; i < to; i++) {
+			T child = child(root, i);
+			if (pred.holdsFor(child))
+				matches.add(child);
+		}
+		return matches;
+	}
+
+	/**
+	 * Returns an element of an array or a property of an object.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T child(JSON root, int index) {
+		if (root instanceof JSONArray)
+			return (T) ((JSONArray<?>) root).getValue(index);
+		return (T) ((JSONObject) root).getProperty(index);
+	}
+
+	/**
+	 * Returns the number of slices in which to split a number of children.
+	 */
+	private static int slices(int size, int parallelism) {
+		return Math.min(parallelism * SLICES_PER_THREAD, size / MIN_SLICE);
+	}
+
+	private static int checkedSlices(int size, int parallelism) {
+		if (parallelism <= 0)
+			throw new IllegalArgumentException("invalid parallelism: "
+					+ parallelism);
+		return slices(size, parallelism);
+	}
+
+	/**
+	 * Runs the tasks on the executor, helping with the ones not started yet,
+	 * and returns their results in order.
+	 */
+	static <R> List<R> run(List<FutureTask<R>> tasks, Executor executor) {
+		for (FutureTask<R> task : tasks) {
+			try {
+				executor.execute(task);
+			} catch (RejectedExecutionException e) {
+				break; // run by the calling thread
+			}
+		}
+		List<R> results = new ArrayList<R>(tasks.size());
+		for (FutureTask<R> task : tasks) {
+			// Does nothing if the task has already been started
+			task.run();
+			results.add(get(task));
+		}
+		return results;
+	}
+
+	private static <V> V get(FutureTask<V> task) {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * Visits a range of the children of a container with a new visitor.
+	 */
+	private static final class Slice<V extends JSONVisitor> implements
+			Callable<V> {
+
+		private final JSON root;
+		private final JSONVisitorFactory<V> factory;
+		private final int from;
+		private final int to;
+		private final boolean first;
+		private final boolean last;
+
+		Slice(JSON root, JSONVisitorFactory<V> factory, int from, int to,
+				boolean first, boolean last) {
+			this.root = root;
+			this.factory = factory;
+			this.from = from;
+			this.to = to;
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		public V call() {
+			V visitor = factory.create();
+			if (root instanceof JSONArray) {
+				JSONArray<?> array = (JSONArray<?>) root;
+				JSONWalker.Scratch scratch = new JSONWalker.Scratch();
+				if (first)
+					visitor.enterJSONArray(array);
+				for (int i = from; i < to; i++) {
+					array.visitValue(i, scratch).accept(visitor);
+				}
+				if (last)
+					visitor.exitJSONArray(array);
+			} else {
+				JSONObject object = (JSONObject) root;
+				if (first)
+					visitor.enterJSONObject(object);
+				for (int i = from; i < to; i++) {
+					object.getProperty(i).accept(visitor);
+				}
+				if (last)
+					visitor.exitJSONObject(object);
+			}
+			return visitor;
+		}
+
+	}
+
+}
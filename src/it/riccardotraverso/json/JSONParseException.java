@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package it.riccardotraverso.json;
+
+import java.io.IOException;
+
+/**
+ * Signals that the input given to a {@link JSONParser} is not well-formed
+ * JSON, or that it cannot be represented by the JSON tree classes.
+ */
+public class JSONParseException extends IOException {
+
+	private static final long serialVersionUID = -4016337853208547418L;
+
+	private final String reason;
+	private final long offset;
+
+	/**
+	 * Creates a new parse exception.
+	 * 
+	 * @param message
+	 *            the description of the problem
+	 * @param offset
+	 *            the offset in the input where the problem was detected, in
+	 *            bytes or characters depending on the kind of input
+	 */
+	public JSONParseException(String message, long offset) {
+		super(message + " at offset " + offset);
+		this.reason = message;
+		this.offset = offset;
+	}
+
+	/**
+	 * Returns the description of the problem, without the offset.
+	 */
+	String getReason() {
+		return reason;
+	}
+
+	/**
+	 * Returns the offset in the input where the problem was detected, in bytes
+	 * for binary inputs or in characters for textual ones.
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+}
@@ -0,0 +1,960 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package it.riccardotraverso.json;
+
+import it.riccardotraverso.java.nio.MappedFile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A pull parser reading JSON documents one {@link JSONToken} at a time.
+ * 
+ * Binary inputs ({@code byte[]}, {@link ByteBuffer}, {@link InputStream}) are
+ * expected to be UTF-8 encoded and are decoded in place, a token at a time,
+ * without ever building a {@link String} for the whole document. Textual
+ * inputs ({@link Reader}, {@link String}) are scanned directly.
+ * 
+ * A typical pull loop looks like:
+ * 
+ * <pre>
+ * JSONParser p = JSONParser.from(bytes);
+ * JSONToken t;
+ * while ((t = p.next()) != null) {
+ * 	...
+ * }
+ * </pre>
+ * 
+ * Alternatively, {@link #readTree()} builds the {@link JSON} tree of the value
+ * at the current position in a single pass, and the static {@code parse}
+ * methods do the same for a whole document. Finally, {@link #accept(JSONVisitor)}
+ * drives a {@link JSONVisitor} directly from the input, without building any
+ * tree at all.
+ * 
+ * Parsers are not thread-safe.
+ * 
+ * @see JSONToken
+ */
+public abstract class JSONParser implements Closeable {
+
+	/** Size of the window used for streamed inputs */
+	static final int BUFFER_SIZE = 8192;
+
+	// What the parser expects to find next
+	private static final int ROOT_VALUE = 0;
+	private static final int ROOT_DONE = 1;
+	private static final int OBJECT_FIRST = 2;
+	private static final int OBJECT_NAME = 3;
+	private static final int OBJECT_VALUE = 4;
+	private static final int OBJECT_NEXT = 5;
+	private static final int ARRAY_FIRST = 6;
+	private static final int ARRAY_NEXT = 7;
+	private static final int DONE = 8;
+
+	/** The text of the current token, filled in by the subclasses */
+	char[] text = new char[64];
+	int textLength;
+
+	/**
+	 * The {@link String#hashCode()} of the current string, valid when
+	 * textHashed is set by a subclass that could compute it from its input
+	 */
+	int textHash;
+	boolean textHashed;
+	JSONSymbolTable symbols;
+
+	private JSONToken token;
+	private int state = ROOT_VALUE;
+	private boolean integral;
+	private boolean exactDecimals;
+	private boolean multipleValues;
+	private boolean rawStrings;
+	/** Whether the current string was validated but not decoded yet */
+	private boolean textPending;
+	private JSONArena arena;
+	private JSONEventDispatcher events;
+
+	// Kinds of numeric nodes
+	static final int INT = 0;
+	static final int LONG = 1;
+	static final int DOUBLE = 2;
+	static final int DECIMAL = 3;
+
+	/** The stack of open containers, true for objects and false for arrays */
+	private boolean[] stack = new boolean[32];
+	private int depth;
+
+	JSONParser() { }
+
+	//
+	// Factories
+	//
+
+	/**
+	 * Creates a parser reading the given UTF-8 encoded bytes. The array is not
+	 * copied, and it must not be modified while parsing.
+	 */
+	public static JSONParser from(byte[] input) {
+		return new JSONByteParser(input, 0, input.length);
+	}
+
+	/**
+	 * Creates a parser reading {@code length} UTF-8 encoded bytes starting at
+	 * {@code offset}. The array is not copied, and it must not be modified
+	 * while parsing.
+	 */
+	public static JSONParser from(byte[] input, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > input.length)
+			throw new IndexOutOfBoundsException();
+		return new JSONByteParser(input, offset, length);
+	}
+
+	/**
+	 * Creates a parser reading the remaining UTF-8 encoded bytes of a buffer.
+	 * The position of the buffer is left untouched. Heap buffers are read in
+	 * place, whereas direct buffers are streamed through a small window.
+	 */
+	public static JSONParser from(ByteBuffer input) {
+		return new JSONByteParser(input);
+	}
+
+	/**
+	 * Creates a parser reading the concatenation of the remaining UTF-8
+	 * encoded bytes of several buffers, which are streamed through a small
+	 * window. The positions of the buffers are left untouched.
+	 */
+	public static JSONParser from(ByteBuffer[] inputs) {
+		if (inputs == null)
+			throw new IllegalArgumentException("inputs cannot be null");
+		return new JSONByteParser(inputs);
+	}
+
+	/**
+	 * Creates a parser reading a file mapped in memory. The file is read
+	 * straight from the mapping through a small window. Each segment is only
+	 * mapped when the window reaches it, and released by the file once the
+	 * window has moved past it (see {@link MappedFile#release(int)}), so
+	 * that the file does not keep the segments already read. Released
+	 * segments stay mapped until they are garbage collected, so the segments
+	 * of the file must not be too small for the mapping limit of the process.
+	 * 
+	 * @see #setMultipleValues(boolean)
+	 */
+	public static JSONParser from(MappedFile file) throws IOException {
+		if (file == null)
+			throw new IllegalArgumentException("file cannot be null");
+		return new JSONByteParser(file);
+	}
+
+	/**
+	 * Creates a parser reading UTF-8 encoded bytes from a stream. The stream is
+	 * read in chunks, so there is no need to wrap it in a buffered stream.
+	 */
+	public static JSONParser from(InputStream input) {
+		return new JSONByteParser(input);
+	}
+
+	/**
+	 * Creates a parser reading characters from a reader. The reader is read in
+	 * chunks, so there is no need to wrap it in a buffered reader.
+	 */
+	public static JSONParser from(Reader input) {
+		return new JSONCharParser(input);
+	}
+
+	/**
+	 * Creates a parser reading the characters of a string.
+	 */
+	public static JSONParser from(String input) {
+		return new JSONCharParser(input);
+	}
+
+	/**
+	 * Chooses how numbers with a fractional part or an exponent are read:
+	 * as {@link JSONDouble} (the default) or, when {@code exact} is true, as
+	 * {@link JSONDecimal}. Integral numbers are always read as
+	 * {@link JSONInteger}, {@link JSONLong} or {@link JSONDecimal} depending
+	 * on their magnitude.
+	 * 
+	 * @return a pointer to this, to chain more calls
+	 */
+	public JSONParser setExactDecimals(boolean exact) {
+		this.exactDecimals = exact;
+		return this;
+	}
+
+	/**
+	 * Sets the table used to canonicalize property names and short string
+	 * values, so that equal strings read by this parser, and by any other
+	 * parser sharing the same table, are the same instance. By default, or
+	 * when the table is {@code null}, a new string is created every time.
+	 * 
+	 * @return a pointer to this, to chain more calls
+	 * @see JSONSymbolTable
+	 */
+	public JSONParser setSymbolTable(JSONSymbolTable symbols) {
+		this.symbols = symbols;
+		return this;
+	}
+
+	/**
+	 * Chooses whether the input may hold several values one after the other,
+	 * as in newline-delimited JSON (NDJSON) files, rather than a single
+	 * document. In this mode an empty input is valid, and the values can be
+	 * read with:
+	 * 
+	 * <pre>
+	 * while (parser.next() != null) {
+	 * 	JSON value = parser.readTree();
+	 * 	...
+	 * }
+	 * </pre>
+	 * 
+	 * @return a pointer to this, to chain more calls
+	 */
+	public JSONParser setMultipleValues(boolean multiple) {
+		this.multipleValues = multiple;
+		return this;
+	}
+
+	/**
+	 * Chooses whether string values are kept as slices of the input rather
+	 * than decoded, which only applies to byte arrays and heap buffers read
+	 * in place. In this mode strings are still validated while scanning, but
+	 * they are decoded only when their text is requested, and
+	 * {@link #readTree()} returns strings that keep a reference to the input
+	 * and decode themselves on the first call to
+	 * {@link JSONString#getText()}. These strings are copied byte for byte,
+	 * escapes included, by {@link JSONWriter}, {@link JSONCompactPrint} and
+	 * {@link JSONBinaryWriter}, so that a document passing through unchanged
+	 * is never decoded nor re-encoded. The input must then outlive the
+	 * trees, and must not be modified. Property names are always decoded.
+	 * 
+	 * @return a pointer to this, to chain more calls
+	 */
+	public JSONParser setRawStrings(boolean raw) {
+		this.rawStrings = raw;
+		return this;
+	}
+
+	/**
+	 * Sets the arena providing the objects, arrays, strings, integers and
+	 * booleans of the trees built by {@link #readTree()}, or {@code null} (the
+	 * default) to allocate new nodes.
+	 * 
+	 * @return a pointer to this, to chain more calls
+	 * @see JSONArena
+	 */
+	public JSONParser setArena(JSONArena arena) {
+		this.arena = arena;
+		return this;
+	}
+
+	//
+	// Whole documents
+	//
+
+	/**
+	 * Parses a whole UTF-8 encoded JSON document.
+	 * 
+	 * @throws JSONParseException
+	 *             if the input is not a single, well-formed JSON value
+	 */
+	public static JSON parse(byte[] input) throws JSONParseException {
+		try {
+			return from(input).readDocument();
+		} catch (JSONParseException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // in-memory input
+		}
+	}
+
+	/**
+	 * Parses a whole JSON document.
+	 * 
+	 * @throws JSONParseException
+	 *             if the input is not a single, well-formed JSON value
+	 */
+	public static JSON parse(String input) throws JSONParseException {
+		try {
+			return from(input).readDocument();
+		} catch (JSONParseException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // in-memory input
+		}
+	}
+
+	/**
+	 * Parses a whole UTF-8 encoded JSON document from a stream, closing it
+	 * afterwards.
+	 */
+	public static JSON parse(InputStream input) throws IOException {
+		JSONParser parser = from(input);
+		try {
+			return parser.readDocument();
+		} finally {
+			parser.close();
+		}
+	}
+
+	/**
+	 * Parses a whole JSON document from a reader, closing it afterwards.
+	 */
+	public static JSON parse(Reader input) throws IOException {
+		JSONParser parser = from(input);
+		try {
+			return parser.readDocument();
+		} finally {
+			parser.close();
+		}
+	}
+
+	private JSON readDocument() throws IOException {
+		JSON json = readTree();
+		if (next() != null)
+			throw error("unexpected content after the document");
+		return json;
+	}
+
+	//
+	// Pull API
+	//
+
+	/**
+	 * Advances to the next token of the document.
+	 * 
+	 * @return the next token, or {@code null} once the end of the document
+	 *         has been reached
+	 * @throws JSONParseException
+	 *             if the input is not well-formed JSON
+	 */
+	public JSONToken next() throws IOException {
+		textPending = false;
+		int c = nextSignificant();
+		switch (state) {
+		case ROOT_VALUE:
+			if (c >= 0)
+				return value(c);
+			if (!multipleValues)
+				throw error("empty document");
+			state = DONE;
+			return token = null;
+		case ROOT_DONE:
+			if (c >= 0) {
+				if (!multipleValues)
+					throw unexpected(c);
+				return value(c);
+			}
+			state = DONE;
+			return token = null;
+		case OBJECT_FIRST:
+			if (c == '}')
+				return close(JSONToken.END_OBJECT);
+			if (c == '"')
+				return name();
+			throw unexpected(c);
+		case OBJECT_NAME:
+			if (c == '"')
+				return name();
+			throw unexpected(c);
+		case OBJECT_VALUE:
+			if (c != ':')
+				throw unexpected(c);
+			return value(nextSignificant());
+		case OBJECT_NEXT:
+			if (c == ',') {
+				state = OBJECT_NAME;
+				return next();
+			}
+			if (c == '}')
+				return close(JSONToken.END_OBJECT);
+			throw unexpected(c);
+		case ARRAY_FIRST:
+			if (c == ']')
+				return close(JSONToken.END_ARRAY);
+			return value(c);
+		case ARRAY_NEXT:
+			if (c == ',')
+				return value(nextSignificant());
+			if (c == ']')
+				return close(JSONToken.END_ARRAY);
+			throw unexpected(c);
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the token the parser is currently positioned on, or
+	 * {@code null} before the first call to {@link #next()} and after the end
+	 * of the document.
+	 */
+	public JSONToken getCurrentToken() {
+		return token;
+	}
+
+	/**
+	 * Returns the number of containers enclosing the current position.
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * When positioned on {@link JSONToken#START_OBJECT} or
+	 * {@link JSONToken#START_ARRAY}, advances to the matching end token;
+	 * does nothing otherwise.
+	 */
+	public void skipChildren() throws IOException {
+		if (token != JSONToken.START_OBJECT && token != JSONToken.START_ARRAY)
+			return;
+		int target = depth - 1;
+		while (depth > target) {
+			next();
+		}
+	}
+
+	//
+	// Token values
+	//
+
+	/**
+	 * Returns the text of the current {@link JSONToken#PROPERTY_NAME},
+	 * {@link JSONToken#STRING} or {@link JSONToken#NUMBER} token, or
+	 * {@code null} for any other token. Names and strings are canonicalized
+	 * when the parser has a symbol table.
+	 */
+	public String getText() {
+		if (!hasText())
+			return null;
+		decodePending();
+		if (symbols != null && token != JSONToken.NUMBER) {
+			if (textHashed)
+				return symbols.intern(text, 0, textLength, textHash);
+			if (textLength <= symbols.getMaxLength())
+				return symbols.intern(text, 0, textLength);
+		}
+		return new String(text, 0, textLength);
+	}
+
+	/**
+	 * Returns the buffer holding the text of the current token, which is
+	 * valid from index 0 to {@link #getTextLength()}. The buffer is reused
+	 * by the parser and must not be modified nor retained.
+	 */
+	public char[] getTextCharacters() {
+		decodePending();
+		return text;
+	}
+
+	/**
+	 * Returns the length of the text of the current token.
+	 * 
+	 * @see #getTextCharacters()
+	 */
+	public int getTextLength() {
+		if (!hasText())
+			return 0;
+		decodePending();
+		return textLength;
+	}
+
+	/**
+	 * Tells whether the current {@link JSONToken#NUMBER} has neither a
+	 * fractional part nor an exponent.
+	 */
+	public boolean isIntegralNumber() {
+		return token == JSONToken.NUMBER && integral;
+	}
+
+	/**
+	 * Returns the value of the current {@link JSONToken#NUMBER} as an int.
+	 * 
+	 * @throws NumberFormatException
+	 *             if the number is not integral or it does not fit an int
+	 */
+	public int getIntValue() {
+		long value = getLongValue();
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+			throw new NumberFormatException("out of int range: " + getText());
+		return (int) value;
+	}
+
+	/**
+	 * Returns the value of the current {@link JSONToken#NUMBER} as a long.
+	 * 
+	 * @throws NumberFormatException
+	 *             if the number is not integral or it does not fit a long
+	 */
+	public long getLongValue() {
+		if (!isIntegralNumber())
+			throw new NumberFormatException("not an integral number: " + getText());
+		char[] t = text;
+		int i = t[0] == '-' ? 1 : 0;
+		// Accumulate negatively, as Long.MIN_VALUE has no positive counterpart
+		long limit = i == 1 ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		long multmin = limit / 10;
+		long result = 0;
+		for (; i < textLength; i++) {
+			int digit = t[i] - '0';
+			if (result < multmin)
+				throw new NumberFormatException("out of long range: " + getText());
+			result *= 10;
+			if (result < limit + digit)
+				throw new NumberFormatException("out of long range: " + getText());
+			result -= digit;
+		}
+		return t[0] == '-' ? result : -result;
+	}
+
+	/**
+	 * Returns the value of the current {@link JSONToken#NUMBER} as a double.
+	 */
+	public double getDoubleValue() {
+		if (token != JSONToken.NUMBER)
+			throw new NumberFormatException("not a number");
+		return Double.parseDouble(getText());
+	}
+
+	/**
+	 * Returns the exact value of the current {@link JSONToken#NUMBER}.
+	 */
+	public BigDecimal getDecimalValue() {
+		if (token != JSONToken.NUMBER)
+			throw new NumberFormatException("not a number");
+		return new BigDecimal(text, 0, textLength);
+	}
+
+	/**
+	 * Returns the value of the current {@link JSONToken#TRUE} or
+	 * {@link JSONToken#FALSE} token.
+	 */
+	public boolean getBooleanValue() {
+		if (token == JSONToken.TRUE)
+			return true;
+		if (token == JSONToken.FALSE)
+			return false;
+		throw new IllegalStateException("not a boolean: " + token);
+	}
+
+	//
+	// Trees
+	//
+
+	/**
+	 * Builds the tree of the value starting at the current token, leaving the
+	 * parser positioned on the last token of that value. When called before
+	 * the first {@link #next()}, the parser is advanced to the first token.
+	 * 
+	 * @return the value, or {@code null} at the end of the document
+	 * @throws IllegalStateException
+	 *             if the parser is positioned on an end token or on a property
+	 *             name
+	 */
+	@SuppressWarnings("unchecked")
+	public JSON readTree() throws IOException {
+		JSONToken t = token;
+		if (t == null) {
+			if (state != ROOT_VALUE)
+				return null;
+			t = next();
+			if (t == null)
+				return null;
+		}
+		if (t == JSONToken.END_OBJECT || t == JSONToken.END_ARRAY
+				|| t == JSONToken.PROPERTY_NAME)
+			throw new IllegalStateException("not at the start of a value: " + t);
+		JSON[] containers = new JSON[16];
+		String[] names = new String[16];
+		int top = -1;
+		for (;;) {
+			JSON value;
+			switch (t) {
+			case START_OBJECT:
+			case START_ARRAY:
+				if (++top == containers.length) {
+					containers = grow(containers);
+					names = grow(names);
+				}
+				if (arena != null) {
+					containers[top] = t == JSONToken.START_OBJECT ? arena
+							.newObject() : arena.newArray();
+				} else {
+					containers[top] = t == JSONToken.START_OBJECT ? new JSONObject()
+							: new JSONArray<JSON>();
+				}
+				t = next();
+				continue;
+			case PROPERTY_NAME:
+				names[top] = getText();
+				t = next();
+				continue;
+			case END_OBJECT:
+			case END_ARRAY:
+				value = containers[top];
+				containers[top--] = null;
+				break;
+			case STRING:
+				if (arena != null) {
+					value = arena.newString(getText());
+				} else if (textPending) {
+					JSONRawString raw = new JSONRawString();
+					resetRawString(raw);
+					value = raw;
+				} else {
+					value = new JSONString(getText());
+				}
+				break;
+			case NUMBER:
+				value = numberNode();
+				break;
+			case TRUE:
+				value = arena != null ? arena.newBoolean(true)
+						: new JSONBoolean(true);
+				break;
+			case FALSE:
+				value = arena != null ? arena.newBoolean(false)
+						: new JSONBoolean(false);
+				break;
+			default:
+				value = new JSONNull();
+				break;
+			}
+			if (top < 0)
+				return value;
+			JSON container = containers[top];
+			if (container instanceof JSONObject) {
+				((JSONObject) container).setProperty(names[top], value);
+			} else {
+				((JSONArray<JSON>) container).addValue(value);
+			}
+			t = next();
+		}
+	}
+
+	/**
+	 * Fires the {@link JSONVisitor} callbacks for the value starting at the
+	 * current token, without building any tree: the visit proceeds while the
+	 * input is being scanned, and the parser is left positioned on the last
+	 * token of the value. When called before the first {@link #next()}, the
+	 * parser is advanced to the first token. Nothing happens at the end of
+	 * the document.
+	 * 
+	 * The nodes passed to the visitor are not part of any tree: a single
+	 * instance of each node type is reused and refreshed before every
+	 * callback, so visitors must copy whatever they need to keep. The
+	 * {@link JSONObject} and {@link JSONArray} instances are always empty,
+	 * and the value of a {@link JSONObject.Property} is not known yet when it
+	 * is visited.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the parser is positioned on an end token or on a property
+	 *             name
+	 */
+	public void accept(JSONVisitor v) throws IOException {
+		JSONToken t = token;
+		if (t == null) {
+			if (state != ROOT_VALUE)
+				return;
+			t = next();
+			if (t == null)
+				return;
+		}
+		if (t == JSONToken.END_OBJECT || t == JSONToken.END_ARRAY
+				|| t == JSONToken.PROPERTY_NAME)
+			throw new IllegalStateException("not at the start of a value: " + t);
+		if (events == null)
+			events = new JSONEventDispatcher();
+		int base = t.isScalarValue() ? depth : depth - 1;
+		for (;;) {
+			events.dispatch(this, t, v);
+			if (depth == base)
+				return;
+			t = next();
+		}
+	}
+
+	/**
+	 * Classifies the current number by the node type it needs: one of
+	 * {@link #INT}, {@link #LONG}, {@link #DOUBLE} or {@link #DECIMAL}. Only
+	 * the digits are looked at, no conversion takes place.
+	 */
+	int numberKind() {
+		if (!integral)
+			return exactDecimals ? DECIMAL : DOUBLE;
+		boolean negative = text[0] == '-';
+		int digits = negative ? textLength - 1 : textLength;
+		if (digits <= 9)
+			return INT;
+		if (digits < 19)
+			return LONG;
+		if (digits > 19)
+			return DECIMAL;
+		String limit = negative ? "9223372036854775808" : "9223372036854775807";
+		for (int i = 0; i < 19; i++) {
+			char c = text[textLength - 19 + i];
+			if (c != limit.charAt(i))
+				return c < limit.charAt(i) ? LONG : DECIMAL;
+		}
+		return LONG;
+	}
+
+	private JSON numberNode() {
+		switch (numberKind()) {
+		case INT:
+			return arena != null ? arena.newInteger(getIntValue())
+					: new JSONInteger(getIntValue());
+		case LONG:
+			return JSONLong.ofText(getText());
+		case DOUBLE:
+			return JSONDouble.ofText(getText());
+		default:
+			return JSONDecimal.ofText(getText());
+		}
+	}
+
+	private static <T> T[] grow(T[] array) {
+		return Arrays.copyOf(array, array.length * 2);
+	}
+
+	//
+	// Scanning primitives, implemented by the subclasses
+	//
+
+	/**
+	 * Skips whitespace and returns the next character, or -1 at the end of
+	 * the input.
+	 */
+	abstract int nextSignificant() throws IOException;
+
+	/**
+	 * Scans the rest of a string whose opening quote has just been consumed,
+	 * decoding it into {@link #text}.
+	 */
+	abstract void scanString() throws IOException;
+
+	/**
+	 * Validates the rest of a string whose opening quote has just been
+	 * consumed, leaving it undecoded in the input, when the subclass reads
+	 * its input in place.
+	 * 
+	 * @return false if the string was not scanned, and must be scanned by
+	 *         {@link #scanString()} instead
+	 */
+	boolean scanRawString() throws IOException {
+		return false;
+	}
+
+	/**
+	 * Decodes into {@link #text} the string last scanned by
+	 * {@link #scanRawString()}.
+	 */
+	void decodeRawString() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Points a string to the slice of the input last scanned by
+	 * {@link #scanRawString()}.
+	 */
+	void resetRawString(JSONRawString s) {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Copies into {@link #text} the characters of a number starting with
+	 * {@code first}, which has just been consumed.
+	 */
+	abstract void scanNumber(int first) throws IOException;
+
+	/**
+	 * Checks that the input continues with the given characters.
+	 */
+	abstract void scanLiteral(String rest) throws IOException;
+
+	/**
+	 * Returns the current offset in the input.
+	 */
+	abstract long position();
+
+	/**
+	 * Returns a larger buffer for the text of the current token, containing
+	 * the first {@code length} characters of the old one.
+	 */
+	final char[] growText(int length) {
+		char[] larger = new char[Math.max(text.length * 2, length + 16)];
+		System.arraycopy(text, 0, larger, 0, length);
+		return text = larger;
+	}
+
+	/**
+	 * Creates an exception reporting a problem at the current position.
+	 */
+	final JSONParseException error(String message) {
+		return new JSONParseException(message, position());
+	}
+
+	//
+	// State machine
+	//
+
+	private JSONToken value(int c) throws IOException {
+		switch (c) {
+		case '{':
+			push(true);
+			state = OBJECT_FIRST;
+			return token = JSONToken.START_OBJECT;
+		case '[':
+			push(false);
+			state = ARRAY_FIRST;
+			return token = JSONToken.START_ARRAY;
+		case '"':
+			if (rawStrings && scanRawString()) {
+				textPending = true;
+			} else {
+				scanString();
+			}
+			return scalar(JSONToken.STRING);
+		case 't':
+			scanLiteral("rue");
+			return scalar(JSONToken.TRUE);
+		case 'f':
+			scanLiteral("alse");
+			return scalar(JSONToken.FALSE);
+		case 'n':
+			scanLiteral("ull");
+			return scalar(JSONToken.NULL);
+		case '-': case '0': case '1': case '2': case '3': case '4':
+		case '5': case '6': case '7': case '8': case '9':
+			scanNumber(c);
+			checkNumber();
+			return scalar(JSONToken.NUMBER);
+		default:
+			if (c < 0)
+				throw error("unexpected end of input");
+			throw unexpected(c);
+		}
+	}
+
+	private JSONToken name() throws IOException {
+		scanString();
+		state = OBJECT_VALUE;
+		return token = JSONToken.PROPERTY_NAME;
+	}
+
+	private JSONToken scalar(JSONToken t) {
+		afterValue();
+		return token = t;
+	}
+
+	private JSONToken close(JSONToken t) {
+		depth--;
+		afterValue();
+		return token = t;
+	}
+
+	private void afterValue() {
+		if (depth == 0) {
+			state = ROOT_DONE;
+		} else {
+			state = stack[depth - 1] ? OBJECT_NEXT : ARRAY_NEXT;
+		}
+	}
+
+	private void push(boolean object) {
+		if (depth == stack.length) {
+			boolean[] larger = new boolean[depth * 2];
+			System.arraycopy(stack, 0, larger, 0, depth);
+			stack = larger;
+		}
+		stack[depth++] = object;
+	}
+
+	/**
+	 * Tells whether the current string was left undecoded in the input.
+	 */
+	boolean isRawString() {
+		return textPending;
+	}
+
+	private void decodePending() {
+		if (textPending) {
+			textPending = false;
+			decodeRawString();
+		}
+	}
+
+	private boolean hasText() {
+		return token == JSONToken.PROPERTY_NAME || token == JSONToken.STRING
+				|| token == JSONToken.NUMBER;
+	}
+
+	/**
+	 * Validates the number just scanned against the JSON grammar:
+	 * {@code -?(0|[1-9][0-9]*)(\.[0-9]+)?([eE][+-]?[0-9]+)?}
+	 */
+	private void checkNumber() throws JSONParseException {
+		char[] t = text;
+		int n = textLength, i = 0;
+		if (t[i] == '-')
+			i++;
+		int start = i;
+		while (i < n && t[i] >= '0' && t[i] <= '9')
+			i++;
+		boolean valid = i > start && (t[start] != '0' || i == start + 1);
+		integral = true;
+		if (valid && i < n && t[i] == '.') {
+			integral = false;
+			start = ++i;
+			while (i < n && t[i] >= '0' && t[i] <= '9')
+				i++;
+			valid = i > start;
+		}
+		if (valid && i < n && (t[i] == 'e' || t[i] == 'E')) {
+			integral = false;
+			if (++i < n && (t[i] == '+' || t[i] == '-'))
+				i++;
+			start = i;
+			while (i < n && t[i] >= '0' && t[i] <= '9')
+				i++;
+			valid = i > start;
+		}
+		if (!valid || i != n)
+			throw error("malformed number: " + new String(t, 0, n));
+	}
+
+	private JSONParseException unexpected(int c) {
+		if (c < 0)
+			return error("unexpected end of input");
+		if (c < 0x20 || c >= 0x7F)
+			return error("unexpected character 0x" + Integer.toHexString(c));
+		return error("unexpected character '" + (char) c + "'");
+	}
+
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import java.util.ArrayList;
+
+/**
+ * Computes and applies JSON Patch documents, as defined by RFC 6902.
+ * 
+ * {@link #diff(JSON, JSON)} compares two trees top-down and skips the
+ * subtrees that are the same node, as in versions of an immutable tree
+ * sharing their untouched parts, or that are equal, so that only the paths
+ * to the changes are visited. Subtrees whose 64-bit structural hashes differ
+ * are told apart at once; equal hashes are confirmed by comparing the
+ * subtrees, so that a collision never drops a change from the patch.
+ * Containers cache their hashes until a node below them changes (see
+ * {@link JSONObject#hashCode()}), so two documents are hashed in linear time
+ * on their first diff, and later diffs hash only the paths to the changes
+ * made in between. Numbers are compared by value, so {@code 1} and
+ * {@code 1.0} need no operation, and a {@code test} operation succeeds on
+ * any numerically equal value, as the RFC requires.
+ * 
+ * {@link #apply(JSON, JSON)} supports all the six operations. Immutable
+ * documents are updated through {@link JSONImmutable}, so a patch applies as
+ * a whole or not at all; mutable documents are modified in place, and are
+ * left partially patched when an operation fails.
+ * 
+ * <pre>
+ * JSONArray&lt;JSONObject&gt; patch = JSONPatch.diff(before, after);
+ * JSON patched = JSONPatch.apply(before, patch); // equal to after
+ * </pre>
+ */
+public final class JSONPatch {
+
+	private JSONPatch() {
+	}
+
+	/**
+	 * An operation found by a diff, turned into an object only at the end so
+	 * that building the patch does not invalidate the hashes of the trees.
+	 */
+	private static final class Operation {
+		final String op;
+		final String path;
+		final JSON value;
+
+		Operation(String op, String path, JSON value) {
+			this.op = op;
+			this.path = path;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Returns a patch turning a source tree into a target tree. Arrays are
+	 * compared element by element after skipping their common prefix and
+	 * suffix, so insertions and removals in the middle of an array are
+	 * reported as replacements of the following elements.
+	 * 
+	 * @param source
+	 * @param target
+	 * @return the list of operations, whose values are nodes of the target
+	 *         rather than copies
+	 * @throws IllegalArgumentException
+	 *             if either tree is null
+	 */
+	public static JSONArray<JSONObject> diff(JSON source, JSON target) {
+		if (source == null || target == null)
+			throw new IllegalArgumentException("cannot diff null trees");
+		if (source instanceof JSONTapeValue)
+			source = ((JSONTapeValue) source).toJSON();
+		if (target instanceof JSONTapeValue)
+			target = ((JSONTapeValue) target).toJSON();
+		ArrayList<Operation> operations = new ArrayList<Operation>();
+		// Pairs of values still to compare, with their pointer
+		ArrayList<JSON> pending = new ArrayList<JSON>();
+		ArrayList<String> pointers = new ArrayList<String>();
+		pending.add(source);
+		pending.add(target);
+		pointers.add("");
+		while (!pointers.isEmpty()) {
+			String pointer = pointers.remove(pointers.size() - 1);
+			JSON b = pending.remove(pending.size() - 1);
+			JSON a = pending.remove(pending.size() - 1);
+			if (JSONHashing.same(a, b))
+				continue;
+			if (a instanceof JSONObject && b instanceof JSONObject) {
+				JSONObject from = ((JSONObject) a).snapshot();
+				JSONObject to = ((JSONObject) b).snapshot();
+				for (int i = 0, n = from.size(); i < n; i++) {
+					JSONObject.Property property = from.getProperty(i);
+					String name = property.getName();
+					JSON value = to.getPropertyValue(name);
+					// Shared subtrees are skipped before building their path
+					if (value == property.getValue())
+						continue;
+					String path = pointer + '/' + JSONPath.escape(name);
+					if (value == null) {
+						operations.add(new Operation("remove", path, null));
+					} else {
+						pending.add(property.getValue());
+						pending.add(value);
+						pointers.add(path);
+					}
+				}
+				for (int i = 0, n = to.size(); i < n; i++) {
+					JSONObject.Property property = to.getProperty(i);
+					String name = property.getName();
+					if (from.getProperty(name) == null)
+						operations.add(new Operation("add", pointer + '/'
+								+ JSONPath.escape(name), property.getValue()));
+				}
+			} else if (a instanceof JSONArray && b instanceof JSONArray) {
+				JSONArray<?> from = ((JSONArray<?>) a).snapshot();
+				JSONArray<?> to = ((JSONArray<?>) b).snapshot();
+				int m = from.size(), n = to.size();
+				int start = 0;
+				while (start < m && start < n
+						&& JSONHashing.same(from.getValue(start), to.getValue(start)))
+					start++;
+				while (m > start && n > start
+						&& JSONHashing.same(from.getValue(m - 1), to.getValue(n - 1))) {
+					m--;
+					n--;
+				}
+				int common = Math.min(m, n);
+				for (int i = start; i < common; i++) {
+					if (from.getValue(i) == to.getValue(i))
+						continue;
+					pending.add(from.getValue(i));
+					pending.add(to.getValue(i));
+					pointers.add(pointer + '/' + i);
+				}
+				for (int i = common; i < m; i++) {
+					operations.add(new Operation("remove", pointer + '/'
+							+ common, null));
+				}
+				for (int i = common; i < n; i++) {
+					operations.add(new Operation("add", pointer + '/' + i, to
+							.getValue(i)));
+				}
+			} else {
+				operations.add(new Operation("replace", pointer, b));
+			}
+		}
+		JSONArray<JSONObject> patch = new JSONArray<JSONObject>();
+		for (Operation operation : operations) {
+			JSONObject object = new JSONObject();
+			object.setProperty("op", new JSONString(operation.op));
+			object.setProperty("path", new JSONString(operation.path));
+			if (operation.value != null)
+				object.setProperty("value", operation.value);
+			patch.addValue(object);
+		}
+		return patch;
+	}
+
+	/**
+	 * Applies a patch to a document. Values taken from the patch are copied,
+	 * so the patch and the result share no mutable node.
+	 * 
+	 * @param document
+	 * @param patch
+	 *            an array of operations
+	 * @return the patched document, which is a new root when the document is
+	 *         immutable or the patch replaces the root, and the document
+	 *         itself otherwise
+	 * @throws IllegalArgumentException
+	 *             if the patch is malformed, or one of its operations cannot
+	 *             be applied or fails its test
+	 */
+	public static JSON apply(JSON document, JSON patch) {
+		if (document == null)
+			throw new IllegalArgumentException("document cannot be null");
+		if (!(patch instanceof JSONArray))
+			throw new IllegalArgumentException("a patch must be an array");
+		if (document instanceof JSONTapeValue)
+			document = ((JSONTapeValue) document).toJSON();
+		boolean immutable = JSONImmutable.isImmutable(document);
+		JSONArray<?> operations = ((JSONArray<?>) patch).snapshot();
+		for (int i = 0, n = operations.size(); i < n; i++) {
+			try {
+				document = apply(document, operations.getValue(i), immutable);
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("operation " + i + ": "
+						+ e.getMessage(), e);
+			}
+		}
+		return document;
+	}
+
+	private static JSON apply(JSON document, JSON operation, boolean immutable) {
+		if (!(operation instanceof JSONObject))
+			throw new IllegalArgumentException("not an object");
+		JSONObject object = (JSONObject) operation;
+		String op = text(object, "op");
+		String path = text(object, "path");
+		if (op.equals("add")) {
+			return add(document, path, value(object), immutable);
+		} else if (op.equals("remove")) {
+			return remove(document, path, immutable);
+		} else if (op.equals("replace")) {
+			get(document, path);
+			JSON value = value(object);
+			if (immutable)
+				return JSONImmutable.set(document, path, value);
+			return put(document, path, copy(value), false);
+		} else if (op.equals("move")) {
+			String from = text(object, "from");
+			if (path.startsWith(from + '/'))
+				throw new IllegalArgumentException("cannot move " + from
+						+ " into itself");
+			JSON value = get(document, from);
+			if (from.equals(path))
+				return document;
+			document = remove(document, from, immutable);
+			if (immutable)
+				return JSONImmutable.add(document, path, value);
+			return put(document, path, value, true);
+		} else if (op.equals("copy")) {
+			return add(document, path, get(document, text(object, "from")),
+					immutable);
+		} else if (op.equals("test")) {
+			if (!JSONHashing.equal(get(document, path), value(object)))
+				throw new IllegalArgumentException("test failed at " + path);
+			return document;
+		}
+		throw new IllegalArgumentException("unknown operation '" + op + "'");
+	}
+
+	private static JSON add(JSON document, String path, JSON value,
+			boolean immutable) {
+		if (immutable)
+			return JSONImmutable.add(document, path, value);
+		return put(document, path, copy(value), true);
+	}
+
+	private static JSON remove(JSON document, String path, boolean immutable) {
+		if (immutable)
+			return JSONImmutable.remove(document, path);
+		JSONPath pointer = JSONPath.compilePointer(path);
+		int last = pointer.length() - 1;
+		if (last < 0)
+			throw new IllegalArgumentException("cannot remove the root");
+		JSON parent = parent(document, pointer, path);
+		if (parent instanceof JSONObject) {
+			if (!((JSONObject) parent).removeProperty(pointer.getName(last)))
+				throw new IllegalArgumentException("no value at " + path);
+		} else {
+			JSONArray<?> array = (JSONArray<?>) parent;
+			int index = pointer.getIndex(last);
+			if (index < 0 || index >= array.size())
+				throw new IllegalArgumentException("no value at " + path);
+			array.removeValue(index);
+		}
+		return document;
+	}
+
+	/**
+	 * Sets or inserts a value in a mutable document.
+	 */
+	@SuppressWarnings("unchecked")
+	private static JSON put(JSON document, String path, JSON value,
+			boolean insert) {
+		JSONPath pointer = JSONPath.compilePointer(path);
+		int last = pointer.length() - 1;
+		if (last < 0)
+			return value;
+		JSON parent = parent(document, pointer, path);
+		if (parent instanceof JSONObject) {
+			((JSONObject) parent).setProperty(pointer.getName(last), value);
+			return document;
+		}
+		JSONArray<JSON> array = (JSONArray<JSON>) parent;
+		int index = pointer.getIndex(last);
+		if (insert && "-".equals(pointer.getName(last)))
+			index = array.size();
+		if (index < 0 || index > array.size()
+				|| (!insert && index == array.size()))
+			throw new IllegalArgumentException("no value at " + path);
+		if (insert) {
+			array.addValue(index, value);
+		} else {
+			array.setValue(index, value);
+		}
+		return document;
+	}
+
+	/**
+	 * Returns the container holding the value a pointer leads to.
+	 */
+	private static JSON parent(JSON document, JSONPath pointer, String path) {
+		JSON node = document;
+		for (int i = 0, n = pointer.length() - 1; i < n && node != null; i++) {
+			if (node instanceof JSONObject) {
+				node = ((JSONObject) node).getPropertyValue(pointer.getName(i));
+			} else if (node instanceof JSONArray) {
+				JSONArray<?> array = (JSONArray<?>) node;
+				int index = pointer.getIndex(i);
+				node = index >= 0 && index < array.size() ? array
+						.getValue(index) : null;
+			} else {
+				node = null;
+			}
+		}
+		if (!JSONHashing.isContainer(node))
+			throw new IllegalArgumentException("no container for " + path);
+		return node;
+	}
+
+	private static JSON get(JSON document, String path) {
+		JSON value = JSONPath.compilePointer(path).selectFirst(document);
+		if (value == null)
+			throw new IllegalArgumentException("no value at " + path);
+		return value;
+	}
+
+	private static String text(JSONObject operation, String name) {
+		JSON value = operation.getPropertyValue(name);
+		if (!(value instanceof JSONString))
+			throw new IllegalArgumentException("missing '" + name + "'");
+		return ((JSONString) value).getText();
+	}
+
+	private static JSON value(JSONObject operation) {
+		JSON value = operation.getPropertyValue("value");
+		if (value == null)
+			throw new IllegalArgumentException("missing 'value'");
+		return value;
+	}
+
+	/**
+	 * Returns a mutable deep copy of a value.
+	 */
+	private static JSON copy(JSON value) {
+		JSONTreeBuilder builder = new JSONTreeBuilder();
+		value.accept(builder);
+		return builder.getResult();
+	}
+
+}
@@ -0,0 +1,698 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compiled path selecting values out of JSON documents.
+ * 
+ * Paths are written as JSON Pointers (RFC 6901): a sequence of segments,
+ * each one preceded by a '/', where "~1" stands for '/' and "~0" for '~'.
+ * A segment selects the property of an object having that name, or the
+ * element of an array at that index when the segment is a number. The empty
+ * path selects the whole document. For example, "/items/0/name" selects the
+ * name of the first item.
+ * 
+ * Paths compiled by {@link #compile(String)} also accept two kinds of
+ * segments selecting several values at once:
+ * <ul>
+ * <li>{@code *} selects every property value of an object, or every element
+ * of an array;</li>
+ * <li>{@code [name=text]} selects, like {@code *}, the children that are
+ * objects having a property {@code name} whose value is written as
+ * {@code text}: the text of a string, the digits of a number as they were
+ * read, {@code true}, {@code false} or {@code null}.</li>
+ * </ul>
+ * For example, "/items/[type=book]/title" selects the titles of the items
+ * being books. {@link #compilePointer(String)} reads paths as strict JSON
+ * Pointers instead, where these segments are plain property names.
+ * 
+ * Compiling a path parses it once, and the compiled paths are cached by
+ * expression, so compiling the same expression again is a lookup. Compiled
+ * paths are immutable, and they can be shared by any number of threads.
+ * 
+ * A path runs either over trees, with {@link #select(JSON)} and
+ * {@link #selectFirst(JSON)}, or over a stream of events, with
+ * {@link #visitor(JSONVisitor)}.
+ */
+public final class JSONPath {
+
+	/** Number of compiled paths above which a cache is emptied */
+	private static final int CACHE_SIZE = 1024;
+
+	private static final ConcurrentHashMap<String, JSONPath> PATHS = new ConcurrentHashMap<String, JSONPath>();
+	private static final ConcurrentHashMap<String, JSONPath> POINTERS = new ConcurrentHashMap<String, JSONPath>();
+
+	// Kinds of segments
+	private static final int NAME = 0;
+	private static final int ANY = 1;
+	private static final int FILTER = 2;
+
+	/**
+	 * A step of a path. Names are also array indexes when they are made of
+	 * digits without leading zeros.
+	 */
+	private static final class Segment {
+
+		final int kind;
+		final String name;
+		final int index;
+		final String value;
+
+		Segment(int kind, String name, String value) {
+			this.kind = kind;
+			this.name = name;
+			this.index = kind == NAME ? toIndex(name) : -1;
+			this.value = value;
+		}
+
+		/**
+		 * Returns the child selected by a name segment, or null if there is
+		 * none.
+		 */
+		JSON child(JSON node) {
+			if (node instanceof JSONObject) {
+				JSONObject.Property property = ((JSONObject) node).getProperty(name);
+				return property == null ? null : property.getValue();
+			}
+			if (node instanceof JSONArray && index >= 0) {
+				JSONArray<?> array = ((JSONArray<?>) node).snapshot();
+				return index < array.size() ? array.getValue(index) : null;
+			}
+			return null;
+		}
+
+		/**
+		 * Tells whether a name segment selects the child with the given name,
+		 * or with the given index when the name is null.
+		 */
+		boolean selects(String childName, int childIndex) {
+			return childName != null ? childName.equals(name) : childIndex == index;
+		}
+
+		/**
+		 * Tells whether a node passes a filter segment.
+		 */
+		boolean accepts(JSON node) {
+			if (kind == ANY)
+				return true;
+			if (!(node instanceof JSONObject))
+				return false;
+			JSONObject.Property property = ((JSONObject) node).getProperty(name);
+			return property != null && value.equals(textOf(property.getValue()));
+		}
+
+		private static String textOf(JSON value) {
+			if (value instanceof JSONString)
+				return ((JSONString) value).getText();
+			if (value instanceof JSONNumber)
+				return ((JSONNumber) value).getNumberText();
+			if (value instanceof JSONBoolean)
+				return String.valueOf(((JSONBoolean) value).getValue());
+			if (value instanceof JSONNull)
+				return "null";
+			return null;
+		}
+
+		private static int toIndex(String name) {
+			int length = name.length();
+			if (length == 0 || length > 9 || (length > 1 && name.charAt(0) == '0'))
+				return -1;
+			int index = 0;
+			for (int i = 0; i < length; i++) {
+				char c = name.charAt(i);
+				if (c < '0' || c > '9')
+					return -1;
+				index = index * 10 + (c - '0');
+			}
+			return index;
+		}
+
+	}
+
+	private final String expression;
+	private final Segment[] segments;
+
+	private JSONPath(String expression, Segment[] segments) {
+		this.expression = expression;
+		this.segments = segments;
+	}
+
+	//
+	// Compilation
+	//
+
+	/**
+	 * Compiles a path, which may use wildcards and filters.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the expression is not a valid path
+	 */
+	public static JSONPath compile(String expression) {
+		return compile(expression, PATHS, true);
+	}
+
+	/**
+	 * Compiles a strict JSON Pointer, as defined by RFC 6901.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the expression is not a valid pointer
+	 */
+	public static JSONPath compilePointer(String pointer) {
+		return compile(pointer, POINTERS, false);
+	}
+
+	private static JSONPath compile(String expression,
+			ConcurrentHashMap<String, JSONPath> cache, boolean extended) {
+		if (expression == null)
+			throw new IllegalArgumentException("null path");
+		JSONPath path = cache.get(expression);
+		if (path != null)
+			return path;
+		path = new JSONPath(expression, parse(expression, extended));
+		if (cache.size() >= CACHE_SIZE)
+			cache.clear();
+		JSONPath cached = cache.putIfAbsent(expression, path);
+		return cached != null ? cached : path;
+	}
+
+	private static Segment[] parse(String expression, boolean extended) {
+		int length = expression.length();
+		if (length > 0 && expression.charAt(0) != '/')
+			throw new IllegalArgumentException("a path must start with '/': "
+					+ expression);
+		List<Segment> segments = new ArrayList<Segment>();
+		int start = 1;
+		while (start <= length) {
+			int end = expression.indexOf('/', start);
+			if (end < 0)
+				end = length;
+			String raw = expression.substring(start, end);
+			if (extended && raw.equals("*")) {
+				segments.add(new Segment(ANY, null, null));
+			} else if (extended && raw.startsWith("[") && raw.endsWith("]")) {
+				int eq = raw.indexOf('=');
+				if (eq < 2)
+					throw new IllegalArgumentException("invalid filter '" + raw
+							+ "' in " + expression);
+				segments.add(new Segment(FILTER, unescape(raw.substring(1, eq),
+						expression), unescape(
+						raw.substring(eq + 1, raw.length() - 1), expression)));
+			} else {
+				segments.add(new Segment(NAME, unescape(raw, expression), null));
+			}
+			start = end + 1;
+		}
+		return segments.toArray(new Segment[segments.size()]);
+	}
+
+	private static String unescape(String raw, String expression) {
+		int tilde = raw.indexOf('~');
+		if (tilde < 0)
+			return raw;
+		StringBuilder sb = new StringBuilder(raw.length());
+		sb.append(raw, 0, tilde);
+		for (int i = tilde; i < raw.length(); i++) {
+			char c = raw.charAt(i);
+			if (c != '~') {
+				sb.append(c);
+				continue;
+			}
+			char next = ++i < raw.length() ? raw.charAt(i) : 0;
+			if (next == '0') {
+				sb.append('~');
+			} else if (next == '1') {
+				sb.append('/');
+			} else {
+				throw new IllegalArgumentException("invalid escape in "
+						+ expression);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Escapes a property name to be used as a segment of a JSON Pointer.
+	 */
+	static String escape(String name) {
+		if (name.indexOf('~') < 0 && name.indexOf('/') < 0)
+			return name;
+		return name.replace("~", "~0").replace("/", "~1");
+	}
+
+	/**
+	 * Returns the expression this path was compiled from.
+	 */
+	public String getExpression() {
+		return expression;
+	}
+
+	/**
+	 * Tells whether this path selects at most one value, i.e. it uses neither
+	 * wildcards nor filters.
+	 */
+	public boolean isSingular() {
+		for (Segment segment : segments) {
+			if (segment.kind != NAME)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of segments of the path.
+	 */
+	int length() {
+		return segments.length;
+	}
+
+	/**
+	 * Returns the name matched by a segment, or null for wildcards.
+	 */
+	String getName(int segment) {
+		return segments[segment].kind == NAME ? segments[segment].name : null;
+	}
+
+	/**
+	 * Returns the array index matched by a segment, or -1 if it is not one.
+	 */
+	int getIndex(int segment) {
+		return segments[segment].index;
+	}
+
+	//
+	// Trees
+	//
+
+	/**
+	 * Returns the values selected by this path in a tree, in document order.
+	 * 
+	 * @return the list of values, which is empty when nothing matches
+	 */
+	public List<JSON> select(JSON root) {
+		if (isSingular()) {
+			JSON value = selectFirst(root);
+			return value == null ? Collections.<JSON> emptyList()
+					: Collections.singletonList(value);
+		}
+		List<JSON> values = new ArrayList<JSON>();
+		collect(root, 0, values);
+		return values;
+	}
+
+	/**
+	 * Returns the first value selected by this path in a tree, in document
+	 * order.
+	 * 
+	 * @return the value, or {@code null} when nothing matches
+	 */
+	public JSON selectFirst(JSON root) {
+		return first(root, 0);
+	}
+
+	private JSON first(JSON node, int i) {
+		while (i < segments.length && segments[i].kind == NAME) {
+			node = segments[i++].child(node);
+			if (node == null)
+				return null;
+		}
+		if (i == segments.length)
+			return node;
+		Segment segment = segments[i];
+		if (node instanceof JSONObject) {
+			for (JSONObject.Property property : (JSONObject) node) {
+				JSON child = property.getValue();
+				if (segment.accepts(child)) {
+					JSON found = first(child, i + 1);
+					if (found != null)
+						return found;
+				}
+			}
+		} else if (node instanceof JSONArray) {
+			for (JSON child : (JSONArray<?>) node) {
+				if (segment.accepts(child)) {
+					JSON found = first(child, i + 1);
+					if (found != null)
+						return found;
+				}
+			}
+		}
+		return null;
+	}
+
+	private void collect(JSON node, int i, List<JSON> values) {
+		while (i < segments.length && segments[i].kind == NAME) {
+			node = segments[i++].child(node);
+			if (node == null)
+				return;
+		}
+		if (i == segments.length) {
+			values.add(node);
+			return;
+		}
+		Segment segment = segments[i];
+		if (node instanceof JSONObject) {
+			for (JSONObject.Property property : (JSONObject) node) {
+				JSON child = property.getValue();
+				if (segment.accepts(child))
+					collect(child, i + 1, values);
+			}
+		} else if (node instanceof JSONArray) {
+			for (JSON child : (JSONArray<?>) node) {
+				if (segment.accepts(child))
+					collect(child, i + 1, values);
+			}
+		}
+	}
+
+	//
+	// Streams of events
+	//
+
+	/**
+	 * Returns a visitor that forwards to {@code target} the events of the
+	 * values selected by this path, and drops all the others. The returned
+	 * visitor must receive the events of whole documents, from
+	 * {@link JSON#accept(JSONVisitor)} or {@link JSONParser#accept(JSONVisitor)},
+	 * so it can be used to extract values out of documents that are never
+	 * turned into trees.
+	 * 
+	 * The target receives the events of each selected value as if the value
+	 * was visited on its own, without the property event preceding it. When
+	 * the path has filters, the candidate values are buffered until the filter
+	 * can be evaluated, so their size should be reasonable.
+	 * 
+	 * The returned visitor keeps the state of the visit, so it must not be
+	 * shared by concurrent visits.
+	 */
+	public JSONVisitor visitor(JSONVisitor target) {
+		if (target == null)
+			throw new IllegalArgumentException("null target");
+		return new Matcher(target);
+	}
+
+	/**
+	 * Tracks the position of the visit in the document, forwarding the events
+	 * of the selected values.
+	 */
+	private final class Matcher implements JSONVisitor {
+
+		/** Level of a child that must be buffered to evaluate a filter */
+		private static final int PENDING = -2;
+
+		private final JSONVisitor target;
+
+		/**
+		 * The stack of open containers: how many segments matched them (-1
+		 * when none can match), whether they are objects, and the name or
+		 * index of their current child
+		 */
+		private int[] levels = new int[16];
+		private boolean[] objects = new boolean[16];
+		private String[] names = new String[16];
+		private int[] indexes = new int[16];
+		private int depth;
+
+		/** Depth inside the selected value being forwarded, 0 if none */
+		private int forwarded;
+
+		/** The value being buffered to evaluate a filter, if any */
+		private JSONTreeBuilder buffer;
+		private int buffered;
+		private int filter;
+
+		Matcher(JSONVisitor target) {
+			this.target = target;
+		}
+
+		/**
+		 * Returns the number of segments matched by the value starting now.
+		 */
+		private int level() {
+			if (depth == 0)
+				return 0;
+			int parent = depth - 1;
+			int matched = levels[parent];
+			String name = null;
+			int index = -1;
+			if (objects[parent]) {
+				name = names[parent];
+			} else {
+				index = indexes[parent]++;
+			}
+			if (matched < 0)
+				return -1;
+			Segment segment = segments[matched];
+			switch (segment.kind) {
+			case NAME:
+				return segment.selects(name, index) ? matched + 1 : -1;
+			case ANY:
+				return matched + 1;
+			default:
+				filter = matched;
+				return PENDING;
+			}
+		}
+
+		private void push(int level, boolean object) {
+			if (depth == levels.length) {
+				int size = depth * 2;
+				int[] largerLevels = new int[size];
+				System.arraycopy(levels, 0, largerLevels, 0, depth);
+				levels = largerLevels;
+				boolean[] largerObjects = new boolean[size];
+				System.arraycopy(objects, 0, largerObjects, 0, depth);
+				objects = largerObjects;
+				String[] largerNames = new String[size];
+				System.arraycopy(names, 0, largerNames, 0, depth);
+				names = largerNames;
+				int[] largerIndexes = new int[size];
+				System.arraycopy(indexes, 0, largerIndexes, 0, depth);
+				indexes = largerIndexes;
+			}
+			levels[depth] = level;
+			objects[depth] = object;
+			names[depth] = null;
+			indexes[depth] = 0;
+			depth++;
+		}
+
+		/**
+		 * Handles the start of a container, returning true if the events
+		 * must be forwarded to the target.
+		 */
+		private boolean enter(boolean object) {
+			if (forwarded > 0) {
+				forwarded++;
+				return true;
+			}
+			if (buffer != null) {
+				buffered++;
+				return false;
+			}
+			int level = level();
+			if (level == segments.length) {
+				forwarded = 1;
+				return true;
+			}
+			if (level == PENDING) {
+				buffer = new JSONTreeBuilder();
+				buffered = 1;
+				return false;
+			}
+			push(level, object);
+			return false;
+		}
+
+		/**
+		 * Handles the end of a container, returning true if the events must
+		 * be forwarded to the target.
+		 */
+		private boolean exit() {
+			if (forwarded > 0) {
+				forwarded--;
+				return true;
+			}
+			if (buffer == null)
+				names[--depth] = null;
+			return false;
+		}
+
+		/**
+		 * Evaluates the filter on a completely buffered value, and visits the
+		 * values it selects.
+		 */
+		private void flush() {
+			if (buffer == null || --buffered > 0)
+				return;
+			JSON value = buffer.getResult();
+			buffer = null;
+			if (!segments[filter].accepts(value))
+				return;
+			List<JSON> values = new ArrayList<JSON>();
+			collect(value, filter + 1, values);
+			for (JSON selected : values) {
+				selected.accept(target);
+			}
+		}
+
+		/**
+		 * Handles a scalar value, returning true if it must be forwarded to
+		 * the target.
+		 */
+		private boolean scalar() {
+			if (forwarded > 0)
+				return true;
+			// Scalars never pass a filter
+			return buffer == null && level() == segments.length;
+		}
+
+		@Override
+		public void enterJSONArray(JSONArray<? extends JSON> arr) {
+			if (enter(false)) {
+				target.enterJSONArray(arr);
+			} else if (buffer != null) {
+				buffer.enterJSONArray(arr);
+			}
+		}
+
+		@Override
+		public void exitJSONArray(JSONArray<? extends JSON> arr) {
+			if (exit()) {
+				target.exitJSONArray(arr);
+			} else if (buffer != null) {
+				buffer.exitJSONArray(arr);
+				flush();
+			}
+		}
+
+		@Override
+		public void enterJSONObject(JSONObject obj) {
+			if (enter(true)) {
+				target.enterJSONObject(obj);
+			} else if (buffer != null) {
+				buffer.enterJSONObject(obj);
+			}
+		}
+
+		@Override
+		public void exitJSONObject(JSONObject obj) {
+			if (exit()) {
+				target.exitJSONObject(obj);
+			} else if (buffer != null) {
+				buffer.exitJSONObject(obj);
+				flush();
+			}
+		}
+
+		@Override
+		public void visitJSONString(JSONString el) {
+			if (scalar()) {
+				target.visitJSONString(el);
+			} else if (buffer != null) {
+				buffer.visitJSONString(el);
+			}
+		}
+
+		@Override
+		public void visitJSONInteger(JSONInteger el) {
+			if (scalar()) {
+				target.visitJSONInteger(el);
+			} else if (buffer != null) {
+				buffer.visitJSONInteger(el);
+			}
+		}
+
+		@Override
+		public void visitJSONLong(JSONLong el) {
+			if (scalar()) {
+				target.visitJSONLong(el);
+			} else if (buffer != null) {
+				buffer.visitJSONLong(el);
+			}
+		}
+
+		@Override
+		public void visitJSONDouble(JSONDouble el) {
+			if (scalar()) {
+				target.visitJSONDouble(el);
+			} else if (buffer != null) {
+				buffer.visitJSONDouble(el);
+			}
+		}
+
+		@Override
+		public void visitJSONDecimal(JSONDecimal el) {
+			if (scalar()) {
+				target.visitJSONDecimal(el);
+			} else if (buffer != null) {
+				buffer.visitJSONDecimal(el);
+			}
+		}
+
+		@Override
+		public void visitJSONBoolean(JSONBoolean el) {
+			if (scalar()) {
+				target.visitJSONBoolean(el);
+			} else if (buffer != null) {
+				buffer.visitJSONBoolean(el);
+			}
+		}
+
+		@Override
+		public void visitJSONNull(JSONNull el) {
+			if (scalar()) {
+				target.visitJSONNull(el);
+			} else if (buffer != null) {
+				buffer.visitJSONNull(el);
+			}
+		}
+
+		@Override
+		public void visitJSONProperty(JSONObject.Property prop) {
+			if (forwarded > 0) {
+				target.visitJSONProperty(prop);
+			} else if (buffer != null) {
+				buffer.visitJSONProperty(prop);
+			} else {
+				names[depth - 1] = prop.getName();
+			}
+		}
+
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return expression;
+	}
+
+}
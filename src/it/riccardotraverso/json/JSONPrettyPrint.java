@@ -43,9 +43,14 @@ public class JSONPrettyPrint extends JSONVisitorAdapter {
 	
 	@Override
 	public void visitJSONString(JSONString el) {
-		sb.append('"');
-		sb.append(el.getText());
-		sb.append('"');
+		String text = el.getText();
+		if (text == null) {
+			sb.append("null");
+		} else {
+			sb.append('"');
+			JSONEscape.escape(text, sb);
+			sb.append('"');
+		}
 		newLine();
 	}
 	
@@ -55,12 +60,36 @@ public class JSONPrettyPrint extends JSONVisitorAdapter {
 		newLine();
 	}
 
+	@Override
+	public void visitJSONNull(JSONNull el) {
+		sb.append("null");
+		newLine();
+	}
+
 	@Override
 	public void visitJSONInteger(JSONInteger el) {
 		sb.append(Integer.toString(el.getValue()));
 		newLine();
 	}
 
+	@Override
+	public void visitJSONLong(JSONLong el) {
+		sb.append(el.getNumberText());
+		newLine();
+	}
+
+	@Override
+	public void visitJSONDouble(JSONDouble el) {
+		sb.append(el.getNumberText());
+		newLine();
+	}
+
+	@Override
+	public void visitJSONDecimal(JSONDecimal el) {
+		sb.append(el.getNumberText());
+		newLine();
+	}
+
 	@Override
 	public void enterJSONArray(JSONArray<? extends JSON> arr) {
 		sb.append("[\n");
@@ -86,7 +115,7 @@ public class JSONPrettyPrint extends JSONVisitorAdapter {
 	@Override
 	public void visitJSONProperty(Property prop) {
 		sb.append('"');
-		sb.append(prop.getName());
+		JSONEscape.escape(prop.getName(), sb);
 		sb.append("\" : ");
 	}
 	
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * A {@link JSONString} read by a parser in raw mode, which keeps a reference
+ * to the UTF-8 bytes of the string in the input, escapes included, and
+ * decodes them only on the first call to {@link #getText()}. Serializers
+ * writing UTF-8 copy the bytes as they are, and equality between two such
+ * strings without escapes is decided on the bytes. Setting a new text drops
+ * the reference to the input.
+ * 
+ * @see JSONParser#setRawStrings(boolean)
+ */
+final class JSONRawString extends JSONString {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** The input holding the string, or null once the text is changed */
+	private byte[] bytes;
+	private int offset;
+	private int length;
+
+	/** Whether the bytes hold escape sequences */
+	private boolean escaped;
+
+	/** Whether the bytes are all ASCII */
+	private boolean ascii;
+
+	JSONRawString() {
+		super(null);
+	}
+
+	/**
+	 * Points the string to a slice of an input, already validated by a
+	 * parser, dropping the text decoded so far.
+	 */
+	void reset(byte[] bytes, int offset, int length, boolean escaped,
+			boolean ascii) {
+		super.reset(null);
+		this.bytes = bytes;
+		this.offset = offset;
+		this.length = length;
+		this.escaped = escaped;
+		this.ascii = ascii;
+	}
+
+	@Override
+	void reset(String text) {
+		bytes = null;
+		super.reset(text);
+	}
+
+	@Override
+	public String getText() {
+		String text = super.getText();
+		byte[] b = bytes;
+		if (text == null && b != null) {
+			text = decode(b);
+			super.reset(text);
+		}
+		return text;
+	}
+
+	private String decode(byte[] b) {
+		if (!escaped)
+			return new String(b, offset, length, UTF8);
+		JSONParser parser = new JSONByteParser(b, offset - 1, length + 2);
+		try {
+			parser.next();
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // validated already
+		}
+		return parser.getText();
+	}
+
+	/**
+	 * Returns the input holding the string, or null if the text was set
+	 * afterwards.
+	 */
+	byte[] rawBytes() {
+		return bytes;
+	}
+
+	int rawOffset() {
+		return offset;
+	}
+
+	/**
+	 * Returns the length in bytes of the string in the input, quotes
+	 * excluded.
+	 */
+	int rawLength() {
+		return length;
+	}
+
+	/**
+	 * Tells whether the bytes in the input hold escape sequences, and thus
+	 * differ from the UTF-8 form of the string.
+	 */
+	boolean isRawEscaped() {
+		return escaped;
+	}
+
+	/**
+	 * Tells whether the bytes in the input are all ASCII, so that they can
+	 * be copied as characters.
+	 */
+	boolean isRawAscii() {
+		return ascii;
+	}
+
+	@Override
+	public boolean startsWith(String prefix) {
+		byte[] b = bytes;
+		if (b == null || escaped || !ascii)
+			return super.startsWith(prefix);
+		int n = prefix.length();
+		if (n > length)
+			return false;
+		for (int i = 0; i < n; i++) {
+			if (prefix.charAt(i) != b[offset + i])
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean startsWith(byte[] prefix) {
+		byte[] b = bytes;
+		if (b == null || escaped)
+			return super.startsWith(prefix);
+		if (prefix.length > length)
+			return false;
+		for (int i = 0; i < prefix.length; i++) {
+			if (prefix[i] != b[offset + i])
+				return false;
+		}
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see it.riccardotraverso.json.JSONString#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		byte[] b = bytes;
+		if (b == null || escaped || !ascii)
+			return super.hashCode();
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + JSONSymbolTable.hashAscii(b, offset, length);
+		return result;
+	}
+
+	/* (non-Javadoc)
+	 * @see it.riccardotraverso.json.JSONString#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj instanceof JSONRawString) {
+			// UTF-8 being canonical, unescaped strings are equal byte by byte
+			JSONRawString other = (JSONRawString) obj;
+			byte[] b = bytes, o = other.bytes;
+			if (b != null && o != null && !escaped && !other.escaped) {
+				if (length != other.length)
+					return false;
+				for (int i = 0; i < length; i++) {
+					if (b[offset + i] != o[other.offset + i])
+						return false;
+				}
+				return true;
+			}
+		}
+		return super.equals(obj);
+	}
+
+}
@@ -0,0 +1,742 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A compiled JSON Schema, validating documents in a single pass.
+ * 
+ * {@link #compile(JSON)} turns a schema into an immutable plan, which can be
+ * shared by any number of threads. The supported keywords are {@code type},
+ * {@code enum} (with scalar values), {@code minimum}, {@code maximum},
+ * {@code exclusiveMinimum}, {@code exclusiveMaximum}, {@code minLength},
+ * {@code maxLength}, {@code pattern}, {@code items} (a schema or a list of
+ * schemas), {@code additionalItems}, {@code minItems}, {@code maxItems},
+ * {@code properties}, {@code additionalProperties}, {@code required},
+ * {@code minProperties} and {@code maxProperties}, as well as the boolean
+ * schemas {@code true} and {@code false}. Annotations such as {@code title}
+ * are ignored, while schemas using references or combinators are rejected
+ * rather than partially enforced.
+ * 
+ * Documents are checked by a {@link Validator}, which is a {@link JSONVisitor}:
+ * it validates trees through {@link JSON#accept(JSONVisitor)} and documents
+ * being parsed through {@link JSONParser#accept(JSONVisitor)}, without ever
+ * building them. Validators either collect all the violations or, when set to
+ * fail fast, throw a {@link JSONValidationException} at the first one, which
+ * also stops the walk or the parsing.
+ * 
+ * <pre>
+ * JSONSchema schema = JSONSchema.compile(JSONParser.parse(schemaText));
+ * JSONSchema.Validator v = schema.validator().setFailFast(true);
+ * JSONParser.from(in).accept(v);
+ * </pre>
+ */
+public final class JSONSchema {
+
+	// Types of values, as bits of a mask
+	private static final int NULL = 1;
+	private static final int BOOLEAN = 1 << 1;
+	private static final int INTEGER = 1 << 2;
+	/** Numbers with a fractional part */
+	private static final int FRACTION = 1 << 3;
+	private static final int STRING = 1 << 4;
+	private static final int ARRAY = 1 << 5;
+	private static final int OBJECT = 1 << 6;
+	private static final int ANY = (1 << 7) - 1;
+
+	private static final String[] TYPE_NAMES = { "null", "boolean", "integer",
+			"number", "string", "array", "object" };
+
+	private static final List<String> UNSUPPORTED = Arrays.asList("$ref",
+			"allOf", "anyOf", "oneOf", "not", "if", "dependencies",
+			"patternProperties", "uniqueItems", "contains", "const",
+			"multipleOf", "propertyNames");
+
+	/**
+	 * The constraints of a schema on a single value.
+	 */
+	private static final class Node {
+
+		/** Accepts any value */
+		static final Node ANYTHING = new Node(ANY);
+
+		/** Rejects any value */
+		static final Node NOTHING = new Node(0);
+
+		final int types;
+		final JSON[] enumValues;
+
+		final BigDecimal minimum;
+		final double minimumValue;
+		final boolean exclusiveMinimum;
+		final BigDecimal maximum;
+		final double maximumValue;
+		final boolean exclusiveMaximum;
+
+		final int minLength;
+		final int maxLength;
+		final Pattern pattern;
+
+		final Node items;
+		final Node[] tupleItems;
+		final Node additionalItems;
+		final int minItems;
+		final int maxItems;
+
+		final HashMap<String, Node> properties;
+		final Node additionalProperties;
+		final String[] required;
+		/** The position of each required name in {@link #required} */
+		final HashMap<String, Integer> requiredSlots;
+		final int minProperties;
+		final int maxProperties;
+
+		private Node(int types) {
+			this.types = types;
+			this.enumValues = null;
+			this.minimum = this.maximum = null;
+			this.minimumValue = this.maximumValue = 0;
+			this.exclusiveMinimum = this.exclusiveMaximum = false;
+			this.minLength = this.minItems = this.minProperties = 0;
+			this.maxLength = this.maxItems = this.maxProperties = Integer.MAX_VALUE;
+			this.pattern = null;
+			// ANYTHING is being built when it reaches here
+			Node children = types == ANY ? this : ANYTHING;
+			this.items = this.additionalItems = this.additionalProperties = children;
+			this.tupleItems = null;
+			this.properties = null;
+			this.required = null;
+			this.requiredSlots = null;
+		}
+
+		Node(JSONObject schema, String at) {
+			for (JSONObject.Property property : schema) {
+				if (UNSUPPORTED.contains(property.getName()))
+					throw invalid(at, "unsupported keyword "
+							+ property.getName());
+			}
+			types = types(schema.getPropertyValue("type"), at);
+			enumValues = enumValues(schema.getPropertyValue("enum"), at);
+
+			BigDecimal lower = bound(schema, "minimum", at);
+			BigDecimal upper = bound(schema, "maximum", at);
+			boolean exclusiveLower = flag(schema, "exclusiveMinimum", at);
+			boolean exclusiveUpper = flag(schema, "exclusiveMaximum", at);
+			BigDecimal exclusive = bound(schema, "exclusiveMinimum", at);
+			if (exclusive != null
+					&& (lower == null || exclusive.compareTo(lower) >= 0)) {
+				lower = exclusive;
+				exclusiveLower = true;
+			}
+			exclusive = bound(schema, "exclusiveMaximum", at);
+			if (exclusive != null
+					&& (upper == null || exclusive.compareTo(upper) <= 0)) {
+				upper = exclusive;
+				exclusiveUpper = true;
+			}
+			minimum = lower;
+			minimumValue = lower == null ? 0 : lower.doubleValue();
+			exclusiveMinimum = exclusiveLower;
+			maximum = upper;
+			maximumValue = upper == null ? 0 : upper.doubleValue();
+			exclusiveMaximum = exclusiveUpper;
+
+			minLength = count(schema, "minLength", 0, at);
+			maxLength = count(schema, "maxLength", Integer.MAX_VALUE, at);
+			JSON regex = schema.getPropertyValue("pattern");
+			if (regex == null) {
+				pattern = null;
+			} else {
+				if (!(regex instanceof JSONString))
+					throw invalid(at, "pattern must be a string");
+				try {
+					pattern = Pattern.compile(((JSONString) regex).getText());
+				} catch (PatternSyntaxException e) {
+					throw invalid(at, "invalid pattern: " + e.getDescription());
+				}
+			}
+
+			JSON itemsSchema = schema.getPropertyValue("items");
+			if (itemsSchema instanceof JSONArray) {
+				JSONArray<?> list = (JSONArray<?>) itemsSchema;
+				tupleItems = new Node[list.size()];
+				for (int i = 0; i < tupleItems.length; i++) {
+					tupleItems[i] = compile(list.getValue(i), at + "/items/" + i);
+				}
+				items = ANYTHING;
+			} else {
+				tupleItems = null;
+				items = itemsSchema == null ? ANYTHING : compile(itemsSchema,
+						at + "/items");
+			}
+			JSON additional = schema.getPropertyValue("additionalItems");
+			additionalItems = additional == null ? ANYTHING : compile(
+					additional, at + "/additionalItems");
+			minItems = count(schema, "minItems", 0, at);
+			maxItems = count(schema, "maxItems", Integer.MAX_VALUE, at);
+
+			JSON props = schema.getPropertyValue("properties");
+			if (props == null) {
+				properties = null;
+			} else {
+				if (!(props instanceof JSONObject))
+					throw invalid(at, "properties must be an object");
+				properties = new HashMap<String, Node>();
+				for (JSONObject.Property property : (JSONObject) props) {
+					properties.put(property.getName(), compile(property
+							.getValue(), at + "/properties/"
+							+ JSONPath.escape(property.getName())));
+				}
+			}
+			additional = schema.getPropertyValue("additionalProperties");
+			additionalProperties = additional == null ? ANYTHING : compile(
+					additional, at + "/additionalProperties");
+			JSON names = schema.getPropertyValue("required");
+			if (names == null || ((names instanceof JSONArray) && ((JSONArray<?>) names)
+					.size() == 0)) {
+				required = null;
+				requiredSlots = null;
+			} else {
+				if (!(names instanceof JSONArray))
+					throw invalid(at, "required must be an array");
+				JSONArray<?> list = (JSONArray<?>) names;
+				required = new String[list.size()];
+				requiredSlots = new HashMap<String, Integer>();
+				for (int i = 0; i < required.length; i++) {
+					if (!(list.getValue(i) instanceof JSONString))
+						throw invalid(at, "required must list strings");
+					required[i] = ((JSONString) list.getValue(i)).getText();
+					requiredSlots.put(required[i], Integer.valueOf(i));
+				}
+			}
+			minProperties = count(schema, "minProperties", 0, at);
+			maxProperties = count(schema, "maxProperties", Integer.MAX_VALUE,
+					at);
+		}
+
+		/**
+		 * Returns the schema of the item of an array at a given index.
+		 */
+		Node item(int index) {
+			if (tupleItems == null)
+				return items;
+			return index < tupleItems.length ? tupleItems[index]
+					: additionalItems;
+		}
+
+		/**
+		 * Returns the schema of the property of an object with a given name.
+		 */
+		Node property(String name) {
+			if (properties != null) {
+				Node node = properties.get(name);
+				if (node != null)
+					return node;
+			}
+			return additionalProperties;
+		}
+
+		private static int types(JSON type, String at) {
+			if (type == null)
+				return ANY;
+			if (type instanceof JSONString)
+				return typeOf(((JSONString) type).getText(), at);
+			if (!(type instanceof JSONArray))
+				throw invalid(at, "type must be a string or an array");
+			int types = 0;
+			for (JSON name : (JSONArray<?>) type) {
+				if (!(name instanceof JSONString))
+					throw invalid(at, "type must list strings");
+				types |= typeOf(((JSONString) name).getText(), at);
+			}
+			return types;
+		}
+
+		private static int typeOf(String name, String at) {
+			for (int i = 0; i < TYPE_NAMES.length; i++) {
+				if (TYPE_NAMES[i].equals(name))
+					return i == 3 ? INTEGER | FRACTION : 1 << i;
+			}
+			throw invalid(at, "unknown type " + name);
+		}
+
+		private static JSON[] enumValues(JSON values, String at) {
+			if (values == null)
+				return null;
+			if (!(values instanceof JSONArray))
+				throw invalid(at, "enum must be an array");
+			JSONArray<?> list = (JSONArray<?>) values;
+			JSON[] result = new JSON[list.size()];
+			for (int i = 0; i < result.length; i++) {
+				JSON value = list.getValue(i);
+				if (value instanceof JSONArray || value instanceof JSONObject)
+					throw invalid(at, "only scalar enum values are supported");
+				result[i] = JSONImmutable.copyOf(value);
+			}
+			return result;
+		}
+
+		private static BigDecimal bound(JSONObject schema, String keyword,
+				String at) {
+			JSON value = schema.getPropertyValue(keyword);
+			if (value == null || value instanceof JSONBoolean)
+				return null;
+			if (!(value instanceof JSONNumber))
+				throw invalid(at, keyword + " must be a number");
+			return ((JSONNumber) value).decimalValue();
+		}
+
+		private static boolean flag(JSONObject schema, String keyword,
+				String at) {
+			JSON value = schema.getPropertyValue(keyword);
+			return value instanceof JSONBoolean
+					&& ((JSONBoolean) value).getValue();
+		}
+
+		private static int count(JSONObject schema, String keyword,
+				int defaultValue, String at) {
+			JSON value = schema.getPropertyValue(keyword);
+			if (value == null)
+				return defaultValue;
+			if (!(value instanceof JSONNumber))
+				throw invalid(at, keyword + " must be a number");
+			long count = ((JSONNumber) value).longValue();
+			if (count < 0)
+				throw invalid(at, keyword + " cannot be negative");
+			return (int) Math.min(count, Integer.MAX_VALUE);
+		}
+
+	}
+
+	private final Node root;
+
+	private JSONSchema(Node root) {
+		this.root = root;
+	}
+
+	/**
+	 * Compiles a schema.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the schema is invalid or uses unsupported keywords
+	 */
+	public static JSONSchema compile(JSON schema) {
+		if (schema instanceof JSONTapeValue)
+			schema = ((JSONTapeValue) schema).toJSON();
+		return new JSONSchema(compile(schema, ""));
+	}
+
+	private static Node compile(JSON schema, String at) {
+		if (schema instanceof JSONBoolean)
+			return ((JSONBoolean) schema).getValue() ? Node.ANYTHING
+					: Node.NOTHING;
+		if (!(schema instanceof JSONObject))
+			throw invalid(at, "a schema must be an object or a boolean");
+		return new Node((JSONObject) schema, at);
+	}
+
+	private static IllegalArgumentException invalid(String at, String message) {
+		return new IllegalArgumentException("invalid schema at '" + at + "': "
+				+ message);
+	}
+
+	/**
+	 * Creates a validator for a document, collecting all the violations.
+	 */
+	public Validator validator() {
+		return new Validator(root);
+	}
+
+	/**
+	 * Validates a tree.
+	 * 
+	 * @return the violations found, which is empty if the tree is valid
+	 */
+	public List<String> validate(JSON value) {
+		Validator validator = validator();
+		value.accept(validator);
+		return validator.getErrors();
+	}
+
+	/**
+	 * Tells whether a tree is valid, stopping at the first violation.
+	 */
+	public boolean isValid(JSON value) {
+		try {
+			value.accept(validator().setFailFast(true));
+			return true;
+		} catch (JSONValidationException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Checks the events of documents against a schema. Validators keep the
+	 * state of the document being checked, so they must not be shared between
+	 * threads, but they can be reused for several documents, one at a time,
+	 * after a {@link #reset()}.
+	 */
+	public static final class Validator implements JSONVisitor {
+
+		/**
+		 * An open container, with the schema applying to it.
+		 */
+		private static final class Frame {
+			Node node;
+			boolean array;
+			/** The number of children started so far */
+			int count;
+			/** The name of the current property of objects */
+			String name;
+			/** Which required properties were seen, or null */
+			boolean[] seen;
+		}
+
+		private final Node root;
+		private boolean failFast;
+		private final List<String> errors = new ArrayList<String>();
+		private Frame[] frames = new Frame[16];
+		private int depth;
+
+		private Validator(Node root) {
+			this.root = root;
+		}
+
+		/**
+		 * Sets whether the first violation throws a
+		 * {@link JSONValidationException}, instead of being collected.
+		 * 
+		 * @return a pointer to this, to chain more quickly multiple calls to
+		 *         setters
+		 */
+		public Validator setFailFast(boolean failFast) {
+			this.failFast = failFast;
+			return this;
+		}
+
+		/**
+		 * Returns the violations collected so far, each prefixed by the JSON
+		 * Pointer of the offending value.
+		 */
+		public List<String> getErrors() {
+			return Collections.unmodifiableList(errors);
+		}
+
+		/**
+		 * Tells whether no violation was found so far.
+		 */
+		public boolean isValid() {
+			return errors.isEmpty();
+		}
+
+		/**
+		 * Prepares the validator for another document.
+		 */
+		public void reset() {
+			errors.clear();
+			while (depth > 0) {
+				frames[--depth].name = null;
+			}
+		}
+
+		//
+		// Containers
+		//
+
+		@Override
+		public void enterJSONArray(JSONArray<? extends JSON> arr) {
+			Node node = next();
+			push(check(node, ARRAY) && inEnum(node, arr) ? node : Node.ANYTHING,
+					true);
+		}
+
+		@Override
+		public void exitJSONArray(JSONArray<? extends JSON> arr) {
+			Frame frame = frames[depth - 1];
+			if (frame.count < frame.node.minItems)
+				fail(depth - 1, "fewer than " + frame.node.minItems + " items");
+			if (frame.count > frame.node.maxItems)
+				fail(depth - 1, "more than " + frame.node.maxItems + " items");
+			frame.name = null;
+			depth--;
+		}
+
+		@Override
+		public void enterJSONObject(JSONObject obj) {
+			Node node = next();
+			push(check(node, OBJECT) && inEnum(node, obj) ? node
+					: Node.ANYTHING, false);
+		}
+
+		@Override
+		public void exitJSONObject(JSONObject obj) {
+			Frame frame = frames[depth - 1];
+			Node node = frame.node;
+			frame.name = null;
+			if (frame.count < node.minProperties)
+				fail(depth - 1, "fewer than " + node.minProperties
+						+ " properties");
+			if (frame.count > node.maxProperties)
+				fail(depth - 1, "more than " + node.maxProperties
+						+ " properties");
+			if (frame.seen != null) {
+				for (int i = 0; i < node.required.length; i++) {
+					if (!frame.seen[i])
+						fail(depth - 1, "missing property " + node.required[i]);
+				}
+			}
+			depth--;
+		}
+
+		@Override
+		public void visitJSONProperty(JSONObject.Property p) {
+			Frame frame = frames[depth - 1];
+			frame.name = p.getName();
+			frame.count++;
+			if (frame.seen != null) {
+				Integer slot = frame.node.requiredSlots.get(frame.name);
+				if (slot != null)
+					frame.seen[slot.intValue()] = true;
+			}
+		}
+
+		//
+		// Scalars
+		//
+
+		@Override
+		public void visitJSONString(JSONString el) {
+			Node node = next();
+			if (!check(node, STRING) || !inEnum(node, el))
+				return;
+			String text = el.getText();
+			if (node.minLength > 0 || node.maxLength < text.length()) {
+				int length = text.length() < node.minLength ? text.length()
+						: text.codePointCount(0, text.length());
+				if (length < node.minLength)
+					fail(depth, "shorter than " + node.minLength + " characters");
+				if (length > node.maxLength)
+					fail(depth, "longer than " + node.maxLength + " characters");
+			}
+			if (node.pattern != null && !node.pattern.matcher(text).find())
+				fail(depth, "does not match " + node.pattern.pattern());
+		}
+
+		@Override
+		public void visitJSONInteger(JSONInteger el) {
+			number(el, true);
+		}
+
+		@Override
+		public void visitJSONLong(JSONLong el) {
+			number(el, true);
+		}
+
+		@Override
+		public void visitJSONDouble(JSONDouble el) {
+			number(el, false);
+		}
+
+		@Override
+		public void visitJSONDecimal(JSONDecimal el) {
+			number(el, false);
+		}
+
+		@Override
+		public void visitJSONBoolean(JSONBoolean el) {
+			Node node = next();
+			if (check(node, BOOLEAN))
+				inEnum(node, el);
+		}
+
+		@Override
+		public void visitJSONNull(JSONNull el) {
+			Node node = next();
+			if (check(node, NULL))
+				inEnum(node, el);
+		}
+
+		private void number(JSONNumber el, boolean integer) {
+			Node node = next();
+			int type;
+			if (integer) {
+				type = INTEGER;
+			} else if ((node.types & (INTEGER | FRACTION)) == (INTEGER | FRACTION)) {
+				// Any number will do, no need to look closer
+				type = FRACTION;
+			} else {
+				type = isIntegral(el) ? INTEGER : FRACTION;
+			}
+			if (!check(node, type) || !inEnum(node, el))
+				return;
+			if (node.minimum != null) {
+				int c = compare(el, node.minimumValue, node.minimum);
+				if (c < 0 || (c == 0 && node.exclusiveMinimum))
+					fail(depth, "less than " + (node.exclusiveMinimum ? "or equal to " : "")
+							+ node.minimum.toPlainString());
+			}
+			if (node.maximum != null) {
+				int c = compare(el, node.maximumValue, node.maximum);
+				if (c > 0 || (c == 0 && node.exclusiveMaximum))
+					fail(depth, "greater than " + (node.exclusiveMaximum ? "or equal to " : "")
+							+ node.maximum.toPlainString());
+			}
+		}
+
+		private static boolean isIntegral(JSONNumber el) {
+			if (el instanceof JSONDouble) {
+				double value = ((JSONDouble) el).getValue();
+				return value == Math.rint(value);
+			}
+			BigDecimal value = el.decimalValue();
+			return value.signum() == 0
+					|| value.stripTrailingZeros().scale() <= 0;
+		}
+
+		/**
+		 * Compares a number with a bound, through doubles unless they are too
+		 * close to tell.
+		 */
+		private static int compare(JSONNumber el, double bound,
+				BigDecimal exactBound) {
+			double value = el.doubleValue();
+			if (value < bound)
+				return -1;
+			if (value > bound)
+				return 1;
+			return el.decimalValue().compareTo(exactBound);
+		}
+
+		//
+		// Helpers
+		//
+
+		/**
+		 * Returns the schema of the value starting now.
+		 */
+		private Node next() {
+			if (depth == 0)
+				return root;
+			Frame frame = frames[depth - 1];
+			if (frame.array)
+				return frame.node.item(frame.count++);
+			return frame.node.property(frame.name);
+		}
+
+		private void push(Node node, boolean array) {
+			if (depth == frames.length)
+				frames = Arrays.copyOf(frames, depth * 2);
+			Frame frame = frames[depth];
+			if (frame == null)
+				frame = frames[depth] = new Frame();
+			frame.node = node;
+			frame.array = array;
+			frame.count = 0;
+			frame.name = null;
+			if (array || node.required == null) {
+				frame.seen = null;
+			} else if (frame.seen == null
+					|| frame.seen.length != node.required.length) {
+				frame.seen = new boolean[node.required.length];
+			} else {
+				Arrays.fill(frame.seen, false);
+			}
+			depth++;
+		}
+
+		/**
+		 * Checks that the type of a value is accepted by a schema.
+		 * 
+		 * @return whether the other constraints should be checked
+		 */
+		private boolean check(Node node, int type) {
+			if ((node.types & type) != 0)
+				return true;
+			if (node.types == 0) {
+				fail(depth, "no value allowed here");
+			} else {
+				StringBuilder expected = new StringBuilder();
+				for (int i = 0; i < TYPE_NAMES.length; i++) {
+					if ((node.types & (1 << i)) != 0
+							&& (i != 2 || (node.types & FRACTION) == 0)) {
+						if (expected.length() > 0)
+							expected.append(" or ");
+						expected.append(TYPE_NAMES[i]);
+					}
+				}
+				int found = Integer.numberOfTrailingZeros(type);
+				fail(depth, "expected " + expected + ", found "
+						+ TYPE_NAMES[found]);
+			}
+			return false;
+		}
+
+		private boolean inEnum(Node node, JSON value) {
+			if (node.enumValues == null)
+				return true;
+			for (JSON allowed : node.enumValues) {
+				if (same(allowed, value))
+					return true;
+			}
+			fail(depth, "not one of the allowed values");
+			return false;
+		}
+
+		private static boolean same(JSON a, JSON b) {
+			if (a instanceof JSONNumber && b instanceof JSONNumber)
+				return ((JSONNumber) a).decimalValue().compareTo(
+						((JSONNumber) b).decimalValue()) == 0;
+			return a.equals(b);
+		}
+
+		/**
+		 * Reports a violation of the value opened by the frame at a given
+		 * level, or of the value starting now when {@code level == depth}.
+		 */
+		private void fail(int level, String reason) {
+			StringBuilder pointer = new StringBuilder();
+			for (int i = 0; i < level; i++) {
+				Frame frame = frames[i];
+				pointer.append('/');
+				if (frame.array) {
+					pointer.append(frame.count - 1);
+				} else {
+					pointer.append(JSONPath.escape(frame.name));
+				}
+			}
+			if (failFast)
+				throw new JSONValidationException(pointer.toString(), reason);
+			errors.add(pointer + ": " + reason);
+		}
+
+	}
+
+}
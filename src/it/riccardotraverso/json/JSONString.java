@@ -20,15 +20,20 @@
 
 package it.riccardotraverso.json;
 
+import java.nio.charset.Charset;
+
 /**
  * A JSON string value. 
  */
 public class JSONString extends JSON {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
 	
 	private String text;
 
 	/**
-	 * Creates a new JSON string.
+	 * Creates a new JSON string. A null value is written as a JSON null by
+	 * the printers and writers.
 	 * 
 	 * @param value
 	 */
@@ -47,8 +52,38 @@ public class JSONString extends JSON {
 	 * Sets a new string to be represented.
 	 */
 	public void setText(String text) {
+		modified();
+		reset(text);
+	}
+
+	/**
+	 * Sets the string of a node passed to visitors and reused for several
+	 * values, which is not part of any tree and thus invalidates no hash.
+	 */
+	void reset(String text) {
 		this.text = text;
 	}
+
+	/**
+	 * Tells whether the string starts with the given prefix.
+	 */
+	public boolean startsWith(String prefix) {
+		return getText().startsWith(prefix);
+	}
+
+	/**
+	 * Tells whether the UTF-8 form of the string starts with the given bytes.
+	 */
+	public boolean startsWith(byte[] prefix) {
+		byte[] bytes = getText().getBytes(UTF8);
+		if (prefix.length > bytes.length)
+			return false;
+		for (int i = 0; i < prefix.length; i++) {
+			if (bytes[i] != prefix[i])
+				return false;
+		}
+		return true;
+	}
 	
 	@Override
 	public void accept(JSONVisitor v) {
@@ -63,6 +98,7 @@ public class JSONString extends JSON {
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
+		String text = getText();
 		result = prime * result + ((text == null) ? 0 : text.hashCode());
 		return result;
 	}
@@ -74,15 +110,14 @@ public class JSONString extends JSON {
 	public boolean equals(Object obj) {
 		if (this == obj)
 			return true;
-		if (obj == null)
-			return false;
-		if (getClass() != obj.getClass())
+		if (!(obj instanceof JSONString))
 			return false;
 		JSONString other = (JSONString) obj;
+		String text = getText();
 		if (text == null) {
-			if (other.text != null)
+			if (other.getText() != null)
 				return false;
-		} else if (!text.equals(other.text))
+		} else if (!text.equals(other.getText()))
 			return false;
 		return true;
 	}
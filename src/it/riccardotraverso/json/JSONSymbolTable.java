@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+/**
+ * A bounded table of canonical strings, used to share a single instance of
+ * property names and short string values among all the nodes built from a
+ * batch of similarly shaped documents.
+ * 
+ * Parsers configured with {@link JSONParser#setSymbolTable(JSONSymbolTable)}
+ * look strings up before creating them: when the input is made of bytes, the
+ * hash of a plain ASCII string is computed on the raw bytes, and no
+ * {@code String} is allocated at all when the table already holds it. Code
+ * building trees by hand can canonicalize its strings with
+ * {@link #intern(String)}.
+ * 
+ * The table is a fixed size cache: every string maps to a single slot, and a
+ * newer string replaces an older one with a colliding hash, so the memory
+ * used by the table never grows. Strings longer than the maximum length are
+ * never stored, since they are rarely repeated.
+ * 
+ * Tables are safe for use by multiple threads, and they are meant to be
+ * shared by all the parsers of a batch. Slots hold immutable strings, so a
+ * lookup racing with an update reads either the old or the new string, and
+ * at worst it misses.
+ */
+public final class JSONSymbolTable {
+
+	/** Default number of slots */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	/** Default length of the longest string stored */
+	public static final int DEFAULT_MAX_LENGTH = 32;
+
+	private final String[] slots;
+	private final int mask;
+	private final int maxLength;
+
+	/**
+	 * Creates a table with {@link #DEFAULT_CAPACITY} slots, storing strings of
+	 * up to {@link #DEFAULT_MAX_LENGTH} characters.
+	 */
+	public JSONSymbolTable() {
+		this(DEFAULT_CAPACITY, DEFAULT_MAX_LENGTH);
+	}
+
+	/**
+	 * Creates a table with the given number of slots, rounded up to a power of
+	 * two, storing strings of up to {@code maxLength} characters.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             when the capacity is not positive or larger than 2^30, or
+	 *             the maximum length is negative
+	 */
+	public JSONSymbolTable(int capacity, int maxLength) {
+		if (capacity <= 0 || capacity > 1 << 30)
+			throw new IllegalArgumentException("invalid capacity: " + capacity);
+		if (maxLength < 0)
+			throw new IllegalArgumentException("negative maximum length");
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+			size <<= 1;
+		this.slots = new String[size];
+		this.mask = size - 1;
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Returns the length of the longest string stored by this table.
+	 */
+	public int getMaxLength() {
+		return maxLength;
+	}
+
+	/**
+	 * Returns the canonical instance of a string, which is the string itself
+	 * if it is not in the table yet, or if it is too long to be stored.
+	 */
+	public String intern(String s) {
+		int length = s.length();
+		if (length > maxLength)
+			return s;
+		int slot = spread(s.hashCode()) & mask;
+		String found = slots[slot];
+		if (found != null && found.equals(s))
+			return found;
+		slots[slot] = s;
+		return s;
+	}
+
+	/**
+	 * Returns the canonical string with the given characters, creating and
+	 * storing it if needed.
+	 */
+	String intern(char[] chars, int offset, int length) {
+		int h = 0;
+		for (int i = offset, end = offset + length; i < end; i++) {
+			h = 31 * h + chars[i];
+		}
+		return intern(chars, offset, length, h);
+	}
+
+	/**
+	 * Returns the canonical string with the given characters, whose
+	 * {@link String#hashCode()} is already known.
+	 */
+	String intern(char[] chars, int offset, int length, int hash) {
+		if (length > maxLength)
+			return new String(chars, offset, length);
+		int slot = spread(hash) & mask;
+		String found = slots[slot];
+		if (found != null && matches(found, chars, offset, length))
+			return found;
+		String s = new String(chars, offset, length);
+		slots[slot] = s;
+		return s;
+	}
+
+	/**
+	 * Returns the {@link String#hashCode()} of the string made of the given
+	 * ASCII bytes.
+	 */
+	static int hashAscii(byte[] bytes, int offset, int length) {
+		int h = 0;
+		for (int i = offset, end = offset + length; i < end; i++) {
+			h = 31 * h + bytes[i];
+		}
+		return h;
+	}
+
+	private static boolean matches(String s, char[] chars, int offset,
+			int length) {
+		if (s.length() != length)
+			return false;
+		for (int i = 0; i < length; i++) {
+			if (s.charAt(i) != chars[offset + i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Mixes the higher bits of a hash into the lower ones, which are the only
+	 * ones selecting the slot.
+	 */
+	private static int spread(int h) {
+		return h ^ (h >>> 16);
+	}
+
+}
@@ -0,0 +1,487 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package it.riccardotraverso.json;
+
+import java.util.Arrays;
+
+/**
+ * A structural index of a UTF-8 encoded JSON document, for read-mostly
+ * workloads that only touch a few values out of large documents.
+ * 
+ * Building the tape is a single, allocation-free pass over the input bytes,
+ * which validates the document and records one entry per token: its kind,
+ * its offset in the input and, for containers, the position of the matching
+ * end, so that whole subtrees can be skipped in constant time. No node is
+ * created and no string is decoded: the {@link JSONTapeValue} views returned
+ * by {@link #getRoot()} decode values only when they are asked for, directly
+ * from the input.
+ * 
+ * The input array is not copied, and it must not be modified while the tape
+ * is in use. Tapes are immutable once built, so they can be read from any
+ * number of threads.
+ * 
+ * @see JSONTapeValue
+ */
+public final class JSONTape {
+
+	// Kinds of entries
+	static final int START_OBJECT = 1;
+	static final int END_OBJECT = 2;
+	static final int START_ARRAY = 3;
+	static final int END_ARRAY = 4;
+	static final int KEY = 5;
+	static final int STRING = 6;
+	static final int NUMBER = 7;
+	static final int TRUE = 8;
+	static final int FALSE = 9;
+	static final int NULL = 10;
+
+	/** The largest value of the 28 bits of auxiliary data of an entry */
+	static final int MAX_AUX = (1 << 28) - 1;
+
+	/** Flag of keys and strings containing escape sequences */
+	static final int ESCAPED = 1;
+
+	/** Flag of numbers without fractional part nor exponent */
+	static final int INTEGRAL = 1;
+
+	final byte[] input;
+	final int start;
+	final int end;
+
+	/**
+	 * One word per entry: the kind in the highest 4 bits, 28 bits of
+	 * auxiliary data (the element count of containers, the byte length of
+	 * strings and numbers) and a 32 bits link (the index of the matching
+	 * entry for containers, flags for the other kinds).
+	 */
+	private long[] tape;
+
+	/** The offset in the input of the first byte of each entry */
+	private int[] offsets;
+
+	private int length;
+
+	private JSONTape(byte[] input, int start, int end) {
+		this.input = input;
+		this.start = start;
+		this.end = end;
+		int estimate = Math.max(16, (end - start) / 8);
+		this.tape = new long[estimate];
+		this.offsets = new int[estimate];
+	}
+
+	/**
+	 * Validates a whole UTF-8 encoded JSON document and builds its tape.
+	 * 
+	 * @throws JSONParseException
+	 *             if the input is not a single, well-formed JSON value
+	 */
+	public static JSONTape parse(byte[] input) throws JSONParseException {
+		return parse(input, 0, input.length);
+	}
+
+	/**
+	 * Validates a UTF-8 encoded JSON document made of {@code length} bytes
+	 * starting at {@code offset}, and builds its tape.
+	 * 
+	 * @throws JSONParseException
+	 *             if the input is not a single, well-formed JSON value
+	 */
+	public static JSONTape parse(byte[] input, int offset, int length)
+			throws JSONParseException {
+		if (offset < 0 || length < 0 || offset + length > input.length)
+			throw new IndexOutOfBoundsException();
+		JSONTape tape = new JSONTape(input, offset, offset + length);
+		tape.build();
+		return tape;
+	}
+
+	/**
+	 * Returns a view of the root value of the document.
+	 */
+	public JSONTapeValue getRoot() {
+		return new JSONTapeValue(this, 0);
+	}
+
+	/**
+	 * Returns the number of entries in the tape, which is roughly the number
+	 * of tokens in the document.
+	 */
+	public int getEntryCount() {
+		return length;
+	}
+
+	//
+	// Entries
+	//
+
+	int kind(int i) {
+		return (int) (tape[i] >>> 60);
+	}
+
+	int aux(int i) {
+		return (int) (tape[i] >>> 32) & MAX_AUX;
+	}
+
+	int link(int i) {
+		return (int) tape[i];
+	}
+
+	int offset(int i) {
+		return offsets[i];
+	}
+
+	/**
+	 * Returns the index of the entry following the value at entry {@code i},
+	 * skipping its contents.
+	 */
+	int next(int i) {
+		int kind = kind(i);
+		return kind == START_OBJECT || kind == START_ARRAY ? link(i) + 1 : i + 1;
+	}
+
+	/**
+	 * Returns the offset just past the last byte of the value at entry
+	 * {@code i}.
+	 */
+	int endOffset(int i) {
+		int offset = offsets[i];
+		switch (kind(i)) {
+		case START_OBJECT:
+		case START_ARRAY:
+			return offsets[link(i)] + 1;
+		case KEY:
+		case STRING:
+			if (aux(i) < MAX_AUX)
+				return offset + aux(i) + 2;
+			int p = offset + 1;
+			while (input[p] != '"')
+				p += input[p] == '\\' ? 2 : 1;
+			return p + 1;
+		case NUMBER:
+			return offset + aux(i);
+		case FALSE:
+			return offset + 5;
+		default:
+			return offset + 4;
+		}
+	}
+
+	private void append(int kind, int aux, int link, int offset) {
+		if (length == tape.length) {
+			tape = Arrays.copyOf(tape, length * 2);
+			offsets = Arrays.copyOf(offsets, length * 2);
+		}
+		tape[length] = ((long) kind << 60) | ((long) Math.min(aux, MAX_AUX) << 32)
+				| (link & 0xFFFFFFFFL);
+		offsets[length++] = offset;
+	}
+
+	//
+	// Structural pass
+	//
+
+	// What the scanner expects to find next
+	private static final int VALUE = 0;
+	private static final int OBJECT_FIRST = 1;
+	private static final int OBJECT_NAME = 2;
+	private static final int OBJECT_COLON = 3;
+	private static final int OBJECT_NEXT = 4;
+	private static final int ARRAY_FIRST = 5;
+	private static final int ARRAY_NEXT = 6;
+	private static final int DONE = 7;
+
+	private void build() throws JSONParseException {
+		final byte[] b = input;
+		final int n = end;
+		int p = start;
+		int state = VALUE;
+		// Open containers: index of their start entry and element count
+		int[] open = new int[32];
+		int[] counts = new int[32];
+		int depth = 0;
+		for (;;) {
+			int c;
+			while (p < n && ((c = b[p]) == ' ' || c == '\n' || c == '\r' || c == '\t'))
+				p++;
+			if (p == n) {
+				if (state != DONE)
+					throw error("unexpected end of input", p);
+				break;
+			}
+			c = b[p];
+			switch (state) {
+			case OBJECT_FIRST:
+				if (c == '}') {
+					p = close(END_OBJECT, open[--depth], counts[depth], p);
+					break;
+				}
+				state = OBJECT_NAME;
+				continue;
+			case OBJECT_NAME:
+				if (c != '"')
+					throw unexpected(c, p);
+				p = string(KEY, p);
+				counts[depth - 1]++;
+				state = OBJECT_COLON;
+				continue;
+			case OBJECT_COLON:
+				if (c != ':')
+					throw unexpected(c, p);
+				p++;
+				state = VALUE;
+				continue;
+			case OBJECT_NEXT:
+				if (c == ',') {
+					p++;
+					state = OBJECT_NAME;
+					continue;
+				}
+				if (c != '}')
+					throw unexpected(c, p);
+				p = close(END_OBJECT, open[--depth], counts[depth], p);
+				break;
+			case ARRAY_FIRST:
+				if (c == ']') {
+					p = close(END_ARRAY, open[--depth], counts[depth], p);
+					break;
+				}
+				state = VALUE;
+				continue;
+			case VALUE:
+				if (depth > 0 && !isObject(open[depth - 1]))
+					counts[depth - 1]++;
+				if (c == '{' || c == '[') {
+					if (depth == open.length) {
+						open = Arrays.copyOf(open, depth * 2);
+						counts = Arrays.copyOf(counts, depth * 2);
+					}
+					open[depth] = length;
+					counts[depth++] = 0;
+					append(c == '{' ? START_OBJECT : START_ARRAY, 0, 0, p++);
+					state = c == '{' ? OBJECT_FIRST : ARRAY_FIRST;
+					continue;
+				}
+				p = scalar(c, p);
+				break;
+			case ARRAY_NEXT:
+				if (c == ',') {
+					p++;
+					state = VALUE;
+					continue;
+				}
+				if (c != ']')
+					throw unexpected(c, p);
+				p = close(END_ARRAY, open[--depth], counts[depth], p);
+				break;
+			default:
+				throw unexpected(c, p);
+			}
+			// A value has just been completed
+			if (depth == 0) {
+				state = DONE;
+			} else {
+				state = isObject(open[depth - 1]) ? OBJECT_NEXT : ARRAY_NEXT;
+			}
+		}
+	}
+
+	private boolean isObject(int i) {
+		return kind(i) == START_OBJECT;
+	}
+
+	private int close(int kind, int startEntry, int count, int p) {
+		tape[startEntry] |= ((long) Math.min(count, MAX_AUX) << 32) | length;
+		append(kind, 0, startEntry, p);
+		return p + 1;
+	}
+
+	private int scalar(int c, int p) throws JSONParseException {
+		switch (c) {
+		case '"':
+			return string(STRING, p);
+		case 't':
+			return literal(TRUE, "true", p);
+		case 'f':
+			return literal(FALSE, "false", p);
+		case 'n':
+			return literal(NULL, "null", p);
+		default:
+			if (c == '-' || (c >= '0' && c <= '9'))
+				return number(p);
+			throw unexpected(c, p);
+		}
+	}
+
+	private int literal(int kind, String word, int p) throws JSONParseException {
+		if (p + word.length() > end)
+			throw error("invalid literal", p);
+		for (int i = 0; i < word.length(); i++) {
+			if (input[p + i] != word.charAt(i))
+				throw error("invalid literal", p);
+		}
+		append(kind, 0, 0, p);
+		return p + word.length();
+	}
+
+	/**
+	 * Validates a number against the JSON grammar:
+	 * {@code -?(0|[1-9][0-9]*)(\.[0-9]+)?([eE][+-]?[0-9]+)?}
+	 */
+	private int number(int p) throws JSONParseException {
+		final byte[] b = input;
+		final int n = end;
+		int first = p;
+		if (b[p] == '-')
+			p++;
+		int digits = p;
+		while (p < n && b[p] >= '0' && b[p] <= '9')
+			p++;
+		boolean valid = p > digits && (b[digits] != '0' || p == digits + 1);
+		boolean integral = true;
+		if (valid && p < n && b[p] == '.') {
+			integral = false;
+			digits = ++p;
+			while (p < n && b[p] >= '0' && b[p] <= '9')
+				p++;
+			valid = p > digits;
+		}
+		if (valid && p < n && (b[p] == 'e' || b[p] == 'E')) {
+			integral = false;
+			if (++p < n && (b[p] == '+' || b[p] == '-'))
+				p++;
+			digits = p;
+			while (p < n && b[p] >= '0' && b[p] <= '9')
+				p++;
+			valid = p > digits;
+		}
+		if (!valid)
+			throw error("malformed number", first);
+		append(NUMBER, p - first, integral ? INTEGRAL : 0, first);
+		return p;
+	}
+
+	/**
+	 * Validates a string starting at the opening quote in {@code p}, and
+	 * returns the offset following the closing quote.
+	 */
+	private int string(int kind, int p) throws JSONParseException {
+		final byte[] b = input;
+		final int n = end;
+		int quote = p++;
+		int flags = 0;
+		for (;;) {
+			int c = 0;
+			// Fast path: skip a run of plain ASCII characters
+			while (p < n && (c = b[p]) >= 0x20 && c != '"' && c != '\\')
+				p++;
+			if (p >= n)
+				throw error("unterminated string", quote);
+			if (c == '"')
+				break;
+			if (c == '\\') {
+				flags = ESCAPED;
+				p = escape(p);
+			} else if (c >= 0) {
+				throw error("unescaped control character in string", p);
+			} else {
+				p = multiByte(p);
+			}
+		}
+		append(kind, p - quote - 1, flags, quote);
+		return p + 1;
+	}
+
+	private int escape(int p) throws JSONParseException {
+		if (p + 1 >= end)
+			throw error("unterminated string", p);
+		switch (input[p + 1]) {
+		case '"':
+		case '\\':
+		case '/':
+		case 'b':
+		case 'f':
+		case 'n':
+		case 'r':
+		case 't':
+			return p + 2;
+		case 'u':
+			if (p + 6 > end)
+				throw error("malformed unicode escape", p);
+			for (int i = p + 2; i < p + 6; i++) {
+				if (Character.digit(input[i], 16) < 0)
+					throw error("malformed unicode escape", p);
+			}
+			return p + 6;
+		default:
+			throw error("invalid escape sequence", p);
+		}
+	}
+
+	/**
+	 * Validates a multi-byte UTF-8 sequence, rejecting overlong forms and
+	 * surrogates, and returns the offset of the following byte.
+	 */
+	private int multiByte(int p) throws JSONParseException {
+		int lead = input[p] & 0xFF;
+		int cp, count, min;
+		if (lead >= 0xC2 && lead <= 0xDF) {
+			cp = lead & 0x1F;
+			count = 1;
+			min = 0x80;
+		} else if (lead >= 0xE0 && lead <= 0xEF) {
+			cp = lead & 0x0F;
+			count = 2;
+			min = 0x800;
+		} else if (lead >= 0xF0 && lead <= 0xF4) {
+			cp = lead & 0x07;
+			count = 3;
+			min = 0x10000;
+		} else {
+			throw error("invalid UTF-8 byte 0x" + Integer.toHexString(lead), p);
+		}
+		if (p + count >= end)
+			throw error("unterminated string", p);
+		for (int i = 1; i <= count; i++) {
+			int c = input[p + i];
+			if ((c & 0xC0) != 0x80)
+				throw error("invalid UTF-8 continuation byte", p + i);
+			cp = (cp << 6) | (c & 0x3F);
+		}
+		if (cp < min || cp > Character.MAX_CODE_POINT
+				|| (cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE))
+			throw error("invalid UTF-8 sequence", p);
+		return p + count + 1;
+	}
+
+	private JSONParseException error(String message, int p) {
+		return new JSONParseException(message, p - start);
+	}
+
+	private JSONParseException unexpected(int c, int p) {
+		if (c < 0x20 || c >= 0x7F)
+			return error("unexpected character 0x" + Integer.toHexString(c & 0xFF), p);
+		return error("unexpected character '" + (char) c + "'", p);
+	}
+
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package it.riccardotraverso.json;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A view of a value inside a {@link JSONTape}. Views are cheap to create and
+ * decode nothing until asked: strings are decoded by {@link #getText()},
+ * numbers are converted by {@link #getNumber()}, and nested values are only
+ * located, by skipping over the tape, by {@link #getPropertyValue(String)} and
+ * {@link #getValue(int)}, whose names mirror those of {@link JSONObject} and
+ * {@link JSONArray}.
+ * 
+ * A view is a {@link JSON} itself, so it can be visited and printed like any
+ * tree, and {@link #toJSON()} turns it into a regular, mutable tree when
+ * needed.
+ * 
+ * @see JSONTape
+ */
+public final class JSONTapeValue extends JSON implements Iterable<JSONTapeValue> {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final JSONTape tape;
+	private final int entry;
+
+	JSONTapeValue(JSONTape tape, int entry) {
+		this.tape = tape;
+		this.entry = entry;
+	}
+
+	/**
+	 * Returns the kind of the value, that is {@link JSONToken#START_OBJECT}
+	 * for objects, {@link JSONToken#START_ARRAY} for arrays, or the token of
+	 * the scalar value.
+	 */
+	public JSONToken getToken() {
+		switch (tape.kind(entry)) {
+		case JSONTape.START_OBJECT:
+			return JSONToken.START_OBJECT;
+		case JSONTape.START_ARRAY:
+			return JSONToken.START_ARRAY;
+		case JSONTape.STRING:
+			return JSONToken.STRING;
+		case JSONTape.NUMBER:
+			return JSONToken.NUMBER;
+		case JSONTape.TRUE:
+			return JSONToken.TRUE;
+		case JSONTape.FALSE:
+			return JSONToken.FALSE;
+		default:
+			return JSONToken.NULL;
+		}
+	}
+
+	/**
+	 * Tells whether the value is an object.
+	 */
+	public boolean isObject() {
+		return tape.kind(entry) == JSONTape.START_OBJECT;
+	}
+
+	/**
+	 * Tells whether the value is an array.
+	 */
+	public boolean isArray() {
+		return tape.kind(entry) == JSONTape.START_ARRAY;
+	}
+
+	/**
+	 * Tells whether the value is {@code null}.
+	 */
+	public boolean isNull() {
+		return tape.kind(entry) == JSONTape.NULL;
+	}
+
+	//
+	// Containers
+	//
+
+	/**
+	 * Returns the number of properties of an object or of elements of an
+	 * array, or 0 for any other value.
+	 */
+	public int size() {
+		if (!isObject() && !isArray())
+			return 0;
+		int count = tape.aux(entry);
+		if (count < JSONTape.MAX_AUX)
+			return count;
+		count = 0;
+		for (int i = entry + 1, end = tape.link(entry); i < end; i = tape.next(i)) {
+			count++;
+		}
+		return isObject() ? count / 2 : count;
+	}
+
+	/**
+	 * Returns the value of the first property of an object with the given
+	 * name.
+	 * 
+	 * @return the value, or null if the property is not present
+	 * @throws IllegalStateException
+	 *             if the value is not an object
+	 */
+	public JSONTapeValue getPropertyValue(String name) {
+		if (!isObject())
+			throw new IllegalStateException("not an object");
+		byte[] key = name.getBytes(UTF8);
+		byte[] input = tape.input;
+		for (int i = entry + 1, end = tape.link(entry); i < end; i = tape.next(i + 1)) {
+			if (tape.link(i) == 0) {
+				// Compare the raw bytes, as the key has no escape sequences
+				if (tape.aux(i) != key.length)
+					continue;
+				int offset = tape.offset(i) + 1;
+				int k = 0;
+				while (k < key.length && input[offset + k] == key[k])
+					k++;
+				if (k == key.length)
+					return new JSONTapeValue(tape, i + 1);
+			} else if (name.equals(decode(i))) {
+				return new JSONTapeValue(tape, i + 1);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the element of an array, or the value of the property of an
+	 * object, at a given index. Locating it takes time proportional to the
+	 * index, as preceding values are skipped over.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the value is neither an object nor an array
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no such element
+	 */
+	public JSONTapeValue getValue(int index) {
+		return new JSONTapeValue(tape, locate(index) + (isObject() ? 1 : 0));
+	}
+
+	/**
+	 * Returns the name of the property of an object at a given index.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the value is not an object
+	 * @throws IndexOutOfBoundsException
+	 *             if there is no such property
+	 */
+	public String getName(int index) {
+		if (!isObject())
+			throw new IllegalStateException("not an object");
+		return decode(locate(index));
+	}
+
+	/**
+	 * Iterates over the elements of an array or the property values of an
+	 * object. Other values have no children.
+	 */
+	@Override
+	public Iterator<JSONTapeValue> iterator() {
+		final boolean object = isObject();
+		final int end = object || isArray() ? tape.link(entry) : entry + 1;
+		return new Iterator<JSONTapeValue>() {
+			private int i = entry + 1;
+
+			@Override
+			public boolean hasNext() {
+				return i < end;
+			}
+
+			@Override
+			public JSONTapeValue next() {
+				if (i >= end)
+					throw new NoSuchElementException();
+				int value = object ? i + 1 : i;
+				i = tape.next(value);
+				return new JSONTapeValue(tape, value);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private int locate(int index) {
+		boolean object = isObject();
+		if (!object && !isArray())
+			throw new IllegalStateException("not a container");
+		if (index < 0)
+			throw new IndexOutOfBoundsException(Integer.toString(index));
+		int end = tape.link(entry);
+		int i = entry + 1;
+		for (; i < end && index > 0; index--) {
+			i = object ? tape.next(i + 1) : tape.next(i);
+		}
+		if (i >= end)
+			throw new IndexOutOfBoundsException();
+		return i;
+	}
+
+	//
+	// Scalars
+	//
+
+	/**
+	 * Decodes the text of a string value.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the value is not a string
+	 */
+	public String getText() {
+		if (tape.kind(entry) != JSONTape.STRING)
+			throw new IllegalStateException("not a string");
+		return decode(entry);
+	}
+
+	/**
+	 * Converts a numeric value into the same {@link JSONNumber} a
+	 * {@link JSONParser} would build for it.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the value is not a number
+	 */
+	public JSONNumber getNumber() {
+		if (tape.kind(entry) != JSONTape.NUMBER)
+			throw new IllegalStateException("not a number");
+		return (JSONNumber) toJSON();
+	}
+
+	/**
+	 * Returns the original digits of a numeric value.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the value is not a number
+	 */
+	public String getNumberText() {
+		if (tape.kind(entry) != JSONTape.NUMBER)
+			throw new IllegalStateException("not a number");
+		return new String(tape.input, tape.offset(entry), tape.aux(entry), UTF8);
+	}
+
+	/**
+	 * Returns the value of a boolean.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the value is not a boolean
+	 */
+	public boolean getBooleanValue() {
+		int kind = tape.kind(entry);
+		if (kind != JSONTape.TRUE && kind != JSONTape.FALSE)
+			throw new IllegalStateException("not a boolean");
+		return kind == JSONTape.TRUE;
+	}
+
+	private String decode(int i) {
+		int offset = tape.offset(i);
+		int end = tape.endOffset(i);
+		if (tape.link(i) == 0)
+			return new String(tape.input, offset + 1, end - offset - 2, UTF8);
+		try {
+			JSONParser parser = JSONParser.from(tape.input, offset, end - offset);
+			parser.next();
+			return parser.getText();
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // validated by the tape
+		}
+	}
+
+	//
+	// Trees
+	//
+
+	/**
+	 * Builds a regular {@link JSON} tree out of this value.
+	 */
+	public JSON toJSON() {
+		try {
+			return parser().readTree();
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // validated by the tape
+		}
+	}
+
+	/**
+	 * Visits the value straight from the input, as
+	 * {@link JSONParser#accept(JSONVisitor)} does.
+	 */
+	@Override
+	public void accept(JSONVisitor v) {
+		try {
+			parser().accept(v);
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // validated by the tape
+		}
+	}
+
+	private JSONParser parser() {
+		int offset = tape.offset(entry);
+		return JSONParser.from(tape.input, offset, tape.endOffset(entry) - offset);
+	}
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package it.riccardotraverso.json;
+
+/**
+ * The tokens returned by {@link JSONParser#next()} while scanning a JSON
+ * document.
+ * 
+ * @see JSONParser
+ */
+public enum JSONToken {
+
+	/** The opening brace of a {@link JSONObject} */
+	START_OBJECT,
+
+	/** The closing brace of a {@link JSONObject} */
+	END_OBJECT,
+
+	/** The opening bracket of a {@link JSONArray} */
+	START_ARRAY,
+
+	/** The closing bracket of a {@link JSONArray} */
+	END_ARRAY,
+
+	/** The name of a {@link JSONObject.Property}, always followed by its value */
+	PROPERTY_NAME,
+
+	/** A {@link JSONString} value */
+	STRING,
+
+	/** A numeric value */
+	NUMBER,
+
+	/** The {@code true} literal */
+	TRUE,
+
+	/** The {@code false} literal */
+	FALSE,
+
+	/** The {@code null} literal */
+	NULL;
+
+	/**
+	 * Tells whether the token is a complete value on its own, i.e. it is
+	 * neither a structural token nor a property name.
+	 */
+	public boolean isScalarValue() {
+		return ordinal() >= STRING.ordinal();
+	}
+
+}
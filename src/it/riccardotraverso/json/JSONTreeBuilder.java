@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+/**
+ * A visitor building a tree out of the events it receives, which is the way
+ * to keep a value seen during a streaming visit, where the nodes passed to
+ * the visitor are reused.
+ * 
+ * Every node received is copied, so the builder can be fed by any source of
+ * events: {@link JSON#accept(JSONVisitor)}, {@link JSONParser#accept(JSONVisitor)}
+ * or another visitor forwarding events.
+ */
+class JSONTreeBuilder implements JSONVisitor {
+
+	private JSON[] containers = new JSON[16];
+	private String[] names = new String[16];
+	private int top = -1;
+	private JSON result;
+
+	/**
+	 * Returns the last complete value built, or {@code null} if no value has
+	 * been completed yet.
+	 */
+	JSON getResult() {
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void add(JSON value) {
+		if (top < 0) {
+			result = value;
+		} else if (containers[top] instanceof JSONObject) {
+			((JSONObject) containers[top]).setProperty(names[top], value);
+		} else {
+			((JSONArray<JSON>) containers[top]).addValue(value);
+		}
+	}
+
+	private void push(JSON container) {
+		if (++top == containers.length) {
+			JSON[] largerContainers = new JSON[top * 2];
+			System.arraycopy(containers, 0, largerContainers, 0, top);
+			containers = largerContainers;
+			String[] largerNames = new String[top * 2];
+			System.arraycopy(names, 0, largerNames, 0, top);
+			names = largerNames;
+		}
+		containers[top] = container;
+	}
+
+	private void pop() {
+		JSON container = containers[top];
+		containers[top] = null;
+		names[top--] = null;
+		add(container);
+	}
+
+	@Override
+	public void enterJSONArray(JSONArray<? extends JSON> arr) {
+		push(new JSONArray<JSON>());
+	}
+
+	@Override
+	public void exitJSONArray(JSONArray<? extends JSON> arr) {
+		pop();
+	}
+
+	@Override
+	public void enterJSONObject(JSONObject obj) {
+		push(new JSONObject());
+	}
+
+	@Override
+	public void exitJSONObject(JSONObject obj) {
+		pop();
+	}
+
+	@Override
+	public void visitJSONString(JSONString el) {
+		add(new JSONString(el.getText()));
+	}
+
+	@Override
+	public void visitJSONInteger(JSONInteger el) {
+		add(new JSONInteger(el.getValue()));
+	}
+
+	@Override
+	public void visitJSONLong(JSONLong el) {
+		add(JSONLong.ofText(el.getNumberText()));
+	}
+
+	@Override
+	public void visitJSONDouble(JSONDouble el) {
+		add(JSONDouble.ofText(el.getNumberText()));
+	}
+
+	@Override
+	public void visitJSONDecimal(JSONDecimal el) {
+		add(JSONDecimal.ofText(el.getNumberText()));
+	}
+
+	@Override
+	public void visitJSONBoolean(JSONBoolean el) {
+		add(new JSONBoolean(el.getValue()));
+	}
+
+	@Override
+	public void visitJSONNull(JSONNull el) {
+		add(new JSONNull());
+	}
+
+	@Override
+	public void visitJSONProperty(JSONObject.Property prop) {
+		names[top] = prop.getName();
+	}
+
+}
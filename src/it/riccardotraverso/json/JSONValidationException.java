@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+/**
+ * Signals that a document does not satisfy a {@link JSONSchema}, when the
+ * validator is set to fail on the first violation.
+ * 
+ * The exception is unchecked so that it can stop the walk of a tree or the
+ * parsing of a document from within a visitor.
+ */
+public class JSONValidationException extends RuntimeException {
+
+	private static final long serialVersionUID = 5170826315592617331L;
+
+	private final String pointer;
+	private final String reason;
+
+	/**
+	 * Creates a new validation exception.
+	 * 
+	 * @param pointer
+	 *            the JSON Pointer of the offending value
+	 * @param reason
+	 *            the description of the violation
+	 */
+	public JSONValidationException(String pointer, String reason) {
+		super(pointer + ": " + reason);
+		this.pointer = pointer;
+		this.reason = reason;
+	}
+
+	/**
+	 * Returns the JSON Pointer of the offending value, which is empty for the
+	 * root.
+	 */
+	public String getPointer() {
+		return pointer;
+	}
+
+	/**
+	 * Returns the description of the violation, without the pointer.
+	 */
+	public String getReason() {
+		return reason;
+	}
+
+}
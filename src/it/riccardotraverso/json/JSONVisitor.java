@@ -93,6 +93,36 @@ public interface JSONVisitor {
 	 */
 	void visitJSONInteger(JSONInteger el);
 
+	/**
+	 * Method called by {@link JSON#accept(JSONVisitor)} during the visit of a
+	 * {@link JSONLong}. In the recursive tree of calls to the methods of the
+	 * visitor, this represents a leave.
+	 * 
+	 * @param el
+	 *            the {@link JSONLong} that is being currently visited
+	 */
+	void visitJSONLong(JSONLong el);
+
+	/**
+	 * Method called by {@link JSON#accept(JSONVisitor)} during the visit of a
+	 * {@link JSONDouble}. In the recursive tree of calls to the methods of the
+	 * visitor, this represents a leave.
+	 * 
+	 * @param el
+	 *            the {@link JSONDouble} that is being currently visited
+	 */
+	void visitJSONDouble(JSONDouble el);
+
+	/**
+	 * Method called by {@link JSON#accept(JSONVisitor)} during the visit of a
+	 * {@link JSONDecimal}. In the recursive tree of calls to the methods of the
+	 * visitor, this represents a leave.
+	 * 
+	 * @param el
+	 *            the {@link JSONDecimal} that is being currently visited
+	 */
+	void visitJSONDecimal(JSONDecimal el);
+
 	/**
 	 * Method called by {@link JSON#accept(JSONVisitor)} during the visit of a
 	 * {@link JSONBoolean}. In the recursive tree of calls to the methods of the
@@ -103,6 +133,16 @@ public interface JSONVisitor {
 	 */
 	void visitJSONBoolean(JSONBoolean el);
 
+	/**
+	 * Method called by {@link JSON#accept(JSONVisitor)} during the visit of a
+	 * {@link JSONNull}. In the recursive tree of calls to the methods of the
+	 * visitor, this represents a leave.
+	 * 
+	 * @param el
+	 *            the {@link JSONNull} that is being currently visited
+	 */
+	void visitJSONNull(JSONNull el);
+
 	/**
 	 * Method called by {@link JSON#accept(JSONVisitor)} during the visit of a
 	 * {@link JSONObject.Property}, before propagating it to the {@link JSON}
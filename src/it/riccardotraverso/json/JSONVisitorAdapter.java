@@ -51,10 +51,22 @@ public class JSONVisitorAdapter implements JSONVisitor {
 	
 	@Override
 	public void visitJSONInteger(JSONInteger el) { }
+
+	@Override
+	public void visitJSONLong(JSONLong el) { }
+
+	@Override
+	public void visitJSONDouble(JSONDouble el) { }
+
+	@Override
+	public void visitJSONDecimal(JSONDecimal el) { }
 	
 	@Override
 	public void visitJSONBoolean(JSONBoolean el) { }
 
+	@Override
+	public void visitJSONNull(JSONNull el) { }
+
 	@Override
 	public void visitJSONProperty(Property prop) { }
 
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+/**
+ * Creates the visitors of a parallel visit, and merges their results.
+ * 
+ * Each subtask of {@link JSONParallel#visit(JSON, JSONVisitorFactory)}
+ * visits a slice of the document with its own visitor, so visitors need no
+ * synchronization. Once all the slices have been visited, their visitors are
+ * combined two by two, in document order, into the visitor returned by the
+ * parallel visit.
+ * 
+ * @param <V>
+ *            the type of the visitors
+ */
+public interface JSONVisitorFactory<V extends JSONVisitor> {
+
+	/**
+	 * Creates a new visitor, in its initial state.
+	 */
+	V create();
+
+	/**
+	 * Merges the results of two visitors, where {@code left} visited the
+	 * part of the document coming right before the one visited by
+	 * {@code right}.
+	 * 
+	 * @return the visitor holding the merged results, which may be one of the
+	 *         two arguments
+	 */
+	V combine(V left, V right);
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import java.util.Arrays;
+
+/**
+ * Walks trees with an explicit stack instead of recursion, so that visiting
+ * a tree takes the same, small amount of call stack whatever its depth.
+ * 
+ * A walk calls the same {@link JSONVisitor} methods, in the same order, as
+ * the recursive visit of the tree would. No object is allocated per node:
+ * the stack of open containers is a pair of arrays, grown as needed and
+ * dropped at the end of the walk, and the elements of arrays storing
+ * primitive values, such as {@link JSONIntArray}, are passed to the visitor
+ * as a node reused for the whole walk, as when streaming. {@link JSONArray#accept(JSONVisitor)} and
+ * {@link JSONObject#accept(JSONVisitor)} walk their subtree with
+ * {@link #DEFAULT}, which has no depth limit.
+ * 
+ * A walker with a maximum depth rejects trees nesting containers deeper than
+ * that, which is a safeguard for trees of untrusted origin. Walkers hold no
+ * state between walks, so they can be shared by any number of threads.
+ * 
+ * Containers that may be modified concurrently, such as
+ * {@link JSONConcurrentObject} and {@link JSONConcurrentArray}, are walked
+ * through a snapshot taken when they are entered: the visitor receives the
+ * snapshot, so that sizes and children it sees always agree.
+ */
+public class JSONWalker {
+
+	/**
+	 * The nodes reused to visit the elements of arrays storing primitive
+	 * values, created when first needed and owned by a single walk.
+	 */
+	static final class Scratch {
+		JSONInteger integer;
+		JSONLong longInteger;
+		JSONDouble decimal;
+		JSONBoolean bool;
+	}
+
+	/** A walker without depth limit */
+	public static final JSONWalker DEFAULT = new JSONWalker(Integer.MAX_VALUE);
+
+	/**
+	 * A walker without depth limit which turns every {@link JSONTapeValue}
+	 * it meets into a tree, for visitors needing the sizes of containers,
+	 * which a visit straight from the input does not report.
+	 */
+	static final JSONWalker EXPAND_TAPES = new JSONWalker(Integer.MAX_VALUE,
+			true);
+
+	private final int maxDepth;
+	private final boolean expandTapes;
+
+	/**
+	 * Creates a walker rejecting trees nesting containers more than
+	 * {@code maxDepth} levels deep. The root container is at depth 1.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the maximum depth is negative
+	 */
+	public JSONWalker(int maxDepth) {
+		if (maxDepth < 0)
+			throw new IllegalArgumentException("negative maximum depth");
+		this.maxDepth = maxDepth;
+		this.expandTapes = false;
+	}
+
+	private JSONWalker(int maxDepth, boolean expandTapes) {
+		this.maxDepth = maxDepth;
+		this.expandTapes = expandTapes;
+	}
+
+	/**
+	 * Returns the maximum nesting depth of the containers of a tree.
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * Visits a tree.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the tree is deeper than the maximum depth, in which case
+	 *             the visitor has already received the events of the part of
+	 *             the tree preceding the offending container
+	 */
+	public void walk(JSON root, JSONVisitor v) {
+		JSON[] containers = null;
+		int[] positions = null;
+		Scratch scratch = null;
+		int top = -1;
+		JSON value = root;
+		for (;;) {
+			// Start visiting the value
+			if (expandTapes && value instanceof JSONTapeValue)
+				value = ((JSONTapeValue) value).toJSON();
+			boolean array = value instanceof JSONArray;
+			if (array || value instanceof JSONObject) {
+				if (top + 1 == maxDepth)
+					throw new IllegalArgumentException("tree deeper than "
+							+ maxDepth + " levels");
+				if (array) {
+					value = ((JSONArray<?>) value).snapshot();
+					v.enterJSONArray((JSONArray<?>) value);
+				} else {
+					value = ((JSONObject) value).snapshot();
+					v.enterJSONObject((JSONObject) value);
+				}
+				if (containers == null) {
+					containers = new JSON[16];
+					positions = new int[16];
+					scratch = new Scratch();
+				} else if (top + 1 == containers.length) {
+					containers = Arrays.copyOf(containers, containers.length * 2);
+					positions = Arrays.copyOf(positions, positions.length * 2);
+				}
+				containers[++top] = value;
+				positions[top] = 0;
+			} else {
+				value.accept(v);
+			}
+			// Find the next value, closing the containers that are complete
+			value = null;
+			while (value == null) {
+				if (top < 0)
+					return;
+				JSON container = containers[top];
+				int position = positions[top]++;
+				if (container instanceof JSONArray) {
+					JSONArray<?> arr = (JSONArray<?>) container;
+					if (position < arr.size()) {
+						value = arr.visitValue(position, scratch);
+					} else {
+						containers[top--] = null;
+						v.exitJSONArray(arr);
+					}
+				} else {
+					JSONObject obj = (JSONObject) container;
+					if (position < obj.size()) {
+						JSONObject.Property property = obj.getProperty(position);
+						v.visitJSONProperty(property);
+						value = property.getValue();
+					} else {
+						containers[top--] = null;
+						v.exitJSONObject(obj);
+					}
+				}
+			}
+		}
+	}
+
+}
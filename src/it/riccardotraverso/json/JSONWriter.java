@@ -0,0 +1,699 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package it.riccardotraverso.json;
+
+import it.riccardotraverso.json.JSONObject.Property;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Serializes JSON straight into a {@link Writer}, an {@link OutputStream} or
+ * a {@link WritableByteChannel} through a fixed-size buffer, so that memory
+ * stays flat whatever the size of the document. Binary outputs are encoded
+ * in UTF-8.
+ * 
+ * Documents are written either from {@link JSON} trees via
+ * {@link #value(JSON)}, from a {@link JSONParser} via
+ * {@link #value(JSONParser)}, or by hand with a sequence of calls such as:
+ * 
+ * <pre>
+ * w.beginObject().name(&quot;id&quot;).value(42).name(&quot;tags&quot;).beginArray()
+ * 		.value(&quot;a&quot;).value(&quot;b&quot;).endArray().endObject();
+ * </pre>
+ * 
+ * The output is compact unless an indentation is set with
+ * {@link #setIndent(String)}. Several top-level values can be written one
+ * after the other, and they are separated by a newline.
+ * 
+ * Writers are not thread-safe.
+ */
+public class JSONWriter implements Closeable, Flushable {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	/** Raw strings of at least this many bytes skip the character buffer */
+	private static final int RAW_DIRECT = 512;
+
+	// Kinds of open containers
+	private static final byte OBJECT_NAME = 0;
+	private static final byte OBJECT_VALUE = 1;
+	private static final byte ARRAY = 2;
+
+	private final char[] buf = new char[BUFFER_SIZE];
+	private int count;
+
+	private Writer writer;
+	private OutputStream stream;
+	private WritableByteChannel channel;
+	private byte[] bytes;
+
+	private String indent;
+
+	private byte[] stack = new byte[32];
+	private boolean[] empty = new boolean[32];
+	private int depth;
+	private boolean rootWritten;
+
+	private TreeVisitor visitor;
+
+	/**
+	 * Creates a new writer serializing to a character stream.
+	 */
+	public JSONWriter(Writer out) {
+		if (out == null)
+			throw new IllegalArgumentException("out cannot be null");
+		this.writer = out;
+	}
+
+	/**
+	 * Creates a new writer serializing UTF-8 bytes to a stream.
+	 */
+	public JSONWriter(OutputStream out) {
+		if (out == null)
+			throw new IllegalArgumentException("out cannot be null");
+		this.stream = out;
+		this.bytes = new byte[BUFFER_SIZE * 3];
+	}
+
+	/**
+	 * Creates a new writer serializing UTF-8 bytes to a channel.
+	 */
+	public JSONWriter(WritableByteChannel out) {
+		if (out == null)
+			throw new IllegalArgumentException("out cannot be null");
+		this.channel = out;
+		this.bytes = new byte[BUFFER_SIZE * 3];
+	}
+
+	/**
+	 * Sets the string used to indent nested values, or {@code null} (the
+	 * default) for a compact output without any whitespace.
+	 * 
+	 * @return a pointer to this, to chain more calls
+	 */
+	public JSONWriter setIndent(String indent) {
+		this.indent = indent;
+		return this;
+	}
+
+	//
+	// Events
+	//
+
+	/**
+	 * Opens a new object.
+	 * 
+	 * @return a pointer to this, to chain more calls
+	 */
+	public JSONWriter beginObject() throws IOException {
+		beforeValue();
+		write('{');
+		push(OBJECT_NAME);
+		return this;
+	}
+
+	/**
+	 * Closes the innermost object.
+	 * 
+	 * @return a pointer to this, to chain more calls
+	 */
+	public JSONWriter endObject() throws IOException {
+		if (depth == 0 || stack[depth - 1] != OBJECT_NAME)
+			throw new IllegalStateException("not in an object");
+		return pop('}');
+	}
+
+	/**
+	 * Opens a new array.
+	 * 
+	 * @return a pointer to this, to chain more calls
+	 */
+	public JSONWriter beginArray() throws IOException {
+		beforeValue();
+		write('[');
+		push(ARRAY);
+		return this;
+	}
+
+	/**
+	 * Closes the innermost array.
+	 * 
+	 * @return a pointer to this, to chain more calls
+	 */
+	public JSONWriter endArray() throws IOException {
+		if (depth == 0 || stack[depth - 1] != ARRAY)
+			throw new IllegalStateException("not in an array");
+		return pop(']');
+	}
+
+	/**
+	 * Writes the name of a property of the innermost object, which must be
+	 * followed by its value.
+	 * 
+	 * @return a pointer to this, to chain more calls
+	 */
+	public JSONWriter name(String name) throws IOException {
+		if (name == null)
+			throw new IllegalArgumentException("name cannot be null");
+		if (depth == 0 || stack[depth - 1] != OBJECT_NAME)
+			throw new IllegalStateException("a property name is not expected here");
+		beforeElement();
+		writeString(name);
+		write(':');
+		if (indent != null)
+			write(' ');
+		stack[depth - 1] = OBJECT_VALUE;
+		return this;
+	}
+
+	/**
+	 * Writes a string value, or {@code null} when {@code value} is null.
+	 * 
+	 * @return a pointer to this, to chain more calls
+	 */
+	public JSONWriter value(String value) throws IOException {
+		if (value == null)
+			return nullValue();
+		beforeValue();
+		writeString(value);
+		return this;
+	}
+
+	/**
+	 * Writes an integer value.
+	 * 
+	 * @return a pointer to this, to chain more calls
+	 */
+	public JSONWriter value(long value) throws IOException {
+		beforeValue();
+		write(Long.toString(value));
+		return this;
+	}
+
+	/**
+	 * Writes a decimal value.
+	 * 
+	 * @return a pointer to this, to chain more calls
+	 * @throws IllegalArgumentException
+	 *             if the value is NaN or infinite, as JSON cannot represent
+	 *             them
+	 */
+	public JSONWriter value(double value) throws IOException {
+		if (Double.isNaN(value) || Double.isInfinite(value))
+			throw new IllegalArgumentException("not representable in JSON: " + value);
+		beforeValue();
+		write(Double.toString(value));
+		return this;
+	}
+
+	/**
+	 * Writes an arbitrary precision value, or {@code null} when
+	 * {@code value} is null.
+	 * 
+	 * @return a pointer to this, to chain more calls
+	 */
+	public JSONWriter value(BigDecimal value) throws IOException {
+		if (value == null)
+			return nullValue();
+		beforeValue();
+		write(value.toString());
+		return this;
+	}
+
+	/**
+	 * Writes a boolean value.
+	 * 
+	 * @return a pointer to this, to chain more calls
+	 */
+	public JSONWriter value(boolean value) throws IOException {
+		beforeValue();
+		write(value ? "true" : "false");
+		return this;
+	}
+
+	/**
+	 * Writes the {@code null} value.
+	 * 
+	 * @return a pointer to this, to chain more calls
+	 */
+	public JSONWriter nullValue() throws IOException {
+		beforeValue();
+		write("null");
+		return this;
+	}
+
+	/**
+	 * Writes a whole JSON tree, or {@code null} when {@code value} is null.
+	 * 
+	 * @return a pointer to this, to chain more calls
+	 */
+	public JSONWriter value(JSON value) throws IOException {
+		if (value == null)
+			return nullValue();
+		try {
+			value.accept(visitor());
+		} catch (WrappedIOException e) {
+			throw e.getCause();
+		}
+		return this;
+	}
+
+	/**
+	 * Copies the value at the current position of a parser, which is left on
+	 * the last token of the value (see {@link JSONParser#accept(JSONVisitor)}).
+	 * No tree is built in between.
+	 * 
+	 * @return a pointer to this, to chain more calls
+	 */
+	public JSONWriter value(JSONParser parser) throws IOException {
+		try {
+			parser.accept(visitor());
+		} catch (WrappedIOException e) {
+			throw e.getCause();
+		}
+		return this;
+	}
+
+	//
+	// Output
+	//
+
+	/**
+	 * Writes out the buffered output and flushes the underlying output.
+	 */
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		if (writer != null) {
+			writer.flush();
+		} else if (stream != null) {
+			stream.flush();
+		}
+	}
+
+	/**
+	 * Writes out the buffered output and closes the underlying output.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flushBuffer();
+		} finally {
+			if (writer != null) {
+				writer.close();
+			} else if (stream != null) {
+				stream.close();
+			} else {
+				channel.close();
+			}
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		int n = count;
+		if (n == 0)
+			return;
+		count = 0;
+		if (writer != null) {
+			writer.write(buf, 0, n);
+			return;
+		}
+		// Keep a trailing high surrogate until its pair shows up
+		if (Character.isHighSurrogate(buf[n - 1]) && n > 1) {
+			n--;
+			count = 1;
+		}
+		int length = encode(n);
+		if (count == 1)
+			buf[0] = buf[n];
+		if (stream != null) {
+			stream.write(bytes, 0, length);
+		} else {
+			ByteBuffer bb = ByteBuffer.wrap(bytes, 0, length);
+			while (bb.hasRemaining()) {
+				channel.write(bb);
+			}
+		}
+	}
+
+	/**
+	 * Encodes in UTF-8 the first {@code n} buffered characters, replacing
+	 * unpaired surrogates with '?'.
+	 */
+	private int encode(int n) {
+		char[] src = buf;
+		byte[] dst = bytes;
+		int j = 0;
+		for (int i = 0; i < n; i++) {
+			char c = src[i];
+			if (c < 0x80) {
+				dst[j++] = (byte) c;
+			} else if (c < 0x800) {
+				dst[j++] = (byte) (0xC0 | (c >> 6));
+				dst[j++] = (byte) (0x80 | (c & 0x3F));
+			} else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+				if (Character.isHighSurrogate(c) && i + 1 < n
+						&& Character.isLowSurrogate(src[i + 1])) {
+					int cp = Character.toCodePoint(c, src[++i]);
+					dst[j++] = (byte) (0xF0 | (cp >> 18));
+					dst[j++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+					dst[j++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+					dst[j++] = (byte) (0x80 | (cp & 0x3F));
+				} else {
+					dst[j++] = '?';
+				}
+			} else {
+				dst[j++] = (byte) (0xE0 | (c >> 12));
+				dst[j++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				dst[j++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		return j;
+	}
+
+	private void write(char c) throws IOException {
+		if (count == buf.length)
+			flushBuffer();
+		buf[count++] = c;
+	}
+
+	private void write(String s) throws IOException {
+		write(s, 0, s.length());
+	}
+
+	private void write(String s, int start, int end) throws IOException {
+		while (start < end) {
+			if (count == buf.length)
+				flushBuffer();
+			int n = Math.min(end - start, buf.length - count);
+			s.getChars(start, start + n, buf, count);
+			count += n;
+			start += n;
+		}
+	}
+
+	/**
+	 * Writes a quoted string, escaping quotes, backslashes and control
+	 * characters. Runs of characters needing no escape are copied in bulk.
+	 * 
+	 * @see JSONEscape
+	 */
+	private void writeString(String s) throws IOException {
+		write('"');
+		int length = s.length();
+		int start = 0;
+		for (int i = JSONEscape.scan(s, 0, length); i < length; i = JSONEscape
+				.scan(s, start, length)) {
+			write(s, start, i);
+			if (count + 6 > buf.length)
+				flushBuffer();
+			char c = s.charAt(i);
+			count = JSONEscape.escape(c, JSONEscape.escapeOf(c), buf, count);
+			start = i + 1;
+		}
+		write(s, start, length);
+		write('"');
+	}
+
+	//
+	// Structure
+	//
+
+	private void beforeValue() throws IOException {
+		if (depth == 0) {
+			if (rootWritten)
+				write('\n');
+			rootWritten = true;
+			return;
+		}
+		byte kind = stack[depth - 1];
+		if (kind == OBJECT_NAME)
+			throw new IllegalStateException("a property name is expected here");
+		if (kind == OBJECT_VALUE) {
+			stack[depth - 1] = OBJECT_NAME;
+		} else {
+			beforeElement();
+		}
+	}
+
+	private void beforeElement() throws IOException {
+		if (empty[depth - 1]) {
+			empty[depth - 1] = false;
+		} else {
+			write(',');
+		}
+		newLine(depth);
+	}
+
+	private void newLine(int level) throws IOException {
+		if (indent == null)
+			return;
+		write('\n');
+		for (int i = 0; i < level; i++) {
+			write(indent);
+		}
+	}
+
+	private void push(byte kind) {
+		if (depth == stack.length) {
+			byte[] s = new byte[depth * 2];
+			boolean[] e = new boolean[depth * 2];
+			System.arraycopy(stack, 0, s, 0, depth);
+			System.arraycopy(empty, 0, e, 0, depth);
+			stack = s;
+			empty = e;
+		}
+		stack[depth] = kind;
+		empty[depth] = true;
+		depth++;
+	}
+
+	private JSONWriter pop(char bracket) throws IOException {
+		depth--;
+		if (!empty[depth])
+			newLine(depth);
+		write(bracket);
+		return this;
+	}
+
+	/**
+	 * Writes a number already formatted as JSON code.
+	 */
+	private void number(String text) throws IOException {
+		beforeValue();
+		write(text);
+	}
+
+	/**
+	 * Writes a string read in raw mode: long strings go straight from the
+	 * input to a byte output, while short ones are copied into the buffer,
+	 * decoding only their multi-byte sequences, which were validated by the
+	 * parser. Either way the escapes of the input are kept as they are.
+	 */
+	private void rawString(JSONRawString s, byte[] b) throws IOException {
+		int offset = s.rawOffset();
+		int length = s.rawLength();
+		if (writer == null && length >= RAW_DIRECT) {
+			beforeValue();
+			write('"');
+			flushBuffer();
+			if (stream != null) {
+				stream.write(b, offset, length);
+			} else {
+				ByteBuffer bb = ByteBuffer.wrap(b, offset, length);
+				while (bb.hasRemaining()) {
+					channel.write(bb);
+				}
+			}
+			write('"');
+		} else {
+			beforeValue();
+			write('"');
+			for (int i = offset, end = offset + length; i < end;) {
+				if (count + 2 > buf.length)
+					flushBuffer();
+				int c = b[i++];
+				if (c >= 0) {
+					buf[count++] = (char) c;
+					continue;
+				}
+				int cp;
+				if ((c & 0xE0) == 0xC0) {
+					cp = (c & 0x1F) << 6 | b[i++] & 0x3F;
+				} else if ((c & 0xF0) == 0xE0) {
+					cp = (c & 0x0F) << 12 | (b[i] & 0x3F) << 6 | b[i + 1] & 0x3F;
+					i += 2;
+				} else {
+					cp = (c & 0x07) << 18 | (b[i] & 0x3F) << 12
+							| (b[i + 1] & 0x3F) << 6 | b[i + 2] & 0x3F;
+					i += 3;
+				}
+				if (cp >= 0x10000) {
+					buf[count++] = (char) (0xD7C0 + (cp >>> 10));
+					buf[count++] = (char) (0xDC00 + (cp & 0x3FF));
+				} else {
+					buf[count++] = (char) cp;
+				}
+			}
+			write('"');
+		}
+	}
+
+	private JSONVisitor visitor() {
+		if (visitor == null)
+			visitor = new TreeVisitor();
+		return visitor;
+	}
+
+	/**
+	 * Translates visitor callbacks into writer events.
+	 */
+	private class TreeVisitor implements JSONVisitor {
+
+		@Override
+		public void enterJSONArray(JSONArray<? extends JSON> arr) {
+			try {
+				beginArray();
+			} catch (IOException e) {
+				throw new WrappedIOException(e);
+			}
+		}
+
+		@Override
+		public void exitJSONArray(JSONArray<? extends JSON> arr) {
+			try {
+				endArray();
+			} catch (IOException e) {
+				throw new WrappedIOException(e);
+			}
+		}
+
+		@Override
+		public void enterJSONObject(JSONObject obj) {
+			try {
+				beginObject();
+			} catch (IOException e) {
+				throw new WrappedIOException(e);
+			}
+		}
+
+		@Override
+		public void exitJSONObject(JSONObject obj) {
+			try {
+				endObject();
+			} catch (IOException e) {
+				throw new WrappedIOException(e);
+			}
+		}
+
+		@Override
+		public void visitJSONString(JSONString el) {
+			try {
+				byte[] bytes = el instanceof JSONRawString ? ((JSONRawString) el)
+						.rawBytes() : null;
+				if (bytes != null) {
+					rawString((JSONRawString) el, bytes);
+				} else {
+					JSONWriter.this.value(el.getText());
+				}
+			} catch (IOException e) {
+				throw new WrappedIOException(e);
+			}
+		}
+
+		@Override
+		public void visitJSONInteger(JSONInteger el) {
+			try {
+				JSONWriter.this.value(el.getValue());
+			} catch (IOException e) {
+				throw new WrappedIOException(e);
+			}
+		}
+
+		@Override
+		public void visitJSONLong(JSONLong el) {
+			try {
+				String text = el.rawText();
+				if (text != null) {
+					number(text);
+				} else {
+					JSONWriter.this.value(el.getValue());
+				}
+			} catch (IOException e) {
+				throw new WrappedIOException(e);
+			}
+		}
+
+		@Override
+		public void visitJSONDouble(JSONDouble el) {
+			try {
+				number(el.getNumberText());
+			} catch (IOException e) {
+				throw new WrappedIOException(e);
+			}
+		}
+
+		@Override
+		public void visitJSONDecimal(JSONDecimal el) {
+			try {
+				number(el.getNumberText());
+			} catch (IOException e) {
+				throw new WrappedIOException(e);
+			}
+		}
+
+		@Override
+		public void visitJSONBoolean(JSONBoolean el) {
+			try {
+				JSONWriter.this.value(el.getValue());
+			} catch (IOException e) {
+				throw new WrappedIOException(e);
+			}
+		}
+
+		@Override
+		public void visitJSONNull(JSONNull el) {
+			try {
+				nullValue();
+			} catch (IOException e) {
+				throw new WrappedIOException(e);
+			}
+		}
+
+		@Override
+		public void visitJSONProperty(Property prop) {
+			try {
+				name(prop.getName());
+			} catch (IOException e) {
+				throw new WrappedIOException(e);
+			}
+		}
+	}
+
+}
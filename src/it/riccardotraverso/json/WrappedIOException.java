@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import java.io.IOException;
+
+/**
+ * Tunnels an {@link IOException} through the visitor methods, which cannot
+ * throw it. Writers driven by a {@link JSONVisitor} wrap the exceptions of
+ * their output and unwrap them once the visit is over.
+ */
+class WrappedIOException extends RuntimeException {
+
+	private static final long serialVersionUID = 3049811390217587014L;
+
+	WrappedIOException(IOException cause) {
+		super(cause);
+	}
+
+	@Override
+	public IOException getCause() {
+		return (IOException) super.getCause();
+	}
+
+}
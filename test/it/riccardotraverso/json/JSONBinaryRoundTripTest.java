@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import java.io.IOException;
+
+/**
+ * Checks that documents written by {@link JSONBinaryWriter} and read back by
+ * {@link JSONBinaryReader} are equivalent to their text form. Run as a plain
+ * program: it throws an {@link AssertionError} on the first mismatch.
+ */
+public class JSONBinaryRoundTripTest {
+
+	private static final String[] DOCUMENTS = {
+			"null",
+			"true",
+			"\"caf\u00e9 \\u0000 \\ud83d\\ude00\"",
+			"[0,-1,2147483647,-2147483648,9223372036854775807,-9223372036854775808]",
+			"[1.5,-0.0,1e-300,1e400,-1e400,12345678901234567890123]",
+			"{\"a\":{\"a\":[],\"b\":{}},\"b\":[{\"a\":1},{\"a\":2,\"b\":\"a\"}]}",
+			"{\"\":1,\" \":{\"\":[]}}",
+			"[[[[[[[[[[\"deep\"]]]]]]]]]]" };
+
+	public static void main(String[] args) throws IOException {
+		for (String text : DOCUMENTS) {
+			JSON tree = JSONParser.parse(text);
+			check(text, JSONBinaryReader.parse(JSONBinaryWriter.toByteArray(tree)));
+			// The same documents straight from a tape, as a root and nested
+			JSONTapeValue root = JSONTape.parse(text.getBytes("UTF-8")).getRoot();
+			check(text, JSONBinaryReader.parse(JSONBinaryWriter.toByteArray(root)));
+			JSONArray<JSON> wrapper = new JSONArray<JSON>();
+			wrapper.addValue(root);
+			check("[" + text + "]",
+					JSONBinaryReader.parse(JSONBinaryWriter.toByteArray(wrapper)));
+		}
+		System.out.println("ok");
+	}
+
+	/**
+	 * Compares a tree read back with the text it comes from, reading both
+	 * with exact decimals, as the binary form keeps the digits of numbers out
+	 * of the range of a double.
+	 */
+	private static void check(String text, JSON read) throws IOException {
+		JSON expected = JSONParser.from(text).setExactDecimals(true).readTree();
+		JSON actual = JSONParser.from(JSONCompactPrint.toString(read))
+				.setExactDecimals(true).readTree();
+		if (!expected.equals(actual))
+			throw new AssertionError(text + " read back as " + read);
+	}
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import it.riccardotraverso.java.lang.Predicate;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Checks that {@link JSONObject} keeps its properties in order and readable
+ * by position while removals leave holes in indexed objects, including from
+ * several threads at once. Run as a plain program: it throws an
+ * {@link AssertionError} on the first mismatch.
+ */
+public class JSONObjectTest {
+
+	public static void main(String[] args) throws Exception {
+		removals();
+		readsDuringIteration();
+		renameRemoved();
+		parallelReads();
+		System.out.println("ok");
+	}
+
+	/**
+	 * Removes and adds properties at random, comparing the object with a
+	 * list of the expected names after each change.
+	 */
+	private static void removals() {
+		Random random = new Random(4);
+		JSONObject object = new JSONObject();
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 2000; i++) {
+			if (expected.size() > 0 && random.nextInt(3) == 0) {
+				String name = expected.remove(random.nextInt(expected.size()));
+				check(object.removeProperty(name), name + " not removed");
+			} else {
+				String name = "p" + i;
+				object.setProperty(name, new JSONInteger(i));
+				expected.add(name);
+			}
+			check(object.size() == expected.size(), "size " + object.size());
+			if (i % 50 == 0)
+				compare(object, expected);
+		}
+		compare(object, expected);
+	}
+
+	private static void compare(JSONObject object, List<String> expected) {
+		for (int i = 0; i < expected.size(); i++) {
+			String name = expected.get(i);
+			check(object.getProperty(i).getName().equals(name), "position " + i);
+			check(object.getProperty(name) != null, name + " not found");
+		}
+		int i = 0;
+		for (JSONObject.Property property : object) {
+			check(property.getName().equals(expected.get(i++)), "iterator");
+		}
+		check(i == expected.size(), "iterator size");
+	}
+
+	/**
+	 * Reads the object while an iterator is removing from it, which must not
+	 * move the properties under the iterator.
+	 */
+	private static void readsDuringIteration() {
+		JSONObject object = wide(100);
+		int seen = 0;
+		for (Iterator<JSONObject.Property> it = object.iterator(); it.hasNext();) {
+			JSONObject.Property property = it.next();
+			seen++;
+			if (seen % 2 == 0)
+				it.remove();
+			object.toCompactString();
+			object.hashCode();
+		}
+		check(seen == 100 && object.size() == 50, "iteration " + seen);
+		check(object.getProperty(49).getName().equals("p98"), "last");
+	}
+
+	/**
+	 * Renames a property after its removal from an indexed object.
+	 */
+	private static void renameRemoved() {
+		JSONObject object = wide(20);
+		JSONObject.Property property = object.getProperty("p3");
+		object.removeProperty("p3");
+		property.setName("renamed");
+		check(object.getProperty("renamed") == null, "renamed");
+		check(object.getProperty("p4") != null, "p4");
+	}
+
+	/**
+	 * Filters an object with pending removals from several threads, which
+	 * all read it by position.
+	 */
+	private static void parallelReads() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			for (int run = 0; run < 20; run++) {
+				JSONObject object = wide(40000);
+				for (int i = 0; i < 1000; i++) {
+					object.removeProperty("p" + (i * 40));
+				}
+				List<JSONObject.Property> found = JSONParallel.filter(object,
+						new Predicate<JSONObject.Property>() {
+							@Override
+							public boolean holdsFor(JSONObject.Property obj) {
+								return true;
+							}
+						}, executor, 8);
+				check(found.size() == 39000, "found " + found.size());
+				check(found.get(38999).getName().equals("p39999"), "order");
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static JSONObject wide(int size) {
+		JSONObject object = new JSONObject();
+		for (int i = 0; i < size; i++) {
+			object.setProperty("p" + i, new JSONInteger(i));
+		}
+		return object;
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition)
+			throw new AssertionError(message);
+	}
+
+}
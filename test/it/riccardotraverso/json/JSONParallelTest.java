@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import it.riccardotraverso.java.lang.Predicate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Checks that {@link JSONParallel} visits, searches and filters arrays and
+ * objects of every kind as a sequential walk would, whatever the number of
+ * threads actually running the slices. Run as a plain program: it throws an
+ * {@link AssertionError} on the first mismatch.
+ */
+public class JSONParallelTest {
+
+	private static final int SIZE = 100000;
+
+	/**
+	 * Records the integers visited in order, and how many times containers
+	 * were entered and exited.
+	 */
+	private static final class Recorder extends JSONVisitorAdapter {
+		final List<Integer> values = new ArrayList<Integer>();
+		int entered;
+		int exited;
+
+		@Override
+		public void enterJSONArray(JSONArray<? extends JSON> arr) {
+			entered++;
+		}
+
+		@Override
+		public void exitJSONArray(JSONArray<? extends JSON> arr) {
+			exited++;
+		}
+
+		@Override
+		public void enterJSONObject(JSONObject obj) {
+			entered++;
+		}
+
+		@Override
+		public void exitJSONObject(JSONObject obj) {
+			exited++;
+		}
+
+		@Override
+		public void visitJSONInteger(JSONInteger el) {
+			values.add(el.getValue());
+		}
+	}
+
+	private static final JSONVisitorFactory<Recorder> RECORDERS = new JSONVisitorFactory<Recorder>() {
+
+		@Override
+		public Recorder create() {
+			return new Recorder();
+		}
+
+		@Override
+		public Recorder combine(Recorder left, Recorder right) {
+			left.values.addAll(right.values);
+			left.entered += right.entered;
+			left.exited += right.exited;
+			return left;
+		}
+	};
+
+	public static void main(String[] args) {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		ExecutorService stopped = Executors.newFixedThreadPool(1);
+		stopped.shutdown();
+		try {
+			for (JSON root : roots()) {
+				visit(root, executor);
+				// Slices rejected by the executor run on the calling thread
+				visit(root, stopped);
+			}
+			search(executor);
+			try {
+				JSONParallel.visit(new JSONArray<JSON>(), RECORDERS, executor, 0);
+				throw new AssertionError("parallelism 0 accepted");
+			} catch (IllegalArgumentException e) {
+				// Expected
+			}
+		} finally {
+			executor.shutdown();
+		}
+		System.out.println("ok");
+	}
+
+	/**
+	 * Builds the same integers in every kind of container, some of them
+	 * nested, and in an object with holes left by removals among strings.
+	 */
+	private static List<JSON> roots() {
+		List<JSON> roots = new ArrayList<JSON>();
+		JSONArray<JSON> array = new JSONArray<JSON>();
+		JSONIntArray ints = new JSONIntArray();
+		JSONConcurrentArray<JSON> concurrent = new JSONConcurrentArray<JSON>();
+		JSONObject object = new JSONObject();
+		for (int i = 0; i < SIZE; i++) {
+			array.addValue(new JSONInteger(i));
+			ints.addInt(i);
+			concurrent.addValue(new JSONInteger(i));
+			object.setProperty("p" + i, new JSONInteger(i));
+		}
+		JSONArray<JSON> nested = new JSONArray<JSON>();
+		for (int i = 0; i < SIZE; i += 2) {
+			JSONArray<JSON> pair = new JSONArray<JSON>();
+			pair.addValue(new JSONInteger(i));
+			pair.addValue(new JSONInteger(i + 1));
+			nested.addValue(pair);
+		}
+		JSONObject holes = new JSONObject();
+		for (int i = 0; i < SIZE; i++) {
+			holes.setProperty("p" + i, new JSONInteger(i));
+			holes.setProperty("q" + i, new JSONString("q"));
+		}
+		// Fewer removals than half the properties, which leave their holes
+		for (int i = 0; i < SIZE; i += 3) {
+			holes.removeProperty("q" + i);
+		}
+		roots.add(array);
+		roots.add(ints);
+		roots.add(concurrent);
+		roots.add(object);
+		roots.add(nested);
+		roots.add(holes);
+		return roots;
+	}
+
+	private static void visit(JSON root, ExecutorService executor) {
+		Recorder recorder = JSONParallel.visit(root, RECORDERS, executor, 4);
+		String kind = root.getClass().getSimpleName();
+		check(recorder.values.size() == SIZE, kind + " visited "
+				+ recorder.values.size());
+		for (int i = 0; i < SIZE; i++) {
+			check(recorder.values.get(i) == i, kind + " out of order at " + i);
+		}
+		Recorder sequential = new Recorder();
+		root.accept(sequential);
+		check(recorder.entered == sequential.entered
+				&& recorder.exited == sequential.exited, kind + " entered "
+				+ recorder.entered + " exited " + recorder.exited);
+	}
+
+	private static void search(ExecutorService executor) {
+		JSONArray<JSONInteger> array = new JSONArray<JSONInteger>();
+		JSONObject object = new JSONObject();
+		for (int i = 0; i < SIZE; i++) {
+			array.addValue(new JSONInteger(i));
+			object.setProperty("p" + i, new JSONInteger(i));
+		}
+		Predicate<JSONInteger> one = new Predicate<JSONInteger>() {
+			@Override
+			public boolean holdsFor(JSONInteger obj) {
+				return obj.getValue() == 77777;
+			}
+		};
+		Predicate<JSONInteger> none = new Predicate<JSONInteger>() {
+			@Override
+			public boolean holdsFor(JSONInteger obj) {
+				return obj.getValue() < 0;
+			}
+		};
+		Predicate<JSONObject.Property> even = new Predicate<JSONObject.Property>() {
+			@Override
+			public boolean holdsFor(JSONObject.Property obj) {
+				return ((JSONInteger) obj.getValue()).getValue() % 2 == 0;
+			}
+		};
+		JSONInteger found = JSONParallel.findAny(array, one, executor, 4);
+		check(found != null && found.getValue() == 77777, "findAny " + found);
+		check(JSONParallel.findAny(array, none, executor, 4) == null,
+				"findAny none");
+		JSONObject.Property property = JSONParallel.findAny(object, even,
+				executor, 4);
+		check(property != null && even.holdsFor(property), "findAny property");
+		List<JSONInteger> matches = JSONParallel.filter(array, one, executor, 4);
+		check(matches.size() == 1 && matches.get(0).getValue() == 77777,
+				"filter " + matches);
+		List<JSONObject.Property> evens = JSONParallel.filter(object, even,
+				executor, 4);
+		check(evens.size() == SIZE / 2, "filter size " + evens.size());
+		for (int i = 0; i < evens.size(); i++) {
+			check(evens.get(i).getName().equals("p" + i * 2), "filter order at " + i);
+		}
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition)
+			throw new AssertionError(message);
+	}
+
+}
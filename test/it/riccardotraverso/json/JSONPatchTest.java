@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2014 Riccardo Traverso
+ * 
+ * This file is part of JavaUtils
+ * Website: https://github.com/rtraverso86/JavaUtils
+ * 
+ * JavaUtils is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * JavaUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package it.riccardotraverso.json;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Checks the structural equality and hashing behind {@link JSONPatch}:
+ * numbers are compared by value whatever their classes, and a diff never
+ * drops a change because of matching hashes. Run as a plain program: it
+ * throws an {@link AssertionError} on the first mismatch.
+ */
+public class JSONPatchTest {
+
+	public static void main(String[] args) throws IOException {
+		numbers();
+		collisions();
+		roundTrips();
+		System.out.println("ok");
+	}
+
+	/**
+	 * Compares numbers of every class, as read by a parser and as built.
+	 */
+	private static void numbers() throws IOException {
+		JSON[][] equal = {
+				{ JSONParser.parse("[1500000000]"),
+						array(new JSONInteger(1500000000)) },
+				{ JSONParser.parse("[1]"), array(new JSONLong(1)) },
+				{ JSONParser.parse("[1.0]"), array(new JSONInteger(1)) },
+				{ JSONParser.parse("[1e2]"), array(new JSONDecimal(new BigDecimal("100"))) },
+				{ JSONParser.parse("[0.1]"), array(new JSONDecimal(new BigDecimal("0.10"))) },
+				{ JSONParser.parse("[-0.0]"), array(new JSONInteger(0)) },
+				{ JSONParser.parse("[1e400]"), JSONParser.from("[1E+400]").setExactDecimals(true).readTree() },
+				{ JSONParser.parse("[9223372036854775807]"),
+						array(new JSONDecimal(new BigDecimal("9223372036854775807.00"))) } };
+		for (JSON[] pair : equal) {
+			check(pair[0].equals(pair[1]) && pair[1].equals(pair[0]), pair[0]
+					+ " differs from " + pair[1]);
+			check(pair[0].hashCode() == pair[1].hashCode(), pair[0]
+					+ " hashes unlike " + pair[1]);
+			check(JSONPatch.diff(pair[0], pair[1]).size() == 0, "diff of " + pair[0]);
+		}
+		check(!JSONParser.parse("[1]").equals(JSONParser.parse("[1.5]")), "1.5");
+		check(!JSONParser.parse("[1e400]").equals(JSONParser.parse("[2e400]")), "2e400");
+		check(!JSONParser.parse("[9007199254740993]").equals(
+				array(new JSONDouble(9007199254740992.0))), "2^53 + 1");
+		JSON document = JSONParser.parse("{\"a\":1}");
+		JSONPatch.apply(document, JSONParser.parse("[{\"op\":\"test\",\"path\":\"/a\",\"value\":1.0}]"));
+	}
+
+	/**
+	 * Gives two different arrays the same cached hash, which a diff must not
+	 * take for equality.
+	 */
+	private static void collisions() throws IOException {
+		JSONArray<?> a = (JSONArray<?>) JSONParser.parse("[1,2,3]");
+		JSONArray<?> b = (JSONArray<?>) JSONParser.parse("[1,2,4]");
+		JSONObject source = new JSONObject().setProperty("x", a);
+		JSONObject target = new JSONObject().setProperty("x", b);
+		a.hashCode();
+		b.hashCode();
+		b.hash = a.hash;
+		check(a.hashEpoch == b.hashEpoch, "epochs");
+		JSONArray<JSONObject> patch = JSONPatch.diff(source, target);
+		check(patch.size() == 1, "collision hid " + patch);
+		check(JSONPatch.apply(source, patch).toString().equals(target.toString()),
+				"patched");
+	}
+
+	private static void roundTrips() throws IOException {
+		String[][] pairs = {
+				{ "{\"a\":[1,2,3],\"b\":{\"c\":true}}", "{\"a\":[1,3],\"b\":{\"c\":false,\"d\":null}}" },
+				{ "[{\"k\":1},{\"k\":2},{\"k\":3}]", "[{\"k\":1},{\"k\":3}]" },
+				{ "{\"a\":1}", "[1]" } };
+		for (String[] pair : pairs) {
+			JSON source = JSONParser.parse(pair[0]);
+			JSON target = JSONParser.parse(pair[1]);
+			JSON patched = JSONPatch.apply(source, JSONPatch.diff(source, target));
+			check(patched.equals(target), pair[0] + " patched into " + patched);
+		}
+	}
+
+	private static JSONArray<JSON> array(JSON value) {
+		JSONArray<JSON> array = new JSONArray<JSON>();
+		array.addValue(value);
+		return array;
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition)
+			throw new AssertionError(message);
+	}
+
+}